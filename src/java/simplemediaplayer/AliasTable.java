@@ -0,0 +1,90 @@
+package simplemediaplayer;
+
+import java.util.Random;
+
+/**
+ * Walker's alias table: picks an index at random with probability
+ * proportional to its weight in O(1), after an O(n) setup (Vose's method).
+ * Each index of the table holds its own share of the probability and the
+ * index that makes up the rest, so a pick is one uniform index and one coin
+ * flip.
+ */
+public class AliasTable {
+
+  // Probability of keeping the index rather than taking its alias
+  private final double[] probability;
+  private final int[] alias;
+
+  /**
+   * @param weights The weight of each index, none negative and at least one
+   *        positive
+   */
+  public AliasTable(double[] weights) {
+    int n = weights.length;
+    double total = 0;
+    for (double weight : weights) {
+      if (!(weight >= 0) || Double.isInfinite(weight)) {
+        throw new IllegalArgumentException("Invalid weight: " + weight);
+      }
+      total += weight;
+    }
+    if (!(total > 0)) {
+      throw new IllegalArgumentException("No positive weight");
+    }
+
+    probability = new double[n];
+    alias = new int[n];
+    // Indexes with less and with at least the average weight, as stacks
+    int[] small = new int[n];
+    int[] large = new int[n];
+    int smallCount = 0;
+    int largeCount = 0;
+    double[] scaled = new double[n];
+    for (int i = 0; i < n; i++) {
+      scaled[i] = weights[i] * n / total;
+      if (scaled[i] < 1) {
+        small[smallCount++] = i;
+      } else {
+        large[largeCount++] = i;
+      }
+    }
+    // Fill up each small index with a large one
+    while (smallCount > 0 && largeCount > 0) {
+      int less = small[--smallCount];
+      int more = large[--largeCount];
+      probability[less] = scaled[less];
+      alias[less] = more;
+      scaled[more] = scaled[more] + scaled[less] - 1;
+      if (scaled[more] < 1) {
+        small[smallCount++] = more;
+      } else {
+        large[largeCount++] = more;
+      }
+    }
+    // What is left is full, up to rounding errors
+    while (largeCount > 0) {
+      probability[large[--largeCount]] = 1;
+    }
+    while (smallCount > 0) {
+      probability[small[--smallCount]] = 1;
+    }
+  }
+
+  /**
+   * @return the number of indexes
+   */
+  public int size() {
+    return probability.length;
+  }
+
+  /**
+   * Picks an index with a probability proportional to its weight.
+   *
+   * @param random Source of randomness
+   * @return The index
+   */
+  public int sample(Random random) {
+    int index = random.nextInt(probability.length);
+    return random.nextDouble() < probability[index] ? index : alias[index];
+  }
+}
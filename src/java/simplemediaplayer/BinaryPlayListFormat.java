@@ -0,0 +1,282 @@
+package simplemediaplayer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary PlayList format. Entries of the same directory share the
+ * directory part, which is stored once in a dictionary:
+ *
+ * <pre>
+ * magic "SMPL", version byte
+ * varint directoryCount, then per directory: varint length, UTF-8 bytes
+ * varint entryCount, then per entry: varint directory index,
+ *     varint length, UTF-8 bytes of the rest of the entry
+ * CRC32 of everything before it, 4 bytes big endian
+ * </pre>
+ *
+ * Varints are unsigned LEB128. The directory of an entry is everything up to
+ * its last separator, which is either "/" or its URI encoding "%2F".
+ * {@link PlayListLoader} recognizes the format by its magic number, so text
+ * and binary PlayLists are opened the same way.
+ */
+public class BinaryPlayListFormat {
+
+  // File extension binary PlayLists are saved with
+  public static final String FILE_EXTENSION = ".smpl";
+
+  private static final int MAGIC = 0x534d504c;
+  private static final int VERSION = 1;
+  // Magic, version and checksum
+  private static final int MIN_SIZE = 4 + 1 + 4;
+
+  private BinaryPlayListFormat() {
+  }
+
+  /**
+   * Whether the given file name has the binary PlayList extension.
+   */
+  public static boolean isBinaryFileName(String fileName) {
+    return fileName.toLowerCase(Locale.ROOT).endsWith(FILE_EXTENSION);
+  }
+
+  /**
+   * Whether the given file starts with the magic number of the format.
+   *
+   * @param channel Channel of the PlayList file
+   * @return Whether the file is a binary PlayList
+   * @throws IOException If the file cannot be read
+   */
+  public static boolean isBinary(FileChannel channel) throws IOException {
+    if (channel.size() < MIN_SIZE) {
+      return false;
+    }
+    ByteBuffer magic = ByteBuffer.allocate(4);
+    while (magic.hasRemaining()) {
+      if (channel.read(magic, magic.position()) < 0) {
+        return false;
+      }
+    }
+    return magic.getInt(0) == MAGIC;
+  }
+
+  /**
+   * Writes the given entries in the binary format.
+   *
+   * @param filePaths The entries of the PlayList
+   * @param outputStream Stream to write to, not closed
+   * @throws IOException If the entries cannot be written
+   */
+  public static void write(List<String> filePaths, OutputStream outputStream)
+      throws IOException {
+    Map<String, Integer> directoryIndexes = new HashMap<String, Integer>();
+    List<String> directories = new ArrayList<String>();
+    int[] entryDirectories = new int[filePaths.size()];
+    int[] splits = new int[filePaths.size()];
+    for (int i = 0; i < filePaths.size(); i++) {
+      String filePath = filePaths.get(i);
+      int split = directoryLength(filePath);
+      String directory = filePath.substring(0, split);
+      Integer index = directoryIndexes.get(directory);
+      if (index == null) {
+        index = directories.size();
+        directoryIndexes.put(directory, index);
+        directories.add(directory);
+      }
+      entryDirectories[i] = index;
+      splits[i] = split;
+    }
+
+    CRC32 crc = new CRC32();
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(outputStream));
+    ChecksumWriter writer = new ChecksumWriter(out, crc);
+    writer.writeInt(MAGIC);
+    writer.write(VERSION);
+    writer.writeVarint(directories.size());
+    for (String directory : directories) {
+      writer.writeString(directory);
+    }
+    writer.writeVarint(filePaths.size());
+    for (int i = 0; i < filePaths.size(); i++) {
+      writer.writeVarint(entryDirectories[i]);
+      writer.writeString(filePaths.get(i).substring(splits[i]));
+    }
+    out.writeInt((int) crc.getValue());
+    out.flush();
+  }
+
+  /**
+   * Reads the entries of a binary PlayList and passes them to
+   * {@code listener} in batches. The checksum is verified before any entry is
+   * handed over. Stops early if the calling thread is interrupted.
+   *
+   * @param data The whole PlayList file
+   * @param listener Listener that receives each batch
+   * @param batchSize Maximum number of entries per batch
+   * @return The number of entries read
+   * @throws IOException If the file is not a valid binary PlayList
+   */
+  static long read(ByteBuffer data, PlayListLoader.BatchListener listener,
+      int batchSize) throws IOException {
+    int checksumPosition = data.limit() - 4;
+    if (checksumPosition < MIN_SIZE - 4 || data.getInt(0) != MAGIC) {
+      throw new IOException("Not a binary PlayList");
+    }
+    ByteBuffer checked = data.duplicate();
+    checked.position(0);
+    checked.limit(checksumPosition);
+    CRC32 crc = new CRC32();
+    crc.update(checked);
+    if ((int) crc.getValue() != data.getInt(checksumPosition)) {
+      throw new IOException("Binary PlayList is corrupt, checksum mismatch");
+    }
+    if (data.get(4) != VERSION) {
+      throw new IOException(
+          "Unsupported binary PlayList version " + data.get(4));
+    }
+
+    ByteBuffer in = data.duplicate();
+    in.position(5);
+    in.limit(checksumPosition);
+    try {
+      int directoryCount = readLength(in);
+      byte[][] directories = new byte[directoryCount][];
+      for (int i = 0; i < directoryCount; i++) {
+        directories[i] = new byte[readLength(in)];
+        in.get(directories[i]);
+      }
+
+      int entryCount = readLength(in);
+      List<String> batch =
+          new ArrayList<String>(Math.min(batchSize, entryCount));
+      // Directory and rest of the entry are joined here, so the only String
+      // built per entry is the entry itself
+      byte[] entry = new byte[256];
+      for (int i = 0; i < entryCount; i++) {
+        int directoryIndex = readVarint(in);
+        if (directoryIndex >= directoryCount) {
+          throw new IOException("Invalid directory index " + directoryIndex);
+        }
+        byte[] directory = directories[directoryIndex];
+        int length = directory.length + readLength(in);
+        if (entry.length < length) {
+          entry = Arrays.copyOf(entry, Math.max(length, entry.length * 2));
+        }
+        System.arraycopy(directory, 0, entry, 0, directory.length);
+        in.get(entry, directory.length, length - directory.length);
+        batch.add(new String(entry, 0, length, StandardCharsets.UTF_8));
+        if (batch.size() == batchSize) {
+          listener.onBatch(batch);
+          batch = new ArrayList<String>(batchSize);
+          if (Thread.currentThread().isInterrupted()) {
+            return i + 1;
+          }
+        }
+      }
+      if (!batch.isEmpty()) {
+        listener.onBatch(batch);
+      }
+      return entryCount;
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      throw new IOException("Binary PlayList is truncated", e);
+    }
+  }
+
+  /**
+   * Length of the directory part of the entry, including the separator.
+   */
+  private static int directoryLength(String filePath) {
+    int slash = filePath.lastIndexOf('/') + 1;
+    int encodedSlash = Math.max(filePath.lastIndexOf("%2F"),
+        filePath.lastIndexOf("%2f"));
+    return Math.max(slash, encodedSlash < 0 ? 0 : encodedSlash + 3);
+  }
+
+  /**
+   * Reads a count or length, which can never be more than the bytes left.
+   */
+  private static int readLength(ByteBuffer in) throws IOException {
+    int length = readVarint(in);
+    if (length > in.remaining()) {
+      throw new IOException("Binary PlayList is truncated");
+    }
+    return length;
+  }
+
+  static int readVarint(ByteBuffer in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = in.get();
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        if (value < 0) {
+          break;
+        }
+        return value;
+      }
+    }
+    throw new IOException("Invalid varint in binary PlayList");
+  }
+
+  /**
+   * Writes to the PlayList stream while keeping the checksum up to date.
+   */
+  private static class ChecksumWriter {
+    private final DataOutputStream out;
+    private final CRC32 crc;
+    private final byte[] buffer = new byte[5];
+
+    private ChecksumWriter(DataOutputStream out, CRC32 crc) {
+      this.out = out;
+      this.crc = crc;
+    }
+
+    private void write(int b) throws IOException {
+      out.write(b);
+      crc.update(b);
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+      out.write(bytes, 0, length);
+      crc.update(bytes, 0, length);
+    }
+
+    private void writeInt(int value) throws IOException {
+      buffer[0] = (byte) (value >>> 24);
+      buffer[1] = (byte) (value >>> 16);
+      buffer[2] = (byte) (value >>> 8);
+      buffer[3] = (byte) value;
+      write(buffer, 4);
+    }
+
+    private void writeVarint(int value) throws IOException {
+      int length = 0;
+      while ((value & ~0x7f) != 0) {
+        buffer[length++] = (byte) ((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      buffer[length++] = (byte) value;
+      write(buffer, length);
+    }
+
+    private void writeString(String value) throws IOException {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarint(bytes.length);
+      write(bytes, bytes.length);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package simplemediaplayer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * On-disk cache of the audio payload sizes and content hashes computed by
+ * {@link DuplicateFinder}, so a file is only hashed once. Like the
+ * {@link TagCache}, entries are keyed by the path of the file and are only
+ * used while the size and last modified time of the file are the ones it had
+ * when it was hashed.
+ */
+public class ContentHashCache extends FileCache<ContentHashCache.Entry> {
+
+  // Default location of the cache file
+  public static final File DEFAULT_FILE = new File(
+      System.getProperty("user.home"), ".simplemediaplayer/hashes.cache");
+
+  private static final int MAGIC = 0x534d5048;
+  private static final int VERSION = 1;
+
+  /**
+   * What is known about the content of a file.
+   */
+  public static class Entry {
+    private final long payloadLength;
+    private final byte[] hash;
+
+    Entry(long payloadLength, byte[] hash) {
+      this.payloadLength = payloadLength;
+      this.hash = hash;
+    }
+
+    /**
+     * @return the length of the audio payload, without tags, in bytes
+     */
+    public long getPayloadLength() {
+      return payloadLength;
+    }
+
+    /**
+     * @return the hash of the audio payload, null if it was not hashed
+     */
+    public byte[] getHash() {
+      return hash;
+    }
+  }
+
+  private ContentHashCache(File cacheFile) {
+    super(cacheFile, MAGIC, VERSION);
+  }
+
+  /**
+   * Opens the given cache file. Returns an empty cache if there is none yet or
+   * it cannot be read.
+   *
+   * @param cacheFile The file the cache is kept in
+   * @return The cache
+   */
+  public static ContentHashCache open(File cacheFile) {
+    ContentHashCache cache = new ContentHashCache(cacheFile);
+    cache.load();
+    return cache;
+  }
+
+  /**
+   * Caches the payload length and, if it was computed, the hash of the given
+   * file.
+   *
+   * @param path Path of the file
+   * @param size Size of the file in bytes
+   * @param lastModified Last modified time of the file
+   * @param payloadLength Length of the audio payload in bytes
+   * @param hash Hash of the audio payload, null if it was not hashed
+   */
+  public void put(String path, long size, long lastModified,
+      long payloadLength, byte[] hash) {
+    put(path, size, lastModified, new Entry(payloadLength, hash));
+  }
+
+  @Override
+  Entry readValue(DataInputStream in) throws IOException {
+    long payloadLength = in.readLong();
+    byte[] hash = null;
+    int hashLength = in.readUnsignedByte();
+    if (hashLength > 0) {
+      hash = new byte[hashLength];
+      in.readFully(hash);
+    }
+    return new Entry(payloadLength, hash);
+  }
+
+  @Override
+  void writeValue(DataOutputStream out, Entry entry) throws IOException {
+    out.writeLong(entry.payloadLength);
+    if (entry.hash == null) {
+      out.writeByte(0);
+    } else {
+      out.writeByte(entry.hash.length);
+      out.write(entry.hash);
+    }
+  }
+}
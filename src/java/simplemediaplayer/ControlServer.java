@@ -0,0 +1,185 @@
+package simplemediaplayer;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Accepts commands on a loopback socket, one per line, and answers each with
+ * a single line: {@code OK} followed by the result, if any, or {@code ERR}
+ * followed by the reason the command failed. A command is a word, optionally
+ * followed by a space and an argument that runs to the end of the line, e.g.
+ * {@code load-directory /srv/music}. Commands are not case sensitive.
+ * <p>
+ * The socket is bound to the loopback address only, so only local processes
+ * can connect. Every connection is served by its own thread and answers are
+ * sent as soon as they are ready, without waiting to fill a packet.
+ */
+public class ControlServer implements Closeable {
+
+  /**
+   * Carries out the commands received by a ControlServer.
+   */
+  public interface Handler {
+    /**
+     * @param command The command in lower case
+     * @param argument The rest of the line, empty if there is none
+     * @return The result to send after {@code OK}, empty if there is none
+     * @throws Exception If the command failed; its message is sent after
+     *         {@code ERR}
+     */
+    String handle(String command, String argument) throws Exception;
+  }
+
+  public static final int DEFAULT_PORT = 7420;
+  // Longest command line that is read, longer lines are rejected
+  public static final int MAX_LINE_LENGTH = 8192;
+
+  private final ServerSocket serverSocket;
+  private final Handler handler;
+
+  /**
+   * Starts accepting connections on the given port of the loopback address.
+   *
+   * @param port The port to listen on, 0 for any free port
+   * @param handler The Handler that carries out the commands
+   * @throws IOException If the port cannot be bound
+   */
+  public ControlServer(int port, Handler handler) throws IOException {
+    this.handler = handler;
+    this.serverSocket =
+        new ServerSocket(port, 8, InetAddress.getLoopbackAddress());
+    Thread acceptThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        acceptConnections();
+      }
+    }, "Control Server");
+    acceptThread.setDaemon(true);
+    acceptThread.start();
+  }
+
+  /**
+   * @return the port the server listens on
+   */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Stops accepting connections. Connections that are open are served until
+   * the client closes them.
+   */
+  @Override
+  public void close() {
+    try {
+      serverSocket.close();
+    } catch (IOException ioe) {
+      Logger.getGlobal().warning("Could not close control socket: " + ioe);
+    }
+  }
+
+  /**
+   * Carries out a single command line.
+   *
+   * @param line The command line, without its line terminator
+   * @return The answer, without its line terminator
+   */
+  public String reply(String line) {
+    String trimmed = line.trim();
+    if (trimmed.isEmpty()) {
+      return "ERR Empty command";
+    }
+    int space = trimmed.indexOf(' ');
+    String command = (space < 0 ? trimmed : trimmed.substring(0, space))
+        .toLowerCase(Locale.ROOT);
+    String argument = space < 0 ? "" : trimmed.substring(space + 1).trim();
+    try {
+      String result = handler.handle(command, argument);
+      return result == null || result.isEmpty() ? "OK" : "OK " + result;
+    } catch (Exception e) {
+      String message = e.getMessage() == null ? e.toString() : e.getMessage();
+      return "ERR " + message.replace('\n', ' ').replace('\r', ' ');
+    }
+  }
+
+  private void acceptConnections() {
+    while (!serverSocket.isClosed()) {
+      try {
+        final Socket socket = serverSocket.accept();
+        Thread connectionThread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            serve(socket);
+          }
+        }, "Control Connection");
+        connectionThread.setDaemon(true);
+        connectionThread.start();
+      } catch (IOException ioe) {
+        if (!serverSocket.isClosed()) {
+          Logger.getGlobal().warning("Could not accept connection: " + ioe);
+        }
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try {
+      socket.setTcpNoDelay(true);
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      OutputStream out = socket.getOutputStream();
+      byte[] line = new byte[MAX_LINE_LENGTH];
+      while (true) {
+        int length = readLine(in, line);
+        if (length == -1) {
+          break;
+        }
+        String answer = length > line.length ? "ERR Line too long"
+            : reply(new String(line, 0, length, StandardCharsets.UTF_8));
+        out.write((answer + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+      }
+    } catch (IOException ioe) {
+      Logger.getGlobal().info("Control connection closed: " + ioe);
+    } finally {
+      try {
+        socket.close();
+      } catch (IOException ioe) {
+        // Already closed by the client
+      }
+    }
+  }
+
+  /**
+   * Reads a line ending with "\n" or "\r\n" into the given buffer. The rest
+   * of a line that does not fit is skipped.
+   *
+   * @return The length of the line, more than the length of the buffer if it
+   *         did not fit, -1 at the end of the stream
+   */
+  private static int readLine(InputStream in, byte[] line) throws IOException {
+    int length = 0;
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b == -1) {
+        return length == 0 ? -1 : length;
+      }
+      if (length < line.length) {
+        line[length] = (byte) b;
+      }
+      length++;
+    }
+    if (length > 0 && length <= line.length && line[length - 1] == '\r') {
+      length--;
+    }
+    return length;
+  }
+}
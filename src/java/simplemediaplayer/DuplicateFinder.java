@@ -0,0 +1,303 @@
+package simplemediaplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Finds the files of a library that hold the same recording under different
+ * names or folders. Only the audio payload is compared: ID3v2 tags at the
+ * start of a file and APEv2 and ID3v1 tags at its end are left out, so copies
+ * that were tagged differently are still found.
+ * <p>
+ * Files are first grouped by the length of their payload, which only takes
+ * reading the tag headers. Only files that share a length with another file
+ * are hashed, in parallel and through memory mapped reads. Payload lengths and
+ * hashes are kept in a {@link ContentHashCache}, so unchanged files are not
+ * read again.
+ */
+public class DuplicateFinder {
+
+  public static final String HASH_ALGORITHM = "SHA-256";
+
+  // Hashing is mostly reading, one thread per processor keeps the disk busy
+  private static final ForkJoinPool HASH_POOL =
+      new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+  // Largest part of a file that is mapped at once
+  private static final long MAX_REGION_SIZE = 64L * 1024 * 1024;
+  private static final int APE_FOOTER_SIZE = 32;
+
+  /**
+   * A file of the library and what is known about its content.
+   */
+  private static class Candidate {
+    private final String playListEntry;
+    private final File file;
+    private long size;
+    private long lastModified;
+    private long payloadLength = -1;
+    private byte[] hash;
+
+    private Candidate(String playListEntry) {
+      this.playListEntry = playListEntry;
+      this.file = LibraryScanner.toFile(playListEntry);
+    }
+  }
+
+  // Null to always read the files
+  private final ContentHashCache cache;
+  private final AtomicInteger hashedFiles = new AtomicInteger();
+  private final AtomicLong hashedBytes = new AtomicLong();
+
+  /**
+   * @param cache Cache of the payload lengths and hashes, null to always read
+   *        the files
+   */
+  public DuplicateFinder(ContentHashCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Finds the entries whose files hold the same audio. Invalid entries and
+   * files that cannot be read are left out.
+   *
+   * @param playListEntries The PlayList entries of the files
+   * @return The groups of entries with the same audio, each in the order of
+   *         {@code playListEntries} and with at least two entries
+   * @throws InterruptedException If interrupted while waiting for the files
+   *         to be read
+   */
+  public List<List<String>> findDuplicates(
+      Collection<String> playListEntries) throws InterruptedException {
+    List<Candidate> candidates = new ArrayList<Candidate>();
+    for (String playListEntry : new LinkedHashSet<String>(playListEntries)) {
+      try {
+        candidates.add(new Candidate(playListEntry));
+      } catch (IllegalArgumentException iae) {
+        Logger.getGlobal().warning("Invalid PlayList entry: " + playListEntry);
+      }
+    }
+
+    // Payload lengths first, they are cheap and rule out most files
+    runAll(candidates, false);
+    Map<Long, List<Candidate>> bySize = new HashMap<Long, List<Candidate>>();
+    for (Candidate candidate : candidates) {
+      // Files without audio are not copies of each other
+      if (candidate.payloadLength > 0) {
+        List<Candidate> sameSize = bySize.get(candidate.payloadLength);
+        if (sameSize == null) {
+          sameSize = new ArrayList<Candidate>();
+          bySize.put(candidate.payloadLength, sameSize);
+        }
+        sameSize.add(candidate);
+      }
+    }
+    List<Candidate> toHash = new ArrayList<Candidate>();
+    for (List<Candidate> sameSize : bySize.values()) {
+      if (sameSize.size() > 1) {
+        toHash.addAll(sameSize);
+      }
+    }
+    runAll(toHash, true);
+
+    // Group in the order of the entries
+    Map<String, List<String>> byHash =
+        new LinkedHashMap<String, List<String>>();
+    for (Candidate candidate : candidates) {
+      if (candidate.hash != null) {
+        String key =
+            candidate.payloadLength + ":" + Arrays.toString(candidate.hash);
+        List<String> sameHash = byHash.get(key);
+        if (sameHash == null) {
+          sameHash = new ArrayList<String>();
+          byHash.put(key, sameHash);
+        }
+        sameHash.add(candidate.playListEntry);
+      }
+    }
+    List<List<String>> duplicates = new ArrayList<List<String>>();
+    for (List<String> sameHash : byHash.values()) {
+      if (sameHash.size() > 1) {
+        duplicates.add(sameHash);
+      }
+    }
+    return duplicates;
+  }
+
+  /**
+   * @return the number of files hashed, not counting cached hashes
+   */
+  public int getHashedFiles() {
+    return hashedFiles.get();
+  }
+
+  /**
+   * @return the number of bytes hashed
+   */
+  public long getHashedBytes() {
+    return hashedBytes.get();
+  }
+
+  /**
+   * Reads the payload length, or hash if {@code hash} is set, of every
+   * candidate that does not have it yet, in parallel.
+   */
+  private void runAll(List<Candidate> candidates, final boolean hash)
+      throws InterruptedException {
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (final Candidate candidate : candidates) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          try {
+            if (hash) {
+              hash(candidate);
+            } else {
+              measure(candidate);
+            }
+          } catch (IOException ioe) {
+            Logger.getGlobal().warning(
+                "Could not read " + candidate.file + ": " + ioe);
+            candidate.payloadLength = -1;
+            candidate.hash = null;
+          }
+          return null;
+        }
+      });
+    }
+    for (Future<Void> future : HASH_POOL.invokeAll(tasks)) {
+      try {
+        future.get();
+      } catch (ExecutionException ee) {
+        throw new IllegalStateException(ee.getCause());
+      }
+    }
+  }
+
+  private void measure(Candidate candidate) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(
+        candidate.file.toPath(), BasicFileAttributes.class);
+    candidate.size = attributes.size();
+    candidate.lastModified = attributes.lastModifiedTime().toMillis();
+    int id = TrackRegistry.GLOBAL.find(candidate.playListEntry);
+    if (id >= 0) {
+      TrackRegistry.GLOBAL.setSize(id, candidate.size);
+    }
+    if (cache != null) {
+      ContentHashCache.Entry entry = cache.get(candidate.file.getPath(),
+          candidate.size, candidate.lastModified);
+      if (entry != null) {
+        candidate.payloadLength = entry.getPayloadLength();
+        candidate.hash = entry.getHash();
+        return;
+      }
+    }
+    try (FileChannel channel = FileChannel.open(candidate.file.toPath(),
+        StandardOpenOption.READ)) {
+      long[] payload = payload(channel);
+      candidate.payloadLength = payload[1] - payload[0];
+    }
+    if (cache != null) {
+      cache.put(candidate.file.getPath(), candidate.size,
+          candidate.lastModified, candidate.payloadLength, null);
+    }
+  }
+
+  private void hash(Candidate candidate) throws IOException {
+    if (candidate.hash != null) {
+      return;
+    }
+    MessageDigest digest = newDigest();
+    try (FileChannel channel = FileChannel.open(candidate.file.toPath(),
+        StandardOpenOption.READ)) {
+      // Measured from the cache, or the file changed since it was measured
+      long[] payload = payload(channel);
+      if (payload[1] - payload[0] != candidate.payloadLength) {
+        throw new IOException("File changed while it was compared");
+      }
+      for (long position = payload[0]; position < payload[1];
+          position += MAX_REGION_SIZE) {
+        digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(MAX_REGION_SIZE, payload[1] - position)));
+      }
+    }
+    candidate.hash = digest.digest();
+    hashedFiles.incrementAndGet();
+    hashedBytes.addAndGet(candidate.payloadLength);
+    if (cache != null) {
+      cache.put(candidate.file.getPath(), candidate.size,
+          candidate.lastModified, candidate.payloadLength, candidate.hash);
+    }
+  }
+
+  /**
+   * Finds the audio payload of a file: everything but an ID3v2 tag at its
+   * start and APEv2 and ID3v1 tags at its end.
+   *
+   * @param channel The file
+   * @return The start and end of the payload
+   * @throws IOException If the file cannot be read
+   */
+  static long[] payload(FileChannel channel) throws IOException {
+    long size = channel.size();
+    long start = 0;
+    long end = size;
+
+    ByteBuffer header = TagReader.readAt(channel, 0, 10);
+    if (TagReader.isId3v2(header)) {
+      start = Math.min(size, TagReader.id3v2End(header));
+    }
+
+    if (end - start >= TagReader.ID3V1_SIZE) {
+      if (TagReader.isId3v1(
+          TagReader.readAt(channel, end - TagReader.ID3V1_SIZE, 3))) {
+        end -= TagReader.ID3V1_SIZE;
+      }
+    }
+    if (end - start >= APE_FOOTER_SIZE) {
+      ByteBuffer footer = TagReader.readAt(channel, end - APE_FOOTER_SIZE,
+          APE_FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      if (footer.remaining() == APE_FOOTER_SIZE
+          && "APETAGEX".equals(TagReader.ascii(footer, 8))) {
+        // Size of the items and footer, plus the header if there is one
+        long tagSize = footer.getInt(12) & 0xffffffffL;
+        if ((footer.getInt(20) & 0x80000000) != 0) {
+          tagSize += APE_FOOTER_SIZE;
+        }
+        end = Math.max(start, end - tagSize);
+      }
+    }
+    return new long[] { start, end };
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException nsae) {
+      // Every Java platform has SHA-256
+      throw new IllegalStateException(nsae);
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package simplemediaplayer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * On-disk cache of a value read from each file, so a file is only read once.
+ * Entries are keyed by the path of the file and are only used while the size
+ * and last modified time of the file are the ones it had when it was read.
+ * Subclasses read and write the values.
+ *
+ * @param <V> The type of the cached values
+ */
+public abstract class FileCache<V> {
+
+  /**
+   * The value of a file as it was when it was read.
+   */
+  private static class Entry<V> {
+    private final long size;
+    private final long lastModified;
+    private final V value;
+
+    private Entry(long size, long lastModified, V value) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.value = value;
+    }
+  }
+
+  private final File cacheFile;
+  private final int magic;
+  private final int version;
+  private final Map<String, Entry<V>> entries =
+      new ConcurrentHashMap<String, Entry<V>>();
+  // Whether entries were added since the cache was read or saved
+  private final AtomicBoolean dirty = new AtomicBoolean();
+
+  /**
+   * @param cacheFile The file the cache is kept in
+   * @param magic The number the cache file starts with
+   * @param version The version of the format of the values
+   */
+  FileCache(File cacheFile, int magic, int version) {
+    this.cacheFile = cacheFile;
+    this.magic = magic;
+    this.version = version;
+  }
+
+  /**
+   * Reads the value of one file from the cache file.
+   */
+  abstract V readValue(DataInputStream in) throws IOException;
+
+  /**
+   * Writes the value of one file to the cache file.
+   */
+  abstract void writeValue(DataOutputStream out, V value) throws IOException;
+
+  /**
+   * Reads the cache file. Nothing is added if there is none yet or it cannot
+   * be read. Can be called while the cache is used, values cached in the
+   * meantime are kept and saving waits until the file is read.
+   */
+  public synchronized void load() {
+    Map<String, Entry<V>> read = new HashMap<String, Entry<V>>();
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(cacheFile)))) {
+      if (in.readInt() == magic && in.readInt() == version) {
+        int entryCount = in.readInt();
+        for (int i = 0; i < entryCount; i++) {
+          String path = in.readUTF();
+          long size = in.readLong();
+          long lastModified = in.readLong();
+          read.put(path, new Entry<V>(size, lastModified, readValue(in)));
+        }
+      }
+    } catch (FileNotFoundException fnfe) {
+      // First launch
+      return;
+    } catch (IOException ioe) {
+      Logger.getGlobal()
+          .warning("Could not read cache " + cacheFile + ": " + ioe);
+      return;
+    }
+    for (Map.Entry<String, Entry<V>> file : read.entrySet()) {
+      entries.putIfAbsent(file.getKey(), file.getValue());
+    }
+  }
+
+  /**
+   * Returns the cached value of the given file if the file did not change
+   * since it was read.
+   *
+   * @param path Path of the file
+   * @param size Current size of the file in bytes
+   * @param lastModified Current last modified time of the file
+   * @return The cached value, or null if the file has to be read
+   */
+  public V get(String path, long size, long lastModified) {
+    Entry<V> entry = entries.get(path);
+    if (entry != null && entry.size == size
+        && entry.lastModified == lastModified) {
+      return entry.value;
+    }
+    return null;
+  }
+
+  /**
+   * Caches the value read from the given file.
+   *
+   * @param path Path of the file
+   * @param size Size of the file in bytes
+   * @param lastModified Last modified time of the file
+   * @param value The value read from the file
+   */
+  public void put(String path, long size, long lastModified, V value) {
+    entries.put(path, new Entry<V>(size, lastModified, value));
+    dirty.set(true);
+  }
+
+  /**
+   * Writes the cache to disk if entries were added since it was read or last
+   * saved. The cache file is replaced atomically.
+   *
+   * @throws IOException If the cache cannot be written
+   */
+  public synchronized void save() throws IOException {
+    if (!dirty.getAndSet(false)) {
+      return;
+    }
+    cacheFile.getAbsoluteFile().getParentFile().mkdirs();
+    File tempFile = new File(cacheFile.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      // Entries can be added while writing, so write a copy whose size is
+      // known up front
+      Map<String, Entry<V>> snapshot = new HashMap<String, Entry<V>>(entries);
+      out.writeInt(magic);
+      out.writeInt(version);
+      out.writeInt(snapshot.size());
+      for (Map.Entry<String, Entry<V>> file : snapshot.entrySet()) {
+        Entry<V> entry = file.getValue();
+        out.writeUTF(file.getKey());
+        out.writeLong(entry.size);
+        out.writeLong(entry.lastModified);
+        writeValue(out, entry.value);
+      }
+    } catch (IOException ioe) {
+      dirty.set(true);
+      throw ioe;
+    }
+    Files.move(tempFile.toPath(), cacheFile.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @return the file the cache is kept in
+   */
+  public File getCacheFile() {
+    return cacheFile;
+  }
+
+  /**
+   * @return the number of cached files
+   */
+  public int size() {
+    return entries.size();
+  }
+}
@@ -0,0 +1,381 @@
+package simplemediaplayer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+/**
+ * Plays a {@link PlayList} without a user interface, controlled through a
+ * {@link ControlServer}. Started by passing {@value #FLAG} to
+ * {@link SimpleMediaPlayer}: the JavaFX platform is started for media
+ * playback, but no Stage, Scene or tile is ever created.
+ * <p>
+ * Commands:
+ * <ul>
+ * <li>{@code play}, {@code pause}: plays or pauses the current track</li>
+ * <li>{@code next}: skips to the next track</li>
+ * <li>{@code load-directory <path>}: plays the audio files in a directory
+ * and its subdirectories, kept up to date with file changes</li>
+ * <li>{@code load-playlist <path>}: plays a PlayList file</li>
+ * <li>{@code status}: answers
+ * {@code state=<status> track=<index> tracks=<count> position=<ms>
+ * duration=<ms> source=<entry>}, or {@code state=EMPTY tracks=0}</li>
+ * <li>{@code find <words>}: answers the entries of up to
+ * {@value #MAX_FOUND} tracks with the words, separated by spaces</li>
+ * </ul>
+ * Loading answers as soon as loading has started; playback starts with the
+ * first files found, as in the player window.
+ */
+public class HeadlessPlayer implements Closeable {
+
+  public static final String FLAG = "--headless";
+  // Longest a command waits for the playback thread
+  private static final long COMMAND_TIMEOUT_SECONDS = 10;
+  // Most tracks a find command answers
+  static final int MAX_FOUND = 20;
+
+  private final PlayList playList;
+  // Thread the PlayList is used on, the JavaFX application thread unless a
+  // test drives the PlayList
+  private final Executor playbackThread;
+  private final LibraryScanner libraryScanner = new LibraryScanner();
+  private final ControlServer controlServer;
+  // The fields below are only used on the playback thread
+  private Thread playListLoaderThread;
+  private LibraryScanner.Scan directoryScan;
+  // Incremented whenever a PlayList or directory is loaded, so files of the
+  // one that was replaced are ignored
+  private int loadGeneration;
+
+  /**
+   * @param playList The PlayList to play
+   * @param playbackThread Runs the tasks that use the PlayList, one at a time
+   * @param port The loopback port to accept commands on, 0 for any free port
+   * @throws IOException If the port cannot be bound
+   */
+  public HeadlessPlayer(PlayList playList, Executor playbackThread, int port)
+      throws IOException {
+    this.playList = playList;
+    this.playbackThread = playbackThread;
+    if (playList.getSearchIndex() == null) {
+      playList.setSearchIndex(new SearchIndex(playList.getTrackRegistry()));
+    }
+    this.controlServer = new ControlServer(port, new ControlServer.Handler() {
+      @Override
+      public String handle(final String command, final String argument)
+          throws Exception {
+        return onPlaybackThread(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            return execute(command, argument);
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Starts a HeadlessPlayer. Arguments: {@code [--port <port>] [<path>]},
+   * where the path is a directory or PlayList file to start playing.
+   *
+   * @param args The command-line arguments, without {@value #FLAG}
+   * @throws IOException If the control port cannot be bound
+   */
+  public static void main(String[] args) throws IOException {
+    int port = ControlServer.DEFAULT_PORT;
+    String source = null;
+    for (int i = 0; i < args.length; i++) {
+      if ("--port".equals(args[i]) && i + 1 < args.length) {
+        port = Integer.parseInt(args[++i]);
+      } else {
+        source = args[i];
+      }
+    }
+
+    // Keep running without any window
+    Platform.setImplicitExit(false);
+    Platform.startup(new Runnable() {
+      @Override
+      public void run() {}
+    });
+    final HeadlessPlayer player =
+        new HeadlessPlayer(new PlayList(), new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            Platform.runLater(command);
+          }
+        }, port);
+    player.getLibraryScanner()
+        .setIndexDirectory(LibraryIndex.DEFAULT_DIRECTORY);
+    player.getPlayList().setIndexDirectory(LibraryIndex.DEFAULT_DIRECTORY);
+    PlayerMetrics.register();
+    PlayerMetrics.GLOBAL.setPlayList(player.getPlayList());
+    Logger.getGlobal().info(
+        "Accepting commands on 127.0.0.1:" + player.getPort());
+
+    if (source != null) {
+      final File sourceFile = new File(source);
+      Platform.runLater(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            player.load(sourceFile);
+          } catch (IOException ioe) {
+            Logger.getGlobal().severe("Cannot play " + sourceFile + ": " + ioe);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * @return the port commands are accepted on
+   */
+  public int getPort() {
+    return controlServer.getPort();
+  }
+
+  /**
+   * @return the PlayList that is played
+   */
+  public PlayList getPlayList() {
+    return playList;
+  }
+
+  /**
+   * @return the LibraryScanner used to load directories
+   */
+  public LibraryScanner getLibraryScanner() {
+    return libraryScanner;
+  }
+
+  /**
+   * Stops accepting commands and stops playback.
+   */
+  @Override
+  public void close() {
+    controlServer.close();
+    playbackThread.execute(new Runnable() {
+      @Override
+      public void run() {
+        cancelBackgroundLoading();
+        playList.stopAnyRunningTracks();
+        playList.close();
+      }
+    });
+  }
+
+  /**
+   * Carries out a command on the playback thread.
+   */
+  String execute(String command, String argument) throws IOException {
+    if ("status".equals(command)) {
+      return status();
+    } else if ("load-directory".equals(command)) {
+      loadDirectory(requireFile(argument));
+      return "";
+    } else if ("load-playlist".equals(command)) {
+      loadPlayList(requireFile(argument));
+      return "";
+    } else if ("find".equals(command)) {
+      return String.join(" ",
+          playList.getSearchIndex().search(argument, MAX_FOUND));
+    }
+
+    Track current = playList.getCurrentlyPlaying();
+    if (current == null) {
+      throw new IllegalStateException("PlayList is empty");
+    }
+    if ("play".equals(command)) {
+      current.play();
+    } else if ("pause".equals(command)) {
+      current.pause();
+    } else if ("next".equals(command)) {
+      playList.playNextTrack();
+    } else {
+      throw new IllegalArgumentException("Unknown command: " + command);
+    }
+    return "";
+  }
+
+  /**
+   * Plays the given directory or PlayList file.
+   */
+  private void load(File source) throws IOException {
+    if (source.isDirectory()) {
+      loadDirectory(source);
+    } else {
+      loadPlayList(source);
+    }
+  }
+
+  private String status() {
+    Track current = playList.getCurrentlyPlaying();
+    if (current == null) {
+      return "state=EMPTY tracks=0";
+    }
+    return String.format(Locale.ROOT,
+        "state=%s track=%d tracks=%d position=%d duration=%d source=%s",
+        current.getStatus(), playList.getCurrentIndex(),
+        playList.getFilePaths().size(), toMillis(current.getCurrentTime()),
+        toMillis(current.getTotalDuration()), current.getSource());
+  }
+
+  /**
+   * Scans the given directory in the background, playing the first files as
+   * soon as they are found.
+   */
+  private void loadDirectory(final File directory) throws IOException {
+    if (!directory.isDirectory()) {
+      throw new IOException("Not a directory: " + directory);
+    }
+    cancelBackgroundLoading();
+    playList.stopAnyRunningTracks();
+
+    final int generation = loadGeneration;
+    directoryScan = libraryScanner.scan(directory,
+        new LibraryScanner.Listener() {
+          @Override
+          public void onFilesFound(List<String> filePaths) {
+            addLoadedFiles(generation, filePaths, true);
+          }
+
+          @Override
+          public void onScanFinished(int fileCount, boolean cancelled) {
+            if (fileCount == 0 && !cancelled) {
+              Logger.getGlobal().severe("No audio found in " + directory);
+            }
+            if (!cancelled) {
+              playbackThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                  if (generation == loadGeneration) {
+                    playList.watchDirectory(directory);
+                  }
+                }
+              });
+            }
+          }
+        });
+  }
+
+  /**
+   * Reads the given PlayList file in the background, playing the first
+   * entries as soon as they are read, and applies its journal. Playback of a
+   * PlayList file with a journal starts once the journal is applied.
+   */
+  private void loadPlayList(final File playListFile) throws IOException {
+    if (!playListFile.isFile()) {
+      throw new IOException("Not a PlayList file: " + playListFile);
+    }
+    cancelBackgroundLoading();
+    playList.stopAnyRunningTracks();
+
+    final int generation = loadGeneration;
+    final boolean journaled = PlayListJournal.exists(playListFile);
+    playListLoaderThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          new PlayListLoader().load(playListFile,
+              new PlayListLoader.BatchListener() {
+                @Override
+                public void onBatch(List<String> filePaths) {
+                  addLoadedFiles(generation, filePaths, !journaled);
+                }
+              });
+          playbackThread.execute(new Runnable() {
+            @Override
+            public void run() {
+              if (generation == loadGeneration) {
+                boolean started =
+                    !journaled && !playList.getFilePaths().isEmpty();
+                playList.attachJournal(playListFile);
+                if (!started) {
+                  playList.startPlayback();
+                }
+              }
+            }
+          });
+        } catch (IOException ioe) {
+          Logger.getGlobal().severe("An I/O Exception occurred: " + ioe);
+          ioe.printStackTrace();
+        }
+      }
+    }, "PlayList Loader");
+    playListLoaderThread.setDaemon(true);
+    playListLoaderThread.start();
+  }
+
+  private void addLoadedFiles(final int generation,
+      final List<String> filePaths, final boolean startPlayback) {
+    playbackThread.execute(new Runnable() {
+      @Override
+      public void run() {
+        // Ignore files of a PlayList or directory that was replaced
+        if (generation != loadGeneration) {
+          return;
+        }
+        boolean firstFiles = playList.getFilePaths().isEmpty();
+        playList.addAllFilesIntoPlayList(filePaths);
+        if (firstFiles && startPlayback) {
+          playList.startPlayback();
+        }
+      }
+    });
+  }
+
+  private void cancelBackgroundLoading() {
+    loadGeneration++;
+    if (playListLoaderThread != null) {
+      playListLoaderThread.interrupt();
+      playListLoaderThread = null;
+    }
+    if (directoryScan != null) {
+      directoryScan.cancel();
+      directoryScan = null;
+    }
+  }
+
+  /**
+   * Runs the given task on the playback thread and waits for its result.
+   */
+  private String onPlaybackThread(Callable<String> task) throws Exception {
+    FutureTask<String> future = new FutureTask<String>(task);
+    playbackThread.execute(future);
+    try {
+      return future.get(COMMAND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      throw cause instanceof Exception ? (Exception) cause : ee;
+    } catch (TimeoutException te) {
+      throw new IllegalStateException("Playback thread is not responding");
+    }
+  }
+
+  private static File requireFile(String argument) {
+    if (argument.isEmpty()) {
+      throw new IllegalArgumentException("Missing path");
+    }
+    return new File(argument);
+  }
+
+  private static long toMillis(Duration duration) {
+    if (duration == null || duration.isUnknown() || duration.isIndefinite()) {
+      return -1;
+    }
+    return (long) duration.toMillis();
+  }
+}
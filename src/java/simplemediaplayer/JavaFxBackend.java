@@ -0,0 +1,27 @@
+package simplemediaplayer;
+
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaException;
+import javafx.scene.media.MediaPlayer;
+
+/**
+ * {@link PlaybackBackend} that plays tracks through JavaFX MediaPlayers.
+ */
+public class JavaFxBackend implements PlaybackBackend {
+
+  @Override
+  public Track createTrack(String source) {
+    try {
+      return new JavaFxTrack(new MediaPlayer(new Media(source)));
+    } catch (MediaException me) {
+      // Not even a player to report the error later
+      PlayerMetrics.GLOBAL.mediaError(me.getType().name());
+      throw me;
+    }
+  }
+
+  @Override
+  public long nanoTime() {
+    return System.nanoTime();
+  }
+}
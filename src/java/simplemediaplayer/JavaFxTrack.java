@@ -0,0 +1,118 @@
+package simplemediaplayer;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.media.MediaPlayer;
+import javafx.util.Duration;
+
+/**
+ * {@link Track} that plays through a JavaFX {@link MediaPlayer}.
+ */
+public class JavaFxTrack implements Track {
+
+  private final MediaPlayer player;
+  private final ReadOnlyObjectWrapper<Status> status;
+
+  /**
+   * @param player The MediaPlayer of the track
+   */
+  public JavaFxTrack(MediaPlayer player) {
+    this.player = player;
+    this.status = new ReadOnlyObjectWrapper<Status>(
+        toStatus(player.getStatus()));
+    player.statusProperty()
+        .addListener(new ChangeListener<MediaPlayer.Status>() {
+          @Override
+          public void changed(
+              ObservableValue<? extends MediaPlayer.Status> observableValue,
+              MediaPlayer.Status oldValue, MediaPlayer.Status newValue) {
+            status.set(toStatus(newValue));
+          }
+        });
+  }
+
+  /**
+   * @return the MediaPlayer of the track, to show it in a MediaView
+   */
+  public MediaPlayer getMediaPlayer() {
+    return player;
+  }
+
+  @Override
+  public String getSource() {
+    return player.getMedia().getSource();
+  }
+
+  @Override
+  public void play() {
+    player.play();
+  }
+
+  @Override
+  public void pause() {
+    player.pause();
+  }
+
+  @Override
+  public void stop() {
+    player.stop();
+  }
+
+  @Override
+  public void dispose() {
+    player.dispose();
+  }
+
+  @Override
+  public Status getStatus() {
+    return status.get();
+  }
+
+  @Override
+  public ReadOnlyObjectProperty<Status> statusProperty() {
+    return status.getReadOnlyProperty();
+  }
+
+  @Override
+  public Duration getCurrentTime() {
+    return player.getCurrentTime();
+  }
+
+  @Override
+  public Duration getTotalDuration() {
+    return player.getTotalDuration();
+  }
+
+  @Override
+  public DoubleProperty volumeProperty() {
+    return player.volumeProperty();
+  }
+
+  @Override
+  public void setOnEndOfMedia(Runnable onEndOfMedia) {
+    player.setOnEndOfMedia(onEndOfMedia);
+  }
+
+  @Override
+  public void setOnError(Runnable onError) {
+    player.setOnError(onError);
+  }
+
+  @Override
+  public String getError() {
+    return player.getError() == null ? null : player.getError().toString();
+  }
+
+  @Override
+  public String getErrorType() {
+    return player.getError() == null ? null
+        : player.getError().getType().name();
+  }
+
+  private static Status toStatus(MediaPlayer.Status status) {
+    return status == null ? Status.UNKNOWN : Status.valueOf(status.name());
+  }
+}
@@ -0,0 +1,284 @@
+package simplemediaplayer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * On-disk index of a scanned library directory, used by
+ * {@link LibraryScanner} to skip reading directories that did not change
+ * since the last scan. For every directory it stores the directory's last
+ * modified time, its subdirectories and the path, size, last modified time
+ * and PlayList entry of each audio file in it. A directory is only read again
+ * when its last modified time differs from the indexed one.
+ */
+public class LibraryIndex {
+
+  /**
+   * An audio file in an indexed directory.
+   */
+  public static class FileEntry {
+    private final String path;
+    private final long size;
+    private final long lastModified;
+    private final String playListEntry;
+
+    public FileEntry(String path, long size, long lastModified,
+        String playListEntry) {
+      this.path = path;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.playListEntry = playListEntry;
+    }
+
+    /**
+     * @return the path of the file
+     */
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * @return the size of the file in bytes
+     */
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * @return the last modified time of the file in milliseconds
+     */
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    /**
+     * @return the URI encoded PlayList entry of the file
+     */
+    public String getPlayListEntry() {
+      return playListEntry;
+    }
+  }
+
+  /**
+   * An indexed directory.
+   */
+  public static class DirectoryEntry {
+    private final long lastModified;
+    private final List<String> subdirectories;
+    private final List<FileEntry> files;
+
+    public DirectoryEntry(long lastModified, List<String> subdirectories,
+        List<FileEntry> files) {
+      this.lastModified = lastModified;
+      this.subdirectories = Collections.unmodifiableList(subdirectories);
+      this.files = Collections.unmodifiableList(files);
+    }
+
+    /**
+     * @return the last modified time of the directory in milliseconds
+     */
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    /**
+     * @return the paths of the subdirectories
+     */
+    public List<String> getSubdirectories() {
+      return subdirectories;
+    }
+
+    /**
+     * @return the audio files in the directory
+     */
+    public List<FileEntry> getFiles() {
+      return files;
+    }
+  }
+
+  // Default location of the index files
+  public static final File DEFAULT_DIRECTORY = new File(
+      System.getProperty("user.home"), ".simplemediaplayer/index");
+
+  private static final int MAGIC = 0x534d5049;
+  private static final int VERSION = 1;
+
+  private final File indexFile;
+  private final String extensions;
+  // Directories as they were stored by the last scan
+  private final Map<String, DirectoryEntry> stored;
+  // Directories seen by the current scan
+  private final Map<String, DirectoryEntry> scanned =
+      new ConcurrentHashMap<String, DirectoryEntry>();
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+
+  private LibraryIndex(File indexFile, String extensions,
+      Map<String, DirectoryEntry> stored) {
+    this.indexFile = indexFile;
+    this.extensions = extensions;
+    this.stored = stored;
+  }
+
+  /**
+   * Opens the index of the given library directory. Returns an empty index if
+   * there is none yet, it cannot be read or it was built for other file
+   * extensions.
+   *
+   * @param indexDirectory Directory the index files are kept in
+   * @param libraryDirectory The scanned library directory
+   * @param extensions The file extensions the library is scanned for
+   * @return The index of the library directory
+   */
+  public static LibraryIndex open(File indexDirectory, File libraryDirectory,
+      Collection<String> extensions) {
+    File indexFile = new File(indexDirectory,
+        Integer.toHexString(libraryDirectory.getAbsolutePath().hashCode())
+            + ".idx");
+    String extensionsKey = new TreeSet<String>(extensions).toString();
+    Map<String, DirectoryEntry> stored = new HashMap<String, DirectoryEntry>();
+
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(indexFile)))) {
+      if (in.readInt() == MAGIC && in.readInt() == VERSION
+          && in.readUTF().equals(libraryDirectory.getAbsolutePath())
+          && in.readUTF().equals(extensionsKey)) {
+        int directoryCount = in.readInt();
+        for (int i = 0; i < directoryCount; i++) {
+          String directory = in.readUTF();
+          long lastModified = in.readLong();
+          int subdirectoryCount = in.readInt();
+          List<String> subdirectories =
+              new ArrayList<String>(subdirectoryCount);
+          for (int j = 0; j < subdirectoryCount; j++) {
+            subdirectories.add(in.readUTF());
+          }
+          int fileCount = in.readInt();
+          List<FileEntry> files = new ArrayList<FileEntry>(fileCount);
+          for (int j = 0; j < fileCount; j++) {
+            files.add(new FileEntry(in.readUTF(), in.readLong(),
+                in.readLong(), in.readUTF()));
+          }
+          stored.put(directory,
+              new DirectoryEntry(lastModified, subdirectories, files));
+        }
+      }
+    } catch (FileNotFoundException fnfe) {
+      // First scan of this library
+    } catch (IOException ioe) {
+      Logger.getGlobal().warning("Could not read library index " + indexFile
+          + ", rescanning: " + ioe);
+      stored.clear();
+    }
+    return new LibraryIndex(indexFile, extensionsKey, stored);
+  }
+
+  /**
+   * Returns the indexed contents of the given directory if it did not change
+   * since it was indexed.
+   *
+   * @param directory Path of the directory
+   * @param lastModified Current last modified time of the directory
+   * @return The indexed directory, or null if it has to be read again
+   */
+  public DirectoryEntry lookup(String directory, long lastModified) {
+    DirectoryEntry entry = stored.get(directory);
+    if (entry != null && entry.getLastModified() == lastModified) {
+      hits.incrementAndGet();
+      PlayerMetrics.GLOBAL.getLibraryIndex().hit();
+      scanned.put(directory, entry);
+      return entry;
+    }
+    misses.incrementAndGet();
+    PlayerMetrics.GLOBAL.getLibraryIndex().miss();
+    return null;
+  }
+
+  /**
+   * Stores the contents of a directory that was read again.
+   *
+   * @param directory Path of the directory
+   * @param entry The contents of the directory
+   */
+  public void update(String directory, DirectoryEntry entry) {
+    scanned.put(directory, entry);
+  }
+
+  /**
+   * Writes the directories seen by the current scan to disk, dropping the
+   * ones that no longer exist. The index file is replaced atomically.
+   *
+   * @param libraryDirectory The scanned library directory
+   * @throws IOException If the index cannot be written
+   */
+  public void save(File libraryDirectory) throws IOException {
+    indexFile.getParentFile().mkdirs();
+    File tempFile = new File(indexFile.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(libraryDirectory.getAbsolutePath());
+      out.writeUTF(extensions);
+      out.writeInt(scanned.size());
+      for (Map.Entry<String, DirectoryEntry> directory : scanned.entrySet()) {
+        DirectoryEntry entry = directory.getValue();
+        out.writeUTF(directory.getKey());
+        out.writeLong(entry.getLastModified());
+        out.writeInt(entry.getSubdirectories().size());
+        for (String subdirectory : entry.getSubdirectories()) {
+          out.writeUTF(subdirectory);
+        }
+        out.writeInt(entry.getFiles().size());
+        for (FileEntry file : entry.getFiles()) {
+          out.writeUTF(file.getPath());
+          out.writeLong(file.getSize());
+          out.writeLong(file.getLastModified());
+          out.writeUTF(file.getPlayListEntry());
+        }
+      }
+    }
+    Files.move(tempFile.toPath(), indexFile.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @return the file the index is stored in
+   */
+  public File getIndexFile() {
+    return indexFile;
+  }
+
+  /**
+   * @return the number of directories that did not have to be read again
+   */
+  public int getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of directories that had to be read
+   */
+  public int getMisses() {
+    return misses.get();
+  }
+}
@@ -0,0 +1,394 @@
+package simplemediaplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Recursively scans a directory tree for audio files. Subdirectories are
+ * walked concurrently on a {@link ForkJoinPool} and the files of each
+ * directory are reported as soon as that directory is read, so a PlayList can
+ * start playing before the whole tree is walked. A scan can be cancelled at
+ * any time.
+ */
+public class LibraryScanner {
+
+  /**
+   * Receives the results of a scan. Called from the scanning threads, so
+   * implementations must be thread safe.
+   */
+  public interface Listener {
+    /**
+     * @param filePaths The PlayList entries of the audio files found in one
+     *        directory, sorted by name
+     */
+    void onFilesFound(List<String> filePaths);
+
+    /**
+     * @param fileCount The number of audio files found
+     * @param cancelled Whether the scan was cancelled before it finished
+     */
+    void onScanFinished(int fileCount, boolean cancelled);
+  }
+
+  /**
+   * A running scan.
+   */
+  public static class Scan {
+    private final File directory;
+    private volatile boolean cancelled;
+    private final AtomicInteger fileCount = new AtomicInteger();
+    private RecursiveAction task;
+    // Index of the directory, null if scanning without one
+    private LibraryIndex index;
+
+    private Scan(File directory) {
+      this.directory = directory;
+    }
+
+    /**
+     * @return the directory being scanned
+     */
+    public File getDirectory() {
+      return directory;
+    }
+
+    /**
+     * Stops the scan. Directories that are not read yet are skipped.
+     */
+    public void cancel() {
+      cancelled = true;
+    }
+
+    /**
+     * @return Whether the scan was cancelled
+     */
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    /**
+     * @return Whether the scan finished or was cancelled
+     */
+    public boolean isDone() {
+      return task.isDone();
+    }
+
+    /**
+     * Waits for the scan to finish.
+     */
+    public void awaitCompletion() {
+      task.join();
+    }
+
+    /**
+     * @return the number of audio files found so far
+     */
+    public int getFileCount() {
+      return fileCount.get();
+    }
+
+    /**
+     * @return the number of directories taken from the library index
+     */
+    public int getIndexHits() {
+      return index == null ? 0 : index.getHits();
+    }
+
+    /**
+     * @return the number of directories that had to be read
+     */
+    public int getIndexMisses() {
+      return index == null ? 0 : index.getMisses();
+    }
+  }
+
+  public static final List<String> DEFAULT_EXTENSIONS = Collections
+      .unmodifiableList(Arrays.asList("mp3", "m4a", "wav", "aiff"));
+
+  // Prefix of the PlayList entries
+  private static final String FILE_PREFIX = "file:///";
+
+  // Scanning is mostly waiting on the file system, so use more threads than
+  // there are processors
+  private static final ForkJoinPool SCAN_POOL = new ForkJoinPool(
+      Math.max(8, 4 * Runtime.getRuntime().availableProcessors()));
+
+  private final Set<String> extensions = new HashSet<String>();
+  // Directory the library indexes are kept in, null to always read everything
+  private File indexDirectory;
+
+  public LibraryScanner() {
+    this(DEFAULT_EXTENSIONS);
+  }
+
+  /**
+   * @param extensions The file extensions (without the dot) of the files to
+   *        find, case insensitive
+   */
+  public LibraryScanner(Collection<String> extensions) {
+    for (String extension : extensions) {
+      this.extensions.add(extension.toLowerCase(Locale.ROOT));
+    }
+  }
+
+  /**
+   * @return the file extensions of the files to find
+   */
+  public Set<String> getExtensions() {
+    return Collections.unmodifiableSet(extensions);
+  }
+
+  /**
+   * @return the directory the library indexes are kept in, or null if
+   *         directories are always read
+   */
+  public File getIndexDirectory() {
+    return indexDirectory;
+  }
+
+  /**
+   * @param indexDirectory The directory to keep an index of each scanned
+   *        library in (see {@link LibraryIndex}), or null to always read every
+   *        directory
+   */
+  public void setIndexDirectory(File indexDirectory) {
+    this.indexDirectory = indexDirectory;
+  }
+
+  /**
+   * Starts scanning the given directory in the background.
+   *
+   * @param directory The directory to scan
+   * @param listener Listener that receives the files as they are found
+   * @return The running scan
+   */
+  public Scan scan(final File directory, final Listener listener) {
+    final Scan scan = new Scan(directory);
+    scan.task = new RecursiveAction() {
+      @Override
+      protected void compute() {
+        PlayerEvents.DirectoryScan event = new PlayerEvents.DirectoryScan();
+        event.begin();
+        long start = System.nanoTime();
+        if (indexDirectory != null) {
+          scan.index = LibraryIndex.open(indexDirectory, directory, extensions);
+        }
+        new DirectoryTask(scan, directory.toPath(), listener).invoke();
+        if (scan.index != null && !scan.isCancelled()) {
+          saveIndex(scan, start);
+        }
+        if (!scan.isCancelled()) {
+          PlayerMetrics.GLOBAL.getScans().record(System.nanoTime() - start);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+          event.path = directory.getPath();
+          event.files = scan.getFileCount();
+          event.indexHits = scan.getIndexHits();
+          event.indexMisses = scan.getIndexMisses();
+          event.outcome =
+              scan.isCancelled() ? PlayerEvents.CANCELLED : PlayerEvents.OK;
+          event.commit();
+        }
+        listener.onScanFinished(scan.getFileCount(), scan.isCancelled());
+      }
+    };
+    SCAN_POOL.execute(scan.task);
+    return scan;
+  }
+
+  private void saveIndex(Scan scan, long start) {
+    Logger.getGlobal()
+        .info("Library index of " + scan.getDirectory() + ": "
+            + scan.getIndexHits() + " hits, " + scan.getIndexMisses()
+            + " misses, revalidated in "
+            + (System.nanoTime() - start) / 1000000 + "ms");
+    try {
+      scan.index.save(scan.getDirectory());
+    } catch (IOException ioe) {
+      Logger.getGlobal().warning("Could not save library index "
+          + scan.index.getIndexFile() + ": " + ioe);
+    }
+  }
+
+  /**
+   * Scans the given directory and waits for the scan to finish.
+   *
+   * @param directory The directory to scan
+   * @return The PlayList entries of the audio files found, sorted
+   */
+  public List<String> scanAll(File directory) {
+    final List<String> filePaths =
+        Collections.synchronizedList(new ArrayList<String>());
+    scan(directory, new Listener() {
+      @Override
+      public void onFilesFound(List<String> found) {
+        filePaths.addAll(found);
+      }
+
+      @Override
+      public void onScanFinished(int fileCount, boolean cancelled) {}
+    }).awaitCompletion();
+    List<String> sorted = new ArrayList<String>(filePaths);
+    Collections.sort(sorted);
+    return sorted;
+  }
+
+  /**
+   * Converts the path of an audio file to its PlayList entry.
+   *
+   * @param file Path to the audio file
+   * @return The URI encoded PlayList entry
+   */
+  public static String toPlayListEntry(Path file) {
+    return FILE_PREFIX
+        + PlayList.modifyPathToFixedPath(file.toString().replace("\\", "/"));
+  }
+
+  /**
+   * Returns the file of the given PlayList entry, the reverse of
+   * {@link #toPlayListEntry(Path)}.
+   *
+   * @param playListEntry URI encoded PlayList entry
+   * @return The audio file of the entry
+   */
+  public static File toFile(String playListEntry) {
+    String path = playListEntry.startsWith(FILE_PREFIX)
+        ? playListEntry.substring(FILE_PREFIX.length()) : playListEntry;
+    return new File(PlayList.modifyFixedPathToTitle(path));
+  }
+
+  /**
+   * Whether the given file name has one of the extensions to find.
+   */
+  boolean isAudioFile(String fileName) {
+    int dot = fileName.lastIndexOf('.');
+    return dot >= 0 && extensions
+        .contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * Reads one directory, reports its audio files and forks a task for each
+   * subdirectory.
+   */
+  private class DirectoryTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final Scan scan;
+    private final Path directory;
+    private final Listener listener;
+
+    DirectoryTask(Scan scan, Path directory, Listener listener) {
+      this.scan = scan;
+      this.directory = directory;
+      this.listener = listener;
+    }
+
+    @Override
+    protected void compute() {
+      if (scan.isCancelled()) {
+        return;
+      }
+      List<String> filePaths = new ArrayList<String>();
+      List<DirectoryTask> subdirectories = new ArrayList<DirectoryTask>();
+
+      LibraryIndex.DirectoryEntry indexed = readIndex();
+      if (indexed != null) {
+        for (LibraryIndex.FileEntry file : indexed.getFiles()) {
+          filePaths.add(file.getPlayListEntry());
+        }
+        for (String subdirectory : indexed.getSubdirectories()) {
+          subdirectories.add(
+              new DirectoryTask(scan, Paths.get(subdirectory), listener));
+        }
+      } else {
+        readDirectory(filePaths, subdirectories);
+      }
+
+      if (!filePaths.isEmpty() && !scan.isCancelled()) {
+        Collections.sort(filePaths);
+        scan.fileCount.addAndGet(filePaths.size());
+        listener.onFilesFound(filePaths);
+      }
+      invokeAll(subdirectories);
+    }
+
+    /**
+     * Returns the indexed contents of the directory if it did not change.
+     */
+    private LibraryIndex.DirectoryEntry readIndex() {
+      if (scan.index == null) {
+        return null;
+      }
+      try {
+        return scan.index.lookup(directory.toString(),
+            Files.getLastModifiedTime(directory).toMillis());
+      } catch (IOException ioe) {
+        // Gone or unreadable, reading it will log why
+        return null;
+      }
+    }
+
+    private void readDirectory(List<String> filePaths,
+        List<DirectoryTask> subdirectories) {
+      long lastModified = 0;
+      List<String> subdirectoryPaths = new ArrayList<String>();
+      List<LibraryIndex.FileEntry> files =
+          new ArrayList<LibraryIndex.FileEntry>();
+
+      try {
+        lastModified = Files.getLastModifiedTime(directory).toMillis();
+        try (DirectoryStream<Path> entries =
+            Files.newDirectoryStream(directory)) {
+          for (Path entry : entries) {
+            if (scan.isCancelled()) {
+              return;
+            }
+            // Symbolic links to directories are not followed to avoid cycles
+            if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+              subdirectories.add(new DirectoryTask(scan, entry, listener));
+              subdirectoryPaths.add(entry.toString());
+            } else if (isAudioFile(entry.getFileName().toString())) {
+              String playListEntry = toPlayListEntry(entry);
+              filePaths.add(playListEntry);
+              if (scan.index != null) {
+                BasicFileAttributes attributes =
+                    Files.readAttributes(entry, BasicFileAttributes.class);
+                files.add(new LibraryIndex.FileEntry(entry.toString(),
+                    attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    playListEntry));
+              }
+            }
+          }
+        }
+      } catch (IOException | DirectoryIteratorException e) {
+        Logger.getGlobal()
+            .warning("Could not read directory " + directory + ": " + e);
+        return;
+      }
+
+      if (scan.index != null) {
+        scan.index.update(directory.toString(), new LibraryIndex.DirectoryEntry(
+            lastModified, subdirectoryPaths, files));
+      }
+    }
+  }
+}
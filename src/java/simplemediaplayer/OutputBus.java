@@ -0,0 +1,217 @@
+package simplemediaplayer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.property.DoubleProperty;
+
+/**
+ * The audio output of a {@link PlayList}: master volume, mute and a gain per
+ * track. Only the audible Track follows changes, with a short ramp so the
+ * volume does not jump audibly, and changes are applied once per rendered
+ * frame however often they are made, so dragging the volume slider costs one
+ * volume update per frame. Tracks that are not audible get their volume when
+ * they are created and when they become audible.
+ */
+public class OutputBus {
+
+  // Time a volume change is spread over
+  public static final long DEFAULT_RAMP_MILLIS = 40;
+
+  private double masterVolume = 1.0;
+  private boolean muted;
+  // Gain of the tracks that do not play at the master volume, by source
+  private final Map<String, Double> trackGains = new HashMap<String, Double>();
+  private long rampNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_RAMP_MILLIS);
+
+  // Volume of the audible Track, null if nothing is audible
+  private DoubleProperty audibleVolume;
+  private String audibleSource;
+  // Whether the volume changed since the last frame
+  private boolean changed;
+  private boolean ramping;
+  private double rampFrom;
+  private double rampTo;
+  private long rampStart;
+  // Created on the first change, once the JavaFX toolkit is running
+  private AnimationTimer timer;
+
+  /**
+   * @return the master volume, from 0.0 to 1.0
+   */
+  public double getMasterVolume() {
+    return masterVolume;
+  }
+
+  /**
+   * Sets the master volume. The audible Track follows on the next frame.
+   *
+   * @param masterVolume The master volume, from 0.0 to 1.0
+   */
+  public void setMasterVolume(double masterVolume) {
+    this.masterVolume = Math.max(0, Math.min(1, masterVolume));
+    change();
+  }
+
+  /**
+   * @return Whether the output is muted
+   */
+  public boolean isMuted() {
+    return muted;
+  }
+
+  /**
+   * @param muted Whether to mute the output
+   */
+  public void setMuted(boolean muted) {
+    this.muted = muted;
+    change();
+  }
+
+  /**
+   * @param source The media source of the track
+   * @return the gain of the track, 1.0 unless set
+   */
+  public double getTrackGain(String source) {
+    Double gain = trackGains.get(source);
+    return gain == null ? 1.0 : gain;
+  }
+
+  /**
+   * Sets the gain the master volume is multiplied by for the given track.
+   *
+   * @param source The media source of the track
+   * @param gain The gain, 1.0 to play the track at the master volume
+   */
+  public void setTrackGain(String source, double gain) {
+    if (gain == 1.0) {
+      trackGains.remove(source);
+    } else {
+      trackGains.put(source, Math.max(0, gain));
+    }
+    if (source.equals(audibleSource)) {
+      change();
+    }
+  }
+
+  /**
+   * @param rampMillis Time a volume change is spread over, 0 to apply it at
+   *        once
+   */
+  public void setRampMillis(long rampMillis) {
+    this.rampNanos = TimeUnit.MILLISECONDS.toNanos(rampMillis);
+  }
+
+  /**
+   * Returns the volume a track plays at with the current state of the bus.
+   *
+   * @param source The media source of the track
+   * @return The volume, from 0.0 to 1.0
+   */
+  public double volumeOf(String source) {
+    if (muted) {
+      return 0;
+    }
+    return Math.min(1, masterVolume * getTrackGain(source));
+  }
+
+  /**
+   * Sets up a newly created Track to play at its volume.
+   *
+   * @param track The new Track
+   */
+  public void configure(Track track) {
+    track.volumeProperty().set(volumeOf(track.getSource()));
+  }
+
+  /**
+   * Makes the given Track the one that follows volume changes, at its volume
+   * right away.
+   *
+   * @param track The Track that is about to play, or null if none is
+   */
+  public void setAudibleTrack(Track track) {
+    if (track == null) {
+      setAudible(null, null);
+    } else {
+      setAudible(track.volumeProperty(), track.getSource());
+    }
+  }
+
+  /**
+   * Makes the given volume the one that follows volume changes, set to the
+   * volume of its track right away.
+   *
+   * @param volume The volume of the audible output, or null if none is
+   * @param source The media source of the track it plays
+   */
+  public void setAudible(DoubleProperty volume, String source) {
+    audibleVolume = volume;
+    audibleSource = source;
+    ramping = false;
+    changed = false;
+    if (volume != null) {
+      volume.set(volumeOf(source));
+    }
+  }
+
+  /**
+   * Applies the changes since the last frame and moves the ramp on. Called
+   * once per rendered frame while the volume changes.
+   *
+   * @param now The time of the frame in nanoseconds
+   * @return Whether the volume is still changing
+   */
+  public boolean onFrame(long now) {
+    if (audibleVolume == null) {
+      changed = false;
+      ramping = false;
+      return false;
+    }
+    if (changed) {
+      // Ramp from wherever the last ramp got to
+      changed = false;
+      ramping = true;
+      rampFrom = audibleVolume.get();
+      rampTo = volumeOf(audibleSource);
+      rampStart = now;
+    }
+    if (!ramping) {
+      return false;
+    }
+    double elapsed = now - rampStart;
+    if (elapsed >= rampNanos) {
+      audibleVolume.set(rampTo);
+      ramping = false;
+      return false;
+    }
+    audibleVolume.set(rampFrom + (rampTo - rampFrom) * elapsed / rampNanos);
+    return true;
+  }
+
+  /**
+   * Starts calling {@link #onFrame(long)} once per rendered frame.
+   */
+  protected void startFrames() {
+    if (timer == null) {
+      timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+          if (!onFrame(now)) {
+            stop();
+          }
+        }
+      };
+    }
+    timer.start();
+  }
+
+  private void change() {
+    if (audibleVolume != null) {
+      changed = true;
+      startFrames();
+    }
+  }
+}
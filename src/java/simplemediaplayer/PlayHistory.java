@@ -0,0 +1,873 @@
+package simplemediaplayer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Log of every track started, played to the end and skipped, kept in a
+ * directory as fixed-width binary records, so an event costs 24 bytes and
+ * the log can be rolled up by scanning memory-mapped files:
+ *
+ * <pre>
+ * history-NNNNNNNN.log, the segments in the order they were written:
+ *     magic "SMPE", version int
+ *     per event: time in milliseconds since the epoch, 8 bytes;
+ *         key of the track, 8 bytes; position in the track in
+ *         milliseconds, 4 bytes; type byte; 3 zero bytes
+ * tracks.dat: per track, its key and PlayList entry (writeUTF)
+ * summary.dat: totals per track and per day of the compacted segments
+ * </pre>
+ *
+ * Events are collected in memory and written by a background thread every
+ * second, and forced to disk every ten seconds rather than on every event. A
+ * segment is closed once it passes the segment size, and once there are more
+ * closed segments than the maximum, the oldest are compacted into the
+ * summary and deleted. A record cut short by a crash is dropped.
+ */
+public class PlayHistory implements Closeable {
+
+  // Default location of the log
+  public static final File DEFAULT_DIRECTORY = new File(
+      System.getProperty("user.home"), ".simplemediaplayer/history");
+
+  // Event types
+  public static final byte STARTED = 1;
+  public static final byte COMPLETED = 2;
+  public static final byte SKIPPED = 3;
+
+  // Bytes per event
+  public static final int RECORD_SIZE = 24;
+  // Segment size in bytes after which the next segment is started
+  public static final long DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+  // Closed segments kept before the oldest are compacted
+  public static final int DEFAULT_MAX_SEGMENTS = 8;
+
+  private static final int MAGIC = 0x534d5045;
+  private static final int SUMMARY_MAGIC = 0x534d5053;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  private static final String SEGMENT_PREFIX = "history-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final long FLUSH_MILLIS = 1000;
+  private static final long SYNC_MILLIS = 10000;
+  // Events collected before the buffer grows
+  private static final int BATCH_RECORDS = 256;
+
+  /**
+   * Totals of the events of a PlayHistory: per track, per day and overall.
+   * Days are local days of the time zone of the player.
+   */
+  public static class Rollup {
+    private final ZoneId zone = ZoneId.systemDefault();
+    // Keys of the tracks by hash, open addressing with 0 for a free slot,
+    // and the totals of each track in the same slot
+    private long[] keys = new long[1024];
+    private int[] starts = new int[keys.length];
+    private int[] plays = new int[keys.length];
+    private int[] skips = new int[keys.length];
+    private long[] lastPlayed = new long[keys.length];
+    private int trackCount;
+    // Starts, plays and skips per day since the epoch
+    private final TreeMap<Long, int[]> days = new TreeMap<Long, int[]>();
+    private long eventCount;
+    private Map<Long, String> names = Collections.emptyMap();
+    // The day of the last event, as events mostly come in order
+    private long dayStart = Long.MAX_VALUE;
+    private long dayEnd = Long.MIN_VALUE;
+    private int[] dayTotals;
+
+    private void add(long timeMillis, long key, byte type) {
+      int slot = slot(key);
+      if (timeMillis < dayStart || timeMillis >= dayEnd) {
+        LocalDate day =
+            Instant.ofEpochMilli(timeMillis).atZone(zone).toLocalDate();
+        dayStart = day.atStartOfDay(zone).toInstant().toEpochMilli();
+        dayEnd = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        dayTotals = day(day.toEpochDay());
+      }
+      switch (type) {
+        case STARTED:
+          starts[slot]++;
+          dayTotals[0]++;
+          break;
+        case COMPLETED:
+          plays[slot]++;
+          dayTotals[1]++;
+          lastPlayed[slot] = Math.max(lastPlayed[slot], timeMillis);
+          break;
+        case SKIPPED:
+          skips[slot]++;
+          dayTotals[2]++;
+          break;
+        default:
+          // Written by a later version
+          return;
+      }
+      eventCount++;
+    }
+
+    private int[] day(long epochDay) {
+      int[] totals = days.get(epochDay);
+      if (totals == null) {
+        totals = new int[3];
+        days.put(epochDay, totals);
+      }
+      return totals;
+    }
+
+    /**
+     * Returns the slot of the given track, adding it if it is new.
+     */
+    private int slot(long key) {
+      // 0 marks a free slot
+      key = key == 0 ? 1 : key;
+      int mask = keys.length - 1;
+      int slot = (int) (key ^ key >>> 32) * 0x9e3779b9 & mask;
+      while (keys[slot] != key) {
+        if (keys[slot] == 0) {
+          if (trackCount * 2 >= keys.length) {
+            grow();
+            return slot(key);
+          }
+          keys[slot] = key;
+          trackCount++;
+          break;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private void grow() {
+      long[] oldKeys = keys;
+      int[] oldStarts = starts;
+      int[] oldPlays = plays;
+      int[] oldSkips = skips;
+      long[] oldLastPlayed = lastPlayed;
+      keys = new long[oldKeys.length * 2];
+      starts = new int[keys.length];
+      plays = new int[keys.length];
+      skips = new int[keys.length];
+      lastPlayed = new long[keys.length];
+      trackCount = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != 0) {
+          int slot = slot(oldKeys[i]);
+          starts[slot] = oldStarts[i];
+          plays[slot] = oldPlays[i];
+          skips[slot] = oldSkips[i];
+          lastPlayed[slot] = oldLastPlayed[i];
+        }
+      }
+    }
+
+    /**
+     * @return the slot of the given track, or -1 if it has no events
+     */
+    private int find(String entry) {
+      long key = key(entry);
+      key = key == 0 ? 1 : key;
+      int mask = keys.length - 1;
+      int slot = (int) (key ^ key >>> 32) * 0x9e3779b9 & mask;
+      while (keys[slot] != 0) {
+        if (keys[slot] == key) {
+          return slot;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return -1;
+    }
+
+    /**
+     * @return the number of events rolled up, compacted ones included
+     */
+    public long getEventCount() {
+      return eventCount;
+    }
+
+    /**
+     * @return the number of tracks with events
+     */
+    public int getTrackCount() {
+      return trackCount;
+    }
+
+    /**
+     * @param entry The PlayList entry of a track
+     * @return The number of times the track was started
+     */
+    public int getStarts(String entry) {
+      int slot = find(entry);
+      return slot < 0 ? 0 : starts[slot];
+    }
+
+    /**
+     * @param entry The PlayList entry of a track
+     * @return The number of times the track was played to the end
+     */
+    public int getPlays(String entry) {
+      int slot = find(entry);
+      return slot < 0 ? 0 : plays[slot];
+    }
+
+    /**
+     * @param entry The PlayList entry of a track
+     * @return The number of times the track was skipped
+     */
+    public int getSkips(String entry) {
+      int slot = find(entry);
+      return slot < 0 ? 0 : skips[slot];
+    }
+
+    /**
+     * @param entry The PlayList entry of a track
+     * @return When the track was last played to the end, 0 if never
+     */
+    public long getLastPlayedMillis(String entry) {
+      int slot = find(entry);
+      return slot < 0 ? 0 : lastPlayed[slot];
+    }
+
+    /**
+     * @return the share of the tracks that ended that were skipped rather
+     *         than played to the end, 0 if none ended
+     */
+    public double getSkipRate() {
+      long played = 0;
+      long skipped = 0;
+      for (int[] totals : days.values()) {
+        played += totals[1];
+        skipped += totals[2];
+      }
+      return played + skipped == 0 ? 0
+          : (double) skipped / (played + skipped);
+    }
+
+    /**
+     * @return the number of tracks played to the end on each day with events
+     */
+    public SortedMap<LocalDate, Integer> getPlaysPerDay() {
+      SortedMap<LocalDate, Integer> playsPerDay =
+          new TreeMap<LocalDate, Integer>();
+      for (Map.Entry<Long, int[]> day : days.entrySet()) {
+        playsPerDay.put(LocalDate.ofEpochDay(day.getKey()),
+            day.getValue()[1]);
+      }
+      return playsPerDay;
+    }
+
+    /**
+     * Returns the tracks played to the end the most, most played first.
+     *
+     * @param limit The most tracks to return
+     * @return The PlayList entries of the tracks
+     */
+    public List<String> getTopTracks(int limit) {
+      List<Integer> slots = new ArrayList<Integer>();
+      for (int slot = 0; slot < keys.length; slot++) {
+        if (keys[slot] != 0 && plays[slot] > 0
+            && names.containsKey(keys[slot])) {
+          slots.add(slot);
+        }
+      }
+      Collections.sort(slots, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer first, Integer second) {
+          return Integer.compare(plays[second], plays[first]);
+        }
+      });
+      List<String> topTracks = new ArrayList<String>();
+      for (int slot : slots.subList(0, Math.min(limit, slots.size()))) {
+        topTracks.add(names.get(keys[slot]));
+      }
+      return topTracks;
+    }
+  }
+
+  private final File directory;
+  private final File tracksFile;
+  private final File summaryFile;
+  private long segmentSize = DEFAULT_SEGMENT_SIZE;
+  private int maxSegments = DEFAULT_MAX_SEGMENTS;
+
+  // Events and names of tracks not written yet, guarded by this
+  private ByteBuffer pending = ByteBuffer.allocate(BATCH_RECORDS * RECORD_SIZE);
+  private final Map<Long, String> pendingNames =
+      new LinkedHashMap<Long, String>();
+  // Tracks named in tracks.dat by this session
+  private final Set<Long> namedKeys = new HashSet<Long>();
+  private boolean closed;
+
+  // Guards the files, so writes and scans never overlap
+  private final Object ioLock = new Object();
+  // Sequence number of the segment appended to, open once written to
+  private long sequence;
+  private FileChannel segment;
+  private FileChannel tracks;
+  private volatile long lastSync;
+  private boolean unsynced;
+  // The last segment and its length when the log was opened, the end of
+  // the events of earlier sessions
+  private final long openedSequence;
+  private final long openedLength;
+
+  // Writes the events collected every second
+  private final ScheduledThreadPoolExecutor writer =
+      new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "Play History Writer");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  /**
+   * Opens the log in the given directory, which is created once the first
+   * event is written.
+   *
+   * @param directory The directory the log is kept in
+   */
+  public PlayHistory(File directory) {
+    this.directory = directory.getAbsoluteFile();
+    this.tracksFile = new File(this.directory, "tracks.dat");
+    this.summaryFile = new File(this.directory, "summary.dat");
+    List<Long> sequences = listSequences();
+    // Numbering goes on after the compacted segments
+    sequence = Math.max(readSummarizedSequence() + 1,
+        sequences.isEmpty() ? 1 : sequences.get(sequences.size() - 1));
+    openedSequence = sequence;
+    openedLength = wholeRecords(segmentFile(sequence).length());
+    lastSync = System.currentTimeMillis();
+    writer.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          flush();
+          if (System.currentTimeMillis() - lastSync >= SYNC_MILLIS) {
+            sync();
+          }
+        } catch (IOException ioe) {
+          Logger.getGlobal().warning(
+              "Could not write play history " + directory + ": " + ioe);
+        }
+      }
+    }, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return the directory the log is kept in
+   */
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @param segmentSize The segment size in bytes after which the next segment
+   *        is started
+   */
+  public void setSegmentSize(long segmentSize) {
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * @param maxSegments The closed segments kept before the oldest are
+   *        compacted
+   */
+  public void setMaxSegments(int maxSegments) {
+    this.maxSegments = maxSegments;
+  }
+
+  /**
+   * Records an event. It is written with the next batch.
+   *
+   * @param type {@link #STARTED}, {@link #COMPLETED} or {@link #SKIPPED}
+   * @param entry The PlayList entry of the track
+   * @param timeMillis When it happened, in milliseconds since the epoch
+   * @param positionMillis Where in the track it happened, in milliseconds
+   */
+  public synchronized void record(byte type, String entry, long timeMillis,
+      long positionMillis) {
+    if (closed) {
+      return;
+    }
+    long key = key(entry);
+    if (namedKeys.add(key)) {
+      pendingNames.put(key, entry);
+    }
+    if (pending.remaining() < RECORD_SIZE) {
+      ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+      pending.flip();
+      larger.put(pending);
+      pending = larger;
+    }
+    pending.putLong(timeMillis);
+    pending.putLong(key);
+    pending.putInt((int) Math.max(0,
+        Math.min(positionMillis, Integer.MAX_VALUE)));
+    pending.put(type);
+    pending.put(new byte[3]);
+  }
+
+  /**
+   * Writes the events recorded since the last batch, starting the next
+   * segment and compacting the oldest if the segment is full.
+   *
+   * @throws IOException If the events cannot be written
+   */
+  public void flush() throws IOException {
+    synchronized (ioLock) {
+      ByteBuffer batch;
+      Map<Long, String> names;
+      synchronized (this) {
+        if (pending.position() == 0) {
+          return;
+        }
+        batch = pending;
+        pending = ByteBuffer.allocate(BATCH_RECORDS * RECORD_SIZE);
+        names = new LinkedHashMap<Long, String>(pendingNames);
+        pendingNames.clear();
+      }
+
+      // Names first, so no event refers to a track without a name
+      if (!names.isEmpty()) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Map.Entry<Long, String> name : names.entrySet()) {
+          out.writeLong(name.getKey());
+          out.writeUTF(name.getValue());
+        }
+        if (tracks == null) {
+          directory.mkdirs();
+          tracks = FileChannel.open(tracksFile.toPath(),
+              StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+              StandardOpenOption.APPEND);
+        }
+        writeFully(ByteBuffer.wrap(bytes.toByteArray()), tracks);
+      }
+
+      if (segment == null) {
+        openSegment();
+      }
+      batch.flip();
+      writeFully(batch, segment);
+      unsynced = true;
+      if (segment.size() >= segmentSize) {
+        // Start the next segment with the next batch
+        segment.force(false);
+        segment.close();
+        segment = null;
+        sequence++;
+        compactIfNeeded();
+      }
+    }
+  }
+
+  /**
+   * Forces the events written to disk.
+   *
+   * @throws IOException If they cannot be forced
+   */
+  public void sync() throws IOException {
+    synchronized (ioLock) {
+      lastSync = System.currentTimeMillis();
+      if (unsynced) {
+        if (tracks != null) {
+          tracks.force(false);
+        }
+        if (segment != null) {
+          segment.force(false);
+        }
+        unsynced = false;
+      }
+    }
+  }
+
+  /**
+   * Writes and forces the events recorded so far and stops recording.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    writer.shutdown();
+    synchronized (ioLock) {
+      try {
+        flush();
+        sync();
+      } catch (IOException ioe) {
+        Logger.getGlobal().warning(
+            "Could not write play history " + directory + ": " + ioe);
+      }
+      closeQuietly(segment);
+      closeQuietly(tracks);
+      segment = null;
+      tracks = null;
+    }
+  }
+
+  /**
+   * Rolls up every event of the log, including the ones not written yet.
+   *
+   * @return The totals of the events
+   * @throws IOException If the log cannot be read
+   */
+  public Rollup rollup() throws IOException {
+    synchronized (ioLock) {
+      flush();
+      return rollup(Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+  }
+
+  /**
+   * Adds the plays and skips of the earlier sessions to the given registry,
+   * where {@link SmartShuffle} finds them. Events of this session are
+   * expected to be counted in the registry as they happen.
+   *
+   * @param registry The registry of the tracks
+   * @throws IOException If the log cannot be read
+   */
+  public void restore(TrackRegistry registry) throws IOException {
+    Rollup rollup;
+    synchronized (ioLock) {
+      rollup = rollup(openedSequence, openedLength);
+    }
+    for (int slot = 0; slot < rollup.keys.length; slot++) {
+      String entry = rollup.names.get(rollup.keys[slot]);
+      if (entry != null
+          && (rollup.plays[slot] > 0 || rollup.skips[slot] > 0)) {
+        registry.addPlayStats(registry.register(entry), rollup.plays[slot],
+            rollup.skips[slot], rollup.lastPlayed[slot]);
+      }
+    }
+  }
+
+  /**
+   * Rolls up the summary and the segments up to the given length of the given
+   * segment.
+   */
+  private Rollup rollup(long lastSequence, long lastLength)
+      throws IOException {
+    Rollup rollup = new Rollup();
+    long summarized = readSummary(rollup);
+    for (long segmentSequence : listSequences()) {
+      if (segmentSequence > summarized && segmentSequence <= lastSequence) {
+        scan(segmentFile(segmentSequence),
+            segmentSequence == lastSequence ? lastLength : Long.MAX_VALUE,
+            rollup);
+      }
+    }
+    rollup.names = readNames();
+    return rollup;
+  }
+
+  /**
+   * Adds the events of a segment up to the given length to the rollup.
+   */
+  private static void scan(File segmentFile, long length, Rollup rollup)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(segmentFile.toPath(),
+        StandardOpenOption.READ)) {
+      long size = wholeRecords(Math.min(channel.size(), length));
+      if (size < HEADER_SIZE) {
+        return;
+      }
+      MappedByteBuffer buffer =
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+        Logger.getGlobal().warning("Not a play history: " + segmentFile);
+        return;
+      }
+      for (int position = HEADER_SIZE; position < size;
+          position += RECORD_SIZE) {
+        rollup.add(buffer.getLong(position), buffer.getLong(position + 8),
+            buffer.get(position + 20));
+      }
+    }
+  }
+
+  /**
+   * Compacts the oldest closed segments into the summary, keeping the newest
+   * half of the maximum.
+   */
+  private void compactIfNeeded() throws IOException {
+    List<Long> closedSequences = new ArrayList<Long>();
+    for (long segmentSequence : listSequences()) {
+      if (segmentSequence < sequence) {
+        closedSequences.add(segmentSequence);
+      }
+    }
+    if (closedSequences.size() <= maxSegments) {
+      return;
+    }
+    long last =
+        closedSequences.get(closedSequences.size() - 1 - maxSegments / 2);
+    Rollup rollup = new Rollup();
+    long summarized = readSummary(rollup);
+    for (long segmentSequence : closedSequences) {
+      if (segmentSequence > summarized && segmentSequence <= last) {
+        scan(segmentFile(segmentSequence), Long.MAX_VALUE, rollup);
+      }
+    }
+    writeSummary(rollup, last);
+    // Segments the summary covers are skipped until they are deleted
+    for (long segmentSequence : closedSequences) {
+      if (segmentSequence <= last) {
+        segmentFile(segmentSequence).delete();
+      }
+    }
+    compactNames();
+  }
+
+  /**
+   * Adds the totals of the summary to the rollup.
+   *
+   * @return The last segment the summary covers, 0 if there is none
+   */
+  private long readSummary(Rollup rollup) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(summaryFile)))) {
+      if (in.readInt() != SUMMARY_MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not a play history summary: " + summaryFile);
+      }
+      long summarized = in.readLong();
+      rollup.eventCount += in.readLong();
+      int trackCount = in.readInt();
+      for (int i = 0; i < trackCount; i++) {
+        int slot = rollup.slot(in.readLong());
+        rollup.starts[slot] += in.readInt();
+        rollup.plays[slot] += in.readInt();
+        rollup.skips[slot] += in.readInt();
+        rollup.lastPlayed[slot] =
+            Math.max(rollup.lastPlayed[slot], in.readLong());
+      }
+      int dayCount = in.readInt();
+      for (int i = 0; i < dayCount; i++) {
+        int[] totals = rollup.day(in.readLong());
+        for (int j = 0; j < totals.length; j++) {
+          totals[j] += in.readInt();
+        }
+      }
+      return summarized;
+    } catch (FileNotFoundException fnfe) {
+      // Nothing compacted yet
+      return 0;
+    }
+  }
+
+  /**
+   * @return the last segment the summary covers, 0 if there is none or it
+   *         cannot be read
+   */
+  private long readSummarizedSequence() {
+    try (DataInputStream in =
+        new DataInputStream(new FileInputStream(summaryFile))) {
+      if (in.readInt() == SUMMARY_MAGIC && in.readInt() == VERSION) {
+        return in.readLong();
+      }
+    } catch (FileNotFoundException fnfe) {
+      // Nothing compacted yet
+    } catch (IOException ioe) {
+      Logger.getGlobal().warning(
+          "Could not read play history summary " + summaryFile + ": " + ioe);
+    }
+    return 0;
+  }
+
+  private void writeSummary(Rollup rollup, long summarized)
+      throws IOException {
+    File tempFile = new File(summaryFile.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      out.writeInt(SUMMARY_MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(summarized);
+      out.writeLong(rollup.eventCount);
+      out.writeInt(rollup.trackCount);
+      for (int slot = 0; slot < rollup.keys.length; slot++) {
+        if (rollup.keys[slot] != 0) {
+          out.writeLong(rollup.keys[slot]);
+          out.writeInt(rollup.starts[slot]);
+          out.writeInt(rollup.plays[slot]);
+          out.writeInt(rollup.skips[slot]);
+          out.writeLong(rollup.lastPlayed[slot]);
+        }
+      }
+      out.writeInt(rollup.days.size());
+      for (Map.Entry<Long, int[]> day : rollup.days.entrySet()) {
+        out.writeLong(day.getKey());
+        for (int total : day.getValue()) {
+          out.writeInt(total);
+        }
+      }
+    }
+    Files.move(tempFile.toPath(), summaryFile.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @return the PlayList entry of each track by key
+   */
+  private Map<Long, String> readNames() throws IOException {
+    Map<Long, String> names = new HashMap<Long, String>();
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(tracksFile)))) {
+      while (true) {
+        long key = in.readLong();
+        names.put(key, in.readUTF());
+      }
+    } catch (FileNotFoundException fnfe) {
+      // No events yet
+    } catch (EOFException eofe) {
+      // The end, or a name cut short
+    }
+    return names;
+  }
+
+  /**
+   * Rewrites the names of the tracks with each track once, as every session
+   * names the tracks it plays again.
+   */
+  private void compactNames() throws IOException {
+    Map<Long, String> names = readNames();
+    closeQuietly(tracks);
+    tracks = null;
+    File tempFile = new File(tracksFile.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      for (Map.Entry<Long, String> name : names.entrySet()) {
+        out.writeLong(name.getKey());
+        out.writeUTF(name.getValue());
+      }
+    }
+    Files.move(tempFile.toPath(), tracksFile.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Opens the segment to append to, dropping a record cut short at its end.
+   */
+  private void openSegment() throws IOException {
+    directory.mkdirs();
+    segment = FileChannel.open(segmentFile(sequence).toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    long size = segment.size();
+    if (size < HEADER_SIZE) {
+      segment.truncate(0);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putInt(VERSION).flip();
+      writeFully(header, segment);
+    } else if (wholeRecords(size) != size) {
+      segment.truncate(wholeRecords(size));
+    }
+    segment.position(segment.size());
+  }
+
+  /**
+   * @return the sequence numbers of the segments, in order
+   */
+  private List<Long> listSequences() {
+    List<Long> sequences = new ArrayList<Long>();
+    String[] names = directory.list();
+    if (names != null) {
+      for (String name : names) {
+        if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+          try {
+            sequences.add(Long.parseLong(name.substring(
+                SEGMENT_PREFIX.length(),
+                name.length() - SEGMENT_SUFFIX.length())));
+          } catch (NumberFormatException nfe) {
+            // Not a segment
+          }
+        }
+      }
+    }
+    Collections.sort(sequences);
+    return sequences;
+  }
+
+  private File segmentFile(long segmentSequence) {
+    return new File(directory,
+        String.format("%s%08d%s", SEGMENT_PREFIX, segmentSequence,
+            SEGMENT_SUFFIX));
+  }
+
+  /**
+   * @return the given segment length without a record cut short at its end
+   */
+  private static long wholeRecords(long length) {
+    if (length < HEADER_SIZE) {
+      return length;
+    }
+    return length - (length - HEADER_SIZE) % RECORD_SIZE;
+  }
+
+  /**
+   * Returns the key of a track in the log, a 64 bit FNV-1a hash of its
+   * PlayList entry, so events are the same size for every track.
+   *
+   * @param entry The PlayList entry of the track
+   * @return The key
+   */
+  static long key(String entry) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < entry.length(); i++) {
+      hash ^= entry.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  private static void writeFully(ByteBuffer buffer, FileChannel channel)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+      }
+    }
+  }
+}
@@ -1,27 +1,27 @@
 package simplemediaplayer;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
-import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 import eu.hansolo.tilesfx.Tile;
+import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
-import javafx.scene.media.Media;
-import javafx.scene.media.MediaPlayer;
 import javafx.scene.media.MediaView;
 import javafx.util.Duration;
 
@@ -38,40 +38,193 @@ public class PlayList {
    * seperate that from the SimpleMediaPlayer class.
    */
 
-  private DecimalFormat twoDigitFormat = new DecimalFormat("00");
-
   private String playListID;
   private String playListName;
-  private List<MediaPlayer> mediaPlayers = new ArrayList<MediaPlayer>();
-  // ChangeListener to listen to progress of currently playing MediaPlayer
-  private ChangeListener<Duration> progressChangeListener;
-  private List<String> filePaths;
+  // Number of upcoming tracks that are created ahead of time
+  public static final int DEFAULT_LOOKAHEAD = 2;
+  // Weight of tracks of sibling folders in More like this folder
+  private static final double SIBLING_FOLDER_SHARE = 0.25;
+  // Creates the Tracks, JavaFX MediaPlayers unless given another backend
+  private final PlaybackBackend backend;
+  // Tracks are only created for the tracks around the current one
+  private final TrackPool trackPool =
+      new TrackPool(new TrackPool.Factory() {
+        @Override
+        public Track create(String sourcePath) {
+          return createTrack(sourcePath);
+        }
+      }, DEFAULT_LOOKAHEAD);
+  // The Track that is playing, null until playback starts
+  private Track currentTrack;
+  // Tracks skipped since the last one that played to its end
+  private int failedTracksInARow;
+  // Flight recorder event of a handover started before the next track was
+  // looked up, see startHandover
+  private PlayerEvents.TrackHandover pendingHandover;
+  // Shows the progress of the currently playing Track
+  private ProgressUpdater progressUpdater;
+  // Minimum time in milliseconds between two progress updates, 0 for every
+  // rendered frame
+  private long progressUpdateInterval;
+  // Ids of the tracks and what is known about them, shared by the PlayLists
+  // of the same registry
+  private final TrackRegistry registry;
+  private TrackList filePaths;
+  // Play order of the tracks in filePaths, see playQueue()
+  private final PlayQueue playQueue = new PlayQueue();
+  private final Random random = new Random();
+  // Writes the PlayList files saved in the background
+  private final PlayListSaver playListSaver = new PlayListSaver();
+  // Records the edits of the PlayList file it was opened from, if any
+  private PlayListJournal journal;
+  // Latency of each track change
+  private final TransitionStats transitionStats = new TransitionStats();
+  // Keeps the PlayList in sync with its source directories
+  private PlayListWatcher playListWatcher;
+  // Incremented when the watcher is closed, so its batches still queued for
+  // the JavaFX application thread are dropped
+  private int watchGeneration;
+  // File path of the current track if its file was removed while playing
+  private String removedWhilePlaying;
+  // Volume of the audible Track and of newly created Tracks
+  private final OutputBus outputBus = new OutputBus();
+  // Reads the tags of the tracks in the background, null to show file names
+  private TagLoader tagLoader;
+  // Updates the Currently Playing text when the tags of the track arrive
+  private final TagLoader.Listener tagListener = new TagLoader.Listener() {
+    @Override
+    public void onTagsLoaded(String playListEntry, TrackTags tags) {
+      SearchIndex index = searchIndex;
+      if (index != null) {
+        index.setTags(playListEntry, tags);
+      }
+      int id = registry.find(playListEntry);
+      if (id >= 0 && tags.getDurationMillis() >= 0) {
+        registry.setDurationMillis(id, tags.getDurationMillis());
+      }
+      if (playListEntry.equals(currentlyPlayingEntry)) {
+        Platform.runLater(new Runnable() {
+          @Override
+          public void run() {
+            if (currentlyPlayingTile != null && !filePaths.isEmpty()) {
+              setCurrentlyPlayingText(currentlyPlayingTile);
+            }
+          }
+        });
+      }
+    }
+  };
+  // Finds the tracks of the PlayList by their words, null if not searchable
+  private volatile SearchIndex searchIndex;
+  // PlayList entry shown as Currently Playing
+  private volatile String currentlyPlayingEntry;
+  // Log of the tracks started, played and skipped, null if not logged
+  private volatile PlayHistory playHistory;
+  // Where the indexes of the scanned directories are kept, null to always
+  // read every directory
+  private File indexDirectory;
+
+  // Components the Tracks report to, set by startupMediaPlayers, all null
+  // when playing without a user interface
+  private MediaView mediaView;
+  private ProgressBar progress;
+  private Label currentTime;
+  private Label totalTime;
+  private Tile currentlyPlayingTile;
 
   public PlayList() {
+    this(new JavaFxBackend());
+  }
+
+  /**
+   * @param backend The backend that creates the Tracks of the PlayList
+   */
+  public PlayList(PlaybackBackend backend) {
+    this(backend, TrackRegistry.GLOBAL);
+  }
+
+  /**
+   * @param backend The backend that creates the Tracks of the PlayList
+   * @param registry The registry of the tracks of the PlayList
+   */
+  public PlayList(PlaybackBackend backend, TrackRegistry registry) {
+    this.backend = backend;
+    this.registry = registry;
     this.setFilePaths(new ArrayList<String>());
   }
 
   public PlayList(String playListID, String playListName) {
+    this();
     this.playListID = playListID;
     this.playListName = playListName;
   }
 
+  /**
+   * Opens the given PlayList file and applies the edits in its journal. Later
+   * edits are recorded in the journal. See {@link PlayListLoader} to start
+   * playing a large PlayList before it is fully read.
+   * 
+   * @param playListFile The PlayList file to open
+   * @return PlayList with the file paths in the file
+   */
   public static PlayList openPlayList(File playListFile) {
     PlayList playList = new PlayList();
 
-    try (Scanner scanner = new Scanner(playListFile)) {
-      while (scanner.hasNextLine()) {
-        String audioFilePath = scanner.nextLine();
-        playList.getFilePaths().add(audioFilePath);
-      }
-    } catch (FileNotFoundException fnfe) {
-      Logger.getGlobal().severe("A FileNotFoundException has occured: " + fnfe);
-      // TODO Auto-generated catch block
-      fnfe.printStackTrace();
+    try {
+      playList.addAllFilesIntoPlayList(
+          new PlayListLoader().loadAll(playListFile));
+    } catch (IOException ioe) {
+      Logger.getGlobal().severe("An I/O Exception occurred: " + ioe);
+      ioe.printStackTrace();
     }
+    playList.attachJournal(playListFile);
     return playList;
   }
 
+  /**
+   * Applies the edits in the journal of the given PlayList file, which this
+   * PlayList holds the entries of, and records later edits in it.
+   * 
+   * @param playListFile The PlayList file the entries were read from
+   */
+  public void attachJournal(File playListFile) {
+    detachJournal();
+    PlayListJournal playListJournal = new PlayListJournal(playListFile);
+    int edits = playListJournal.replay(this);
+    if (edits > 0) {
+      Logger.getGlobal()
+          .info("Applied " + edits + " edits to PlayList " + playListFile);
+    }
+    this.journal = playListJournal;
+  }
+
+  /**
+   * Stops recording edits in the journal of the PlayList file.
+   */
+  public void detachJournal() {
+    if (journal != null) {
+      journal.close();
+      journal = null;
+    }
+  }
+
+  /**
+   * Finishes the PlayList files that are being saved in the background and
+   * closes the journal. Called when the player stops, the PlayList cannot be
+   * saved in the background afterwards.
+   */
+  public void close() {
+    detachJournal();
+    playListSaver.close();
+  }
+
+  /**
+   * @return the journal edits are recorded in, or null if there is none
+   */
+  public PlayListJournal getJournal() {
+    return journal;
+  }
+
   /**
    * @return the playListID
    */
@@ -100,18 +253,182 @@ public class PlayList {
     this.playListName = playListName;
   }
 
-  public List<MediaPlayer> getMediaPlayers() {
-    return mediaPlayers;
+  /**
+   * Returns the Tracks of the playback window: the current track followed by
+   * the upcoming tracks. Tracks outside of the window are created lazily.
+   * 
+   * @return The live Tracks, current track first
+   */
+  public List<Track> getPlaybackWindow() {
+    PlayQueue queue = playQueue();
+    int size = Math.min(getLookahead() + 1, queue.size());
+    List<String> windowPaths = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      windowPaths.add(filePaths.get(queue.peek(i)));
+    }
+    return trackPool.window(windowPaths, 0);
+  }
+
+  /**
+   * @return The number of upcoming tracks that are created ahead of time
+   */
+  public int getLookahead() {
+    return trackPool.getLookahead();
+  }
+
+  /**
+   * @param lookahead The number of upcoming tracks to create ahead of time
+   */
+  public void setLookahead(int lookahead) {
+    trackPool.setLookahead(lookahead);
+  }
+
+  /**
+   * @return the backend that creates the Tracks of the PlayList
+   */
+  public PlaybackBackend getBackend() {
+    return backend;
+  }
+
+  /**
+   * @return The index of the current track in the file paths
+   */
+  public int getCurrentIndex() {
+    return filePaths.isEmpty() ? 0 : playQueue().current();
+  }
+
+  /**
+   * @param volume The master volume (0.0 to 1.0) of the output, see
+   *        {@link OutputBus#setMasterVolume(double)}
+   */
+  public void setVolume(double volume) {
+    outputBus.setMasterVolume(volume);
+  }
+
+  /**
+   * @return the output the Tracks of the PlayList play through
+   */
+  public OutputBus getOutputBus() {
+    return outputBus;
+  }
+
+  /**
+   * @return The loader reading the tags of the tracks, or null if file names
+   *         are shown instead
+   */
+  public TagLoader getTagLoader() {
+    return tagLoader;
+  }
+
+  /**
+   * Uses the given loader to read the tags of the tracks of the PlayList,
+   * including the ones added later, in the background.
+   * 
+   * @param tagLoader The loader reading the tags, or null to show file names
+   */
+  public void setTagLoader(TagLoader tagLoader) {
+    if (this.tagLoader != null) {
+      this.tagLoader.removeListener(tagListener);
+    }
+    this.tagLoader = tagLoader;
+    if (tagLoader != null) {
+      tagLoader.addListener(tagListener);
+      tagLoader.load(filePaths);
+    }
+  }
+
+  /**
+   * @return The index the tracks of the PlayList can be found with, or null
+   *         if there is none
+   */
+  public SearchIndex getSearchIndex() {
+    return searchIndex;
+  }
+
+  /**
+   * Keeps the given index up to date with the tracks of the PlayList and
+   * their tags, as they are added and removed. The index is cleared first.
+   * 
+   * @param searchIndex The index of the tracks, or null to stop updating it
+   */
+  public void setSearchIndex(SearchIndex searchIndex) {
+    this.searchIndex = searchIndex;
+    if (searchIndex != null) {
+      searchIndex.clear();
+      indexTracks(filePaths);
+    }
+  }
+
+  /**
+   * @return The log the tracks played are recorded in, or null if there is
+   *         none
+   */
+  public PlayHistory getPlayHistory() {
+    return playHistory;
   }
 
-  public void setMediaPlayers(List<MediaPlayer> mediaPlayers) {
-    this.mediaPlayers = mediaPlayers;
+  /**
+   * Records every track started, played to the end and skipped in the given
+   * log.
+   *
+   * @param playHistory The log, or null to stop recording
+   */
+  public void setPlayHistory(PlayHistory playHistory) {
+    this.playHistory = playHistory;
+  }
+
+  /**
+   * @return the directory the library indexes are kept in, or null if
+   *         directories are always read
+   */
+  public File getIndexDirectory() {
+    return indexDirectory;
+  }
+
+  /**
+   * @param indexDirectory The directory to keep an index of each directory
+   *        added with {@link #addAllFilesFromDirectoryIntoPlayList(File)} in,
+   *        or null to always read every directory
+   */
+  public void setIndexDirectory(File indexDirectory) {
+    this.indexDirectory = indexDirectory;
+  }
+
+  /**
+   * Records an event of the given track in the play history, if any.
+   */
+  private void recordHistory(byte type, Track track, Duration position) {
+    PlayHistory history = playHistory;
+    if (history != null) {
+      history.record(type, track.getSource(), System.currentTimeMillis(),
+          position == null || position.isUnknown() || position.isIndefinite()
+              ? 0 : (long) position.toMillis());
+    }
+  }
+
+  /**
+   * Adds tracks to the search index, if any, with their tags if loaded.
+   */
+  private void indexTracks(Collection<String> filePaths) {
+    if (searchIndex != null) {
+      for (String filePath : filePaths) {
+        searchIndex.add(filePath,
+            tagLoader == null ? null : tagLoader.getTags(filePath));
+      }
+    }
+  }
+
+  /**
+   * @return The registry of the tracks of the PlayList
+   */
+  public TrackRegistry getTrackRegistry() {
+    return registry;
   }
 
   /**
    * @return The file paths of the audio files of the PlayList
    */
-  public List<String> getFilePaths() {
+  public TrackList getFilePaths() {
     return filePaths;
   }
 
@@ -119,171 +436,934 @@ public class PlayList {
    * @param filePaths The file paths of the audio files to set to
    */
   public void setFilePaths(List<String> filePaths) {
-    this.filePaths = filePaths;
+    this.detachJournal();
+    this.releaseTracks();
+    this.filePaths = new TrackList(registry, filePaths);
+    if (searchIndex != null) {
+      searchIndex.clear();
+      indexTracks(filePaths);
+    }
   }
 
   /**
    * @param filePaths The file paths of the audio files to set to
    */
   public void setFilePaths(String[] filePaths) {
-    this.filePaths = new ArrayList<String>();
-    this.filePaths.addAll(Arrays.asList(filePaths));
+    this.detachJournal();
+    this.releaseTracks();
+    this.filePaths = new TrackList(registry, Arrays.asList(filePaths));
+    if (searchIndex != null) {
+      searchIndex.clear();
+      indexTracks(this.filePaths);
+    }
   }
 
   /**
-   * Assumes are filePaths are fixed already.
+   * Assumes are filePaths are fixed already. No Track is created until
+   * the track enters the playback window.
    * 
    * @param filePaths
    */
   public void addAllFilesIntoPlayList(List<String> filePaths) {
-
+    PlayQueue queue = playQueue();
     for (String filePath : filePaths) {
-      mediaPlayers.add(this.createMediaPlayerFromFile(filePath));
+      queue.add(this.filePaths.size());
+      this.filePaths.add(filePath);
+    }
+    indexTracks(filePaths);
+    if (tagLoader != null) {
+      tagLoader.load(filePaths);
+    }
+    if (journal != null && !filePaths.isEmpty()) {
+      journal.recordAdd(filePaths);
+      compactJournalIfNeeded();
     }
   }
 
   /**
-   * Add all files from the given directory into the PlayList.
+   * Add all audio files from the given directory and its subdirectories into
+   * the PlayList. Directories that did not change since the last time are
+   * taken from the {@link LibraryIndex}, if there is an index directory (see
+   * {@link #setIndexDirectory(File)}). See {@link LibraryScanner} to add
+   * them as they are found. A directory without audio leaves the PlayList
+   * empty.
    * 
    * @param sourceDirectory
    */
   public void addAllFilesFromDirectoryIntoPlayList(File sourceDirectory) {
-    String filePrefix = "file:///";
+    LibraryScanner libraryScanner = new LibraryScanner();
+    libraryScanner.setIndexDirectory(indexDirectory);
+    addAllFilesIntoPlayList(libraryScanner.scanAll(sourceDirectory));
 
-    for (String file : sourceDirectory.list(new FilenameFilter() {
-      @Override
-      public boolean accept(File file, String name) {
-        return name.endsWith(".mp3");
+    if (filePaths.isEmpty()) {
+      Logger.getGlobal().warning("No audio found in " + sourceDirectory);
+    }
+  }
+
+  /**
+   * Shuffles the play order of the current playlist. The current track keeps
+   * playing and the Tracks that are still upcoming are kept.
+   */
+  public void shuffle(MediaView mediaView) {
+    if (filePaths.isEmpty()) {
+      return;
+    }
+    // Seeded, so the journal can record the order in a few bytes
+    long seed = random.nextLong();
+    PlayQueue queue = playQueue();
+    int currentTrack = queue.current();
+    // Tracks queued to play next are not journaled, and they change which
+    // tracks the seed shuffles, so then the order itself is recorded
+    boolean queued = queue.size() > queue.getTrackCount();
+    queue.shuffle(new Random(seed));
+    if (journal != null) {
+      if (queued) {
+        journal.recordOrder(queue.toOrder());
+      } else {
+        journal.recordShuffle(seed, currentTrack);
       }
-    })) {
-      String filePath = filePrefix + modifyPathToFixedPath(
-          (sourceDirectory + "\\" + file).replace("\\", "/"));
-      filePaths.add(filePath);
-      mediaPlayers.add(this.createMediaPlayerFromFile(filePath));
+      compactJournalIfNeeded();
     }
+    refreshPlaybackWindow();
+  }
 
-    if (mediaPlayers.isEmpty()) {
-      Logger.getGlobal().severe("No audio found in " + sourceDirectory);
-      throw new RuntimeException("No audio found in " + sourceDirectory);
+  /**
+   * Restores the play order to the order of the file paths. The current track
+   * keeps playing.
+   */
+  public void unshuffle() {
+    playQueue().unshuffle();
+    if (journal != null) {
+      journal.recordUnshuffle();
+      compactJournalIfNeeded();
     }
+    refreshPlaybackWindow();
   }
 
   /**
-   * Shuffles the current playlist
+   * Shuffles the play order, favouring tracks that are played through over
+   * tracks that are skipped or were just played, and keeping tracks of the
+   * same artist or folder apart. The current track keeps playing.
    */
-  public void shuffle(MediaView mediaView) {
-    this.stopAnyRunningTracks();
-    // shuffle the file paths
-    for (int i = 0; i < filePaths.size(); ++i) {
-      Random rand = new Random();
-      int temp = rand.nextInt(filePaths.size() - i) + i;
-      Collections.swap(filePaths, i, temp);
+  public void smartShuffle() {
+    if (filePaths.isEmpty()) {
+      return;
+    }
+    int count = filePaths.size();
+    int[] ids = filePaths.getIds();
+    int[] plays = new int[count];
+    int[] skips = new int[count];
+    long[] lastPlayed = new long[count];
+    registry.getPlayStats(ids, plays, skips, lastPlayed);
+    double[] weights = new double[count];
+    int[] artists = new int[count];
+    int[] folders = new int[count];
+    Map<String, Integer> artistNumbers = new HashMap<String, Integer>();
+    Map<String, Integer> folderNumbers = new HashMap<String, Integer>();
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < count; i++) {
+      String entry = registry.getUri(ids[i]);
+      weights[i] =
+          SmartShuffle.weight(plays[i], skips[i], lastPlayed[i], now);
+      folders[i] = number(folderNumbers, folderOf(entry));
+      TrackTags tags = tagLoader == null ? null : tagLoader.getTags(entry);
+      artists[i] = tags == null || tags.getArtist() == null ? -1
+          : number(artistNumbers, tags.getArtist().toLowerCase(Locale.ROOT));
+    }
+
+    PlayQueue queue = playQueue();
+    int currentTrack = Math.max(queue.current(), 0);
+    int[] order = SmartShuffle.order(weights, artists, folders, currentTrack,
+        new Random(random.nextLong()));
+    queue.setOrder(order);
+    if (journal != null) {
+      journal.recordOrder(order);
+      compactJournalIfNeeded();
+    }
+    refreshPlaybackWindow();
+  }
+
+  /**
+   * Plays tracks like the current track right after it: tracks of the same
+   * folder, and less often tracks of its sibling folders, picked by how much
+   * they are liked as in {@link #smartShuffle()}.
+   *
+   * @param count The number of tracks to play
+   * @return The number of tracks found to play, at most count
+   */
+  public int moreLikeThisFolder(int count) {
+    PlayQueue queue = playQueue();
+    if (filePaths.isEmpty() || queue.current() < 0) {
+      return 0;
     }
-    this.addAllFilesIntoPlayList(filePaths);
+    int currentTrack = queue.current();
+    String folder = folderOf(filePaths.get(currentTrack));
+    String parent = folderOf(folder);
+    int[] ids = filePaths.getIds();
+    int[] plays = new int[ids.length];
+    int[] skips = new int[ids.length];
+    long[] lastPlayed = new long[ids.length];
+    registry.getPlayStats(ids, plays, skips, lastPlayed);
+    int[] candidates = new int[ids.length];
+    double[] weights = new double[ids.length];
+    int candidateCount = 0;
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < ids.length; i++) {
+      String trackFolder = folderOf(registry.getUri(ids[i]));
+      double share;
+      if (i == currentTrack) {
+        continue;
+      } else if (trackFolder.equals(folder)) {
+        share = 1;
+      } else if (!parent.isEmpty() && folderOf(trackFolder).equals(parent)) {
+        share = SIBLING_FOLDER_SHARE;
+      } else {
+        continue;
+      }
+      candidates[candidateCount] = i;
+      weights[candidateCount++] = share
+          * SmartShuffle.weight(plays[i], skips[i], lastPlayed[i], now);
+    }
+
+    int[] picks = SmartShuffle.sample(
+        Arrays.copyOf(weights, candidateCount),
+        Math.min(count, candidateCount), new Random(random.nextLong()));
+    for (int pick : picks) {
+      queue.playNext(candidates[pick]);
+    }
+    refreshPlaybackWindow();
+    return picks.length;
+  }
+
+  /**
+   * @return The folder of the PlayList entry or folder, without the last
+   *         slash, or an empty String if it has none
+   */
+  private static String folderOf(String entry) {
+    int slash = entry.lastIndexOf('/');
+    return slash < 0 ? "" : entry.substring(0, slash);
   }
 
   /**
-   * Stops any currently running MediaPlayer and clears the current list of
-   * MediaPlayers.
+   * @return The number of the given name, numbering it if it is new
+   */
+  private static int number(Map<String, Integer> numbers, String name) {
+    Integer number = numbers.get(name);
+    if (number == null) {
+      number = numbers.size();
+      numbers.put(name, number);
+    }
+    return number;
+  }
+
+  /**
+   * Moves the track at the given index of the file paths to another index.
+   * The play order keeps playing the same tracks.
+   * 
+   * @param from Index of the track to move
+   * @param to Index to move the track to
+   */
+  public void moveTrack(int from, int to) {
+    if (from < 0 || from >= filePaths.size()) {
+      throw new IndexOutOfBoundsException("From: " + from);
+    }
+    if (to < 0 || to >= filePaths.size()) {
+      throw new IndexOutOfBoundsException("To: " + to);
+    }
+    PlayQueue queue = playQueue();
+    int[] newIndexes = new int[filePaths.size()];
+    for (int i = 0; i < newIndexes.length; i++) {
+      if (i == from) {
+        newIndexes[i] = to;
+      } else if (from < to && i > from && i <= to) {
+        newIndexes[i] = i - 1;
+      } else if (to < from && i >= to && i < from) {
+        newIndexes[i] = i + 1;
+      } else {
+        newIndexes[i] = i;
+      }
+    }
+    queue.remap(newIndexes, filePaths.size());
+    filePaths.add(to, filePaths.remove(from));
+    if (journal != null) {
+      journal.recordMove(from, to);
+      compactJournalIfNeeded();
+    }
+  }
+
+  /**
+   * Repeats a shuffle recorded in the journal. The current track stays
+   * current.
+   * 
+   * @param seed Seed of the shuffle
+   * @param shuffledTrack The track that was current when it was shuffled
+   */
+  void replayShuffle(long seed, int shuffledTrack) {
+    PlayQueue queue = playQueue();
+    int currentTrack = queue.current();
+    queue.seek(shuffledTrack);
+    queue.shuffle(new Random(seed));
+    queue.seek(currentTrack);
+    refreshPlaybackWindow();
+  }
+
+  /**
+   * Restores a shuffled play order recorded in the journal. The current track
+   * stays current.
+   * 
+   * @param order The index of the track at each position
+   */
+  void replayOrder(int[] order) {
+    PlayQueue queue = playQueue();
+    int currentTrack = queue.current();
+    queue.setOrder(order);
+    if (currentTrack >= 0) {
+      queue.seek(currentTrack);
+    }
+    refreshPlaybackWindow();
+  }
+
+  /**
+   * Writes a new snapshot of the PlayList file in the background once the
+   * journal is too long.
+   */
+  private void compactJournalIfNeeded() {
+    if (journal.needsCompaction()) {
+      journal.compact(filePaths.copy(), shuffledOrder());
+    }
+  }
+
+  /**
+   * @return the play order if it is shuffled, otherwise null
+   */
+  private int[] shuffledOrder() {
+    return playQueue().isShuffled() ? playQueue().toOrder() : null;
+  }
+
+  /**
+   * @return Whether the play order is shuffled
+   */
+  public boolean isShuffled() {
+    return playQueue().isShuffled();
+  }
+
+  /**
+   * Plays the track at the given index of the file paths once, right after
+   * the current track.
+   * 
+   * @param index Index of the track in the file paths
+   */
+  public void playNext(int index) {
+    playQueue().playNext(index);
+    refreshPlaybackWindow();
+  }
+
+  /**
+   * Returns the play order, reset to the order of the file paths if the file
+   * paths were changed through {@link #getFilePaths()}.
+   */
+  private PlayQueue playQueue() {
+    if (playQueue.getTrackCount() != filePaths.size()) {
+      playQueue.reset(filePaths.size());
+    }
+    return playQueue;
+  }
+
+  /**
+   * Creates the Tracks that are upcoming after the play order changed and
+   * disposes of the ones that are not.
+   */
+  private void refreshPlaybackWindow() {
+    if (currentTrack != null && !filePaths.isEmpty()) {
+      Track current = getCurrentlyPlaying();
+      this.getPlaybackWindow();
+      preRollNextPlayer(current);
+    }
+  }
+
+  /**
+   * Stops any currently running Track and clears the PlayList.
    * 
    * @param mediaView The MediaView associated with this PlayList's MediaPlayer
    */
   public void stopAnyRunningTracks() {
-    // Stop any currently running MediaPlayer
-    if (mediaPlayers.size() > 0) {
-      if (progressChangeListener != null) {
-        getCurrentlyPlaying().currentTimeProperty()
-            .removeListener(progressChangeListener);
+    this.stopWatching();
+    this.detachJournal();
+    this.releaseTracks();
+    filePaths = new TrackList(registry);
+    if (searchIndex != null) {
+      searchIndex.clear();
+    }
+  }
+
+  /**
+   * Keeps the PlayList up to date with the audio files added to or removed
+   * from the given directory and its subdirectories. Changes are applied on
+   * the JavaFX application thread and never interrupt the current track.
+   * Files added or removed since the directory was scanned are applied too.
+   * 
+   * @param sourceDirectory The directory the PlayList was built from
+   */
+  public void watchDirectory(File sourceDirectory) {
+    if (playListWatcher == null) {
+      final int generation = watchGeneration;
+      try {
+        playListWatcher = new PlayListWatcher(new LibraryScanner(),
+            new PlayListWatcher.Listener() {
+              @Override
+              public void onLibraryChanged(final List<String> added,
+                  final List<String> removed) {
+                Platform.runLater(new Runnable() {
+                  @Override
+                  public void run() {
+                    // Ignore changes of a directory that is not watched
+                    if (generation == watchGeneration) {
+                      applyLibraryChanges(added, removed);
+                    }
+                  }
+                });
+              }
+            });
+      } catch (IOException ioe) {
+        Logger.getGlobal().severe("An I/O Exception occurred: " + ioe);
+        ioe.printStackTrace();
+        return;
+      }
+    }
+    playListWatcher.watch(sourceDirectory, filePaths.copy());
+  }
+
+  /**
+   * Stops watching the source directories of the PlayList.
+   */
+  public void stopWatching() {
+    if (playListWatcher != null) {
+      playListWatcher.close();
+      playListWatcher = null;
+      watchGeneration++;
+    }
+  }
+
+  /**
+   * Adds and removes the given files. New files are added to the end of the
+   * PlayList. If the current track is removed it keeps playing and is taken
+   * out of the PlayList when the next track starts.
+   * 
+   * @param added The file paths to add, if not in the PlayList yet
+   * @param removed The file paths to remove
+   */
+  public void applyLibraryChanges(Collection<String> added,
+      Collection<String> removed) {
+    for (String filePath : removed) {
+      registry.setFlag(registry.register(filePath),
+          TrackRegistry.FLAG_MISSING, true);
+    }
+    for (String filePath : added) {
+      registry.setFlag(registry.register(filePath),
+          TrackRegistry.FLAG_MISSING, false);
+    }
+    if (!removed.isEmpty() && !filePaths.isEmpty()) {
+      Set<String> removedPaths = new HashSet<String>(removed);
+      String currentPath = filePaths.get(playQueue().current());
+      if (removedPaths.remove(currentPath)) {
+        removedWhilePlaying = currentPath;
       }
-      getCurrentlyPlaying().stop();
-      mediaPlayers = new ArrayList<MediaPlayer>();
-      progressChangeListener = null;
-      filePaths = new ArrayList<String>();
+      for (String filePath : removedPaths) {
+        trackPool.release(filePath);
+      }
+      if (!removedPaths.isEmpty()) {
+        removeFilePaths(removedPaths);
+      }
+    }
+
+    PlayQueue queue = playQueue();
+    Set<String> presentPaths = new HashSet<String>(filePaths);
+    List<String> newPaths = new ArrayList<String>();
+    for (String filePath : added) {
+      if (presentPaths.add(filePath)) {
+        queue.add(filePaths.size());
+        filePaths.add(filePath);
+        newPaths.add(filePath);
+      }
+    }
+    indexTracks(newPaths);
+    if (tagLoader != null) {
+      tagLoader.load(added);
+    }
+    if (journal != null && !newPaths.isEmpty()) {
+      journal.recordAdd(newPaths);
+      compactJournalIfNeeded();
+    }
+    refreshPlaybackWindow();
+  }
+
+  /**
+   * Keeps a single entry of each recording: of each group of duplicates, and
+   * of file paths that are in the PlayList more than once, only the first
+   * entry stays, or the current track if it is one of them.
+   * 
+   * @param duplicates Groups of file paths with the same audio, see
+   *        {@link DuplicateFinder#findDuplicates(Collection)}
+   * @return The number of entries removed
+   */
+  public int collapseDuplicates(List<List<String>> duplicates) {
+    if (filePaths.isEmpty()) {
+      return 0;
     }
+    // The entry that stands for each group
+    Map<String, String> recordings = new HashMap<String, String>();
+    for (List<String> group : duplicates) {
+      for (String filePath : group) {
+        recordings.put(filePath, group.get(0));
+      }
+    }
+    int current = playQueue().current();
+    Set<String> kept = new HashSet<String>();
+    kept.add(recordingOf(filePaths.get(current), recordings));
+    int[] indexes = new int[filePaths.size()];
+    int count = 0;
+    for (int i = 0; i < filePaths.size(); i++) {
+      if (i != current
+          && !kept.add(recordingOf(filePaths.get(i), recordings))) {
+        indexes[count++] = i;
+      }
+    }
+    if (count == 0) {
+      return 0;
+    }
+
+    indexes = Arrays.copyOf(indexes, count);
+    Set<String> removedPaths = new HashSet<String>();
+    for (int index : indexes) {
+      removedPaths.add(filePaths.get(index));
+    }
+    removeIndexes(indexes);
+    // Copies of the same file path share their Track
+    removedPaths.removeAll(new HashSet<String>(filePaths));
+    for (String filePath : removedPaths) {
+      trackPool.release(filePath);
+    }
+    if (journal != null) {
+      journal.recordRemove(indexes);
+      compactJournalIfNeeded();
+    }
+    refreshPlaybackWindow();
+    Logger.getGlobal().info("Removed " + count + " duplicates from PlayList");
+    return count;
+  }
+
+  private static String recordingOf(String filePath,
+      Map<String, String> recordings) {
+    String recording = recordings.get(filePath);
+    return recording == null ? filePath : recording;
   }
 
   /**
-   * Creates a MediaPlayer from the given path to the audio file. If an error
+   * Removes every track with one of the given file paths from the PlayList
+   * and its play order.
+   */
+  private void removeFilePaths(Set<String> removedPaths) {
+    int[] indexes = new int[filePaths.size()];
+    int count = 0;
+    for (int i = 0; i < filePaths.size(); i++) {
+      if (removedPaths.contains(filePaths.get(i))) {
+        indexes[count++] = i;
+      }
+    }
+    if (count > 0) {
+      indexes = Arrays.copyOf(indexes, count);
+      removeIndexes(indexes);
+      if (journal != null) {
+        journal.recordRemove(indexes);
+        compactJournalIfNeeded();
+      }
+    }
+  }
+
+  /**
+   * Removes the tracks at the given indexes of the file paths from the
+   * PlayList and its play order.
+   * 
+   * @param indexes The indexes of the tracks in ascending order
+   */
+  void removeIndexes(int[] indexes) {
+    PlayQueue queue = playQueue();
+    int[] newIndexes = new int[filePaths.size()];
+    TrackList remaining =
+        new TrackList(registry, filePaths.size() - indexes.length);
+    int next = 0;
+    for (int i = 0; i < filePaths.size(); i++) {
+      if (next < indexes.length && indexes[next] == i) {
+        newIndexes[i] = -1;
+        next++;
+      } else {
+        newIndexes[i] = remaining.size();
+        remaining.addId(filePaths.getId(i));
+      }
+    }
+    if (next < indexes.length) {
+      throw new IndexOutOfBoundsException("Index: " + indexes[next]);
+    }
+    if (searchIndex != null) {
+      for (int index : indexes) {
+        searchIndex.remove(filePaths.get(index));
+      }
+    }
+    queue.remap(newIndexes, remaining.size());
+    filePaths = remaining;
+  }
+
+  /**
+   * Stops any currently running Track and disposes of every live Track,
+   * keeping the file paths of the PlayList.
+   */
+  private void releaseTracks() {
+    if (currentTrack != null) {
+      currentTrack.stop();
+      currentTrack = null;
+    }
+    failedTracksInARow = 0;
+    if (progressUpdater != null) {
+      progressUpdater.stop();
+    }
+    trackPool.clear();
+    outputBus.setAudibleTrack(null);
+    playQueue.reset(0);
+  }
+
+  /**
+   * Creates the Track of the given path to the audio file. If an error
    * occurs, it will log it.
    * 
    * @param sourcePath The full path to the audio file
-   * @return MediaPlayer for the given audio file
+   * @return Track for the given audio file
    */
-  private MediaPlayer createMediaPlayerFromFile(String sourcePath) {
-    final MediaPlayer player = new MediaPlayer(new Media(sourcePath));
-    player.setOnError(new Runnable() {
+  private Track createTrack(String sourcePath) {
+    PlayerEvents.TrackCreation event = new PlayerEvents.TrackCreation();
+    event.begin();
+    final Track track;
+    try {
+      track = backend.createTrack(sourcePath);
+      event.outcome = PlayerEvents.OK;
+    } catch (RuntimeException re) {
+      event.outcome = PlayerEvents.outcome(re);
+      throw re;
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.source = sourcePath;
+        event.commit();
+      }
+    }
+    outputBus.configure(track);
+    track.setOnError(new Runnable() {
       @Override
       public void run() {
-        Logger.getGlobal().info("Media error occurred: " + player.getError());
+        Logger.getGlobal().info("Media error occurred: " + track.getError());
+        PlayerMetrics.GLOBAL.mediaError(track.getErrorType());
+        registry.setFlag(registry.register(track.getSource()),
+            TrackRegistry.FLAG_UNPLAYABLE, true);
+        if (track == currentTrack) {
+          skipFailedTrack();
+        }
       }
     });
-    return player;
+    track.setOnEndOfMedia(new Runnable() {
+      @Override
+      public void run() {
+        int id = registry.register(track.getSource());
+        registry.setFlag(id, TrackRegistry.FLAG_UNPLAYABLE, false);
+        registry.recordPlay(id, System.currentTimeMillis());
+        recordHistory(PlayHistory.COMPLETED, track, track.getTotalDuration());
+        if (currentTrack != null) {
+          failedTracksInARow = 0;
+          startHandover("end of media");
+          playNextTrack();
+        }
+      }
+    });
+    return track;
   }
 
   /**
-   * Saves the current file paths as a PlayList.
+   * Starts timing the handover to the next track before the next track is
+   * looked up, see {@link #changeTrack(int)}.
+   * 
+   * @param trigger What started the handover
+   */
+  private void startHandover(String trigger) {
+    pendingHandover = new PlayerEvents.TrackHandover();
+    pendingHandover.begin();
+    pendingHandover.trigger = trigger;
+  }
+
+  /**
+   * Moves on from a current track that cannot be played, unless no track of
+   * the PlayList could be played.
+   */
+  private void skipFailedTrack() {
+    if (++failedTracksInARow < filePaths.size()) {
+      startHandover("failed track");
+      playNextTrack();
+    } else {
+      Logger.getGlobal().warning("None of the tracks can be played");
+    }
+  }
+
+  /**
+   * Saves the current file paths as a PlayList, waiting until it is written.
+   * Paths ending in {@link BinaryPlayListFormat#FILE_EXTENSION} are saved in
+   * the binary format, any other path as text with one file path per line.
+   * Saving the file the PlayList was opened from starts its journal over.
+   * See {@link #saveAsPlayListInBackground(String)} to save from the JavaFX
+   * application thread.
    * 
    * @param pathToSavePlayListTo Path to save the playlist.txt to
    */
   public void saveAsPlayList(String pathToSavePlayListTo) {
-    System.out.println(this.toString());
-    File fileCurrentPlayList = new File(pathToSavePlayListTo);
-    if (!fileCurrentPlayList.exists()) {
-      fileCurrentPlayList.getParentFile().mkdirs();
-      try {
-        fileCurrentPlayList.createNewFile();
-      } catch (IOException ioe) {
-        Logger.getGlobal().severe("An I/O Exception occurred: " + ioe);
-        ioe.printStackTrace();
-      }
-    }
+    File playListFile = new File(pathToSavePlayListTo);
     try {
-      PrintWriter printWriter = new PrintWriter(
-          new FileWriter(fileCurrentPlayList.getAbsolutePath()));
-      for (String filePath : filePaths) {
-        printWriter.println(filePath);
+      PlayListSaver.write(filePaths, playListFile);
+      if (isJournalOf(playListFile)) {
+        journal.snapshotSaved(shuffledOrder());
       }
-      printWriter.close();
     } catch (IOException ioe) {
       Logger.getGlobal().severe("An I/O Exception occurred: " + ioe);
       ioe.printStackTrace();
     }
   }
 
+  /**
+   * Saves the current file paths as a PlayList on a background thread. If
+   * the same file is saved again before the earlier save started, only the
+   * newer file paths are written. Saving the file the PlayList was opened
+   * from compacts its journal.
+   * 
+   * @param pathToSavePlayListTo Path to save the PlayList to
+   * @return Future that completes with the file once it is saved, or
+   *         exceptionally if it cannot be written
+   */
+  public CompletableFuture<File> saveAsPlayListInBackground(
+      String pathToSavePlayListTo) {
+    File playListFile = new File(pathToSavePlayListTo);
+    if (isJournalOf(playListFile)) {
+      // Edits made while it is written must stay in the journal
+      return journal.compact(filePaths.copy(), shuffledOrder());
+    }
+    return playListSaver.save(filePaths.copy(), playListFile);
+  }
+
+  /**
+   * @return Whether edits are recorded in the journal of the given file
+   */
+  private boolean isJournalOf(File playListFile) {
+    return journal != null && journal.getPlayListFile()
+        .equals(playListFile.getAbsoluteFile());
+  }
+
+  /**
+   * Takes the previous track out of the PlayList if its file was removed while
+   * it was playing.
+   */
+  private void removeTrackRemovedWhilePlaying() {
+    if (removedWhilePlaying == null) {
+      return;
+    }
+    if (filePaths.size() > 1 && !filePaths.get(playQueue().current())
+        .equals(removedWhilePlaying)) {
+      removeFilePaths(Collections.singleton(removedWhilePlaying));
+    }
+    removedWhilePlaying = null;
+  }
+
+  /**
+   * Gets the next track ready ahead of its handover: its Track is created
+   * (moving it towards READY status) and rewound if it was played before.
+   */
+  private void preRollNextPlayer(Track currentPlayer) {
+    if (filePaths.size() < 2) {
+      return;
+    }
+    final Track nextPlayer = getNextPlayer();
+    if (nextPlayer == currentPlayer) {
+      // Same file queued twice in a row, it is already playing
+      return;
+    }
+    switch (nextPlayer.getStatus()) {
+      case PAUSED:
+      case PLAYING:
+      case STALLED:
+        nextPlayer.stop();
+        break;
+      case HALTED:
+        Logger.getGlobal().warning(
+            "Next track cannot be played: " + nextPlayer.getSource());
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Records the time to first audio once the given track reports that it is
+   * playing, unless it fails or is skipped first; the track after it is then
+   * watched instead.
+   */
+  private void recordFirstAudio(Track firstPlayer) {
+    firstPlayer.statusProperty()
+        .addListener(new ChangeListener<Track.Status>() {
+          @Override
+          public void changed(
+              ObservableValue<? extends Track.Status> observableValue,
+              Track.Status oldValue, Track.Status newValue) {
+            if (newValue == Track.Status.PLAYING) {
+              observableValue.removeListener(this);
+              PlayerMetrics.GLOBAL.firstAudio();
+            } else if (newValue == Track.Status.STOPPED
+                || newValue == Track.Status.HALTED
+                || newValue == Track.Status.DISPOSED) {
+              observableValue.removeListener(this);
+            }
+          }
+        });
+  }
+
+  /**
+   * Records the time from {@code handoverStart} until {@code newPlayer}
+   * reports that it is playing.
+   */
+  private void recordTransition(final Track newPlayer,
+      final long handoverStart) {
+    newPlayer.statusProperty()
+        .addListener(new ChangeListener<Track.Status>() {
+          @Override
+          public void changed(
+              ObservableValue<? extends Track.Status> observableValue,
+              Track.Status oldValue, Track.Status newValue) {
+            if (newValue == Track.Status.PLAYING) {
+              observableValue.removeListener(this);
+              long latency = backend.nanoTime() - handoverStart;
+              PlayerMetrics.GLOBAL.transition(latency);
+              if (!transitionStats.record(latency)) {
+                Logger.getGlobal()
+                    .info("Track transition took " + latency / 1000000
+                        + "ms: " + newPlayer.getSource());
+              }
+            } else if (newValue == Track.Status.STOPPED
+                || newValue == Track.Status.HALTED) {
+              // Skipped or failed before it started playing
+              observableValue.removeListener(this);
+            }
+          }
+        });
+  }
+
+  /**
+   * @return The minimum time in milliseconds between two progress updates
+   */
+  public long getProgressUpdateInterval() {
+    return progressUpdateInterval;
+  }
+
+  /**
+   * @param progressUpdateInterval The minimum time in milliseconds between two
+   *        progress updates, 0 to update once per rendered frame
+   */
+  public void setProgressUpdateInterval(long progressUpdateInterval) {
+    this.progressUpdateInterval = progressUpdateInterval;
+    if (progressUpdater != null) {
+      progressUpdater.setMinUpdateInterval(progressUpdateInterval);
+    }
+  }
+
+  /**
+   * @return The latencies of the track changes of this PlayList
+   */
+  public TransitionStats getTransitionStats() {
+    return transitionStats;
+  }
+
+  /**
+   * Sets the components the Tracks report to. Each Track moves on to the next
+   * track at the end of its media once playback started, see
+   * {@link #changeTrack(int)}. Any component may be null.
+   */
   public void startupMediaPlayers(final MediaView mediaView,
       final ProgressBar progress, final Label currentTime,
       final Label totalTime, final Tile currentlyPlayingTile) {
+    this.mediaView = mediaView;
+    this.progress = progress;
+    this.currentTime = currentTime;
+    this.totalTime = totalTime;
+    this.currentlyPlayingTile = currentlyPlayingTile;
+    // Fill the playback window
+    this.getPlaybackWindow();
+  }
 
-    // Play each audio file
-    for (int i = 0; i < mediaPlayers.size(); i++) {
-      final MediaPlayer currentPlayer = mediaPlayers.get(i);
+  /**
+   * Starts playing the current track, without any user interface unless
+   * {@link #startupMediaPlayers} set one up.
+   */
+  public void startPlayback() {
+    if (!filePaths.isEmpty()) {
+      changeTrack(0);
+    }
+  }
 
-      // Get next player (and account for looping)
-      final MediaPlayer nextPlayer =
-          mediaPlayers.get((i + 1) % mediaPlayers.size());
+  /**
+   * Moves on to the next track in the play order and plays it. The current
+   * track counts as skipped.
+   */
+  public void playNextTrack() {
+    changeTrack(1);
+  }
 
-      currentPlayer.setOnEndOfMedia(new Runnable() {
-        @Override
-        public void run() {
-          setCurrentMediaPlayer(mediaView, progress, currentTime, totalTime,
-              currentlyPlayingTile, nextPlayer);
-        }
-      });
+  /**
+   * Goes back to the previous track in the play order and plays it.
+   */
+  public void playPreviousTrack() {
+    changeTrack(-1);
+  }
+
+  /**
+   * Returns the Track of the current track. Returns null iff the PlayList is
+   * empty.
+   * 
+   * @return currently playing Track, if one exists. Otherwise, return null.
+   */
+  public Track getCurrentlyPlaying() {
+    if (filePaths.isEmpty()) {
+      return null;
+    } else {
+      return trackPool.acquire(filePaths.get(playQueue().current()));
+    }
+  }
+
+  /**
+   * Returns the Track of the track after the current one (looping back to the
+   * start). Returns null iff the PlayList is empty.
+   * 
+   * @return next Track, if one exists. Otherwise, return null.
+   */
+  public Track getNextPlayer() {
+    if (filePaths.isEmpty()) {
+      return null;
+    } else {
+      return trackPool.acquire(filePaths.get(playQueue().peek(1)));
     }
   }
 
   /**
-   * Returns the currently playing MediaPlayer. Returns null iff the
-   * mediaPlayers list is empty.
+   * Returns the Track of the track before the current one (looping back to
+   * the end). Returns null iff the PlayList is empty.
    * 
-   * @return currently playing MediaPlayer, if one exists. Otherwise, return
-   *         null.
+   * @return previous Track, if one exists. Otherwise, return null.
    */
-  public MediaPlayer getCurrentlyPlaying() {
-    if (this.getMediaPlayers().size() == 0) {
+  public Track getPreviousPlayer() {
+    if (filePaths.isEmpty()) {
       return null;
     } else {
-      return this.getMediaPlayers().get(0);
+      return trackPool.acquire(filePaths.get(playQueue().peek(-1)));
     }
   }
 
@@ -310,98 +1390,159 @@ public class PlayList {
    * 
    */
   public String toString() {
-    String output = "PlayList:\n";
+    StringBuilder output = new StringBuilder("PlayList:\n");
     for (String file : filePaths) {
-      output += file + "\n";
+      output.append(file).append('\n');
     }
-    return output;
+    return output.toString();
   }
 
   /**
-   * Sets the Currently Playing label to the file name of the audio file of the
-   * new media player and updates the progress monitor.
+   * Moves the play order by the given number of tracks, then hands playback
+   * over to the Track of the current track, sets the Currently Playing label
+   * to its title and updates the progress monitor. The move is stated rather
+   * than inferred from the Track, as the same file can be in the PlayList
+   * more than once.
    * 
-   * @param newPlayer The MediaPlayer to set the progress monitor to listen to
-   *        and to set the Current Playing label to
+   * @param move 1 for the next track, -1 for the previous one, 0 to start or
+   *        restart the current one
    */
-  public void setCurrentMediaPlayer(final MediaView mediaView,
-      final ProgressBar progress, final Label currentTime,
-      final Label totalTime, Tile currentlyPlayingTile,
-      final MediaPlayer newPlayer) {
+  private void changeTrack(int move) {
 
-    final MediaPlayer currentPlayer = mediaView.getMediaPlayer();
+    final long handoverStart = backend.nanoTime();
+    final Track currentPlayer = currentTrack;
+    PlayerEvents.TrackHandover handover = pendingHandover;
+    pendingHandover = null;
+    boolean requested = handover == null;
+    if (handover == null) {
+      handover = new PlayerEvents.TrackHandover();
+      handover.begin();
+      handover.trigger = "request";
+    }
 
-    if (currentPlayer != null) {
-      currentPlayer.stop();
-      if (progressChangeListener != null) {
-        currentPlayer.currentTimeProperty()
-            .removeListener(progressChangeListener);
-      }
-      if (newPlayer != getCurrentlyPlaying()) {
-        // Move playlist down one
-        this.getMediaPlayers().add(this.getMediaPlayers().remove(0));
+    if (move < 0) {
+      playQueue().previous();
+      removeTrackRemovedWhilePlaying();
+    } else if (move > 0) {
+      playQueue().next();
+      if (requested && currentPlayer != null) {
+        // Skipped before its end
+        registry.recordSkip(registry.register(currentPlayer.getSource()));
+        recordHistory(PlayHistory.SKIPPED, currentPlayer,
+            currentPlayer.getCurrentTime());
       }
+      removeTrackRemovedWhilePlaying();
     }
 
-    mediaView.setMediaPlayer(newPlayer);
+    final Track newPlayer = getCurrentlyPlaying();
+    currentTrack = newPlayer;
+    recordHistory(PlayHistory.STARTED, newPlayer, Duration.ZERO);
+    if (mediaView != null && newPlayer instanceof JavaFxTrack) {
+      mediaView.setMediaPlayer(((JavaFxTrack) newPlayer).getMediaPlayer());
+    }
+    if (currentPlayer != newPlayer && !PlayerMetrics.GLOBAL.hasFirstAudio()) {
+      recordFirstAudio(newPlayer);
+    }
+    if (currentPlayer == newPlayer) {
+      // Restarting the same player, rewind it first
+      newPlayer.stop();
+    } else if (currentPlayer != null) {
+      // Not loaded yet, or never will be
+      if (newPlayer.getStatus() == Track.Status.UNKNOWN
+          || newPlayer.getStatus() == Track.Status.HALTED) {
+        PlayerMetrics.GLOBAL.getPreRolls().miss();
+      } else {
+        PlayerMetrics.GLOBAL.getPreRolls().hit();
+      }
+      recordTransition(newPlayer, handoverStart);
+    }
+    // Start the pre-rolled player before stopping the old one so the only gap
+    // is the time the new player needs to start
+    outputBus.setAudibleTrack(newPlayer);
+    Track.Status statusAtHandover = newPlayer.getStatus();
     newPlayer.play();
+    handover.end();
+    if (handover.shouldCommit()) {
+      handover.source = newPlayer.getSource();
+      handover.previousSource =
+          currentPlayer == null ? null : currentPlayer.getSource();
+      handover.track = getCurrentIndex();
+      handover.status = statusAtHandover.name();
+      handover.commit();
+    }
+    if (currentPlayer != null && currentPlayer != newPlayer) {
+      currentPlayer.stop();
+    }
+    // Create the upcoming players and dispose of the ones that fell out
+    this.getPlaybackWindow();
+    preRollNextPlayer(newPlayer);
 
-    progress.setProgress(0);
-    this.progressChangeListener = new ChangeListener<Duration>() {
-      @Override
-      public void changed(ObservableValue<? extends Duration> observableValue,
-          Duration oldValue, Duration newValue) {
-
-        progress.setProgress(1.0 * newPlayer.getCurrentTime().toMillis()
-            / newPlayer.getTotalDuration().toMillis());
-
-        String currentDurationMinutes = twoDigitFormat
-            .format(Math.floor(newPlayer.getCurrentTime().toMinutes()));
-        String currentDurationSeconds = twoDigitFormat
-            .format(Math.round(newPlayer.getCurrentTime().toSeconds()
-                - Long.parseLong(currentDurationMinutes) * 60));
-
-        String totalDurationMinutes = twoDigitFormat
-            .format(Math.floor(newPlayer.getTotalDuration().toMinutes()));
-        String totalDurationSeconds = twoDigitFormat
-            .format(Math.round(newPlayer.getTotalDuration().toSeconds()
-                - Long.parseLong(totalDurationMinutes) * 60));
-
-        // Workaround for seconds hitting 60 instead of reseting
-        if (currentDurationSeconds.equals("60")) {
-          currentDurationSeconds = "00";
-          currentDurationMinutes = twoDigitFormat
-              .format(Math.floor(newPlayer.getCurrentTime().toMinutes() + 1));
-        }
-        if (totalDurationSeconds.equals("60")) {
-          totalDurationSeconds = "00";
-          totalDurationMinutes = twoDigitFormat
-              .format(Math.floor(newPlayer.getCurrentTime().toMinutes() + 1));
+    if (progress != null) {
+      if (progressUpdater == null
+          || !progressUpdater.updates(progress, currentTime, totalTime)) {
+        if (progressUpdater != null) {
+          progressUpdater.stop();
         }
-
-        currentTime
-            .setText(currentDurationMinutes + ":" + currentDurationSeconds);
-        totalTime.setText(totalDurationMinutes + ":" + totalDurationSeconds);
+        progressUpdater =
+            new ProgressUpdater(progress, currentTime, totalTime);
+        progressUpdater.setMinUpdateInterval(progressUpdateInterval);
       }
-    };
-
-    newPlayer.currentTimeProperty().addListener(progressChangeListener);
+      progressUpdater.track(newPlayer);
+    }
 
-    setCurrentlyPlayingText(currentlyPlayingTile);
+    if (currentlyPlayingTile != null) {
+      setCurrentlyPlayingText(currentlyPlayingTile);
+    }
+    if (newPlayer.getStatus() == Track.Status.HALTED) {
+      // Failed while it was upcoming
+      skipFailedTrack();
+    }
   }
 
+  /**
+   * Shows the title and artist of the current track, or its file name until
+   * its tags are loaded or if it has none.
+   */
   public void setCurrentlyPlayingText(Tile currentlyPlayingTile) {
 
-    String source = getCurrentlyPlaying().getMedia().getSource();
-    source = source.substring(0, source.length() - ".mp3".length());
+    String source = getCurrentlyPlaying().getSource();
+    currentlyPlayingEntry = source;
+    TrackTags tags = null;
+    if (tagLoader != null) {
+      tags = tagLoader.getTags(source);
+      if (tags == null) {
+        // Shown as soon as they are read
+        tagLoader.loadFirst(source);
+      }
+    }
 
-    // Since we modified the source of the audio files to remove annoying to
-    // handle characters, re-add them back.
-    source = PlayList.modifyFixedPathToTitle(source);
-    source = source.substring(source.lastIndexOf("/") + 1);
+    currentlyPlayingTile.setDescription(getDisplayTitle(source, tags));
+    currentlyPlayingTile.setText(
+        tags != null && tags.getAlbum() != null ? tags.getAlbum() : "");
+
+    Logger.getGlobal()
+        .fine("Currently playing " + currentlyPlayingTile.getDescription());
+  }
 
-    currentlyPlayingTile.setDescription(source);
+  /**
+   * Returns the text to show for a track: "Artist - Title" if its tags have a
+   * title, otherwise its file name without the extension.
+   * 
+   * @param source The PlayList entry of the track
+   * @param tags The tags of the track, or null if not loaded
+   * @return The text to show for the track
+   */
+  public static String getDisplayTitle(String source, TrackTags tags) {
+    if (tags != null && tags.getTitle() != null) {
+      return tags.getArtist() == null ? tags.getTitle()
+          : tags.getArtist() + " - " + tags.getTitle();
+    }
 
-    System.out.println(currentlyPlayingTile.getDescription());
+    // Since we modified the source of the audio files to remove annoying to
+    // handle characters, re-add them back.
+    String title = PlayList.modifyFixedPathToTitle(source);
+    title = title.substring(title.lastIndexOf("/") + 1);
+    int extension = title.lastIndexOf('.');
+    return extension > 0 ? title.substring(0, extension) : title;
   }
 }
@@ -0,0 +1,633 @@
+package simplemediaplayer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the edits of a PlayList, kept next to its PlayList
+ * file, so saving a change costs one small append instead of rewriting every
+ * entry. The PlayList file is the snapshot the journal starts from:
+ *
+ * <pre>
+ * magic "SMPJ", version byte, size and last modified time of the snapshot
+ * per record: type byte, varint payload length, payload,
+ *     CRC32 of type, length and payload, 4 bytes big endian
+ * </pre>
+ *
+ * A journal whose snapshot changed since it was started is ignored, and
+ * replaying stops at the first damaged record, which is what is left of an
+ * append that was cut short. Once the journal passes the compaction threshold
+ * the PlayList is written as a new snapshot in the background and the journal
+ * starts over with the records appended in the meantime.
+ */
+public class PlayListJournal implements Closeable {
+
+  // Suffix added to the name of the PlayList file
+  public static final String FILE_SUFFIX = ".journal";
+  // Journal size in bytes after which a new snapshot is written
+  public static final long DEFAULT_COMPACTION_THRESHOLD = 1024 * 1024;
+
+  private static final int MAGIC = 0x534d504a;
+  private static final int VERSION = 1;
+  // Magic, version, snapshot size and last modified time
+  private static final int HEADER_SIZE = 4 + 1 + 8 + 8;
+
+  // Record types
+  private static final byte ADD = 1;
+  private static final byte REMOVE = 2;
+  private static final byte MOVE = 3;
+  private static final byte SHUFFLE = 4;
+  private static final byte UNSHUFFLE = 5;
+  private static final byte ORDER = 6;
+
+  /**
+   * A compaction that has not started yet.
+   */
+  private static class Compaction {
+    private List<String> filePaths;
+    private int[] order;
+    // Journal length when the file paths were taken
+    private long mark;
+    private final CompletableFuture<File> result =
+        new CompletableFuture<File>();
+  }
+
+  private final File playListFile;
+  private final File journalFile;
+  private long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+  // Open once the first record is appended
+  private FileChannel channel;
+  // Length of the journal file, 0 if there is none
+  private long length;
+  private Compaction pendingCompaction;
+  // Whether a compaction is pending or running
+  private boolean compacting;
+  // One thread compacting at a time, which ends when there is nothing to do
+  private final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 1, 5,
+      TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "PlayList Journal Compactor");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  /**
+   * Creates the journal of the given PlayList file. Nothing is written until
+   * the first edit is recorded.
+   *
+   * @param playListFile The PlayList file the journal belongs to
+   */
+  public PlayListJournal(File playListFile) {
+    this.playListFile = playListFile.getAbsoluteFile();
+    this.journalFile = new File(this.playListFile.getPath() + FILE_SUFFIX);
+    this.length = journalFile.length();
+  }
+
+  /**
+   * @param playListFile A PlayList file
+   * @return whether the PlayList file has a journal with edits to apply
+   */
+  public static boolean exists(File playListFile) {
+    return new File(playListFile.getAbsolutePath() + FILE_SUFFIX).isFile();
+  }
+
+  /**
+   * @return the PlayList file the journal belongs to
+   */
+  public File getPlayListFile() {
+    return playListFile;
+  }
+
+  /**
+   * @return the file the journal is kept in
+   */
+  public File getJournalFile() {
+    return journalFile;
+  }
+
+  /**
+   * @return the journal size in bytes after which a new snapshot is written
+   */
+  public long getCompactionThreshold() {
+    return compactionThreshold;
+  }
+
+  /**
+   * @param compactionThreshold the journal size in bytes after which a new
+   *        snapshot is written
+   */
+  public void setCompactionThreshold(long compactionThreshold) {
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  /**
+   * @return the size of the journal file in bytes
+   */
+  public synchronized long size() {
+    return length;
+  }
+
+  /**
+   * Applies the edits in the journal to the given PlayList, which holds the
+   * entries of the PlayList file. A journal of another snapshot is deleted
+   * and a damaged end is cut off.
+   *
+   * @param playList The PlayList to apply the edits to
+   * @return The number of edits applied
+   */
+  public synchronized int replay(PlayList playList) {
+    if (!journalFile.isFile()) {
+      length = 0;
+      return 0;
+    }
+    ByteBuffer data;
+    try {
+      data = ByteBuffer.wrap(Files.readAllBytes(journalFile.toPath()));
+    } catch (IOException ioe) {
+      Logger.getGlobal().warning(
+          "Could not read PlayList journal " + journalFile + ": " + ioe);
+      return 0;
+    }
+
+    long[] snapshot = snapshotIdentity();
+    if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC
+        || data.get() != VERSION || data.getLong() != snapshot[0]
+        || data.getLong() != snapshot[1]) {
+      Logger.getGlobal().info("Ignoring PlayList journal " + journalFile
+          + " of an older version of the PlayList");
+      deleteJournal();
+      return 0;
+    }
+
+    int records = 0;
+    int end = HEADER_SIZE;
+    while (data.hasRemaining()) {
+      try {
+        int start = data.position();
+        byte type = data.get();
+        int payloadLength = BinaryPlayListFormat.readVarint(data);
+        if (payloadLength > data.remaining() - 4) {
+          break;
+        }
+        int payloadStart = data.position();
+        int checksumPosition = payloadStart + payloadLength;
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), start, checksumPosition - start);
+        if ((int) crc.getValue() != data.getInt(checksumPosition)) {
+          break;
+        }
+        ByteBuffer payload =
+            ByteBuffer.wrap(data.array(), payloadStart, payloadLength);
+        apply(type, payload, playList);
+        data.position(checksumPosition + 4);
+      } catch (IOException | BufferUnderflowException
+          | IndexOutOfBoundsException | IllegalArgumentException e) {
+        Logger.getGlobal().warning(
+            "Invalid record in PlayList journal " + journalFile + ": " + e);
+        break;
+      }
+      end = data.position();
+      records++;
+    }
+
+    length = end;
+    if (end < data.limit()) {
+      Logger.getGlobal().warning("Dropping the damaged end of PlayList journal "
+          + journalFile + " after " + records + " edits");
+      try (FileChannel journal = FileChannel.open(journalFile.toPath(),
+          StandardOpenOption.WRITE)) {
+        journal.truncate(end);
+      } catch (IOException ioe) {
+        Logger.getGlobal().warning(
+            "Could not truncate PlayList journal " + journalFile + ": " + ioe);
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Records that the given entries were added to the end of the PlayList.
+   */
+  public void recordAdd(List<String> filePaths) {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    writeVarint(payload, filePaths.size());
+    for (String filePath : filePaths) {
+      byte[] bytes = filePath.getBytes(StandardCharsets.UTF_8);
+      writeVarint(payload, bytes.length);
+      payload.write(bytes, 0, bytes.length);
+    }
+    append(ADD, payload);
+  }
+
+  /**
+   * Records that the entries at the given indexes were removed.
+   *
+   * @param indexes The indexes of the removed entries in ascending order
+   */
+  public void recordRemove(int[] indexes) {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    writeVarint(payload, indexes.length);
+    int previous = -1;
+    for (int index : indexes) {
+      // Gaps are small numbers, so most take one byte
+      writeVarint(payload, index - previous - 1);
+      previous = index;
+    }
+    append(REMOVE, payload);
+  }
+
+  /**
+   * Records that an entry was moved to another index.
+   */
+  public void recordMove(int from, int to) {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    writeVarint(payload, from);
+    writeVarint(payload, to);
+    append(MOVE, payload);
+  }
+
+  /**
+   * Records that the play order was shuffled while the given track was
+   * current. Shuffling with a {@link java.util.Random} of the same seed
+   * restores the same order.
+   */
+  public void recordShuffle(long seed, int currentTrack) {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      payload.write((int) (seed >>> shift));
+    }
+    writeVarint(payload, currentTrack);
+    append(SHUFFLE, payload);
+  }
+
+  /**
+   * Records a play order that no seed can restore, such as a smart shuffle.
+   *
+   * @param order The index of the track at each position
+   */
+  public void recordOrder(int[] order) {
+    append(ORDER, orderPayload(order));
+  }
+
+  /**
+   * Records that the play order was restored to the PlayList order.
+   */
+  public void recordUnshuffle() {
+    append(UNSHUFFLE, new ByteArrayOutputStream());
+  }
+
+  /**
+   * @return Whether the journal passed the compaction threshold and no
+   *         compaction is underway
+   */
+  public synchronized boolean needsCompaction() {
+    return !compacting && length > compactionThreshold;
+  }
+
+  /**
+   * Writes the given entries as the new snapshot in the background and starts
+   * the journal over. Edits recorded after this call are kept in the new
+   * journal. Compactions requested before an earlier one started are
+   * coalesced.
+   *
+   * @param filePaths The entries of the PlayList, must not be modified
+   *        afterwards
+   * @param order The shuffled play order, or null if it is not shuffled
+   * @return Future that completes with the PlayList file once it is written
+   */
+  public synchronized CompletableFuture<File> compact(List<String> filePaths,
+      int[] order) {
+    Compaction compaction = pendingCompaction;
+    if (compaction == null) {
+      compaction = new Compaction();
+      pendingCompaction = compaction;
+      compacting = true;
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          runCompaction();
+        }
+      });
+    }
+    compaction.filePaths = filePaths;
+    compaction.order = order;
+    compaction.mark = length;
+    return compaction.result;
+  }
+
+  /**
+   * Starts the journal over after the PlayList was written to the PlayList
+   * file. Must not be called while edits are recorded on another thread.
+   *
+   * @param order The shuffled play order, or null if it is not shuffled
+   * @throws IOException If the journal cannot be written
+   */
+  public synchronized void snapshotSaved(int[] order) throws IOException {
+    restart(length, order);
+  }
+
+  /**
+   * Closes the journal file and waits for a compaction that is pending or
+   * underway. Edits recorded afterwards reopen the file, but the journal can
+   * no longer be compacted.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      closeChannel();
+      executor.shutdown();
+    }
+    // Outside the lock, which the compaction needs to finish
+    PlayListSaver.awaitTermination(executor, "PlayList journal compaction");
+  }
+
+  private void runCompaction() {
+    Compaction compaction;
+    synchronized (this) {
+      compaction = pendingCompaction;
+      pendingCompaction = null;
+    }
+    try {
+      PlayListSaver.write(compaction.filePaths, playListFile);
+      synchronized (this) {
+        restart(compaction.mark, compaction.order);
+      }
+      compaction.result.complete(playListFile);
+    } catch (IOException | RuntimeException e) {
+      Logger.getGlobal().warning(
+          "Could not compact PlayList journal " + journalFile + ": " + e);
+      compaction.result.completeExceptionally(e);
+    } finally {
+      synchronized (this) {
+        compacting = pendingCompaction != null;
+      }
+    }
+  }
+
+  /**
+   * Replaces the journal with one for the current snapshot that holds the
+   * shuffled order and the records after {@code mark}. Called with the lock
+   * held.
+   */
+  private void restart(long mark, int[] order) throws IOException {
+    long tailStart = Math.max(mark, HEADER_SIZE);
+    ByteBuffer tail = ByteBuffer.allocate(
+        (int) Math.max(0, length - tailStart));
+    if (tail.hasRemaining()) {
+      try (FileChannel journal = FileChannel.open(journalFile.toPath(),
+          StandardOpenOption.READ)) {
+        while (tail.hasRemaining()) {
+          if (journal.read(tail, tailStart + tail.position()) < 0) {
+            throw new IOException("PlayList journal was truncated");
+          }
+        }
+      }
+      tail.flip();
+    }
+    closeChannel();
+    if (order == null && !tail.hasRemaining()) {
+      deleteJournal();
+      return;
+    }
+
+    File tempFile = new File(journalFile.getPath() + ".tmp");
+    try {
+      try (FileChannel journal = FileChannel.open(tempFile.toPath(),
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        writeFully(header(), journal);
+        if (order != null) {
+          writeFully(ByteBuffer.wrap(orderRecord(order)), journal);
+        }
+        writeFully(tail, journal);
+        journal.force(true);
+        length = journal.size();
+      }
+      try {
+        Files.move(tempFile.toPath(), journalFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException amnse) {
+        Files.move(tempFile.toPath(), journalFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException ioe) {
+      // Whatever is on disk now is not known, start over on the next record
+      length = journalFile.length();
+      throw ioe;
+    } finally {
+      Files.deleteIfExists(tempFile.toPath());
+    }
+  }
+
+  private static void apply(byte type, ByteBuffer payload, PlayList playList)
+      throws IOException {
+    switch (type) {
+      case ADD: {
+        int count = readCount(payload);
+        List<String> filePaths = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+          byte[] bytes = new byte[readCount(payload)];
+          payload.get(bytes);
+          filePaths.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        playList.addAllFilesIntoPlayList(filePaths);
+        break;
+      }
+      case REMOVE: {
+        int[] indexes = new int[readCount(payload)];
+        int previous = -1;
+        for (int i = 0; i < indexes.length; i++) {
+          previous += BinaryPlayListFormat.readVarint(payload) + 1;
+          indexes[i] = previous;
+        }
+        playList.removeIndexes(indexes);
+        break;
+      }
+      case MOVE:
+        playList.moveTrack(BinaryPlayListFormat.readVarint(payload),
+            BinaryPlayListFormat.readVarint(payload));
+        break;
+      case SHUFFLE:
+        playList.replayShuffle(payload.getLong(),
+            BinaryPlayListFormat.readVarint(payload));
+        break;
+      case UNSHUFFLE:
+        playList.unshuffle();
+        break;
+      case ORDER: {
+        int[] order = new int[readCount(payload)];
+        for (int i = 0; i < order.length; i++) {
+          order[i] = BinaryPlayListFormat.readVarint(payload);
+        }
+        playList.replayOrder(order);
+        break;
+      }
+      default:
+        throw new IOException("Unknown record type " + type);
+    }
+  }
+
+  /**
+   * Reads a count, which can never be more than the bytes left.
+   */
+  private static int readCount(ByteBuffer payload) throws IOException {
+    int count = BinaryPlayListFormat.readVarint(payload);
+    if (count > payload.remaining()) {
+      throw new IOException("Record is truncated");
+    }
+    return count;
+  }
+
+  private void append(byte type, ByteArrayOutputStream payload) {
+    byte[] record = record(type, payload);
+    synchronized (this) {
+      try {
+        if (channel == null) {
+          openChannel();
+        }
+        writeFully(ByteBuffer.wrap(record), channel);
+        length += record.length;
+      } catch (IOException ioe) {
+        Logger.getGlobal().warning(
+            "Could not write PlayList journal " + journalFile + ": " + ioe);
+        closeChannel();
+        length = journalFile.length();
+      }
+    }
+  }
+
+  /**
+   * Opens the journal for appending, starting a new one if there is none.
+   */
+  private void openChannel() throws IOException {
+    channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE);
+    if (channel.size() < HEADER_SIZE) {
+      channel.truncate(0);
+      writeFully(header(), channel);
+    }
+    length = channel.size();
+    channel.position(length);
+  }
+
+  private void closeChannel() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException ioe) {
+        Logger.getGlobal().warning(
+            "Could not close PlayList journal " + journalFile + ": " + ioe);
+      }
+      channel = null;
+    }
+  }
+
+  private void deleteJournal() {
+    closeChannel();
+    try {
+      Files.deleteIfExists(journalFile.toPath());
+    } catch (IOException ioe) {
+      Logger.getGlobal().warning(
+          "Could not delete PlayList journal " + journalFile + ": " + ioe);
+    }
+    length = 0;
+  }
+
+  private ByteBuffer header() {
+    long[] snapshot = snapshotIdentity();
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC);
+    header.put((byte) VERSION);
+    header.putLong(snapshot[0]);
+    header.putLong(snapshot[1]);
+    header.flip();
+    return header;
+  }
+
+  /**
+   * Size and last modified time of the PlayList file, -1 if there is none.
+   */
+  private long[] snapshotIdentity() {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(
+          playListFile.toPath(), BasicFileAttributes.class);
+      return new long[] { attributes.size(),
+          attributes.lastModifiedTime().toMillis() };
+    } catch (NoSuchFileException nsfe) {
+      return new long[] { -1, -1 };
+    } catch (IOException ioe) {
+      Logger.getGlobal().warning(
+          "Could not read attributes of " + playListFile + ": " + ioe);
+      return new long[] { -1, -1 };
+    }
+  }
+
+  private static byte[] orderRecord(int[] order) {
+    return record(ORDER, orderPayload(order));
+  }
+
+  private static ByteArrayOutputStream orderPayload(int[] order) {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream(order.length);
+    writeVarint(payload, order.length);
+    for (int track : order) {
+      writeVarint(payload, track);
+    }
+    return payload;
+  }
+
+  private static byte[] record(byte type, ByteArrayOutputStream payload) {
+    ByteArrayOutputStream record =
+        new ByteArrayOutputStream(payload.size() + 10);
+    record.write(type);
+    writeVarint(record, payload.size());
+    byte[] bytes = payload.toByteArray();
+    record.write(bytes, 0, bytes.length);
+    CRC32 crc = new CRC32();
+    bytes = record.toByteArray();
+    crc.update(bytes);
+    bytes = Arrays.copyOf(bytes, bytes.length + 4);
+    ByteBuffer.wrap(bytes).putInt(bytes.length - 4, (int) crc.getValue());
+    return bytes;
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7f) != 0) {
+      out.write((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static void writeFully(ByteBuffer buffer, FileChannel channel)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
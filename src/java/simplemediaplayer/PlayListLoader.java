@@ -0,0 +1,206 @@
+package simplemediaplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Reads PlayList files (one file path per line) through a memory mapped
+ * {@link FileChannel} and hands the entries over in batches as they are
+ * parsed, so playback can start before a large PlayList is fully read.
+ * <p>
+ * Lines may end with "\n", "\r\n" or "\r". Blank lines are skipped. Files in
+ * the {@link BinaryPlayListFormat} are recognized by their header and read the
+ * same way.
+ */
+public class PlayListLoader {
+
+  /**
+   * Receives the entries of the PlayList in file order.
+   */
+  public interface BatchListener {
+    void onBatch(List<String> filePaths);
+  }
+
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+  // Largest part of the file that is mapped at once
+  private static final long MAX_REGION_SIZE = 64L * 1024 * 1024;
+
+  private final int batchSize;
+  private long lineCount;
+  private long elapsedNanos;
+
+  public PlayListLoader() {
+    this(DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * @param batchSize Maximum number of entries handed over per batch
+   */
+  public PlayListLoader(int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be positive");
+    }
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Reads all entries of the given PlayList file.
+   *
+   * @param playListFile The PlayList file to read
+   * @return The file paths in the PlayList
+   * @throws IOException If the file cannot be read
+   */
+  public List<String> loadAll(File playListFile) throws IOException {
+    final List<String> filePaths = new ArrayList<String>();
+    load(playListFile, new BatchListener() {
+      @Override
+      public void onBatch(List<String> batch) {
+        filePaths.addAll(batch);
+      }
+    });
+    return filePaths;
+  }
+
+  /**
+   * Reads the given PlayList file and passes its entries to {@code listener}
+   * in batches of at most {@link #getBatchSize()} entries. Stops early if the
+   * calling thread is interrupted.
+   *
+   * @param playListFile The PlayList file to read
+   * @param listener Listener that receives each batch
+   * @return The number of entries read
+   * @throws IOException If the file cannot be read
+   */
+  public long load(File playListFile, BatchListener listener)
+      throws IOException {
+    PlayerEvents.PlayListLoad event = new PlayerEvents.PlayListLoad();
+    event.begin();
+    try {
+      long entries = read(playListFile, listener, event);
+      event.entries = entries;
+      event.outcome = Thread.currentThread().isInterrupted()
+          ? PlayerEvents.INTERRUPTED : PlayerEvents.OK;
+      return entries;
+    } catch (IOException | RuntimeException e) {
+      event.outcome = PlayerEvents.outcome(e);
+      throw e;
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.path = playListFile.getPath();
+        event.commit();
+      }
+    }
+  }
+
+  private long read(File playListFile, BatchListener listener,
+      PlayerEvents.PlayListLoad event) throws IOException {
+    long start = System.nanoTime();
+    long entries = 0;
+    List<String> batch = new ArrayList<String>(batchSize);
+    byte[] line = new byte[256];
+    int lineLength = 0;
+
+    try (FileChannel channel =
+        FileChannel.open(playListFile.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (BinaryPlayListFormat.isBinary(channel)) {
+        event.binary = true;
+        if (size > Integer.MAX_VALUE) {
+          throw new IOException("Binary PlayList too large: " + playListFile);
+        }
+        entries = BinaryPlayListFormat.read(
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, size), listener,
+            batchSize);
+        return finish(playListFile, entries, start);
+      }
+      for (long position = 0; position < size; position += MAX_REGION_SIZE) {
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+            position, Math.min(MAX_REGION_SIZE, size - position));
+        while (region.hasRemaining()) {
+          byte b = region.get();
+          if (b == '\n' || b == '\r') {
+            if (lineLength > 0) {
+              batch.add(
+                  new String(line, 0, lineLength, StandardCharsets.UTF_8));
+              lineLength = 0;
+              entries++;
+              if (batch.size() == batchSize) {
+                listener.onBatch(batch);
+                batch = new ArrayList<String>(batchSize);
+                if (Thread.currentThread().isInterrupted()) {
+                  return finish(playListFile, entries, start);
+                }
+              }
+            }
+          } else {
+            if (lineLength == line.length) {
+              line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = b;
+          }
+        }
+      }
+    }
+    // Last line without a line separator
+    if (lineLength > 0) {
+      batch.add(new String(line, 0, lineLength, StandardCharsets.UTF_8));
+      entries++;
+    }
+    if (!batch.isEmpty()) {
+      listener.onBatch(batch);
+    }
+    return finish(playListFile, entries, start);
+  }
+
+  private long finish(File playListFile, long entries, long start) {
+    lineCount = entries;
+    elapsedNanos = System.nanoTime() - start;
+    PlayerMetrics.GLOBAL.getPlayListLoads().record(elapsedNanos);
+    Logger.getGlobal()
+        .info("Loaded " + entries + " entries from " + playListFile + " in "
+            + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms ("
+            + Math.round(getLinesPerSecond()) + " lines/s)");
+    return entries;
+  }
+
+  /**
+   * @return the maximum number of entries handed over per batch
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @return the number of entries read by the last load
+   */
+  public long getLineCount() {
+    return lineCount;
+  }
+
+  /**
+   * @return the time the last load took in nanoseconds
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * @return the throughput of the last load in lines per second
+   */
+  public double getLinesPerSecond() {
+    if (elapsedNanos == 0) {
+      return 0;
+    }
+    return lineCount * 1e9 / elapsedNanos;
+  }
+}
@@ -0,0 +1,255 @@
+package simplemediaplayer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Saves PlayLists on a background thread. A PlayList is written to a temporary
+ * file next to the target, forced to disk and then moved over the target, so
+ * a crash while saving leaves either the old or the new PlayList but never a
+ * truncated one. Each write has a temporary file of its own. Saves of the
+ * same file that are requested while an earlier one is still waiting are
+ * coalesced: only the latest file paths are written.
+ */
+public class PlayListSaver implements Closeable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final byte[] LINE_SEPARATOR =
+      System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+  // How long closing waits for the saves that are waiting or underway
+  private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+  /**
+   * A save that has not started yet.
+   */
+  private static class PendingSave {
+    private List<String> filePaths;
+    private final CompletableFuture<File> result =
+        new CompletableFuture<File>();
+
+    private PendingSave(List<String> filePaths) {
+      this.filePaths = filePaths;
+    }
+  }
+
+  // One thread writing at a time, which ends when there is nothing to save
+  private final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 1, 5,
+      TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "PlayList Saver");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  // Saves waiting for the saver thread, by target file
+  private final Map<File, PendingSave> pending =
+      new HashMap<File, PendingSave>();
+
+  /**
+   * Saves the given file paths in the background.
+   *
+   * @param filePaths The file paths to save, must not be modified afterwards
+   * @param playListFile The file to save to, see {@link #write(List, File)}
+   * @return Future that completes with the file once it is saved
+   */
+  public CompletableFuture<File> save(List<String> filePaths,
+      File playListFile) {
+    final File target = playListFile.getAbsoluteFile();
+    synchronized (pending) {
+      PendingSave save = pending.get(target);
+      if (save != null) {
+        // Not started yet, write the newer file paths instead
+        save.filePaths = filePaths;
+        return save.result;
+      }
+      save = new PendingSave(filePaths);
+      pending.put(target, save);
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          runSave(target);
+        }
+      });
+      return save.result;
+    }
+  }
+
+  /**
+   * Finishes the saves that are waiting or underway and stops the saver
+   * thread. Saves requested afterwards are rejected.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+    awaitTermination(executor, "PlayList saves");
+  }
+
+  /**
+   * Waits for the given executor that was shut down to finish its tasks.
+   *
+   * @param executor The executor that was shut down
+   * @param tasks What the tasks are, for the log
+   */
+  static void awaitTermination(ExecutorService executor, String tasks) {
+    try {
+      if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        Logger.getGlobal().warning("Gave up waiting for " + tasks);
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void runSave(File target) {
+    PendingSave save;
+    synchronized (pending) {
+      save = pending.remove(target);
+    }
+    try {
+      write(save.filePaths, target);
+      save.result.complete(target);
+    } catch (IOException | RuntimeException e) {
+      save.result.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Writes the given file paths to the given file, replacing it atomically.
+   * Files ending in {@link BinaryPlayListFormat#FILE_EXTENSION} are written in
+   * the binary format, any other file as text with one file path per line.
+   * Missing parent directories are created.
+   *
+   * @param filePaths The file paths to save
+   * @param playListFile The file to save to
+   * @throws IOException If the PlayList cannot be written
+   */
+  public static void write(List<String> filePaths, File playListFile)
+      throws IOException {
+    PlayerEvents.PlayListSave event = new PlayerEvents.PlayListSave();
+    event.begin();
+    try {
+      writeAtomically(filePaths, playListFile);
+      event.outcome = PlayerEvents.OK;
+    } catch (IOException | RuntimeException e) {
+      event.outcome = PlayerEvents.outcome(e);
+      throw e;
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.path = playListFile.getPath();
+        event.entries = filePaths.size();
+        event.binary =
+            BinaryPlayListFormat.isBinaryFileName(playListFile.getName());
+        event.commit();
+      }
+    }
+  }
+
+  private static void writeAtomically(List<String> filePaths,
+      File playListFile) throws IOException {
+    long start = System.nanoTime();
+    File target = playListFile.getAbsoluteFile();
+    File directory = target.getParentFile();
+    directory.mkdirs();
+    // A temporary file of its own, as the same PlayList file can be written
+    // by a save, a saver thread and a journal compaction at the same time
+    File tempFile = Files
+        .createTempFile(directory.toPath(), target.getName(), ".tmp").toFile();
+    try {
+      try (FileChannel channel = FileChannel.open(tempFile.toPath(),
+          StandardOpenOption.WRITE)) {
+        if (BinaryPlayListFormat.isBinaryFileName(target.getName())) {
+          BinaryPlayListFormat.write(filePaths,
+              Channels.newOutputStream(channel));
+        } else {
+          writeText(filePaths, channel);
+        }
+        channel.force(true);
+      }
+      try {
+        Files.move(tempFile.toPath(), target.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException amnse) {
+        Files.move(tempFile.toPath(), target.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+      forceDirectory(directory);
+      PlayerMetrics.GLOBAL.getPlayListSaves().record(System.nanoTime() - start);
+    } finally {
+      // Only still there if saving failed
+      Files.deleteIfExists(tempFile.toPath());
+    }
+  }
+
+  /**
+   * Forces the entries of the given directory to disk, so the moved file is
+   * there after a crash.
+   */
+  private static void forceDirectory(File directory) {
+    try (FileChannel channel = FileChannel.open(directory.toPath(),
+        StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException ioe) {
+      // Some platforms, like Windows, cannot open a directory
+    }
+  }
+
+  private static void writeText(List<String> filePaths, FileChannel channel)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    for (String filePath : filePaths) {
+      byte[] line = filePath.getBytes(StandardCharsets.UTF_8);
+      if (line.length + LINE_SEPARATOR.length > buffer.remaining()) {
+        drain(buffer, channel);
+      }
+      if (line.length + LINE_SEPARATOR.length > buffer.remaining()) {
+        // Longer than the buffer
+        writeFully(ByteBuffer.wrap(line), channel);
+      } else {
+        buffer.put(line);
+      }
+      buffer.put(LINE_SEPARATOR);
+    }
+    drain(buffer, channel);
+  }
+
+  /**
+   * Writes the bytes between the start and the position of the buffer, then
+   * clears it.
+   */
+  private static void drain(ByteBuffer buffer, FileChannel channel)
+      throws IOException {
+    buffer.flip();
+    writeFully(buffer, channel);
+    buffer.clear();
+  }
+
+  private static void writeFully(ByteBuffer buffer, FileChannel channel)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
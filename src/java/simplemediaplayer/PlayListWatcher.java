@@ -0,0 +1,421 @@
+package simplemediaplayer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Watches the source directories of a {@link PlayList} (including their
+ * subdirectories) with a {@link WatchService} and reports audio files that
+ * were added or removed. Events are collected until no new event arrived for
+ * a quiet period (or the maximum delay passed) so a burst of changes, like
+ * copying an album, is reported as one batch. A rename is reported as the
+ * removal of the old file and the addition of the new one.
+ */
+public class PlayListWatcher implements Closeable {
+
+  /**
+   * Receives the batched changes. Called from the watcher thread.
+   */
+  public interface Listener {
+    /**
+     * @param added The PlayList entries of the audio files that were added
+     * @param removed The PlayList entries of the audio files that were removed
+     */
+    void onLibraryChanged(List<String> added, List<String> removed);
+  }
+
+  /**
+   * A directory to start watching.
+   */
+  private static class PendingRoot {
+    private final Path directory;
+    // PlayList entries of the audio files a scan found in it, or null
+    private final Collection<String> scannedEntries;
+
+    private PendingRoot(Path directory, Collection<String> scannedEntries) {
+      this.directory = directory;
+      this.scannedEntries = scannedEntries;
+    }
+  }
+
+  public static final long DEFAULT_QUIET_MILLIS = 500;
+  public static final long DEFAULT_MAX_DELAY_MILLIS = 3000;
+  // Separators are encoded in PlayList entries
+  private static final String SEPARATOR = PlayList.modifyPathToFixedPath("/");
+
+  private final LibraryScanner libraryScanner;
+  private final Listener listener;
+  private final WatchService watchService;
+  private final Thread watcherThread;
+  private long quietMillis = DEFAULT_QUIET_MILLIS;
+  private long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+  // Only used by the watcher thread
+  private final Map<WatchKey, Path> watchedDirectories =
+      new HashMap<WatchKey, Path>();
+  private final List<Path> watchedRoots = new ArrayList<Path>();
+  // PlayList entries of the audio files in the watched directories, by the
+  // PlayList entry of their directory, so the files under a removed
+  // directory are one range of keys
+  private final TreeMap<String, Set<String>> knownEntries =
+      new TreeMap<String, Set<String>>();
+  private final Set<String> pendingAdded = new LinkedHashSet<String>();
+  private final Set<String> pendingRemoved = new LinkedHashSet<String>();
+  private final List<PendingRoot> pendingRoots = new ArrayList<PendingRoot>();
+
+  /**
+   * Creates a watcher and starts its thread.
+   *
+   * @param libraryScanner Decides which files are audio files
+   * @param listener Listener that receives the changes
+   * @throws IOException If the file system cannot be watched
+   */
+  public PlayListWatcher(LibraryScanner libraryScanner, Listener listener)
+      throws IOException {
+    this.libraryScanner = libraryScanner;
+    this.listener = listener;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.watcherThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        processEvents();
+      }
+    }, "PlayList Watcher");
+    watcherThread.setDaemon(true);
+    watcherThread.start();
+  }
+
+  /**
+   * @param quietMillis Time without new events after which a batch of changes
+   *        is reported
+   * @param maxDelayMillis Longest time a change waits before it is reported
+   */
+  public void setBatching(long quietMillis, long maxDelayMillis) {
+    this.quietMillis = quietMillis;
+    this.maxDelayMillis = maxDelayMillis;
+  }
+
+  /**
+   * Starts watching the given directory and its subdirectories. The audio
+   * files already in it are not reported.
+   *
+   * @param directory The directory to watch
+   */
+  public void watch(File directory) {
+    watch(directory, null);
+  }
+
+  /**
+   * Starts watching the given directory and its subdirectories after a scan
+   * of it. The audio files that were added or removed since the scan read
+   * their directory are reported, as the directories are only watched from
+   * now on.
+   *
+   * @param directory The directory to watch
+   * @param scannedEntries The PlayList entries of the audio files the scan
+   *        found, must not be modified afterwards
+   */
+  public void watch(File directory, Collection<String> scannedEntries) {
+    synchronized (pendingRoots) {
+      pendingRoots.add(new PendingRoot(directory.toPath(), scannedEntries));
+    }
+    // Wake the watcher thread up to register it
+    watcherThread.interrupt();
+  }
+
+  /**
+   * Stops watching and ends the watcher thread.
+   */
+  @Override
+  public void close() {
+    try {
+      watchService.close();
+    } catch (IOException ioe) {
+      Logger.getGlobal().warning("Could not close WatchService: " + ioe);
+    }
+  }
+
+  private void processEvents() {
+    long firstPendingTime = 0;
+    while (true) {
+      WatchKey key;
+      try {
+        registerPendingRoots();
+        if (pendingAdded.isEmpty() && pendingRemoved.isEmpty()) {
+          key = watchService.take();
+          firstPendingTime = System.currentTimeMillis();
+        } else {
+          key = watchService.poll(quietMillis, TimeUnit.MILLISECONDS);
+        }
+      } catch (InterruptedException ie) {
+        // New directory to watch
+        continue;
+      } catch (ClosedWatchServiceException cwse) {
+        return;
+      }
+
+      if (key != null) {
+        handleEvents(key);
+      }
+      if (key == null
+          || System.currentTimeMillis() - firstPendingTime >= maxDelayMillis) {
+        flush();
+      }
+    }
+  }
+
+  private void registerPendingRoots() {
+    List<PendingRoot> roots;
+    synchronized (pendingRoots) {
+      roots = new ArrayList<PendingRoot>(pendingRoots);
+      pendingRoots.clear();
+    }
+    for (PendingRoot root : roots) {
+      watchedRoots.add(root.directory);
+      if (root.scannedEntries == null) {
+        register(root.directory, false);
+        continue;
+      }
+      // Whatever the scan found is known, the rest changed since
+      String rootPrefix =
+          LibraryScanner.toPlayListEntry(root.directory) + SEPARATOR;
+      Set<String> scanned = new HashSet<String>();
+      for (String entry : root.scannedEntries) {
+        if (entry.startsWith(rootPrefix)) {
+          scanned.add(entry);
+          know(entry);
+        }
+      }
+      scanned.removeAll(register(root.directory, true));
+      for (String entry : scanned) {
+        if (forget(entry)) {
+          removed(entry);
+        }
+      }
+    }
+  }
+
+  /**
+   * Registers the given directory and its subdirectories.
+   *
+   * @param directory The directory to register
+   * @param reportFiles Whether the audio files found are reported as added
+   * @return The PlayList entries of the audio files found
+   */
+  private Set<String> register(Path directory, final boolean reportFiles) {
+    final Set<String> found = new HashSet<String>();
+    try {
+      Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir,
+            BasicFileAttributes attributes) throws IOException {
+          watchedDirectories.put(dir.register(watchService,
+              StandardWatchEventKinds.ENTRY_CREATE,
+              StandardWatchEventKinds.ENTRY_DELETE), dir);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file,
+            BasicFileAttributes attributes) {
+          if (libraryScanner.isAudioFile(file.getFileName().toString())) {
+            String entry = LibraryScanner.toPlayListEntry(file);
+            found.add(entry);
+            if (know(entry) && reportFiles) {
+              added(entry);
+            }
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException ioe) {
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException ioe) {
+      Logger.getGlobal().warning("Could not watch " + directory + ": " + ioe);
+    }
+    return found;
+  }
+
+  private void handleEvents(WatchKey key) {
+    Path directory = watchedDirectories.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        resynchronize();
+        continue;
+      }
+      if (directory == null) {
+        continue;
+      }
+      Path path = directory.resolve((Path) event.context());
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+        if (Files.isDirectory(path)) {
+          register(path, true);
+        } else if (libraryScanner
+            .isAudioFile(path.getFileName().toString())) {
+          String entry = LibraryScanner.toPlayListEntry(path);
+          if (know(entry)) {
+            added(entry);
+          }
+        }
+      } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+        removedUnder(path);
+      }
+    }
+    if (!key.reset()) {
+      watchedDirectories.remove(key);
+    }
+  }
+
+  /**
+   * Removes the file at the given path, or every file under it if it was a
+   * directory.
+   */
+  private void removedUnder(Path path) {
+    String entry = LibraryScanner.toPlayListEntry(path);
+    if (forget(entry)) {
+      removed(entry);
+      return;
+    }
+    // The directory and the directories under it sort from it up to its
+    // prefix followed by the highest character, along with other names that
+    // start like it
+    String directoryPrefix = entry + SEPARATOR;
+    Iterator<Map.Entry<String, Set<String>>> iterator = knownEntries
+        .subMap(entry, true, directoryPrefix + Character.MAX_VALUE, false)
+        .entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Set<String>> directory = iterator.next();
+      if (directory.getKey().equals(entry)
+          || directory.getKey().startsWith(directoryPrefix)) {
+        iterator.remove();
+        for (String knownEntry : directory.getValue()) {
+          removed(knownEntry);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the given entry to the known entries.
+   *
+   * @return Whether it was not known yet
+   */
+  private boolean know(String entry) {
+    String directory = directoryOf(entry);
+    Set<String> entries = knownEntries.get(directory);
+    if (entries == null) {
+      entries = new HashSet<String>();
+      knownEntries.put(directory, entries);
+    }
+    return entries.add(entry);
+  }
+
+  /**
+   * Removes the given entry from the known entries.
+   *
+   * @return Whether it was known
+   */
+  private boolean forget(String entry) {
+    String directory = directoryOf(entry);
+    Set<String> entries = knownEntries.get(directory);
+    if (entries == null || !entries.remove(entry)) {
+      return false;
+    }
+    if (entries.isEmpty()) {
+      knownEntries.remove(directory);
+    }
+    return true;
+  }
+
+  /**
+   * @return the known entries
+   */
+  private Set<String> allKnownEntries() {
+    Set<String> entries = new HashSet<String>();
+    for (Set<String> directoryEntries : knownEntries.values()) {
+      entries.addAll(directoryEntries);
+    }
+    return entries;
+  }
+
+  /**
+   * @return the PlayList entry of the directory of the given PlayList entry
+   */
+  private static String directoryOf(String entry) {
+    return entry.substring(0, Math.max(0, entry.lastIndexOf(SEPARATOR)));
+  }
+
+  /**
+   * Events were lost, rescan the watched directories and report the
+   * differences.
+   */
+  private void resynchronize() {
+    Set<String> previous = allKnownEntries();
+    knownEntries.clear();
+    for (Path root : watchedRoots) {
+      register(root, false);
+    }
+    for (String entry : allKnownEntries()) {
+      if (!previous.remove(entry)) {
+        added(entry);
+      }
+    }
+    for (String entry : previous) {
+      removed(entry);
+    }
+  }
+
+  private void added(String entry) {
+    // A file that was removed and put back is unchanged
+    if (!pendingRemoved.remove(entry)) {
+      pendingAdded.add(entry);
+    }
+  }
+
+  private void removed(String entry) {
+    // A file that was added and removed again was never reported
+    if (!pendingAdded.remove(entry)) {
+      pendingRemoved.add(entry);
+    }
+  }
+
+  private void flush() {
+    if (pendingAdded.isEmpty() && pendingRemoved.isEmpty()) {
+      return;
+    }
+    List<String> added = new ArrayList<String>(pendingAdded);
+    List<String> removed = new ArrayList<String>(pendingRemoved);
+    pendingAdded.clear();
+    pendingRemoved.clear();
+    Collections.sort(added);
+    listener.onLibraryChanged(added, removed);
+  }
+}
@@ -0,0 +1,356 @@
+package simplemediaplayer;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Play order of a {@link PlayList}: a cursor into a permutation of the track
+ * indexes, kept in a primitive array. Moving to the next or previous track is
+ * O(1), shuffling and unshuffling permute the array in place, and tracks can
+ * be queued to play next without touching the tracks themselves.
+ * <p>
+ * A track queued with {@link #playNext(int)} is played once: it is taken out
+ * of the order again when the cursor moves past it. Such entries are stored
+ * as the complement ({@code ~track}) of their track index.
+ */
+public class PlayQueue {
+
+  private int[] order = new int[16];
+  // Number of entries in order, including tracks queued to play next
+  private int size;
+  // Number of tracks, the values in order are in [0, trackCount)
+  private int trackCount;
+  private int cursor;
+  private boolean shuffled;
+
+  /**
+   * Resets the order to play all tracks in their PlayList order.
+   *
+   * @param trackCount The number of tracks
+   */
+  public void reset(int trackCount) {
+    ensureCapacity(trackCount);
+    for (int i = 0; i < trackCount; i++) {
+      order[i] = i;
+    }
+    this.size = trackCount;
+    this.trackCount = trackCount;
+    this.cursor = 0;
+    this.shuffled = false;
+  }
+
+  /**
+   * @return the number of tracks
+   */
+  public int getTrackCount() {
+    return trackCount;
+  }
+
+  /**
+   * @return the number of entries, including tracks queued to play next
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the position of the current track in the order
+   */
+  public int getCursor() {
+    return cursor;
+  }
+
+  /**
+   * @return Whether the order is shuffled
+   */
+  public boolean isShuffled() {
+    return shuffled;
+  }
+
+  /**
+   * @return the index of the current track, -1 if there are no tracks
+   */
+  public int current() {
+    return peek(0);
+  }
+
+  /**
+   * Returns the track {@code offset} positions away from the current one,
+   * wrapping around at both ends.
+   *
+   * @param offset Positions after (or before, if negative) the current track
+   * @return the index of the track, -1 if there are no tracks
+   */
+  public int peek(int offset) {
+    if (size == 0) {
+      return -1;
+    }
+    int position = (int) (((long) cursor + offset) % size);
+    if (position < 0) {
+      position += size;
+    }
+    return track(order[position]);
+  }
+
+  /**
+   * Returns the track at the given position of the order.
+   *
+   * @param position Position in the order, from 0 to {@link #size()}
+   * @return the index of the track
+   */
+  public int get(int position) {
+    if (position < 0 || position >= size) {
+      throw new IndexOutOfBoundsException("Position: " + position);
+    }
+    return track(order[position]);
+  }
+
+  /**
+   * Moves to the next track, wrapping around at the end.
+   *
+   * @return the index of the new current track, -1 if there are no tracks
+   */
+  public int next() {
+    if (size == 0) {
+      return -1;
+    }
+    if (order[cursor] < 0) {
+      // Played once, take it out; the next entry moves under the cursor
+      removeAt(cursor);
+      if (cursor == size) {
+        cursor = 0;
+      }
+    } else {
+      cursor = (cursor + 1) % size;
+    }
+    return current();
+  }
+
+  /**
+   * Moves to the previous track, wrapping around at the start.
+   *
+   * @return the index of the new current track, -1 if there are no tracks
+   */
+  public int previous() {
+    if (size == 0) {
+      return -1;
+    }
+    cursor = (cursor + size - 1) % size;
+    return current();
+  }
+
+  /**
+   * Appends a track at the end of the order.
+   *
+   * @param track Index of the new track, must be {@link #getTrackCount()}
+   */
+  public void add(int track) {
+    if (track != trackCount) {
+      throw new IllegalArgumentException(
+          "Expected track " + trackCount + " but was " + track);
+    }
+    ensureCapacity(size + 1);
+    order[size++] = track;
+    trackCount++;
+  }
+
+  /**
+   * Queues a track to be played once right after the current track, after
+   * any tracks already queued to play next.
+   *
+   * @param track Index of the track
+   */
+  public void playNext(int track) {
+    if (track < 0 || track >= trackCount) {
+      throw new IndexOutOfBoundsException("Track: " + track);
+    }
+    int position = size == 0 ? 0 : cursor + 1;
+    while (position < size && order[position] < 0) {
+      position++;
+    }
+    ensureCapacity(size + 1);
+    System.arraycopy(order, position, order, position + 1, size - position);
+    order[position] = ~track;
+    size++;
+  }
+
+  /**
+   * Shuffles the order in place. The current track stays current and tracks
+   * queued to play next stay right after it.
+   *
+   * @param random Source of randomness
+   */
+  public void shuffle(Random random) {
+    if (size == 0) {
+      return;
+    }
+    moveCursorToStart();
+    int start = queuedRunEnd();
+    for (int i = size - 1; i > start; i--) {
+      int j = start + random.nextInt(i - start + 1);
+      int swap = order[i];
+      order[i] = order[j];
+      order[j] = swap;
+    }
+    shuffled = true;
+  }
+
+  /**
+   * Restores the PlayList order. The current track stays current and tracks
+   * queued to play next stay right after it.
+   */
+  public void unshuffle() {
+    if (size == 0) {
+      shuffled = false;
+      return;
+    }
+    moveCursorToStart();
+    int current = current();
+    int[] queued = Arrays.copyOfRange(order, 1, queuedRunEnd());
+
+    ensureCapacity(trackCount + queued.length);
+    for (int i = 0; i < trackCount; i++) {
+      order[i] = i;
+    }
+    size = trackCount;
+    cursor = current;
+    for (int entry : queued) {
+      playNext(~entry);
+    }
+    shuffled = false;
+  }
+
+  /**
+   * Makes the first entry of the given track current.
+   *
+   * @param track Index of the track
+   */
+  public void seek(int track) {
+    for (int i = 0; i < size; i++) {
+      if (track(order[i]) == track) {
+        cursor = i;
+        return;
+      }
+    }
+    throw new IndexOutOfBoundsException("Track: " + track);
+  }
+
+  /**
+   * Returns the order of the tracks, without the tracks queued to play next.
+   *
+   * @return the index of the track at each position
+   */
+  public int[] toOrder() {
+    int[] tracks = new int[trackCount];
+    int length = 0;
+    for (int i = 0; i < size; i++) {
+      if (order[i] >= 0) {
+        tracks[length++] = order[i];
+      }
+    }
+    return tracks;
+  }
+
+  /**
+   * Replaces the order with the given shuffled order. The first track becomes
+   * current and tracks queued to play next stay right after it.
+   *
+   * @param tracks The index of the track at each position, a permutation of
+   *        all tracks
+   */
+  public void setOrder(int[] tracks) {
+    if (tracks.length != trackCount) {
+      throw new IllegalArgumentException(
+          "Expected " + trackCount + " tracks but was " + tracks.length);
+    }
+    boolean[] seen = new boolean[trackCount];
+    for (int track : tracks) {
+      if (track < 0 || track >= trackCount || seen[track]) {
+        throw new IllegalArgumentException("Not a permutation: " + track);
+      }
+      seen[track] = true;
+    }
+    int[] queued = size == 0 ? new int[0]
+        : Arrays.copyOfRange(order, cursor + 1, queuedRunEnd());
+    ensureCapacity(trackCount + queued.length);
+    System.arraycopy(tracks, 0, order, 0, trackCount);
+    size = trackCount;
+    cursor = 0;
+    for (int entry : queued) {
+      playNext(~entry);
+    }
+    shuffled = true;
+  }
+
+  /**
+   * Renumbers the tracks after tracks were removed from the PlayList. Entries
+   * of removed tracks are dropped. If the current track was removed, the track
+   * after it becomes current.
+   *
+   * @param newIndexes The new index of each old track, -1 if it was removed
+   * @param newTrackCount The number of remaining tracks
+   */
+  public void remap(int[] newIndexes, int newTrackCount) {
+    int newSize = 0;
+    int newCursor = 0;
+    for (int i = 0; i < size; i++) {
+      if (i == cursor) {
+        newCursor = newSize;
+      }
+      int entry = order[i];
+      int newIndex = newIndexes[track(entry)];
+      if (newIndex >= 0) {
+        order[newSize++] = entry < 0 ? ~newIndex : newIndex;
+      }
+    }
+    size = newSize;
+    trackCount = newTrackCount;
+    cursor = newSize == 0 ? 0 : newCursor % newSize;
+  }
+
+  private static int track(int entry) {
+    return entry < 0 ? ~entry : entry;
+  }
+
+  /**
+   * Rotates the order so the current track is at position 0.
+   */
+  private void moveCursorToStart() {
+    reverse(0, cursor);
+    reverse(cursor, size);
+    reverse(0, size);
+    cursor = 0;
+  }
+
+  /**
+   * @return the position after the run of tracks queued to play next that
+   *         follows the cursor
+   */
+  private int queuedRunEnd() {
+    int end = cursor + 1;
+    while (end < size && order[end] < 0) {
+      end++;
+    }
+    return end;
+  }
+
+  private void reverse(int from, int to) {
+    for (int i = from, j = to - 1; i < j; i++, j--) {
+      int swap = order[i];
+      order[i] = order[j];
+      order[j] = swap;
+    }
+  }
+
+  private void removeAt(int position) {
+    System.arraycopy(order, position + 1, order, position,
+        size - position - 1);
+    size--;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (order.length < capacity) {
+      order = Arrays.copyOf(order, Math.max(capacity, order.length * 2));
+    }
+  }
+}
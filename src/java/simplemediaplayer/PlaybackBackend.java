@@ -0,0 +1,25 @@
+package simplemediaplayer;
+
+/**
+ * Creates the {@link Track}s a {@link PlayList} plays and keeps the time
+ * their transitions are measured in. {@link JavaFxBackend} plays through
+ * JavaFX MediaPlayers, {@link SimulatedBackend} plays synthetic tracks on a
+ * virtual clock without any media stack.
+ */
+public interface PlaybackBackend {
+
+  /**
+   * Creates the Track for the given media source. It starts loading right
+   * away but does not play until asked to.
+   *
+   * @param source The media source (URI) of the track
+   * @return The new Track
+   */
+  Track createTrack(String source);
+
+  /**
+   * @return the current time of the backend in nanoseconds, only meaningful
+   *         as the difference of two values
+   */
+  long nanoTime();
+}
@@ -0,0 +1,148 @@
+package simplemediaplayer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the player, to see where the time goes when
+ * opening a library or changing tracks is slow. The events are enabled in
+ * every recording (e.g. {@code -XX:StartFlightRecording}) unless its settings
+ * disable them. While no recording is running, creating and committing them
+ * costs next to nothing; their fields are only filled in when
+ * {@link Event#shouldCommit()} is true.
+ */
+public final class PlayerEvents {
+
+  public static final String CATEGORY = "Simple Media Player";
+
+  // Outcomes of the events
+  public static final String OK = "ok";
+  public static final String CANCELLED = "cancelled";
+  public static final String INTERRUPTED = "interrupted";
+
+  private PlayerEvents() {}
+
+  /**
+   * Scan of a directory tree for audio files, see {@link LibraryScanner}.
+   */
+  @Name("simplemediaplayer.DirectoryScan")
+  @Label("Directory Scan")
+  @Category({ CATEGORY, "Library" })
+  @StackTrace(false)
+  public static class DirectoryScan extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Files Found")
+    public int files;
+
+    @Label("Index Hits")
+    @Description("Directories taken from the library index")
+    public int indexHits;
+
+    @Label("Index Misses")
+    @Description("Directories that had to be read")
+    public int indexMisses;
+
+    @Label("Outcome")
+    public String outcome;
+  }
+
+  /**
+   * Reading a PlayList file, see {@link PlayListLoader}.
+   */
+  @Name("simplemediaplayer.PlayListLoad")
+  @Label("PlayList Load")
+  @Category({ CATEGORY, "PlayList" })
+  @StackTrace(false)
+  public static class PlayListLoad extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Entries")
+    public long entries;
+
+    @Label("Binary")
+    public boolean binary;
+
+    @Label("Outcome")
+    public String outcome;
+  }
+
+  /**
+   * Writing a PlayList file, see {@link PlayListSaver#write}.
+   */
+  @Name("simplemediaplayer.PlayListSave")
+  @Label("PlayList Save")
+  @Category({ CATEGORY, "PlayList" })
+  @StackTrace(false)
+  public static class PlayListSave extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Binary")
+    public boolean binary;
+
+    @Label("Outcome")
+    public String outcome;
+  }
+
+  /**
+   * Creation of the Track (MediaPlayer) of a track entering the playback
+   * window.
+   */
+  @Name("simplemediaplayer.TrackCreation")
+  @Label("Track Creation")
+  @Category({ CATEGORY, "Playback" })
+  @StackTrace(false)
+  public static class TrackCreation extends Event {
+    @Label("Source")
+    public String source;
+
+    @Label("Outcome")
+    public String outcome;
+  }
+
+  /**
+   * Hand over from one track to the next, from the end of the previous track
+   * (or the request to change tracks) until the new track is told to play.
+   */
+  @Name("simplemediaplayer.TrackHandover")
+  @Label("Track Handover")
+  @Category({ CATEGORY, "Playback" })
+  @StackTrace(false)
+  public static class TrackHandover extends Event {
+    @Label("Source")
+    public String source;
+
+    @Label("Previous Source")
+    public String previousSource;
+
+    @Label("Trigger")
+    @Description("What started the handover, e.g. end of media")
+    public String trigger;
+
+    @Label("Track")
+    @Description("Index of the new track in the PlayList")
+    public int track;
+
+    @Label("Status")
+    @Description("Status of the new track at the handover, READY if it was "
+        + "pre-rolled")
+    public String status;
+  }
+
+  /**
+   * @return the outcome of an operation that failed with the given exception
+   */
+  static String outcome(Throwable t) {
+    return t.toString();
+  }
+}
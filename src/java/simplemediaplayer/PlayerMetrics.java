@@ -0,0 +1,360 @@
+package simplemediaplayer;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters of what the player does, for monitoring it in production through
+ * JMX. Everything is recorded in striped {@link LongAdder}s and
+ * {@link LongAccumulator}s, so recording never takes a lock and costs little
+ * more than an increment, even on the playback path; the totals are only
+ * summed up when they are read.
+ */
+public class PlayerMetrics implements PlayerMetricsMXBean {
+
+  /**
+   * Number, mean, maximum and last duration of an operation.
+   */
+  public static class Timing {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(MAX, 0);
+    private volatile long lastNanos;
+
+    /**
+     * @param nanos Duration of one operation in nanoseconds
+     */
+    void record(long nanos) {
+      count.increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+      lastNanos = nanos;
+    }
+
+    /**
+     * @return the number of recorded operations
+     */
+    public long getCount() {
+      return count.sum();
+    }
+
+    /**
+     * @return the mean duration in milliseconds, 0 if nothing was recorded
+     */
+    public double getMeanMillis() {
+      long recorded = count.sum();
+      return recorded == 0 ? 0 : totalNanos.sum() / 1e6 / recorded;
+    }
+
+    /**
+     * @return the longest duration in milliseconds
+     */
+    public double getMaxMillis() {
+      return maxNanos.get() / 1e6;
+    }
+
+    /**
+     * @return the duration of the last operation in milliseconds
+     */
+    public double getLastMillis() {
+      return lastNanos / 1e6;
+    }
+
+    void reset() {
+      count.reset();
+      totalNanos.reset();
+      maxNanos.reset();
+      lastNanos = 0;
+    }
+  }
+
+  /**
+   * Hits and misses of a cache.
+   */
+  public static class CacheStats {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    void hit() {
+      hits.increment();
+    }
+
+    void miss() {
+      misses.increment();
+    }
+
+    /**
+     * @return the number of hits
+     */
+    public long getHits() {
+      return hits.sum();
+    }
+
+    /**
+     * @return the number of misses
+     */
+    public long getMisses() {
+      return misses.sum();
+    }
+
+    /**
+     * @return the share of lookups that were hits, 0 if there were none
+     */
+    public double getHitRate() {
+      long hitCount = hits.sum();
+      long total = hitCount + misses.sum();
+      return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    void reset() {
+      hits.reset();
+      misses.reset();
+    }
+  }
+
+  public static final String OBJECT_NAME =
+      "simplemediaplayer:type=PlayerMetrics";
+
+  private static final long[] TRANSITION_BOUNDS_MILLIS =
+      { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000 };
+  private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+    @Override
+    public long applyAsLong(long left, long right) {
+      return Math.max(left, right);
+    }
+  };
+
+  // Metrics of the whole player
+  public static final PlayerMetrics GLOBAL = new PlayerMetrics();
+
+  // Read from the JMX thread without synchronization, so the size may be a
+  // moment out of date
+  private volatile PlayList playList;
+  private final LongAdder liveTracks = new LongAdder();
+  private final LongAdder tracksCreated = new LongAdder();
+  private final ConcurrentHashMap<String, LongAdder> mediaErrors =
+      new ConcurrentHashMap<String, LongAdder>();
+  private final Timing scans = new Timing();
+  private final Timing playListLoads = new Timing();
+  private final Timing playListSaves = new Timing();
+  private final LongAdder[] transitionLatency =
+      new LongAdder[TRANSITION_BOUNDS_MILLIS.length + 1];
+  private final CacheStats tagCache = new CacheStats();
+  private final CacheStats libraryIndex = new CacheStats();
+  private final CacheStats preRolls = new CacheStats();
+  // Milliseconds from the start of the JVM, -1 until it happened
+  private final AtomicLong timeToWindow = new AtomicLong(-1);
+  private final AtomicLong timeToFirstAudio = new AtomicLong(-1);
+
+  public PlayerMetrics() {
+    for (int i = 0; i < transitionLatency.length; i++) {
+      transitionLatency[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Registers {@link #GLOBAL} with the platform MBeanServer, unless it is
+   * already registered.
+   */
+  public static void register() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(GLOBAL, name);
+      }
+    } catch (JMException jme) {
+      Logger.getGlobal().warning("Could not register player metrics: " + jme);
+    }
+  }
+
+  /**
+   * @param playList The PlayList being played, reported by
+   *        {@link #getPlayListSize()}
+   */
+  public void setPlayList(PlayList playList) {
+    this.playList = playList;
+  }
+
+  /**
+   * Records that the player window is showing, once.
+   */
+  public void windowShown() {
+    long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+    if (timeToWindow.compareAndSet(-1, uptime)) {
+      Logger.getGlobal().info("Window shown " + uptime + "ms after launch");
+    }
+  }
+
+  /**
+   * @return Whether the first track started playing
+   */
+  boolean hasFirstAudio() {
+    return timeToFirstAudio.get() != -1;
+  }
+
+  /**
+   * Records that the first track started playing, once.
+   */
+  void firstAudio() {
+    long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+    if (timeToFirstAudio.compareAndSet(-1, uptime)) {
+      Logger.getGlobal().info("First audio " + uptime + "ms after launch");
+    }
+  }
+
+  void trackCreated() {
+    tracksCreated.increment();
+    liveTracks.increment();
+  }
+
+  void trackDisposed() {
+    liveTracks.decrement();
+  }
+
+  /**
+   * @param type The kind of error, e.g. MEDIA_UNAVAILABLE
+   */
+  void mediaError(String type) {
+    if (type == null) {
+      type = "UNKNOWN";
+    }
+    LongAdder count = mediaErrors.get(type);
+    if (count == null) {
+      LongAdder added = new LongAdder();
+      count = mediaErrors.putIfAbsent(type, added);
+      if (count == null) {
+        count = added;
+      }
+    }
+    count.increment();
+  }
+
+  /**
+   * @param latencyNanos Time from handover to playback in nanoseconds
+   */
+  void transition(long latencyNanos) {
+    long millis = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+    int bucket = 0;
+    while (bucket < TRANSITION_BOUNDS_MILLIS.length
+        && millis >= TRANSITION_BOUNDS_MILLIS[bucket]) {
+      bucket++;
+    }
+    transitionLatency[bucket].increment();
+  }
+
+  @Override
+  public int getPlayListSize() {
+    PlayList current = playList;
+    return current == null ? -1 : current.getFilePaths().size();
+  }
+
+  @Override
+  public int getRegisteredTracks() {
+    PlayList current = playList;
+    return (current == null ? TrackRegistry.GLOBAL
+        : current.getTrackRegistry()).size();
+  }
+
+  @Override
+  public long getTimeToWindowMillis() {
+    return timeToWindow.get();
+  }
+
+  @Override
+  public long getTimeToFirstAudioMillis() {
+    return timeToFirstAudio.get();
+  }
+
+  @Override
+  public long getLiveTracks() {
+    return liveTracks.sum();
+  }
+
+  @Override
+  public long getTracksCreated() {
+    return tracksCreated.sum();
+  }
+
+  @Override
+  public Map<String, Long> getMediaErrors() {
+    Map<String, Long> counts = new TreeMap<String, Long>();
+    for (Map.Entry<String, LongAdder> entry : mediaErrors.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().sum());
+    }
+    return counts;
+  }
+
+  @Override
+  public Timing getScans() {
+    return scans;
+  }
+
+  @Override
+  public Timing getPlayListLoads() {
+    return playListLoads;
+  }
+
+  @Override
+  public Timing getPlayListSaves() {
+    return playListSaves;
+  }
+
+  @Override
+  public long[] getTransitionLatencyHistogram() {
+    long[] counts = new long[transitionLatency.length];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = transitionLatency[i].sum();
+    }
+    return counts;
+  }
+
+  @Override
+  public long[] getTransitionLatencyBoundsMillis() {
+    return TRANSITION_BOUNDS_MILLIS.clone();
+  }
+
+  @Override
+  public CacheStats getTagCache() {
+    return tagCache;
+  }
+
+  @Override
+  public CacheStats getLibraryIndex() {
+    return libraryIndex;
+  }
+
+  @Override
+  public CacheStats getPreRolls() {
+    return preRolls;
+  }
+
+  @Override
+  public void reset() {
+    tracksCreated.reset();
+    mediaErrors.clear();
+    scans.reset();
+    playListLoads.reset();
+    playListSaves.reset();
+    for (LongAdder count : transitionLatency) {
+      count.reset();
+    }
+    tagCache.reset();
+    libraryIndex.reset();
+    preRolls.reset();
+  }
+}
@@ -0,0 +1,97 @@
+package simplemediaplayer;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link PlayerMetrics}, registered as
+ * {@value PlayerMetrics#OBJECT_NAME}.
+ */
+public interface PlayerMetricsMXBean {
+
+  /**
+   * @return the number of tracks in the PlayList being played, -1 if none is
+   */
+  int getPlayListSize();
+
+  /**
+   * @return the number of tracks in the registry of the PlayList being
+   *         played, or the {@link TrackRegistry#GLOBAL} registry, in any
+   *         PlayList since startup
+   */
+  int getRegisteredTracks();
+
+  /**
+   * @return the time from the start of the JVM until the player window
+   *         showed, in milliseconds, -1 until it did
+   */
+  long getTimeToWindowMillis();
+
+  /**
+   * @return the time from the start of the JVM until the first track played,
+   *         in milliseconds, -1 until one did
+   */
+  long getTimeToFirstAudioMillis();
+
+  /**
+   * @return the number of Tracks (MediaPlayers) that are not disposed of
+   */
+  long getLiveTracks();
+
+  /**
+   * @return the number of Tracks created since startup
+   */
+  long getTracksCreated();
+
+  /**
+   * @return the number of media errors by type, e.g. MEDIA_UNAVAILABLE
+   */
+  Map<String, Long> getMediaErrors();
+
+  /**
+   * @return the time directory scans take
+   */
+  PlayerMetrics.Timing getScans();
+
+  /**
+   * @return the time reading PlayList files takes
+   */
+  PlayerMetrics.Timing getPlayListLoads();
+
+  /**
+   * @return the time writing PlayList files takes
+   */
+  PlayerMetrics.Timing getPlayListSaves();
+
+  /**
+   * @return the number of track transitions in each latency bucket, see
+   *         {@link #getTransitionLatencyBoundsMillis()}
+   */
+  long[] getTransitionLatencyHistogram();
+
+  /**
+   * @return the upper bound in milliseconds of each latency bucket but the
+   *         last, which counts the slower transitions
+   */
+  long[] getTransitionLatencyBoundsMillis();
+
+  /**
+   * @return the hit rate of the tag cache
+   */
+  PlayerMetrics.CacheStats getTagCache();
+
+  /**
+   * @return the hit rate of the library index
+   */
+  PlayerMetrics.CacheStats getLibraryIndex();
+
+  /**
+   * @return how often the next track was loaded before its handover
+   */
+  PlayerMetrics.CacheStats getPreRolls();
+
+  /**
+   * Clears all counters and timings. The live Tracks and the startup times
+   * are kept.
+   */
+  void reset();
+}
@@ -0,0 +1,190 @@
+package simplemediaplayer;
+
+import java.util.concurrent.TimeUnit;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.util.Duration;
+
+/**
+ * Updates the progress bar and the current/total time labels of the playing
+ * track. Instead of reacting to every tick of the Track's current time,
+ * it samples the time at most once per rendered frame (or at a configurable
+ * rate) and only touches a control when what it shows actually changed, so
+ * the labels are updated once a second and the formatting allocates nothing
+ * but the new label text.
+ */
+public class ProgressUpdater {
+
+  // Tens and ones digit of 0 to 99
+  private static final char[] DIGIT_TENS = new char[100];
+  private static final char[] DIGIT_ONES = new char[100];
+
+  static {
+    for (int i = 0; i < 100; i++) {
+      DIGIT_TENS[i] = (char) ('0' + i / 10);
+      DIGIT_ONES[i] = (char) ('0' + i % 10);
+    }
+  }
+
+  // Smallest change of the progress bar that is drawn
+  private static final double PROGRESS_STEP = 0.001;
+
+  private final ProgressBar progress;
+  private final Label currentTime;
+  private final Label totalTime;
+  private final AnimationTimer timer;
+  private final char[] buffer = new char[24];
+  private long minUpdateIntervalNanos;
+
+  private Track player;
+  private long lastUpdateNanos;
+  // What the controls show, to skip updates that change nothing
+  private long shownCurrentSeconds;
+  private long shownTotalSeconds;
+  private double shownProgress;
+
+  /**
+   * @param progress ProgressBar that shows the progress of the track
+   * @param currentTime Label that shows the current time of the track
+   * @param totalTime Label that shows the total duration of the track
+   */
+  public ProgressUpdater(ProgressBar progress, Label currentTime,
+      Label totalTime) {
+    this.progress = progress;
+    this.currentTime = currentTime;
+    this.totalTime = totalTime;
+    this.timer = new AnimationTimer() {
+      @Override
+      public void handle(long now) {
+        if (now - lastUpdateNanos >= minUpdateIntervalNanos) {
+          lastUpdateNanos = now;
+          update();
+        }
+      }
+    };
+  }
+
+  /**
+   * Whether this updater updates the given controls.
+   */
+  public boolean updates(ProgressBar progress, Label currentTime,
+      Label totalTime) {
+    return this.progress == progress && this.currentTime == currentTime
+        && this.totalTime == totalTime;
+  }
+
+  /**
+   * @param minUpdateIntervalMillis Minimum time between two updates, 0 to
+   *        update once per rendered frame
+   */
+  public void setMinUpdateInterval(long minUpdateIntervalMillis) {
+    this.minUpdateIntervalNanos =
+        TimeUnit.MILLISECONDS.toNanos(minUpdateIntervalMillis);
+  }
+
+  /**
+   * Starts showing the progress of the given Track.
+   *
+   * @param player The Track that started playing
+   */
+  public void track(Track player) {
+    this.player = player;
+    shownCurrentSeconds = -1;
+    shownTotalSeconds = -1;
+    shownProgress = 0;
+    progress.setProgress(0);
+    update();
+    timer.start();
+  }
+
+  /**
+   * Stops updating the controls.
+   */
+  public void stop() {
+    timer.stop();
+    player = null;
+  }
+
+  private void update() {
+    if (player == null) {
+      return;
+    }
+    double currentMillis = player.getCurrentTime().toMillis();
+    double totalMillis = player.getTotalDuration().toMillis();
+
+    long currentSeconds = toSeconds(currentMillis);
+    if (currentSeconds != shownCurrentSeconds) {
+      shownCurrentSeconds = currentSeconds;
+      currentTime.setText(
+          new String(buffer, 0, formatSeconds(currentSeconds, buffer)));
+    }
+    long totalSeconds = toSeconds(totalMillis);
+    if (totalSeconds != shownTotalSeconds) {
+      shownTotalSeconds = totalSeconds;
+      totalTime.setText(
+          new String(buffer, 0, formatSeconds(totalSeconds, buffer)));
+    }
+
+    if (totalMillis > 0 && !Double.isInfinite(totalMillis)) {
+      double newProgress = currentMillis / totalMillis;
+      if (Math.abs(newProgress - shownProgress) >= PROGRESS_STEP) {
+        shownProgress = newProgress;
+        progress.setProgress(newProgress);
+      }
+    }
+  }
+
+  /**
+   * Whole seconds of the given time, 0 if it is not known yet.
+   */
+  private static long toSeconds(double millis) {
+    if (!(millis > 0) || Double.isInfinite(millis)) {
+      return 0;
+    }
+    return (long) millis / 1000;
+  }
+
+  /**
+   * Formats the given time as minutes and seconds for the progress labels.
+   * Seconds are truncated, so 59.6 seconds is "00:59", never "00:60".
+   *
+   * @param time The time to format
+   * @return The time as "mm:ss"
+   */
+  public static String formatTime(Duration time) {
+    char[] chars = new char[24];
+    return new String(chars, 0,
+        formatSeconds(toSeconds(time.toMillis()), chars));
+  }
+
+  /**
+   * Writes the given number of seconds as "mm:ss" into {@code chars}.
+   *
+   * @return The number of characters written
+   */
+  static int formatSeconds(long totalSeconds, char[] chars) {
+    long minutes = totalSeconds / 60;
+    int seconds = (int) (totalSeconds % 60);
+    int length = 0;
+    if (minutes < 100) {
+      chars[length++] = DIGIT_TENS[(int) minutes];
+      chars[length++] = DIGIT_ONES[(int) minutes];
+    } else {
+      // Write the digits backwards, then flip them
+      for (long rest = minutes; rest > 0; rest /= 10) {
+        chars[length++] = (char) ('0' + rest % 10);
+      }
+      for (int i = 0, j = length - 1; i < j; i++, j--) {
+        char digit = chars[i];
+        chars[i] = chars[j];
+        chars[j] = digit;
+      }
+    }
+    chars[length++] = ':';
+    chars[length++] = DIGIT_TENS[seconds];
+    chars[length++] = DIGIT_ONES[seconds];
+    return length;
+  }
+}
@@ -0,0 +1,497 @@
+package simplemediaplayer;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory index to find the tracks of a library by words of their file
+ * name, folders and tags. A query matches the tracks that have, for each of
+ * its words, a word containing it (or starting with it, for a prefix search).
+ * Case and accents are ignored, so "cafe" finds "Caf&eacute;".
+ * <p>
+ * Words are interned: each distinct word is kept once and tracks refer to
+ * words by number. The words are in turn indexed by their n-grams of up to
+ * three characters, so a query only looks at the few words that can contain
+ * it and then at the tracks of those words. Tracks are numbered by their
+ * {@link TrackRegistry} ids, so the index keeps no copy of their entries.
+ * Tracks can be added, removed and given tags at any time; all methods are
+ * thread-safe.
+ */
+public class SearchIndex {
+
+  // Longest n-grams of the words, a longer query word is looked up by its
+  // n-grams of this length
+  private static final int GRAM_LENGTH = 3;
+  // Folders above the file that are indexed, e.g. album and artist
+  private static final int FOLDER_DEPTH = 2;
+  // Most words of a term whose tracks are merged in order rather than
+  // collected first
+  private static final int MAX_MERGED_WORDS = 16;
+  // Most candidate words of a term whose tracks are counted to find the
+  // rarest term of a query
+  private static final int MAX_COUNTED_WORDS = 1024;
+
+  /**
+   * Growable list of ints, kept in ascending order by the index.
+   */
+  private static class IntList {
+    private int[] values = new int[2];
+    private int size;
+
+    private void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    private void insert(int value) {
+      int index = size == 0 || values[size - 1] < value ? size
+          : -Arrays.binarySearch(values, 0, size, value) - 1;
+      add(value);
+      System.arraycopy(values, index, values, index + 1, size - index - 1);
+      values[index] = value;
+    }
+
+    private void remove(int value) {
+      int index = Arrays.binarySearch(values, 0, size, value);
+      if (index >= 0) {
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+      }
+    }
+
+    private int last() {
+      return size == 0 ? -1 : values[size - 1];
+    }
+  }
+
+  // Ids of the tracks, and their PlayList entries
+  private final TrackRegistry registry;
+
+  // Words, by number; words of removed tracks are kept with no tracks
+  private final List<String> words = new ArrayList<String>();
+  private final Map<String, Integer> wordNumbers =
+      new HashMap<String, Integer>();
+  // Ids of the tracks of each word, by word number
+  private final List<IntList> postings = new ArrayList<IntList>();
+  // Words of each n-gram
+  private final Map<Long, IntList> grams = new HashMap<Long, IntList>();
+
+  // Words of each track, by track id; null if not in the index
+  private int[][] trackWords = new int[0][];
+  // Times each track was added and not removed, by track id
+  private int[] references = new int[0];
+  private int size;
+
+  /**
+   * Creates an index of tracks of the {@link TrackRegistry#GLOBAL} registry.
+   */
+  public SearchIndex() {
+    this(TrackRegistry.GLOBAL);
+  }
+
+  /**
+   * @param registry The registry of the tracks to index
+   */
+  public SearchIndex(TrackRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Adds a track to the index. A track that is already in the index is
+   * counted again and only removed once it is removed as often.
+   *
+   * @param playListEntry The PlayList entry of the track
+   * @param tags The tags of the track, or null if not loaded
+   */
+  public synchronized void add(String playListEntry, TrackTags tags) {
+    int track = registry.register(playListEntry);
+    if (track >= references.length) {
+      int capacity = Math.max(track + 1, references.length * 2);
+      references = Arrays.copyOf(references, capacity);
+      trackWords = Arrays.copyOf(trackWords, capacity);
+    }
+    if (references[track]++ > 0) {
+      return;
+    }
+    size++;
+    int[] numbers = wordNumbers(playListEntry, tags);
+    trackWords[track] = numbers;
+    for (int word : numbers) {
+      postings.get(word).insert(track);
+    }
+  }
+
+  /**
+   * Removes a track from the index, once it was removed as often as it was
+   * added.
+   *
+   * @param playListEntry The PlayList entry of the track
+   */
+  public synchronized void remove(String playListEntry) {
+    int track = indexed(playListEntry);
+    if (track < 0 || --references[track] > 0) {
+      return;
+    }
+    size--;
+    for (int word : trackWords[track]) {
+      postings.get(word).remove(track);
+    }
+    trackWords[track] = null;
+  }
+
+  /**
+   * Indexes the tags of a track, if it is in the index.
+   *
+   * @param playListEntry The PlayList entry of the track
+   * @param tags The tags of the track
+   */
+  public synchronized void setTags(String playListEntry, TrackTags tags) {
+    int track = indexed(playListEntry);
+    if (track < 0) {
+      return;
+    }
+    for (int word : trackWords[track]) {
+      postings.get(word).remove(track);
+    }
+    int[] numbers = wordNumbers(playListEntry, tags);
+    trackWords[track] = numbers;
+    for (int word : numbers) {
+      postings.get(word).insert(track);
+    }
+  }
+
+  /**
+   * Removes every track from the index.
+   */
+  public synchronized void clear() {
+    words.clear();
+    wordNumbers.clear();
+    postings.clear();
+    grams.clear();
+    trackWords = new int[0][];
+    references = new int[0];
+    size = 0;
+  }
+
+  /**
+   * Returns the id of the given track if it is in the index, otherwise -1.
+   */
+  private int indexed(String playListEntry) {
+    int track = registry.find(playListEntry);
+    return track >= 0 && track < references.length && references[track] > 0
+        ? track : -1;
+  }
+
+  /**
+   * @return the number of tracks in the index
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * @return the number of distinct words of the tracks
+   */
+  public synchronized int getWordCount() {
+    return words.size();
+  }
+
+  /**
+   * Finds the tracks that have, for each word of the query, a word that
+   * contains it.
+   *
+   * @param query Words to find
+   * @param limit Maximum number of tracks to return
+   * @return PlayList entries of the matching tracks, in the order of their
+   *         ids
+   */
+  public List<String> search(String query, int limit) {
+    return find(query, false, limit);
+  }
+
+  /**
+   * Finds the tracks that have, for each word of the query, a word that starts
+   * with it.
+   *
+   * @param query Word prefixes to find
+   * @param limit Maximum number of tracks to return
+   * @return PlayList entries of the matching tracks, in the order of their
+   *         ids
+   */
+  public List<String> searchPrefix(String query, int limit) {
+    return find(query, true, limit);
+  }
+
+  private synchronized List<String> find(String query, boolean prefix,
+      int limit) {
+    List<String> terms = tokenize(query);
+    List<String> found = new ArrayList<String>();
+    if (terms.isEmpty() || limit <= 0) {
+      return found;
+    }
+
+    // The tracks of the rarest term are gone through, the other terms are
+    // only checked against the words of those tracks
+    IntList rarestCandidates = null;
+    long rarestTracks = Long.MAX_VALUE;
+    int rarest = 0;
+    for (int i = 0; i < terms.size(); i++) {
+      IntList candidates = candidateWords(terms.get(i));
+      if (candidates == null) {
+        return found;
+      }
+      long tracks = estimateTracks(candidates);
+      if (rarestCandidates == null || tracks < rarestTracks) {
+        rarestCandidates = candidates;
+        rarestTracks = tracks;
+        rarest = i;
+      }
+    }
+    String rarestTerm = terms.remove(rarest);
+    IntList matching = new IntList();
+    for (int i = 0; i < rarestCandidates.size; i++) {
+      int word = rarestCandidates.values[i];
+      if (matches(words.get(word), rarestTerm, prefix)
+          && postings.get(word).size > 0) {
+        matching.add(word);
+      }
+    }
+
+    if (matching.size <= MAX_MERGED_WORDS) {
+      mergeMatches(matching, terms, prefix, limit, found);
+      return found;
+    }
+    BitSet tracks = new BitSet(references.length);
+    for (int i = 0; i < matching.size; i++) {
+      IntList wordTracks = postings.get(matching.values[i]);
+      for (int j = 0; j < wordTracks.size; j++) {
+        tracks.set(wordTracks.values[j]);
+      }
+    }
+    for (int track = tracks.nextSetBit(0);
+        track >= 0 && found.size() < limit;
+        track = tracks.nextSetBit(track + 1)) {
+      if (matchesAll(trackWords[track], terms, prefix)) {
+        found.add(registry.getUri(track));
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Goes through the tracks of the given words in order, merging their
+   * postings, until enough tracks matching the other terms are found. Unlike
+   * collecting every track of the words first, this stops early.
+   */
+  private void mergeMatches(IntList matching, List<String> terms,
+      boolean prefix, int limit, List<String> found) {
+    IntList[] lists = new IntList[matching.size];
+    int[] positions = new int[matching.size];
+    for (int i = 0; i < matching.size; i++) {
+      lists[i] = postings.get(matching.values[i]);
+    }
+    while (found.size() < limit) {
+      int track = Integer.MAX_VALUE;
+      for (int i = 0; i < lists.length; i++) {
+        if (positions[i] < lists[i].size) {
+          track = Math.min(track, lists[i].values[positions[i]]);
+        }
+      }
+      if (track == Integer.MAX_VALUE) {
+        return;
+      }
+      // A track with several of the words is in several lists
+      for (int i = 0; i < lists.length; i++) {
+        if (positions[i] < lists[i].size
+            && lists[i].values[positions[i]] == track) {
+          positions[i]++;
+        }
+      }
+      if (matchesAll(trackWords[track], terms, prefix)) {
+        found.add(registry.getUri(track));
+      }
+    }
+  }
+
+  private boolean matchesAll(int[] numbers, List<String> terms,
+      boolean prefix) {
+    for (String term : terms) {
+      if (!matchesAny(numbers, term, prefix)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean matchesAny(int[] numbers, String term, boolean prefix) {
+    for (int word : numbers) {
+      if (matches(words.get(word), term, prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matches(String word, String term, boolean prefix) {
+    return prefix ? word.startsWith(term) : word.contains(term);
+  }
+
+  /**
+   * Returns at most how many tracks have one of the given words. Terms with
+   * many candidate words are only compared by their number of words.
+   */
+  private long estimateTracks(IntList candidates) {
+    if (candidates.size > MAX_COUNTED_WORDS) {
+      return Long.MAX_VALUE - words.size() + candidates.size;
+    }
+    long tracks = 0;
+    for (int i = 0; i < candidates.size; i++) {
+      tracks += postings.get(candidates.values[i]).size;
+    }
+    return tracks;
+  }
+
+  /**
+   * Returns the words that can contain the term: the words with the term as
+   * n-gram, or for a longer term the words with its rarest n-gram. Null if no
+   * word contains the term.
+   */
+  private IntList candidateWords(String term) {
+    if (term.length() <= GRAM_LENGTH) {
+      return grams.get(gram(term, 0, term.length()));
+    }
+    IntList rarest = null;
+    for (int i = 0; i + GRAM_LENGTH <= term.length(); i++) {
+      IntList candidates = grams.get(gram(term, i, i + GRAM_LENGTH));
+      if (candidates == null) {
+        return null;
+      }
+      if (rarest == null || candidates.size < rarest.size) {
+        rarest = candidates;
+      }
+    }
+    return rarest;
+  }
+
+  /**
+   * Returns the numbers of the distinct words of a track, adding new words to
+   * the index.
+   */
+  private int[] wordNumbers(String playListEntry, TrackTags tags) {
+    List<String> tokens = tokenize(text(playListEntry, tags));
+    int[] numbers = new int[tokens.size()];
+    int count = 0;
+    for (String token : tokens) {
+      int number = wordNumber(token);
+      if (indexOf(numbers, count, number) < 0) {
+        numbers[count++] = number;
+      }
+    }
+    return Arrays.copyOf(numbers, count);
+  }
+
+  private static int indexOf(int[] values, int size, int value) {
+    for (int i = 0; i < size; i++) {
+      if (values[i] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int wordNumber(String word) {
+    Integer number = wordNumbers.get(word);
+    if (number != null) {
+      return number;
+    }
+    number = words.size();
+    words.add(word);
+    wordNumbers.put(word, number);
+    postings.add(new IntList());
+    for (int length = 1; length <= GRAM_LENGTH; length++) {
+      for (int i = 0; i + length <= word.length(); i++) {
+        Long key = gram(word, i, i + length);
+        IntList gramWords = grams.get(key);
+        if (gramWords == null) {
+          gramWords = new IntList();
+          grams.put(key, gramWords);
+        }
+        // An n-gram can be in a word more than once
+        if (gramWords.last() != number) {
+          gramWords.add(number);
+        }
+      }
+    }
+    return number;
+  }
+
+  /**
+   * Returns the text a track is found by: its file name without the
+   * extension, the names of the folders above it and its tags.
+   */
+  static String text(String playListEntry, TrackTags tags) {
+    String path = PlayList.modifyFixedPathToTitle(playListEntry);
+    StringBuilder text = new StringBuilder();
+    int end = path.length();
+    int slash = path.lastIndexOf('/', end - 1);
+    String fileName = path.substring(slash + 1, end);
+    int extension = fileName.lastIndexOf('.');
+    text.append(extension > 0 ? fileName.substring(0, extension) : fileName);
+    for (int i = 0; i < FOLDER_DEPTH && slash > 0; i++) {
+      end = slash;
+      slash = path.lastIndexOf('/', end - 1);
+      text.append(' ').append(path, slash + 1, end);
+    }
+    if (tags != null) {
+      for (String tag : new String[] { tags.getTitle(), tags.getArtist(),
+          tags.getAlbum() }) {
+        if (tag != null) {
+          text.append(' ').append(tag);
+        }
+      }
+    }
+    return text.toString();
+  }
+
+  /**
+   * Splits text into lower case words of letters and digits, without
+   * accents.
+   */
+  static List<String> tokenize(String text) {
+    String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+    List<String> tokens = new ArrayList<String>();
+    StringBuilder token = new StringBuilder();
+    for (int i = 0; i <= normalized.length(); i++) {
+      char c = i < normalized.length() ? normalized.charAt(i) : ' ';
+      if (Character.getType(c) == Character.NON_SPACING_MARK) {
+        continue;
+      }
+      if (Character.isLetterOrDigit(c)) {
+        token.append(c);
+      } else if (token.length() > 0) {
+        tokens.add(token.toString().toLowerCase(Locale.ROOT));
+        token.setLength(0);
+      }
+    }
+    return tokens;
+  }
+
+  /**
+   * Packs up to three characters and their count into a key.
+   */
+  private static Long gram(String word, int start, int end) {
+    long key = end - start;
+    for (int i = start; i < end; i++) {
+      key = key << 16 | word.charAt(i);
+    }
+    return key;
+  }
+}
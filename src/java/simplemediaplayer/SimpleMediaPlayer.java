@@ -1,30 +1,39 @@
 package simplemediaplayer;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Locale;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
 import java.util.logging.Logger;
 
 import eu.hansolo.tilesfx.Tile;
 import eu.hansolo.tilesfx.Tile.SkinType;
 import eu.hansolo.tilesfx.TileBuilder;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.event.ActionEvent;
+import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckMenuItem;
+import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.Label;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.image.Image;
 import javafx.scene.layout.Background;
 import javafx.scene.layout.BackgroundFill;
@@ -34,7 +43,6 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
-import javafx.scene.media.MediaPlayer;
 import javafx.scene.media.MediaView;
 import javafx.scene.paint.Color;
 import javafx.stage.DirectoryChooser;
@@ -45,8 +53,13 @@ import javafx.stage.Stage;
  * A Simple Media Player that plays audio files from a directory or PlayList and
  * allows saving PlayLists into a text file.
  * 
- * TODO: Suggestions (Probably never) TODO: Play lists that auto update with
- * file changes (Probably very hard)
+ * PlayLists opened from a directory auto update with file changes.
+ * 
+ * Started with --headless, plays without a window and is controlled through a
+ * local socket instead, see {@link HeadlessPlayer}.
+ * 
+ * The Suggest menu shuffles by what was played and skipped before, and plays
+ * more tracks like the current one next.
  * 
  * @author Brendan Zhang
  * @created 2016-04-24
@@ -67,6 +80,10 @@ public class SimpleMediaPlayer extends Application {
   // Path to icon of the application
   private final static String ICON_SOURCE_PATH =
       "images/windows_media_player.png";
+  // Most tracks offered by Find Track
+  private final static int MAX_FOUND_TRACKS = 100;
+  // Tracks played next by More like this folder
+  private final static int SUGGESTED_TRACKS = 10;
   // MediaView to show the song title of the currently playing MediaPlayer
   private MediaView mediaView;
   // "Next" button
@@ -81,8 +98,27 @@ public class SimpleMediaPlayer extends Application {
   Tile clockTile;
   Tile currentlyPlayingTile;
   private VolumeTile volumeTile;
+  // Thread reading the PlayList file that is being opened
+  private Thread playListLoaderThread;
+  // Scans the directories opened from the menu
+  private final LibraryScanner libraryScanner = new LibraryScanner();
+  // Scan of the directory that is being opened
+  private LibraryScanner.Scan directoryScan;
+  // Incremented whenever a PlayList or directory is opened, so files of the
+  // one that was replaced are ignored
+  private int loadGeneration;
+  // Reads the tags shown as Currently Playing in the background
+  private TagLoader tagLoader;
+  // Log of the tracks played, closed when the application stops
+  private PlayHistory playHistory;
 
   public static void main(String[] args) throws Exception {
+    // Unattended boxes only need audio, skip the window entirely
+    List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+    if (arguments.remove(HeadlessPlayer.FLAG)) {
+      HeadlessPlayer.main(arguments.toArray(new String[arguments.size()]));
+      return;
+    }
     launch(args);
   }
 
@@ -91,6 +127,23 @@ public class SimpleMediaPlayer extends Application {
     // Caption/title of the application
     stage.setTitle("Simple Media Player");
 
+    PlayerMetrics.register();
+    PlayerMetrics.GLOBAL.setPlayList(playList);
+
+    // Only rescan the directories that changed since the last launch
+    libraryScanner.setIndexDirectory(LibraryIndex.DEFAULT_DIRECTORY);
+    playList.setIndexDirectory(LibraryIndex.DEFAULT_DIRECTORY);
+    // Only read the tags of the files that changed since the last launch
+    tagLoader = new TagLoader(new TagCache(TagCache.DEFAULT_FILE),
+        TagLoader.DEFAULT_THREADS);
+    loadTagCache();
+    playList.setTagLoader(tagLoader);
+    playList.setSearchIndex(new SearchIndex(playList.getTrackRegistry()));
+    // Logs what is played and brings back what was played before
+    playHistory = new PlayHistory(PlayHistory.DEFAULT_DIRECTORY);
+    playList.setPlayHistory(playHistory);
+    restorePlayHistory();
+
     final StackPane stackPane = new StackPane();
     BorderPane borderPane = new BorderPane();
 
@@ -126,7 +179,7 @@ public class SimpleMediaPlayer extends Application {
         if (selectedDirectory == null) {
           LOGGER.severe("No Directory selected");
         } else {
-          setMediaPlayers(selectedDirectory);
+          openDirectory(selectedDirectory);
         }
       }
     });
@@ -150,16 +203,82 @@ public class SimpleMediaPlayer extends Application {
       @Override
       public void handle(ActionEvent event) {
         String defaulPathToSaveTo = "C:/Playlists/playlist.txt";
-        playList.saveAsPlayList(defaulPathToSaveTo);
+        playList.saveAsPlayListInBackground(defaulPathToSaveTo)
+            .whenComplete(new BiConsumer<File, Throwable>() {
+              @Override
+              public void accept(File savedFile, Throwable error) {
+                if (error == null) {
+                  LOGGER.info("Saved PlayList to " + savedFile);
+                } else {
+                  LOGGER.severe("Could not save PlayList: " + error);
+                }
+              }
+            });
       }
     });
     menuFile.getItems().addAll(menuOpen, menuItemSaveAsPlayList);
 
     // --- Menu Edit
     Menu menuEdit = new Menu("Edit");
+    final CheckMenuItem menuItemShuffle = new CheckMenuItem("Shuffle");
+    menuItemShuffle.setOnAction(new EventHandler<ActionEvent>() {
+      @Override
+      public void handle(ActionEvent event) {
+        if (menuItemShuffle.isSelected()) {
+          playList.shuffle(mediaView);
+        } else {
+          playList.unshuffle();
+        }
+      }
+    });
+    menuEdit.setOnShowing(new EventHandler<Event>() {
+      @Override
+      public void handle(Event event) {
+        // Opening another PlayList or directory restores the play order
+        menuItemShuffle.setSelected(playList.isShuffled());
+      }
+    });
+    final CheckMenuItem menuItemMute = new CheckMenuItem("Mute");
+    menuItemMute.setOnAction(new EventHandler<ActionEvent>() {
+      @Override
+      public void handle(ActionEvent event) {
+        playList.getOutputBus().setMuted(menuItemMute.isSelected());
+      }
+    });
+    MenuItem menuItemRemoveDuplicates = new MenuItem("Remove Duplicates");
+    menuItemRemoveDuplicates.setOnAction(new EventHandler<ActionEvent>() {
+      @Override
+      public void handle(ActionEvent event) {
+        removeDuplicates();
+      }
+    });
+    MenuItem menuItemFind = new MenuItem("Find Track");
+    menuItemFind.setOnAction(new EventHandler<ActionEvent>() {
+      @Override
+      public void handle(ActionEvent event) {
+        findTrack();
+      }
+    });
+    menuEdit.getItems().addAll(menuItemShuffle, menuItemMute,
+        menuItemRemoveDuplicates, menuItemFind);
 
     // --- Menu Suggest
     Menu menuSuggest = new Menu("Suggest");
+    MenuItem menuItemSmartShuffle = new MenuItem("Smart Shuffle");
+    menuItemSmartShuffle.setOnAction(new EventHandler<ActionEvent>() {
+      @Override
+      public void handle(ActionEvent event) {
+        playList.smartShuffle();
+      }
+    });
+    MenuItem menuItemMoreLikeThis = new MenuItem("More like this folder");
+    menuItemMoreLikeThis.setOnAction(new EventHandler<ActionEvent>() {
+      @Override
+      public void handle(ActionEvent event) {
+        playList.moreLikeThisFolder(SUGGESTED_TRACKS);
+      }
+    });
+    menuSuggest.getItems().addAll(menuItemSmartShuffle, menuItemMoreLikeThis);
 
     menuBar.getMenus().addAll(menuFile, menuEdit, menuSuggest);
     menuBar.styleProperty().bind(Bindings.concat("-fx-font-size: 14"));
@@ -180,7 +299,7 @@ public class SimpleMediaPlayer extends Application {
         TileBuilder.create().skinType(SkinType.TEXT).title("Currently Playing")
             .description("Currently Playing").textVisible(true).build();
 
-    setMediaPlayers(sourceDirectory);
+    setupMediaPlayerComponents();
 
     HBox hBox = new HBox(10);
     hBox.setAlignment(Pos.CENTER);
@@ -213,48 +332,125 @@ public class SimpleMediaPlayer extends Application {
     stage.getIcons().add(new Image(ICON_SOURCE_PATH));
     stage.setScene(scene);
     stage.show();
+    PlayerMetrics.GLOBAL.windowShown();
+
+    // Scan in the background so a large library does not keep the window
+    // blank, playback starts with the first files found
+    openDirectory(sourceDirectory);
+  }
+
+  @Override
+  public void stop() {
+    if (tagLoader != null) {
+      // Keeps the tags read during this session
+      tagLoader.close();
+    }
+    if (playHistory != null) {
+      // Forces the events of this session to disk
+      playHistory.close();
+    }
+    // Finishes the PlayList saves and journal compactions underway
+    playList.close();
+  }
+
+  /**
+   * Reads the tags cached in earlier sessions in the background, so a large
+   * cache does not keep the window from showing.
+   */
+  private void loadTagCache() {
+    Thread tagCacheThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        tagLoader.getCache().load();
+      }
+    }, "Tag Cache Loader");
+    tagCacheThread.setDaemon(true);
+    tagCacheThread.start();
   }
 
   /**
-   * Sets the list of MediaPlayer by searching for files in the given directory
-   * and creating a MediaPlayer for each file that ends with .mp3
+   * Adds the plays and skips of earlier sessions to the tracks in the
+   * background, for Smart Shuffle to weigh them.
+   */
+  private void restorePlayHistory() {
+    Thread playHistoryThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          playHistory.restore(playList.getTrackRegistry());
+        } catch (IOException ioe) {
+          LOGGER.severe("An I/O Exception occurred: " + ioe);
+          ioe.printStackTrace();
+        }
+      }
+    }, "Play History Loader");
+    playHistoryThread.setDaemon(true);
+    playHistoryThread.start();
+  }
+
+  /**
+   * Scans the given directory and its subdirectories in the background.
+   * Playback starts as soon as the first audio files are found and the rest
+   * are added as they are found.
    * 
    * @param sourceDirectory File that represents the directory to search through
    */
-  private void setMediaPlayers(File sourceDirectory) {
+  private void openDirectory(final File sourceDirectory) {
+    cancelBackgroundLoading();
     playList.stopAnyRunningTracks();
-    playList.addAllFilesFromDirectoryIntoPlayList(sourceDirectory);
-    setupMediaPlayerComponents();
+
+    final int generation = loadGeneration;
+    directoryScan = libraryScanner.scan(sourceDirectory,
+        new LibraryScanner.Listener() {
+          @Override
+          public void onFilesFound(final List<String> filePaths) {
+            addLoadedFiles(generation, filePaths, true);
+          }
+
+          @Override
+          public void onScanFinished(int fileCount, boolean cancelled) {
+            if (fileCount == 0 && !cancelled) {
+              LOGGER.severe("No audio found in " + sourceDirectory);
+            }
+            if (!cancelled) {
+              Platform.runLater(new Runnable() {
+                @Override
+                public void run() {
+                  if (generation == loadGeneration) {
+                    playList.watchDirectory(sourceDirectory);
+                  }
+                }
+              });
+            }
+          }
+        });
   }
 
   /**
    * Sets up the MediaPlayer components (Buttons, Listeners, Song titles, etc.)
+   * once, before any audio file is found. Playback starts when the first
+   * files are added, see {@link #addLoadedFiles(int, List, boolean)}.
    */
   private void setupMediaPlayerComponents() {
 
     volumeTile = new VolumeTile(playList);
 
-    // Create a MediaView to show the song title of the MediaPlayers
-    mediaView = new MediaView(playList.getCurrentlyPlaying());
+    // Create a MediaView to show the song title of the MediaPlayers, the
+    // PlayList puts the playing MediaPlayer in it
+    mediaView = new MediaView();
 
     playList.startupMediaPlayers(mediaView, progress, currentTime, totalTime,
         currentlyPlayingTile);
-    playList.setCurrentMediaPlayer(mediaView, progress, currentTime, totalTime,
-        currentlyPlayingTile, mediaView.getMediaPlayer());
 
     // Set action when clicking on Next button
     next.setOnAction(new EventHandler<ActionEvent>() {
       @Override
       public void handle(ActionEvent actionEvent) {
-        final MediaPlayer currentPlayer = mediaView.getMediaPlayer();
-        MediaPlayer nextPlayer = playList.getMediaPlayers()
-            .get((playList.getMediaPlayers().indexOf(currentPlayer) + 1)
-                % playList.getMediaPlayers().size());
-        mediaView.setMediaPlayer(nextPlayer);
-        currentPlayer.stop();
-        nextPlayer.play();
-        playList.setCurrentMediaPlayer(mediaView, progress, currentTime,
-            totalTime, currentlyPlayingTile, nextPlayer);
+        // Nothing found yet
+        if (playList.getFilePaths().isEmpty()) {
+          return;
+        }
+        playList.playNextTrack();
         playNPause.setText("Pause");
       }
     });
@@ -263,12 +459,15 @@ public class SimpleMediaPlayer extends Application {
     playNPause.setOnAction(new EventHandler<ActionEvent>() {
       @Override
       public void handle(ActionEvent actionEvent) {
+        if (playList.getFilePaths().isEmpty()) {
+          return;
+        }
         // Pause action if current text of the button is "Pause"
         if ("Pause".equals(playNPause.getText())) {
-          mediaView.getMediaPlayer().pause();
+          playList.getCurrentlyPlaying().pause();
           playNPause.setText("Play");
         } else {
-          mediaView.getMediaPlayer().play();
+          playList.getCurrentlyPlaying().play();
           playNPause.setText("Pause");
         }
       }
@@ -276,23 +475,195 @@ public class SimpleMediaPlayer extends Application {
 
   }
 
-  private void openPlayList(File playListFile) {
+  /**
+   * Opens the given PlayList file in the background. Playback starts as soon
+   * as the first batch of entries is read and the rest of the entries are
+   * added as they are read. The edits in the journal of the file are applied
+   * once all entries are added, and if there are any, playback starts only
+   * then, so it starts where the edited PlayList does.
+   * 
+   * @param playListFile The PlayList file to open
+   */
+  private void openPlayList(final File playListFile) {
+    cancelBackgroundLoading();
+    playList.stopAnyRunningTracks();
 
-    List<String> audioFiles = new ArrayList<String>();
+    final int generation = loadGeneration;
+    final boolean journaled = PlayListJournal.exists(playListFile);
+    playListLoaderThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          new PlayListLoader().load(playListFile,
+              new PlayListLoader.BatchListener() {
+                @Override
+                public void onBatch(List<String> filePaths) {
+                  addLoadedFiles(generation, filePaths, !journaled);
+                }
+              });
+          attachJournal(generation, playListFile, journaled);
+        } catch (IOException ioe) {
+          LOGGER.severe("An I/O Exception occurred: " + ioe);
+          ioe.printStackTrace();
+        }
+      }
+    }, "PlayList Loader");
+    playListLoaderThread.setDaemon(true);
+    playListLoaderThread.start();
+  }
 
-    try (Scanner scanner = new Scanner(playListFile)) {
-      while (scanner.hasNextLine()) {
-        String audioFilePath = scanner.nextLine();
-        audioFiles.add(audioFilePath);
+  /**
+   * Adds files read or found in the background to the PlayList on the JavaFX
+   * application thread, starting playback with the first of them.
+   * 
+   * @param generation The value of loadGeneration when loading started
+   * @param filePaths The file paths to add
+   * @param startPlayback Whether playback starts with the first files
+   */
+  private void addLoadedFiles(final int generation,
+      final List<String> filePaths, final boolean startPlayback) {
+    Platform.runLater(new Runnable() {
+      @Override
+      public void run() {
+        // Ignore files of a PlayList or directory that was replaced
+        if (generation != loadGeneration) {
+          return;
+        }
+        boolean firstFiles = playList.getFilePaths().isEmpty();
+        playList.addAllFilesIntoPlayList(filePaths);
+        if (firstFiles && startPlayback) {
+          playList.startPlayback();
+          playNPause.setText("Pause");
+        }
+      }
+    });
+  }
+
+  /**
+   * Applies the journal of the PlayList file that was read in the background
+   * on the JavaFX application thread, after the files read from it.
+   * 
+   * @param generation The value of loadGeneration when loading started
+   * @param playListFile The PlayList file that was read
+   * @param journaled Whether the file has a journal, so playback was held
+   *        back until it is applied
+   */
+  private void attachJournal(final int generation, final File playListFile,
+      final boolean journaled) {
+    Platform.runLater(new Runnable() {
+      @Override
+      public void run() {
+        if (generation == loadGeneration) {
+          boolean started = !journaled && !playList.getFilePaths().isEmpty();
+          playList.attachJournal(playListFile);
+          if (!started && !playList.getFilePaths().isEmpty()) {
+            playList.startPlayback();
+            playNPause.setText("Pause");
+          }
+        }
       }
-    } catch (FileNotFoundException fnfe) {
-      Logger.getGlobal().severe("A FileNotFoundException has occured: " + fnfe);
-      fnfe.printStackTrace();
+    });
+  }
+
+  /**
+   * Asks for words of a track, lets the user choose among the tracks with
+   * those words and plays the chosen one.
+   */
+  private void findTrack() {
+    if (playList.getFilePaths().isEmpty()) {
+      return;
+    }
+    TextInputDialog queryDialog = new TextInputDialog();
+    queryDialog.setTitle("Find Track");
+    queryDialog.setHeaderText("Words of the title, artist, album or folder");
+    Optional<String> query = queryDialog.showAndWait();
+    if (!query.isPresent()) {
+      return;
     }
 
-    playList.stopAnyRunningTracks();
-    playList.addAllFilesIntoPlayList(audioFiles);
-    setupMediaPlayerComponents();
+    // Tracks by the text they are shown with
+    Map<String, String> found = new LinkedHashMap<String, String>();
+    for (String entry : playList.getSearchIndex().search(query.get(),
+        MAX_FOUND_TRACKS)) {
+      found.put(PlayList.getDisplayTitle(entry,
+          tagLoader.getTags(entry)), entry);
+    }
+    if (found.isEmpty()) {
+      LOGGER.info("No track found for " + query.get());
+      return;
+    }
+    List<String> titles = new ArrayList<String>(found.keySet());
+    ChoiceDialog<String> choiceDialog =
+        new ChoiceDialog<String>(titles.get(0), titles);
+    choiceDialog.setTitle("Find Track");
+    choiceDialog.setHeaderText(titles.size() + " tracks found");
+    Optional<String> choice = choiceDialog.showAndWait();
+    if (!choice.isPresent()) {
+      return;
+    }
+    // The library can change while the dialog is open
+    int index = playList.getFilePaths().indexOf(found.get(choice.get()));
+    if (index >= 0) {
+      playList.playNext(index);
+      playList.playNextTrack();
+      playNPause.setText("Pause");
+    }
+  }
+
+  /**
+   * Compares the content of the files of the PlayList in the background and
+   * then removes all but one copy of each recording from the PlayList.
+   */
+  private void removeDuplicates() {
+    final int generation = loadGeneration;
+    final List<String> filePaths =
+        new ArrayList<String>(playList.getFilePaths());
+    Thread duplicateFinderThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        ContentHashCache cache =
+            ContentHashCache.open(ContentHashCache.DEFAULT_FILE);
+        final List<List<String>> duplicates;
+        try {
+          duplicates = new DuplicateFinder(cache).findDuplicates(filePaths);
+        } catch (InterruptedException ie) {
+          return;
+        }
+        try {
+          cache.save();
+        } catch (IOException ioe) {
+          LOGGER.severe("An I/O Exception occurred: " + ioe);
+          ioe.printStackTrace();
+        }
+        Platform.runLater(new Runnable() {
+          @Override
+          public void run() {
+            // The PlayList was replaced while the files were compared
+            if (generation == loadGeneration) {
+              playList.collapseDuplicates(duplicates);
+            }
+          }
+        });
+      }
+    }, "Duplicate Finder");
+    duplicateFinderThread.setDaemon(true);
+    duplicateFinderThread.start();
+  }
+
+  /**
+   * Stops reading the PlayList file or scanning the directory that is
+   * currently being opened, if any.
+   */
+  private void cancelBackgroundLoading() {
+    loadGeneration++;
+    if (playListLoaderThread != null) {
+      playListLoaderThread.interrupt();
+      playListLoaderThread = null;
+    }
+    if (directoryScan != null) {
+      directoryScan.cancel();
+      directoryScan = null;
+    }
   }
 
   /**
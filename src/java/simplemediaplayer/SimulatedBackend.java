@@ -0,0 +1,178 @@
+package simplemediaplayer;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PlaybackBackend} that plays synthetic tracks on a virtual clock, in
+ * process and without any media stack. Time only moves when
+ * {@link #advance(long)} is called, which jumps from one scheduled event
+ * (a track becoming ready or playing to its end) to the next, so hours of
+ * playback take as long as the PlayList needs to handle the transitions.
+ * Used to test and load-test the queueing and transitions of a
+ * {@link PlayList} on machines without audio.
+ * <p>
+ * Not thread safe: the backend, its tracks and the PlayList using them must
+ * all be used from one thread.
+ */
+public class SimulatedBackend implements PlaybackBackend {
+
+  // Length of a track unless set with setTrackDuration
+  public static final long DEFAULT_TRACK_MILLIS = 180000;
+  // Time from creating a track until it is ready to play
+  public static final long DEFAULT_LOAD_MILLIS = 20;
+
+  /**
+   * Something that happens at a point in virtual time.
+   */
+  private static class Event implements Comparable<Event> {
+    private final long time;
+    // Events at the same time run in the order they were scheduled
+    private final long sequence;
+    private final Runnable action;
+
+    private Event(long time, long sequence, Runnable action) {
+      this.time = time;
+      this.sequence = sequence;
+      this.action = action;
+    }
+
+    @Override
+    public int compareTo(Event other) {
+      if (time != other.time) {
+        return time < other.time ? -1 : 1;
+      }
+      return Long.compare(sequence, other.sequence);
+    }
+  }
+
+  private final PriorityQueue<Event> events = new PriorityQueue<Event>();
+  private long now;
+  private long sequence;
+  private long trackNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TRACK_MILLIS);
+  private long loadNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_LOAD_MILLIS);
+  private final Map<String, Long> trackDurations = new HashMap<String, Long>();
+  private final Set<String> failingSources = new HashSet<String>();
+  private long createdTracks;
+  private long disposedTracks;
+  private long endedTracks;
+
+  /**
+   * @param trackMillis Length of the tracks that have no duration set
+   */
+  public void setDefaultTrackDuration(long trackMillis) {
+    this.trackNanos = TimeUnit.MILLISECONDS.toNanos(trackMillis);
+  }
+
+  /**
+   * @param source The media source of the track
+   * @param trackMillis Length of the track
+   */
+  public void setTrackDuration(String source, long trackMillis) {
+    trackDurations.put(source, TimeUnit.MILLISECONDS.toNanos(trackMillis));
+  }
+
+  /**
+   * @param loadMillis Time from creating a track until it is ready to play
+   */
+  public void setLoadTime(long loadMillis) {
+    this.loadNanos = TimeUnit.MILLISECONDS.toNanos(loadMillis);
+  }
+
+  /**
+   * Makes the tracks of the given source fail once they are loaded, like a
+   * file that cannot be decoded.
+   *
+   * @param source The media source of the track
+   */
+  public void fail(String source) {
+    failingSources.add(source);
+  }
+
+  @Override
+  public Track createTrack(String source) {
+    Long duration = trackDurations.get(source);
+    final SimulatedTrack track = new SimulatedTrack(this, source,
+        duration == null ? trackNanos : duration,
+        failingSources.contains(source));
+    createdTracks++;
+    schedule(loadNanos, new Runnable() {
+      @Override
+      public void run() {
+        track.loaded();
+      }
+    });
+    return track;
+  }
+
+  @Override
+  public long nanoTime() {
+    return now;
+  }
+
+  /**
+   * Moves the virtual clock forward, running the events on the way.
+   *
+   * @param millis The time to move forward by
+   * @return The number of events run
+   */
+  public long advance(long millis) {
+    long target = now + TimeUnit.MILLISECONDS.toNanos(millis);
+    long count = 0;
+    while (!events.isEmpty() && events.peek().time <= target) {
+      Event event = events.poll();
+      now = event.time;
+      event.action.run();
+      count++;
+    }
+    now = target;
+    return count;
+  }
+
+  /**
+   * @return the number of events waiting to run
+   */
+  public int getPendingEvents() {
+    return events.size();
+  }
+
+  /**
+   * @return the number of tracks created
+   */
+  public long getCreatedTracks() {
+    return createdTracks;
+  }
+
+  /**
+   * @return the number of tracks created and not disposed of yet
+   */
+  public long getLiveTracks() {
+    return createdTracks - disposedTracks;
+  }
+
+  /**
+   * @return the number of times a track played to its end
+   */
+  public long getEndedTracks() {
+    return endedTracks;
+  }
+
+  /**
+   * Runs the given action once the virtual clock moved on by the given time.
+   */
+  void schedule(long delayNanos, Runnable action) {
+    events.add(new Event(now + delayNanos, sequence++, action));
+  }
+
+  void trackDisposed() {
+    disposedTracks++;
+  }
+
+  void trackEnded() {
+    endedTracks++;
+  }
+}
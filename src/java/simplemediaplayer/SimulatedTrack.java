@@ -0,0 +1,215 @@
+package simplemediaplayer;
+
+import java.util.concurrent.TimeUnit;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.util.Duration;
+
+/**
+ * Synthetic {@link Track} of a {@link SimulatedBackend}. Moves through the
+ * same statuses a MediaPlayer does: it is ready once loaded, plays to its end
+ * in virtual time and, like a MediaPlayer, stays PLAYING at the end of its
+ * media until it is stopped.
+ */
+public class SimulatedTrack implements Track {
+
+  private final SimulatedBackend backend;
+  private final String source;
+  private final long durationNanos;
+  private final boolean failing;
+  private final ReadOnlyObjectWrapper<Status> status =
+      new ReadOnlyObjectWrapper<Status>(Status.UNKNOWN);
+  private final DoubleProperty volume = new SimpleDoubleProperty(1.0);
+  // Position when it last stopped playing
+  private long positionNanos;
+  // Virtual time it last started playing
+  private long playStart;
+  // Whether play was called before it was ready
+  private boolean playRequested;
+  // Incremented whenever a scheduled end of media no longer applies
+  private int generation;
+  private Runnable onEndOfMedia;
+  private Runnable onError;
+  private String error;
+
+  SimulatedTrack(SimulatedBackend backend, String source, long durationNanos,
+      boolean failing) {
+    this.backend = backend;
+    this.source = source;
+    this.durationNanos = durationNanos;
+    this.failing = failing;
+  }
+
+  @Override
+  public String getSource() {
+    return source;
+  }
+
+  @Override
+  public void play() {
+    switch (getStatus()) {
+      case UNKNOWN:
+        playRequested = true;
+        break;
+      case READY:
+      case PAUSED:
+      case STOPPED:
+      case STALLED:
+        startPlaying();
+        break;
+      default:
+        break;
+    }
+  }
+
+  @Override
+  public void pause() {
+    if (getStatus() == Status.UNKNOWN) {
+      playRequested = false;
+    } else if (getStatus() == Status.PLAYING) {
+      positionNanos = position();
+      generation++;
+      status.set(Status.PAUSED);
+    }
+  }
+
+  @Override
+  public void stop() {
+    switch (getStatus()) {
+      case UNKNOWN:
+        playRequested = false;
+        break;
+      case READY:
+      case PLAYING:
+      case PAUSED:
+      case STALLED:
+        positionNanos = 0;
+        generation++;
+        status.set(Status.STOPPED);
+        break;
+      default:
+        break;
+    }
+  }
+
+  @Override
+  public void dispose() {
+    if (getStatus() != Status.DISPOSED) {
+      generation++;
+      status.set(Status.DISPOSED);
+      backend.trackDisposed();
+    }
+  }
+
+  @Override
+  public Status getStatus() {
+    return status.get();
+  }
+
+  @Override
+  public ReadOnlyObjectProperty<Status> statusProperty() {
+    return status.getReadOnlyProperty();
+  }
+
+  @Override
+  public Duration getCurrentTime() {
+    return Duration.millis(position() / 1e6);
+  }
+
+  @Override
+  public Duration getTotalDuration() {
+    if (getStatus() == Status.UNKNOWN || getStatus() == Status.HALTED) {
+      return Duration.UNKNOWN;
+    }
+    return Duration.millis(durationNanos / 1e6);
+  }
+
+  @Override
+  public DoubleProperty volumeProperty() {
+    return volume;
+  }
+
+  @Override
+  public void setOnEndOfMedia(Runnable onEndOfMedia) {
+    this.onEndOfMedia = onEndOfMedia;
+  }
+
+  @Override
+  public void setOnError(Runnable onError) {
+    this.onError = onError;
+  }
+
+  @Override
+  public String getError() {
+    return error;
+  }
+
+  @Override
+  public String getErrorType() {
+    return error == null ? null : "SIMULATED";
+  }
+
+  @Override
+  public String toString() {
+    return "SimulatedTrack[" + source + ", " + getStatus() + ", "
+        + TimeUnit.NANOSECONDS.toMillis(position()) + "ms]";
+  }
+
+  /**
+   * Called by the backend once the track is loaded.
+   */
+  void loaded() {
+    if (getStatus() != Status.UNKNOWN) {
+      return;
+    }
+    if (failing) {
+      error = "Simulated failure of " + source;
+      status.set(Status.HALTED);
+      if (onError != null) {
+        onError.run();
+      }
+      return;
+    }
+    status.set(Status.READY);
+    if (playRequested) {
+      playRequested = false;
+      startPlaying();
+    }
+  }
+
+  private void startPlaying() {
+    playStart = backend.nanoTime();
+    status.set(Status.PLAYING);
+    final int playing = ++generation;
+    backend.schedule(durationNanos - positionNanos, new Runnable() {
+      @Override
+      public void run() {
+        if (generation == playing) {
+          ended();
+        }
+      }
+    });
+  }
+
+  private void ended() {
+    positionNanos = durationNanos;
+    // A MediaPlayer stays PLAYING at the end of its media
+    playStart = backend.nanoTime();
+    generation++;
+    backend.trackEnded();
+    if (onEndOfMedia != null) {
+      onEndOfMedia.run();
+    }
+  }
+
+  private long position() {
+    if (getStatus() != Status.PLAYING) {
+      return positionNanos;
+    }
+    return Math.min(durationNanos,
+        positionNanos + backend.nanoTime() - playStart);
+  }
+}
@@ -0,0 +1,157 @@
+package simplemediaplayer;
+
+import java.util.Random;
+
+/**
+ * Weighted shuffle of a PlayList. Tracks that are played through are
+ * favoured, tracks that are skipped and tracks that were just played are
+ * held back, and the same artist or folder is not played twice in a row
+ * when it can be helped.
+ * <p>
+ * Tracks are drawn from an {@link AliasTable}, so each draw is O(1). A track
+ * drawn before is drawn again, and once those redraws add up to a quarter of
+ * the table it is rebuilt in O(n) over the tracks that are left. Rebuilds so
+ * never cost more than the redraws they save, and for weights within a
+ * bounded ratio, as {@link #weight(int, int, long, long)} gives, the whole
+ * order of n tracks takes O(n) time.
+ */
+public final class SmartShuffle {
+
+  // Lowest weight, so every track is played eventually
+  static final double MIN_WEIGHT = 0.02;
+  // Hours after which a played track is half as likely to be held back
+  static final double RECENCY_HALF_LIFE_HOURS = 24;
+  // Draws after which a track of the same artist or folder is taken anyway
+  private static final int MAX_SEPARATION_DRAWS = 8;
+  // Redraws, as a share of the table, after which it is rebuilt without the
+  // tracks drawn: about where the redraws cost as much as the rebuild
+  private static final double REBUILD_SHARE = 0.25;
+
+  private SmartShuffle() {}
+
+  /**
+   * Returns the weight of a track in a smart shuffle, between
+   * {@link #MIN_WEIGHT} and about 2 for a track played through hundreds of
+   * times.
+   *
+   * @param plays Times the track was played to the end
+   * @param skips Times the track was skipped
+   * @param lastPlayedMillis When the track was last played to the end, 0 if
+   *        never
+   * @param nowMillis The current time
+   * @return The weight of the track
+   */
+  public static double weight(int plays, int skips, long lastPlayedMillis,
+      long nowMillis) {
+    // Share of the times it was played through, starting from one of each
+    double liking = (plays + 1.0) / (plays + skips + 2.0);
+    // Favourites: every doubling of the plays adds a quarter
+    double favourite = 1 + Math.log(1 + plays) / Math.log(2) / 4;
+    double freshness = 1;
+    if (lastPlayedMillis > 0) {
+      double hours = Math.max(0, nowMillis - lastPlayedMillis) / 3600000.0;
+      freshness = 1 - Math.pow(0.5, hours / RECENCY_HALF_LIFE_HOURS);
+    }
+    return Math.max(MIN_WEIGHT, liking * favourite * freshness);
+  }
+
+  /**
+   * Returns a play order of all tracks, starting with the given one.
+   *
+   * @param weights The weight of each track, all positive
+   * @param artists A number per artist for each track, -1 if unknown
+   * @param folders A number per folder for each track
+   * @param first The track to start with
+   * @param random Source of randomness
+   * @return The index of the track at each position
+   */
+  public static int[] order(double[] weights, int[] artists, int[] folders,
+      int first, Random random) {
+    return draw(weights, weights.length, artists, folders, first, random);
+  }
+
+  /**
+   * Draws distinct tracks, each with a probability proportional to its weight
+   * among the tracks not drawn yet.
+   *
+   * @param weights The weight of each track, all positive
+   * @param count The number of tracks to draw, at most the number of tracks
+   * @param random Source of randomness
+   * @return The indexes of the tracks in the order they were drawn
+   */
+  public static int[] sample(double[] weights, int count, Random random) {
+    return draw(weights, count, null, null, -1, random);
+  }
+
+  private static int[] draw(double[] weights, int count, int[] artists,
+      int[] folders, int first, Random random) {
+    int n = weights.length;
+    if (count < 0 || count > n) {
+      throw new IllegalArgumentException("Cannot draw " + count + " of " + n);
+    }
+    for (double weight : weights) {
+      if (!(weight > 0)) {
+        throw new IllegalArgumentException("Not positive: " + weight);
+      }
+    }
+    int[] drawn = new int[count];
+    boolean[] used = new boolean[n];
+    int drawnCount = 0;
+    if (first >= 0 && count > 0) {
+      drawn[drawnCount++] = first;
+      used[first] = true;
+    }
+
+    // Tracks of the table, and the draws of tracks drawn before from it
+    int[] tracks = new int[n];
+    for (int track = 0; track < n; track++) {
+      tracks[track] = track;
+    }
+    int size = n;
+    AliasTable table = null;
+    int redraws = 0;
+    while (drawnCount < count) {
+      int previous = drawnCount == 0 ? -1 : drawn[drawnCount - 1];
+      int track;
+      int separationDraws = 0;
+      while (true) {
+        if (table == null || redraws > size * REBUILD_SHARE) {
+          // Only the tracks of the last table can be left, so rebuilds shrink
+          int left = 0;
+          for (int i = 0; i < size; i++) {
+            if (!used[tracks[i]]) {
+              tracks[left++] = tracks[i];
+            }
+          }
+          size = left;
+          double[] tableWeights = new double[size];
+          for (int i = 0; i < size; i++) {
+            tableWeights[i] = weights[tracks[i]];
+          }
+          table = new AliasTable(tableWeights);
+          redraws = 0;
+        }
+        track = tracks[table.sample(random)];
+        if (used[track]) {
+          redraws++;
+          continue;
+        }
+        if (previous >= 0 && separationDraws < MAX_SEPARATION_DRAWS
+            && (same(artists, track, previous)
+                || same(folders, track, previous))) {
+          separationDraws++;
+          continue;
+        }
+        break;
+      }
+      drawn[drawnCount++] = track;
+      used[track] = true;
+    }
+    return drawn;
+  }
+
+  private static boolean same(int[] groups, int track, int other) {
+    return groups != null && groups[track] >= 0
+        && groups[track] == groups[other];
+  }
+}
@@ -0,0 +1,116 @@
+package simplemediaplayer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * On-disk cache of the {@link TrackTags} read by {@link TagReader}, so the
+ * tags of a file are only parsed once. Entries are keyed by the path of the
+ * file and are only used while the size and last modified time of the file
+ * are the ones it had when its tags were read.
+ */
+public class TagCache extends FileCache<TrackTags> {
+
+  // Default location of the cache file
+  public static final File DEFAULT_FILE = new File(
+      System.getProperty("user.home"), ".simplemediaplayer/tags.cache");
+
+  private static final int MAGIC = 0x534d5054;
+  private static final int VERSION = 1;
+
+  // Bits of the flags byte telling which strings are stored
+  private static final int HAS_TITLE = 1;
+  private static final int HAS_ARTIST = 2;
+  private static final int HAS_ALBUM = 4;
+
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+
+  /**
+   * Creates an empty cache kept in the given file, see {@link #load()}.
+   *
+   * @param cacheFile The file the cache is kept in
+   */
+  public TagCache(File cacheFile) {
+    super(cacheFile, MAGIC, VERSION);
+  }
+
+  /**
+   * Opens the given cache file. Returns an empty cache if there is none yet or
+   * it cannot be read.
+   *
+   * @param cacheFile The file the cache is kept in
+   * @return The cache
+   */
+  public static TagCache open(File cacheFile) {
+    TagCache cache = new TagCache(cacheFile);
+    cache.load();
+    return cache;
+  }
+
+  /**
+   * Returns the cached tags of the given file if the file did not change
+   * since they were read.
+   *
+   * @param path Path of the file
+   * @param size Current size of the file in bytes
+   * @param lastModified Current last modified time of the file
+   * @return The cached tags, or null if the file has to be read
+   */
+  @Override
+  public TrackTags get(String path, long size, long lastModified) {
+    TrackTags tags = super.get(path, size, lastModified);
+    if (tags != null) {
+      hits.incrementAndGet();
+      PlayerMetrics.GLOBAL.getTagCache().hit();
+    } else {
+      misses.incrementAndGet();
+      PlayerMetrics.GLOBAL.getTagCache().miss();
+    }
+    return tags;
+  }
+
+  @Override
+  TrackTags readValue(DataInputStream in) throws IOException {
+    int flags = in.readByte();
+    String title = (flags & HAS_TITLE) != 0 ? in.readUTF() : null;
+    String artist = (flags & HAS_ARTIST) != 0 ? in.readUTF() : null;
+    String album = (flags & HAS_ALBUM) != 0 ? in.readUTF() : null;
+    long durationMillis = in.readLong();
+    return new TrackTags(title, artist, album, durationMillis);
+  }
+
+  @Override
+  void writeValue(DataOutputStream out, TrackTags tags) throws IOException {
+    out.writeByte((tags.getTitle() != null ? HAS_TITLE : 0)
+        | (tags.getArtist() != null ? HAS_ARTIST : 0)
+        | (tags.getAlbum() != null ? HAS_ALBUM : 0));
+    if (tags.getTitle() != null) {
+      out.writeUTF(tags.getTitle());
+    }
+    if (tags.getArtist() != null) {
+      out.writeUTF(tags.getArtist());
+    }
+    if (tags.getAlbum() != null) {
+      out.writeUTF(tags.getAlbum());
+    }
+    out.writeLong(tags.getDurationMillis());
+  }
+
+  /**
+   * @return the number of lookups that found the tags in the cache
+   */
+  public int getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of lookups that had to read the file
+   */
+  public int getMisses() {
+    return misses.get();
+  }
+}
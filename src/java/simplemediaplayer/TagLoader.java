@@ -0,0 +1,207 @@
+package simplemediaplayer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.logging.Logger;
+
+/**
+ * Reads the tags of the tracks of a library on a fixed number of background
+ * threads. Tags are taken from the {@link TagCache} when the file did not
+ * change, so each file is only parsed once. Tracks that are needed right away
+ * (like the one that starts playing) can jump the queue.
+ */
+public class TagLoader implements Closeable {
+
+  /**
+   * Receives the tags as they are loaded. Called from the loader threads.
+   */
+  public interface Listener {
+    /**
+     * @param playListEntry The PlayList entry of the track
+     * @param tags The tags of the track
+     */
+    void onTagsLoaded(String playListEntry, TrackTags tags);
+  }
+
+  // Reading tags is mostly waiting on the disk, a few threads keep it busy
+  // without competing with playback
+  public static final int DEFAULT_THREADS =
+      Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+  private final TagCache cache;
+  private final Thread[] workers;
+  private final LinkedBlockingDeque<String> queue =
+      new LinkedBlockingDeque<String>();
+  // Entries that are queued, so a library is not queued twice
+  private final Set<String> queued =
+      ConcurrentHashMap.<String> newKeySet();
+  private final Map<String, TrackTags> loaded =
+      new ConcurrentHashMap<String, TrackTags>();
+  private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+  private volatile boolean closed;
+
+  /**
+   * Creates a loader and starts its threads.
+   *
+   * @param cache Cache of the tags of files read before
+   * @param threads Number of threads reading tags
+   */
+  public TagLoader(TagCache cache, int threads) {
+    this.cache = cache;
+    this.workers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      workers[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          work();
+        }
+      }, "Tag Loader " + (i + 1));
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+  }
+
+  /**
+   * @param listener Listener to receive the tags as they are loaded
+   */
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * @param listener Listener to stop sending tags to
+   */
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Returns the tags of the given track if they are loaded.
+   *
+   * @param playListEntry The PlayList entry of the track
+   * @return The tags, or null if they are not loaded yet
+   */
+  public TrackTags getTags(String playListEntry) {
+    return loaded.get(playListEntry);
+  }
+
+  /**
+   * Queues the given tracks to have their tags loaded.
+   *
+   * @param playListEntries The PlayList entries of the tracks
+   */
+  public void load(Collection<String> playListEntries) {
+    for (String playListEntry : playListEntries) {
+      if (!loaded.containsKey(playListEntry) && queued.add(playListEntry)) {
+        queue.addLast(playListEntry);
+      }
+    }
+  }
+
+  /**
+   * Loads the tags of the given track before any other queued track.
+   *
+   * @param playListEntry The PlayList entry of the track
+   */
+  public void loadFirst(String playListEntry) {
+    if (!loaded.containsKey(playListEntry)) {
+      queued.add(playListEntry);
+      queue.addFirst(playListEntry);
+    }
+  }
+
+  /**
+   * @return the cache the tags are kept in
+   */
+  public TagCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Stops the loader threads and saves the cache.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    for (Thread worker : workers) {
+      worker.interrupt();
+    }
+    saveCache();
+  }
+
+  private void work() {
+    while (!closed) {
+      String playListEntry;
+      try {
+        playListEntry = queue.take();
+      } catch (InterruptedException ie) {
+        continue;
+      }
+      if (loaded.containsKey(playListEntry)) {
+        continue;
+      }
+      TrackTags tags;
+      try {
+        tags = readTags(playListEntry);
+      } catch (RuntimeException | StackOverflowError e) {
+        // A malformed file must not stop the thread that reads the library
+        Logger.getGlobal().warning(
+            "Could not read tags of " + playListEntry + ": " + e);
+        tags = TrackTags.EMPTY;
+      }
+      loaded.put(playListEntry, tags);
+      queued.remove(playListEntry);
+      for (Listener listener : listeners) {
+        listener.onTagsLoaded(playListEntry, tags);
+      }
+      if (queue.isEmpty()) {
+        // Done with the library for now
+        saveCache();
+      }
+    }
+  }
+
+  private TrackTags readTags(String playListEntry) {
+    File file;
+    try {
+      file = LibraryScanner.toFile(playListEntry);
+    } catch (IllegalArgumentException iae) {
+      Logger.getGlobal().warning("Invalid PlayList entry: " + playListEntry);
+      return TrackTags.EMPTY;
+    }
+    try {
+      BasicFileAttributes attributes =
+          Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+      long size = attributes.size();
+      long lastModified = attributes.lastModifiedTime().toMillis();
+      TrackTags tags = cache.get(file.getPath(), size, lastModified);
+      if (tags == null) {
+        tags = TagReader.read(file);
+        cache.put(file.getPath(), size, lastModified, tags);
+      }
+      return tags;
+    } catch (IOException ioe) {
+      Logger.getGlobal().fine("Could not read tags of " + file + ": " + ioe);
+      return TrackTags.EMPTY;
+    }
+  }
+
+  private void saveCache() {
+    try {
+      cache.save();
+    } catch (IOException ioe) {
+      Logger.getGlobal().warning(
+          "Could not save tag cache " + cache.getCacheFile() + ": " + ioe);
+    }
+  }
+}
@@ -0,0 +1,565 @@
+package simplemediaplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Reads the title, artist, album and duration of an audio file. Supports
+ * ID3v2.2 to ID3v2.4 and ID3v1 tags (MP3 files) and the iTunes metadata atoms
+ * of MP4 files (M4A files). Only the parts of the file that hold the metadata
+ * are read, frames and atoms that are not needed (like cover art) are skipped
+ * without reading them. The duration of an MP3 file without a length frame is
+ * taken from its Xing/VBRI header or estimated from its bitrate.
+ */
+public class TagReader {
+
+  // Size of an ID3v1 tag at the end of a file
+  static final int ID3V1_SIZE = 128;
+  // Longest tag value that is kept
+  private static final int MAX_TEXT_LENGTH = 1024;
+  // Largest frame or atom value that is read
+  private static final int MAX_VALUE_SIZE = 64 * 1024;
+  // Largest unsynchronized ID3v2 tag, those are read into memory at once
+  private static final int MAX_UNSYNCHRONIZED_TAG_SIZE = 4 * 1024 * 1024;
+  // How far after the ID3v2 tag the first MPEG frame is searched for
+  private static final int MPEG_SEARCH_LENGTH = 64 * 1024;
+  // Deepest atom that is descended into, the metadata is at moov.udta.meta.ilst
+  private static final int MAX_ATOM_DEPTH = 8;
+
+  private static final int ATOM_FTYP = atom("ftyp");
+  private static final int ATOM_MOOV = atom("moov");
+  private static final int ATOM_MVHD = atom("mvhd");
+  private static final int ATOM_UDTA = atom("udta");
+  private static final int ATOM_META = atom("meta");
+  private static final int ATOM_ILST = atom("ilst");
+  private static final int ATOM_DATA = atom("data");
+  private static final int ATOM_TITLE = atom("\u00a9nam");
+  private static final int ATOM_ARTIST = atom("\u00a9ART");
+  private static final int ATOM_ALBUM = atom("\u00a9alb");
+  private static final int XING = atom("Xing");
+  private static final int INFO = atom("Info");
+  private static final int VBRI = atom("VBRI");
+
+  // Bitrates in kbit/s by bitrate index
+  private static final int[][] MPEG1_BITRATES = {
+      {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+      {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+      {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}};
+  private static final int[][] MPEG2_BITRATES = {
+      {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+      {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+      {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}};
+  // MPEG-1 sample rates, halved for MPEG-2 and quartered for MPEG-2.5
+  private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+  /**
+   * The tags found so far. Tags read first take precedence.
+   */
+  private static class Fields {
+    private String title;
+    private String artist;
+    private String album;
+    private long durationMillis = -1;
+
+    private boolean isComplete() {
+      return title != null && artist != null && album != null
+          && durationMillis >= 0;
+    }
+
+    private TrackTags toTags() {
+      if (title == null && artist == null && album == null
+          && durationMillis < 0) {
+        return TrackTags.EMPTY;
+      }
+      return new TrackTags(title, artist, album, durationMillis);
+    }
+  }
+
+  private TagReader() {
+  }
+
+  /**
+   * Reads the tags of the given audio file.
+   *
+   * @param file The audio file
+   * @return The tags of the file, {@link TrackTags#EMPTY} if it has none
+   * @throws IOException If the file cannot be read
+   */
+  public static TrackTags read(File file) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      Fields fields = new Fields();
+      ByteBuffer header = readAt(channel, 0, 10);
+      if (header.remaining() >= 8 && header.getInt(4) == ATOM_FTYP) {
+        readAtoms(channel, 0, channel.size(), 0, fields);
+        return fields.toTags();
+      }
+
+      long audioStart = 0;
+      if (isId3v2(header)) {
+        audioStart = readId3v2(channel, header, fields);
+      }
+      boolean hasId3v1 = readId3v1(channel, fields);
+      if (fields.durationMillis < 0 && (audioStart > 0
+          || file.getName().toLowerCase(Locale.ROOT).endsWith(".mp3"))) {
+        fields.durationMillis = readMpegDuration(channel, audioStart, hasId3v1);
+      }
+      return fields.toTags();
+    }
+  }
+
+  /**
+   * Reads the frames of the ID3v2 tag at the start of the file.
+   *
+   * @return The position of the audio data after the tag
+   */
+  private static long readId3v2(FileChannel channel, ByteBuffer header,
+      Fields fields) throws IOException {
+    int majorVersion = header.get(3);
+    int flags = header.get(5) & 0xff;
+    int tagSize = syncsafe(header.getInt(6));
+    long audioStart = id3v2End(header);
+    if (majorVersion < 2 || majorVersion > 4) {
+      return audioStart;
+    }
+
+    // Unsynchronization of a whole ID3v2.2/2.3 tag has to be undone before
+    // the frames can be found, ID3v2.4 marks it on each frame instead
+    ByteBuffer tag = null;
+    if ((flags & 0x80) != 0 && majorVersion < 4) {
+      if (tagSize > MAX_UNSYNCHRONIZED_TAG_SIZE) {
+        return audioStart;
+      }
+      tag = resynchronize(readAt(channel, 10, tagSize));
+    }
+    int limit = tag == null ? tagSize : tag.limit();
+
+    int offset = 0;
+    if ((flags & 0x40) != 0 && majorVersion > 2) {
+      ByteBuffer extendedHeader = region(channel, tag, 0, 4);
+      if (extendedHeader.remaining() < 4) {
+        return audioStart;
+      }
+      int size = extendedHeader.getInt(0);
+      offset = majorVersion == 4 ? syncsafe(size) : size + 4;
+    }
+
+    int headerSize = majorVersion == 2 ? 6 : 10;
+    while (offset >= 0 && offset + headerSize <= limit
+        && !fields.isComplete()) {
+      ByteBuffer frameHeader = region(channel, tag, offset, headerSize);
+      if (frameHeader.remaining() < headerSize || frameHeader.get(0) == 0) {
+        // Padding
+        break;
+      }
+      String id;
+      int size;
+      int frameFlags = 0;
+      if (majorVersion == 2) {
+        id = ascii(frameHeader, 3);
+        size = (frameHeader.get(3) & 0xff) << 16
+            | (frameHeader.get(4) & 0xff) << 8 | (frameHeader.get(5) & 0xff);
+      } else {
+        id = ascii(frameHeader, 4);
+        size = majorVersion == 4 ? syncsafe(frameHeader.getInt(4))
+            : frameHeader.getInt(4);
+        frameFlags = frameHeader.get(9) & 0xff;
+      }
+      if (size < 0 || (long) offset + headerSize + size > limit) {
+        break;
+      }
+      if (isWantedFrame(id) && size <= MAX_VALUE_SIZE) {
+        ByteBuffer body = region(channel, tag, offset + headerSize, size);
+        int prefix = 0;
+        boolean unsynchronized = false;
+        boolean readable = true;
+        if (majorVersion == 3) {
+          // Compressed or encrypted
+          readable = (frameFlags & 0xc0) == 0;
+          // Group identifier
+          prefix += (frameFlags & 0x20) != 0 ? 1 : 0;
+        } else if (majorVersion == 4) {
+          readable = (frameFlags & 0x0c) == 0;
+          prefix += (frameFlags & 0x40) != 0 ? 1 : 0;
+          // Data length indicator
+          prefix += (frameFlags & 0x01) != 0 ? 4 : 0;
+          unsynchronized = (frameFlags & 0x02) != 0 || (flags & 0x80) != 0;
+        }
+        if (readable && body.remaining() > prefix) {
+          body.position(prefix);
+          if (unsynchronized) {
+            body = resynchronize(body);
+          }
+          setFrame(fields, id, decodeText(body));
+        }
+      }
+      offset += headerSize + size;
+    }
+    return audioStart;
+  }
+
+  private static boolean isWantedFrame(String id) {
+    return id.equals("TIT2") || id.equals("TPE1") || id.equals("TALB")
+        || id.equals("TLEN") || id.equals("TT2") || id.equals("TP1")
+        || id.equals("TAL") || id.equals("TLE");
+  }
+
+  private static void setFrame(Fields fields, String id, String value) {
+    if (value == null) {
+      return;
+    }
+    if (id.equals("TIT2") || id.equals("TT2")) {
+      fields.title = first(fields.title, value);
+    } else if (id.equals("TPE1") || id.equals("TP1")) {
+      fields.artist = first(fields.artist, value);
+    } else if (id.equals("TALB") || id.equals("TAL")) {
+      fields.album = first(fields.album, value);
+    } else if (fields.durationMillis < 0) {
+      try {
+        long durationMillis = Long.parseLong(value);
+        if (durationMillis > 0) {
+          fields.durationMillis = durationMillis;
+        }
+      } catch (NumberFormatException nfe) {
+        // Not a number of milliseconds, ignore it
+      }
+    }
+  }
+
+  /**
+   * Decodes the value of an ID3v2 text frame. Only the first value is kept
+   * if the frame has more than one.
+   */
+  private static String decodeText(ByteBuffer body) {
+    if (!body.hasRemaining()) {
+      return null;
+    }
+    Charset charset;
+    switch (body.get()) {
+      case 0:
+        charset = StandardCharsets.ISO_8859_1;
+        break;
+      case 1:
+        // With byte order mark
+        charset = StandardCharsets.UTF_16;
+        break;
+      case 2:
+        charset = StandardCharsets.UTF_16BE;
+        break;
+      case 3:
+        charset = StandardCharsets.UTF_8;
+        break;
+      default:
+        return null;
+    }
+    String text = charset.decode(body).toString();
+    int terminator = text.indexOf('\0');
+    return clean(terminator < 0 ? text : text.substring(0, terminator));
+  }
+
+  /**
+   * Reads the ID3v1 tag at the end of the file.
+   *
+   * @return Whether the file has an ID3v1 tag
+   */
+  private static boolean readId3v1(FileChannel channel, Fields fields)
+      throws IOException {
+    long size = channel.size();
+    if (size < ID3V1_SIZE) {
+      return false;
+    }
+    ByteBuffer tag = readAt(channel, size - ID3V1_SIZE, ID3V1_SIZE);
+    if (tag.remaining() < ID3V1_SIZE || !isId3v1(tag)) {
+      return false;
+    }
+    fields.title = first(fields.title, latin1(tag, 3, 30));
+    fields.artist = first(fields.artist, latin1(tag, 33, 30));
+    fields.album = first(fields.album, latin1(tag, 63, 30));
+    return true;
+  }
+
+  /**
+   * Finds the first MPEG audio frame and calculates the duration from its
+   * Xing/Info or VBRI header, or from its bitrate if it has neither.
+   *
+   * @return The duration in milliseconds, -1 if no MPEG frame is found
+   */
+  private static long readMpegDuration(FileChannel channel, long audioStart,
+      boolean hasId3v1) throws IOException {
+    ByteBuffer data = readAt(channel, audioStart, MPEG_SEARCH_LENGTH);
+    for (int i = 0; i + 4 <= data.limit(); i++) {
+      int header = data.getInt(i);
+      if ((header & 0xffe00000) != 0xffe00000) {
+        continue;
+      }
+      int version = (header >>> 19) & 3;
+      int layer = 4 - ((header >>> 17) & 3);
+      int bitrateIndex = (header >>> 12) & 0xf;
+      int sampleRateIndex = (header >>> 10) & 3;
+      if (version == 1 || layer == 4 || bitrateIndex == 0
+          || bitrateIndex == 15 || sampleRateIndex == 3) {
+        continue;
+      }
+      boolean mpeg1 = version == 3;
+      int sampleRate =
+          SAMPLE_RATES[sampleRateIndex] >> (mpeg1 ? 0 : version == 2 ? 1 : 2);
+      int[][] bitrates = mpeg1 ? MPEG1_BITRATES : MPEG2_BITRATES;
+      int bitrate = 1000 * bitrates[layer - 1][bitrateIndex];
+      int samplesPerFrame =
+          layer == 1 ? 384 : layer == 3 && !mpeg1 ? 576 : 1152;
+      int padding = (header >>> 9) & 1;
+      int frameLength = layer == 1 ? (12 * bitrate / sampleRate + padding) * 4
+          : samplesPerFrame / 8 * bitrate / sampleRate + padding;
+
+      // A real frame is followed by another one
+      int next = i + frameLength;
+      if (next + 4 <= data.limit()
+          && (data.getInt(next) & 0xffe00000) != 0xffe00000) {
+        continue;
+      }
+
+      boolean mono = ((header >>> 6) & 3) == 3;
+      int xing = i + 4 + (mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+      if (xing + 12 <= data.limit()
+          && (data.getInt(xing) == XING || data.getInt(xing) == INFO)
+          && (data.getInt(xing + 4) & 1) != 0) {
+        long frames = data.getInt(xing + 8) & 0xffffffffL;
+        return frames * samplesPerFrame * 1000 / sampleRate;
+      }
+      int vbri = i + 4 + 32;
+      if (vbri + 18 <= data.limit() && data.getInt(vbri) == VBRI) {
+        long frames = data.getInt(vbri + 14) & 0xffffffffL;
+        return frames * samplesPerFrame * 1000 / sampleRate;
+      }
+
+      long audioBytes =
+          channel.size() - audioStart - i - (hasId3v1 ? 128 : 0);
+      return Math.max(0, audioBytes) * 8000 / bitrate;
+    }
+    return -1;
+  }
+
+  /**
+   * Reads the atoms between {@code start} and {@code end}, descending into the
+   * ones that lead to the metadata. Atoms nested deeper than any metadata is
+   * are skipped, so a broken or hostile file cannot exhaust the stack.
+   */
+  private static void readAtoms(FileChannel channel, long start, long end,
+      int depth, Fields fields) throws IOException {
+    if (depth >= MAX_ATOM_DEPTH) {
+      return;
+    }
+    long position = start;
+    while (position + 8 <= end) {
+      ByteBuffer header = readAt(channel, position, 16);
+      if (header.remaining() < 8) {
+        return;
+      }
+      long size = header.getInt(0) & 0xffffffffL;
+      int type = header.getInt(4);
+      int headerSize = 8;
+      if (size == 1) {
+        if (header.remaining() < 16) {
+          return;
+        }
+        size = header.getLong(8);
+        headerSize = 16;
+      } else if (size == 0) {
+        // Extends to the end of the enclosing atom
+        size = end - position;
+      }
+      if (size < headerSize || size > end - position) {
+        return;
+      }
+      long bodyStart = position + headerSize;
+      long bodyEnd = position + size;
+
+      if (type == ATOM_MOOV || type == ATOM_UDTA || type == ATOM_ILST) {
+        readAtoms(channel, bodyStart, bodyEnd, depth + 1, fields);
+      } else if (type == ATOM_META) {
+        // A full atom in MP4 files, but a plain one in QuickTime files
+        ByteBuffer versionAndFlags = readAt(channel, bodyStart, 4);
+        boolean fullAtom = versionAndFlags.remaining() == 4
+            && versionAndFlags.getInt(0) == 0;
+        readAtoms(channel, bodyStart + (fullAtom ? 4 : 0), bodyEnd, depth + 1,
+            fields);
+      } else if (type == ATOM_MVHD) {
+        readMovieHeader(channel, bodyStart, fields);
+      } else if (type == ATOM_TITLE) {
+        fields.title = first(fields.title, readData(channel, bodyStart,
+            bodyEnd));
+      } else if (type == ATOM_ARTIST) {
+        fields.artist = first(fields.artist, readData(channel, bodyStart,
+            bodyEnd));
+      } else if (type == ATOM_ALBUM) {
+        fields.album = first(fields.album, readData(channel, bodyStart,
+            bodyEnd));
+      }
+      position = bodyEnd;
+    }
+  }
+
+  private static void readMovieHeader(FileChannel channel, long start,
+      Fields fields) throws IOException {
+    ByteBuffer header = readAt(channel, start, 32);
+    long timescale;
+    long duration;
+    if (header.remaining() >= 32 && header.get(0) == 1) {
+      timescale = header.getInt(20) & 0xffffffffL;
+      duration = header.getLong(24);
+    } else if (header.remaining() >= 20 && header.get(0) == 0) {
+      timescale = header.getInt(12) & 0xffffffffL;
+      duration = header.getInt(16) & 0xffffffffL;
+    } else {
+      return;
+    }
+    if (timescale > 0 && duration > 0 && fields.durationMillis < 0) {
+      fields.durationMillis = duration * 1000 / timescale;
+    }
+  }
+
+  /**
+   * Reads the UTF-8 value of the data atom of a metadata item.
+   */
+  private static String readData(FileChannel channel, long start, long end)
+      throws IOException {
+    ByteBuffer header = readAt(channel, start, 16);
+    if (header.remaining() < 16 || header.getInt(4) != ATOM_DATA) {
+      return null;
+    }
+    long size = header.getInt(0) & 0xffffffffL;
+    // Type 1 is UTF-8 text
+    if (size < 16 || size > end - start || size - 16 > MAX_VALUE_SIZE
+        || (header.getInt(8) & 0xffffff) != 1) {
+      return null;
+    }
+    return clean(StandardCharsets.UTF_8
+        .decode(readAt(channel, start + 16, (int) (size - 16))).toString());
+  }
+
+  /**
+   * @param header The first 10 bytes of a file
+   * @return Whether the file starts with an ID3v2 tag
+   */
+  static boolean isId3v2(ByteBuffer header) {
+    return header.remaining() >= 10 && header.get(0) == 'I'
+        && header.get(1) == 'D' && header.get(2) == '3';
+  }
+
+  /**
+   * @param header The header of an ID3v2 tag
+   * @return The position after the tag, where the audio data starts
+   */
+  static long id3v2End(ByteBuffer header) {
+    int flags = header.get(5) & 0xff;
+    // The footer is a copy of the header
+    return 10L + syncsafe(header.getInt(6)) + ((flags & 0x10) != 0 ? 10 : 0);
+  }
+
+  /**
+   * @param tag The last {@link #ID3V1_SIZE} bytes of a file, or at least the
+   *        first 3 of them
+   * @return Whether they are an ID3v1 tag
+   */
+  static boolean isId3v1(ByteBuffer tag) {
+    return tag.remaining() >= 3 && tag.get(0) == 'T' && tag.get(1) == 'A'
+        && tag.get(2) == 'G';
+  }
+
+  /**
+   * Reads up to {@code length} bytes at the given position. The returned
+   * buffer is shorter if the file ends before.
+   */
+  static ByteBuffer readAt(FileChannel channel, long position,
+      int length) throws IOException {
+    long available = Math.max(0, channel.size() - position);
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, available));
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        break;
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Reads part of an ID3v2 tag, from memory if the tag was read at once.
+   */
+  private static ByteBuffer region(FileChannel channel, ByteBuffer tag,
+      int offset, int length) throws IOException {
+    if (tag == null) {
+      return readAt(channel, 10L + offset, length);
+    }
+    ByteBuffer region = tag.duplicate();
+    region.position(Math.min(offset, tag.limit()));
+    region.limit(Math.min(offset + length, tag.limit()));
+    return region.slice();
+  }
+
+  /**
+   * Undoes unsynchronization: every 0xFF 0x00 was written for a 0xFF.
+   */
+  private static ByteBuffer resynchronize(ByteBuffer data) {
+    byte[] bytes = new byte[data.remaining()];
+    int length = 0;
+    boolean afterFF = false;
+    while (data.hasRemaining()) {
+      byte b = data.get();
+      if (!(afterFF && b == 0)) {
+        bytes[length++] = b;
+      }
+      afterFF = b == (byte) 0xff;
+    }
+    return ByteBuffer.wrap(bytes, 0, length).slice();
+  }
+
+  private static String latin1(ByteBuffer buffer, int offset, int length) {
+    int end = offset;
+    while (end < offset + length && buffer.get(end) != 0) {
+      end++;
+    }
+    byte[] bytes = new byte[end - offset];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(offset + i);
+    }
+    return clean(new String(bytes, StandardCharsets.ISO_8859_1));
+  }
+
+  static String ascii(ByteBuffer buffer, int length) {
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = (char) (buffer.get(i) & 0xff);
+    }
+    return new String(chars);
+  }
+
+  private static String clean(String text) {
+    text = text.trim();
+    if (text.isEmpty()) {
+      return null;
+    }
+    return text.length() > MAX_TEXT_LENGTH
+        ? text.substring(0, MAX_TEXT_LENGTH) : text;
+  }
+
+  private static String first(String current, String value) {
+    return current != null ? current : value;
+  }
+
+  static int syncsafe(int value) {
+    return (value >>> 24 & 0x7f) << 21 | (value >>> 16 & 0x7f) << 14
+        | (value >>> 8 & 0x7f) << 7 | (value & 0x7f);
+  }
+
+  private static int atom(String type) {
+    return type.charAt(0) << 24 | type.charAt(1) << 16 | type.charAt(2) << 8
+        | type.charAt(3);
+  }
+}
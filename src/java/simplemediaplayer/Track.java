@@ -0,0 +1,83 @@
+package simplemediaplayer;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.util.Duration;
+
+/**
+ * The player of one track of a {@link PlayList}, created by a
+ * {@link PlaybackBackend}. Mirrors the parts of a MediaPlayer the PlayList
+ * uses, so its queueing and transitions do not depend on the JavaFX media
+ * stack.
+ */
+public interface Track {
+
+  /**
+   * Status of a Track, following the status of a MediaPlayer.
+   */
+  enum Status {
+    UNKNOWN, READY, PLAYING, PAUSED, STOPPED, STALLED, HALTED, DISPOSED
+  }
+
+  /**
+   * @return the media source (URI) the track plays
+   */
+  String getSource();
+
+  /**
+   * Starts playing, as soon as the track is ready if it is not yet.
+   */
+  void play();
+
+  void pause();
+
+  /**
+   * Stops playing and rewinds to the start.
+   */
+  void stop();
+
+  /**
+   * Frees the resources of the track. It cannot be played afterwards.
+   */
+  void dispose();
+
+  Status getStatus();
+
+  ReadOnlyObjectProperty<Status> statusProperty();
+
+  /**
+   * @return the current position in the track
+   */
+  Duration getCurrentTime();
+
+  /**
+   * @return the length of the track, {@link Duration#UNKNOWN} until known
+   */
+  Duration getTotalDuration();
+
+  /**
+   * @return the volume the track plays at, from 0.0 to 1.0
+   */
+  DoubleProperty volumeProperty();
+
+  /**
+   * @param onEndOfMedia Called when the track plays to its end
+   */
+  void setOnEndOfMedia(Runnable onEndOfMedia);
+
+  /**
+   * @param onError Called when the track fails, see {@link #getError()}
+   */
+  void setOnError(Runnable onError);
+
+  /**
+   * @return the reason the track failed, or null if it did not
+   */
+  String getError();
+
+  /**
+   * @return the kind of failure, e.g. MEDIA_UNAVAILABLE, or null if the track
+   *         did not fail
+   */
+  String getErrorType();
+}
@@ -0,0 +1,182 @@
+package simplemediaplayer;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * List of PlayList entries kept as the ids the {@link TrackRegistry} gave
+ * them, four bytes per entry. The entries themselves, and what is known about
+ * them, are shared through the registry by every list with the same tracks.
+ */
+public class TrackList extends AbstractList<String> implements RandomAccess {
+
+  private final TrackRegistry registry;
+  private int[] ids;
+  private int size;
+
+  /**
+   * @param registry The registry of the tracks of the list
+   */
+  public TrackList(TrackRegistry registry) {
+    this(registry, 10);
+  }
+
+  /**
+   * @param registry The registry of the tracks of the list
+   * @param capacity The number of entries to make room for
+   */
+  public TrackList(TrackRegistry registry, int capacity) {
+    this.registry = registry;
+    this.ids = new int[Math.max(capacity, 1)];
+  }
+
+  /**
+   * @param registry The registry of the tracks of the list
+   * @param entries The PlayList entries to start with
+   */
+  public TrackList(TrackRegistry registry, Collection<String> entries) {
+    this(registry, entries.size());
+    addAll(entries);
+  }
+
+  /**
+   * @return the registry of the tracks of the list
+   */
+  public TrackRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * @param index Index in the list
+   * @return The id of the track at the index
+   */
+  public int getId(int index) {
+    checkIndex(index);
+    return ids[index];
+  }
+
+  /**
+   * @return the ids of the tracks of the list, in a new array
+   */
+  public int[] getIds() {
+    return Arrays.copyOf(ids, size);
+  }
+
+  /**
+   * Adds a registered track to the end of the list.
+   *
+   * @param id The id of the track
+   */
+  public void addId(int id) {
+    ensureCapacity(size + 1);
+    ids[size++] = id;
+    modCount++;
+  }
+
+  /**
+   * @return a copy of the list, sharing the tracks of the list
+   */
+  public TrackList copy() {
+    TrackList copy = new TrackList(registry, size);
+    System.arraycopy(ids, 0, copy.ids, 0, size);
+    copy.size = size;
+    return copy;
+  }
+
+  @Override
+  public String get(int index) {
+    return registry.getUri(getId(index));
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public String set(int index, String entry) {
+    checkIndex(index);
+    String previous = registry.getUri(ids[index]);
+    ids[index] = registry.register(entry);
+    return previous;
+  }
+
+  @Override
+  public void add(int index, String entry) {
+    if (index < 0 || index > size) {
+      throw new IndexOutOfBoundsException("Index: " + index);
+    }
+    int id = registry.register(entry);
+    ensureCapacity(size + 1);
+    System.arraycopy(ids, index, ids, index + 1, size - index);
+    ids[index] = id;
+    size++;
+    modCount++;
+  }
+
+  @Override
+  public String remove(int index) {
+    checkIndex(index);
+    String previous = registry.getUri(ids[index]);
+    System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+    size--;
+    modCount++;
+    return previous;
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends String> entries) {
+    ensureCapacity(size + entries.size());
+    for (String entry : entries) {
+      ids[size++] = registry.register(entry);
+    }
+    modCount++;
+    return !entries.isEmpty();
+  }
+
+  @Override
+  public int indexOf(Object entry) {
+    // Compares ids rather than strings
+    int id = entry instanceof String ? registry.find((String) entry) : -1;
+    if (id >= 0) {
+      for (int i = 0; i < size; i++) {
+        if (ids[i] == id) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public boolean contains(Object entry) {
+    return indexOf(entry) >= 0;
+  }
+
+  @Override
+  public void clear() {
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  protected void removeRange(int fromIndex, int toIndex) {
+    System.arraycopy(ids, toIndex, ids, fromIndex, size - toIndex);
+    size -= toIndex - fromIndex;
+    modCount++;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > ids.length) {
+      ids = Arrays.copyOf(ids, Math.max(capacity, ids.length * 2));
+    }
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index);
+    }
+  }
+}
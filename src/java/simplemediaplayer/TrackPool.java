@@ -0,0 +1,169 @@
+package simplemediaplayer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded pool of the {@link Track}s used by {@link PlayList}. Tracks are
+ * only created when they enter the playback window (the current track plus a
+ * number of upcoming tracks) and are disposed of in least recently used order
+ * once the pool is over capacity.
+ */
+public class TrackPool {
+
+  /**
+   * Creates the Track of a source when it enters the window.
+   */
+  public interface Factory {
+    Track create(String sourcePath);
+  }
+
+  private final Factory factory;
+  private int lookahead;
+  // Access ordered so that the eldest entry is the least recently used track
+  private final LinkedHashMap<String, Track> tracks =
+      new LinkedHashMap<String, Track>(16, 0.75f, true);
+
+  /**
+   * @param factory Factory used to create the Tracks
+   * @param lookahead Number of upcoming tracks to keep a Track for
+   */
+  public TrackPool(Factory factory, int lookahead) {
+    this.factory = factory;
+    setLookahead(lookahead);
+  }
+
+  /**
+   * @return the number of upcoming tracks to keep a Track for
+   */
+  public int getLookahead() {
+    return lookahead;
+  }
+
+  /**
+   * @param lookahead the number of upcoming tracks to keep a Track for
+   */
+  public void setLookahead(int lookahead) {
+    if (lookahead < 0) {
+      throw new IllegalArgumentException("Lookahead must not be negative");
+    }
+    this.lookahead = lookahead;
+  }
+
+  /**
+   * The window plus one extra slot so the previously played track is still
+   * warm when the user goes back to it.
+   *
+   * @return the maximum number of live Tracks
+   */
+  public int getCapacity() {
+    return lookahead + 2;
+  }
+
+  /**
+   * Returns the Track for the given source, creating it if needed.
+   *
+   * @param sourcePath URI of the audio file
+   * @return The Track for the audio file
+   */
+  public Track acquire(String sourcePath) {
+    Track track = tracks.get(sourcePath);
+    if (track == null) {
+      track = factory.create(sourcePath);
+      PlayerMetrics.GLOBAL.trackCreated();
+      tracks.put(sourcePath, track);
+    }
+    return track;
+  }
+
+  /**
+   * Returns the Track for the given source without creating one.
+   *
+   * @param sourcePath URI of the audio file
+   * @return The Track if one is live, otherwise null
+   */
+  public Track peek(String sourcePath) {
+    return tracks.get(sourcePath);
+  }
+
+  /**
+   * Makes sure the track at {@code currentIndex} and the next
+   * {@link #getLookahead()} tracks are live, then disposes of whatever falls
+   * outside the capacity.
+   *
+   * @param sourcePaths The URIs of the tracks in play order
+   * @param currentIndex Index of the current track
+   * @return The live Tracks of the window, current track first
+   */
+  public List<Track> window(List<String> sourcePaths, int currentIndex) {
+    List<Track> window = new ArrayList<Track>();
+    if (sourcePaths.isEmpty()) {
+      return window;
+    }
+    int size = Math.min(lookahead + 1, sourcePaths.size());
+    // Touch the furthest track first so the current track ends up as the most
+    // recently used entry and is never the one evicted.
+    for (int i = size - 1; i >= 0; i--) {
+      Track track =
+          acquire(sourcePaths.get((currentIndex + i) % sourcePaths.size()));
+      window.remove(track);
+      window.add(0, track);
+    }
+    evict();
+    return window;
+  }
+
+  /**
+   * @return All live Tracks
+   */
+  public List<Track> getLiveTracks() {
+    return new ArrayList<Track>(tracks.values());
+  }
+
+  /**
+   * @return the number of live Tracks
+   */
+  public int size() {
+    return tracks.size();
+  }
+
+  /**
+   * Disposes of the Track for the given source, if one is live.
+   *
+   * @param sourcePath URI of the audio file
+   */
+  public void release(String sourcePath) {
+    Track track = tracks.remove(sourcePath);
+    if (track != null) {
+      dispose(track);
+    }
+  }
+
+  /**
+   * Stops and disposes of every live Track.
+   */
+  public void clear() {
+    for (Track track : tracks.values()) {
+      dispose(track);
+    }
+    tracks.clear();
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<String, Track>> iterator =
+        tracks.entrySet().iterator();
+    while (tracks.size() > getCapacity() && iterator.hasNext()) {
+      Track track = iterator.next().getValue();
+      iterator.remove();
+      dispose(track);
+    }
+  }
+
+  private static void dispose(Track track) {
+    track.dispose();
+    PlayerMetrics.GLOBAL.trackDisposed();
+  }
+}
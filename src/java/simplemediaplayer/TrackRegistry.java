@@ -0,0 +1,281 @@
+package simplemediaplayer;
+
+import java.util.Arrays;
+
+/**
+ * Registry of every track the player knows of. Each track gets an int id
+ * that stays the same for as long as the player runs, so PlayLists, play
+ * orders and indexes can refer to tracks by id, and PlayLists with the same
+ * tracks share them instead of each keeping its own copies.
+ * <p>
+ * What is known about the tracks is kept in one array per field, indexed by
+ * id, rather than in an object per track: the URI (the PlayList entry), the
+ * duration, the file size, flags and how often and when the track was played
+ * and skipped. Ids are never reused; a track that is
+ * no longer in any PlayList keeps its id in case it comes back.
+ * <p>
+ * The URI of a track never changes, so it is read without a lock, as are
+ * the number of tracks; the other fields are read in batches by
+ * {@link #getPlayStats(int[], int[], int[], long[])}.
+ */
+public class TrackRegistry {
+
+  // The registry of the player
+  public static final TrackRegistry GLOBAL = new TrackRegistry();
+
+  // Flags of a track
+  public static final int FLAG_UNPLAYABLE = 1;
+  public static final int FLAG_MISSING = 2;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  // Written with the lock held, published by the write of count
+  private volatile String[] uris = new String[INITIAL_CAPACITY];
+  private long[] durations = new long[INITIAL_CAPACITY];
+  private long[] sizes = new long[INITIAL_CAPACITY];
+  private byte[] flags = new byte[INITIAL_CAPACITY];
+  private int[] playCounts = new int[INITIAL_CAPACITY];
+  private int[] skipCounts = new int[INITIAL_CAPACITY];
+  private long[] lastPlayed = new long[INITIAL_CAPACITY];
+  private volatile int count;
+  // Ids by hash of their URI, open addressing with -1 for a free slot
+  private int[] table = newTable(INITIAL_CAPACITY * 2);
+
+  /**
+   * Returns the id of the given track, registering it if it is new.
+   *
+   * @param uri The PlayList entry of the track
+   * @return The id of the track
+   */
+  public synchronized int register(String uri) {
+    int slot = slot(uri);
+    if (table[slot] >= 0) {
+      return table[slot];
+    }
+    if (count == uris.length) {
+      grow();
+      slot = slot(uri);
+    }
+    int id = count;
+    uris[id] = uri;
+    durations[id] = -1;
+    sizes[id] = -1;
+    table[slot] = id;
+    count = id + 1;
+    return id;
+  }
+
+  /**
+   * @param uri The PlayList entry of a track
+   * @return The id of the track, or -1 if it is not registered
+   */
+  public synchronized int find(String uri) {
+    return table[slot(uri)];
+  }
+
+  /**
+   * @return the number of registered tracks, one more than the highest id
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * @param id Id of a track
+   * @return The PlayList entry of the track
+   */
+  public String getUri(int id) {
+    // The count first, any array read after it holds the URIs up to it
+    checkId(id);
+    return uris[id];
+  }
+
+  /**
+   * @param id Id of a track
+   * @return The duration of the track in milliseconds, or -1 if unknown
+   */
+  public synchronized long getDurationMillis(int id) {
+    checkId(id);
+    return durations[id];
+  }
+
+  /**
+   * @param id Id of a track
+   * @param durationMillis The duration of the track in milliseconds
+   */
+  public synchronized void setDurationMillis(int id, long durationMillis) {
+    checkId(id);
+    durations[id] = durationMillis;
+  }
+
+  /**
+   * @param id Id of a track
+   * @return The size of the file of the track in bytes, or -1 if unknown
+   */
+  public synchronized long getSize(int id) {
+    checkId(id);
+    return sizes[id];
+  }
+
+  /**
+   * @param id Id of a track
+   * @param size The size of the file of the track in bytes
+   */
+  public synchronized void setSize(int id, long size) {
+    checkId(id);
+    sizes[id] = size;
+  }
+
+  /**
+   * @param id Id of a track
+   * @param flag One of the FLAG constants
+   * @return Whether the track has the flag
+   */
+  public synchronized boolean hasFlag(int id, int flag) {
+    checkId(id);
+    return (flags[id] & flag) != 0;
+  }
+
+  /**
+   * @param id Id of a track
+   * @param flag One of the FLAG constants
+   * @param set Whether to set or clear the flag
+   */
+  public synchronized void setFlag(int id, int flag, boolean set) {
+    checkId(id);
+    flags[id] = (byte) (set ? flags[id] | flag : flags[id] & ~flag);
+  }
+
+  /**
+   * Counts a play of a track to the end.
+   *
+   * @param id Id of a track
+   * @param timeMillis When the track was played, in milliseconds since the
+   *        epoch
+   */
+  public synchronized void recordPlay(int id, long timeMillis) {
+    checkId(id);
+    playCounts[id]++;
+    lastPlayed[id] = Math.max(lastPlayed[id], timeMillis);
+  }
+
+  /**
+   * Counts a skip of a track before its end.
+   *
+   * @param id Id of a track
+   */
+  public synchronized void recordSkip(int id) {
+    checkId(id);
+    skipCounts[id]++;
+  }
+
+  /**
+   * Adds plays and skips counted elsewhere, such as in earlier sessions.
+   *
+   * @param id Id of a track
+   * @param plays Times the track was played to the end
+   * @param skips Times the track was skipped
+   * @param lastPlayedMillis When the track was last played to the end, 0 if
+   *        never
+   */
+  public synchronized void addPlayStats(int id, int plays, int skips,
+      long lastPlayedMillis) {
+    checkId(id);
+    playCounts[id] += plays;
+    skipCounts[id] += skips;
+    lastPlayed[id] = Math.max(lastPlayed[id], lastPlayedMillis);
+  }
+
+  /**
+   * Reads how often and when each of the given tracks was played and skipped
+   * at once.
+   *
+   * @param ids Ids of tracks
+   * @param plays Receives the number of times each track was played to the
+   *        end
+   * @param skips Receives the number of times each track was skipped
+   * @param lastPlayedMillis Receives when each track was last played to the
+   *        end, in milliseconds since the epoch, or 0 if never
+   */
+  public synchronized void getPlayStats(int[] ids, int[] plays, int[] skips,
+      long[] lastPlayedMillis) {
+    for (int i = 0; i < ids.length; i++) {
+      int id = ids[i];
+      checkId(id);
+      plays[i] = playCounts[id];
+      skips[i] = skipCounts[id];
+      lastPlayedMillis[i] = lastPlayed[id];
+    }
+  }
+
+  /**
+   * @param id Id of a track
+   * @return The number of times the track was played to the end
+   */
+  public synchronized int getPlayCount(int id) {
+    checkId(id);
+    return playCounts[id];
+  }
+
+  /**
+   * @param id Id of a track
+   * @return The number of times the track was skipped
+   */
+  public synchronized int getSkipCount(int id) {
+    checkId(id);
+    return skipCounts[id];
+  }
+
+  /**
+   * @param id Id of a track
+   * @return When the track was last played to the end, in milliseconds since
+   *         the epoch, or 0 if never
+   */
+  public synchronized long getLastPlayedMillis(int id) {
+    checkId(id);
+    return lastPlayed[id];
+  }
+
+  private void checkId(int id) {
+    if (id < 0 || id >= count) {
+      throw new IndexOutOfBoundsException("Track id: " + id);
+    }
+  }
+
+  /**
+   * Returns the slot of the table that holds the id of the URI, or the free
+   * slot it goes in.
+   */
+  private int slot(String uri) {
+    int mask = table.length - 1;
+    // Spread the bits, hash codes of similar paths differ in the low bits
+    int hash = uri.hashCode() * 0x9e3779b9;
+    int slot = (hash ^ hash >>> 16) & mask;
+    while (table[slot] >= 0 && !uris[table[slot]].equals(uri)) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void grow() {
+    int capacity = uris.length * 2;
+    uris = Arrays.copyOf(uris, capacity);
+    durations = Arrays.copyOf(durations, capacity);
+    sizes = Arrays.copyOf(sizes, capacity);
+    flags = Arrays.copyOf(flags, capacity);
+    playCounts = Arrays.copyOf(playCounts, capacity);
+    skipCounts = Arrays.copyOf(skipCounts, capacity);
+    lastPlayed = Arrays.copyOf(lastPlayed, capacity);
+    // At most half full
+    table = newTable(capacity * 2);
+    for (int id = 0; id < count; id++) {
+      table[slot(uris[id])] = id;
+    }
+  }
+
+  private static int[] newTable(int size) {
+    int[] table = new int[size];
+    Arrays.fill(table, -1);
+    return table;
+  }
+}
@@ -0,0 +1,57 @@
+package simplemediaplayer;
+
+/**
+ * Metadata of an audio file as read by {@link TagReader}. Every field is
+ * optional: missing strings are null and a missing duration is -1.
+ */
+public class TrackTags {
+
+  // Tags of a file without any metadata
+  public static final TrackTags EMPTY = new TrackTags(null, null, null, -1);
+
+  private final String title;
+  private final String artist;
+  private final String album;
+  private final long durationMillis;
+
+  public TrackTags(String title, String artist, String album,
+      long durationMillis) {
+    this.title = title;
+    this.artist = artist;
+    this.album = album;
+    this.durationMillis = durationMillis;
+  }
+
+  /**
+   * @return the title of the track, or null if unknown
+   */
+  public String getTitle() {
+    return title;
+  }
+
+  /**
+   * @return the artist of the track, or null if unknown
+   */
+  public String getArtist() {
+    return artist;
+  }
+
+  /**
+   * @return the album of the track, or null if unknown
+   */
+  public String getAlbum() {
+    return album;
+  }
+
+  /**
+   * @return the duration of the track in milliseconds, or -1 if unknown
+   */
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  public String toString() {
+    return "TrackTags[title=" + title + ", artist=" + artist + ", album="
+        + album + ", durationMillis=" + durationMillis + "]";
+  }
+}
@@ -0,0 +1,136 @@
+package simplemediaplayer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Records the latency of track changes in a {@link PlayList}: the time from
+ * the end of the previous track (or the "Next" request) until the next track
+ * reports that it is playing. Recording takes no lock, so it can be done on
+ * the playback path while the statistics are read from another thread.
+ */
+public class TransitionStats {
+
+  // Default gap a pre-rolled transition is expected to stay under
+  public static final long DEFAULT_MAX_GAP_MILLIS = 50;
+
+  private volatile long maxGapNanos =
+      TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_GAP_MILLIS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder overBudgetCount = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final LongAccumulator minNanos =
+      new LongAccumulator(new LongBinaryOperator() {
+        @Override
+        public long applyAsLong(long left, long right) {
+          return Math.min(left, right);
+        }
+      }, Long.MAX_VALUE);
+  private final LongAccumulator maxNanos =
+      new LongAccumulator(new LongBinaryOperator() {
+        @Override
+        public long applyAsLong(long left, long right) {
+          return Math.max(left, right);
+        }
+      }, 0);
+  private volatile long lastNanos;
+
+  /**
+   * Records one transition.
+   *
+   * @param latencyNanos Time from handover to playback in nanoseconds
+   * @return true iff the transition stayed within the maximum gap
+   */
+  public boolean record(long latencyNanos) {
+    count.increment();
+    totalNanos.add(latencyNanos);
+    minNanos.accumulate(latencyNanos);
+    maxNanos.accumulate(latencyNanos);
+    lastNanos = latencyNanos;
+    if (latencyNanos > maxGapNanos) {
+      overBudgetCount.increment();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return the maximum gap in milliseconds a transition should stay under
+   */
+  public long getMaxGapMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxGapNanos);
+  }
+
+  /**
+   * @param maxGapMillis the maximum gap in milliseconds a transition should
+   *        stay under
+   */
+  public void setMaxGapMillis(long maxGapMillis) {
+    this.maxGapNanos = TimeUnit.MILLISECONDS.toNanos(maxGapMillis);
+  }
+
+  /**
+   * @return the number of recorded transitions
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * @return the number of transitions that took longer than the maximum gap
+   */
+  public long getOverBudgetCount() {
+    return overBudgetCount.sum();
+  }
+
+  /**
+   * @return the latency of the last transition in nanoseconds
+   */
+  public long getLastNanos() {
+    return lastNanos;
+  }
+
+  /**
+   * @return the lowest latency in nanoseconds, 0 if nothing was recorded
+   */
+  public long getMinNanos() {
+    return count.sum() == 0 ? 0 : minNanos.get();
+  }
+
+  /**
+   * @return the highest latency in nanoseconds
+   */
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * @return the mean latency in nanoseconds, 0 if nothing was recorded
+   */
+  public long getMeanNanos() {
+    long recorded = count.sum();
+    return recorded == 0 ? 0 : totalNanos.sum() / recorded;
+  }
+
+  /**
+   * Clears all recorded transitions.
+   */
+  public void reset() {
+    count.reset();
+    overBudgetCount.reset();
+    totalNanos.reset();
+    minNanos.reset();
+    maxNanos.reset();
+    lastNanos = 0;
+  }
+
+  public String toString() {
+    return "Transitions: " + getCount() + " (over " + getMaxGapMillis()
+        + "ms: " + getOverBudgetCount() + "), min/mean/max: "
+        + TimeUnit.NANOSECONDS.toMillis(getMinNanos()) + "/"
+        + TimeUnit.NANOSECONDS.toMillis(getMeanNanos()) + "/"
+        + TimeUnit.NANOSECONDS.toMillis(getMaxNanos()) + "ms";
+  }
+}
@@ -1,17 +1,61 @@
 package simplemediaplayer;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.util.logging.Logger;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Simple URI encoder/decoder class.
+ * <p>
+ * Encodes the same way as {@link java.net.URLEncoder} with UTF-8, except that
+ * spaces become "%20", "!", "'", "(", ")" and "~" are left as is and "-"
+ * becomes "%2d". Decodes the same way as {@link java.net.URLDecoder} with
+ * UTF-8. Both are done in a single pass over the string into a buffer that is
+ * reused by the calling thread.
  * 
  * @author Brendan Zhang
  * @since 2016-05-02
  */
 public class URIEncoder {
 
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // Characters that are copied as is when encoding
+    private static final String UNRESERVED_CHARACTERS =
+	    "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789"
+		    + ".*_!'()~";
+
+    // Encoding of each ASCII character, null if it is copied as is
+    private static final String[] ASCII_ENCODINGS = new String[128];
+
+    // Buffers larger than this are not kept for reuse
+    private static final int MAX_REUSED_BUFFER_SIZE = 8192;
+
+    static {
+	for (int c = 0; c < ASCII_ENCODINGS.length; c++) {
+	    ASCII_ENCODINGS[c] = "%" + HEX_DIGITS[c >> 4] + HEX_DIGITS[c & 0xF];
+	}
+	for (int i = 0; i < UNRESERVED_CHARACTERS.length(); i++) {
+	    ASCII_ENCODINGS[UNRESERVED_CHARACTERS.charAt(i)] = null;
+	}
+	ASCII_ENCODINGS[' '] = "%20";
+	ASCII_ENCODINGS['-'] = "%2d";
+    }
+
+    private static final ThreadLocal<StringBuilder> STRING_BUFFER =
+	    new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+		    return new StringBuilder(256);
+		}
+	    };
+
+    private static final ThreadLocal<byte[]> BYTE_BUFFER =
+	    new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+		    return new byte[64];
+		}
+	    };
+
     /**
      * Encodes the given string into URI format.
      * 
@@ -20,19 +64,44 @@ public class URIEncoder {
      * @return The string in URI format
      */
     public static String encodeURI(String argString) {
-	String result = "";
-	try {
-	    result = URLEncoder.encode(argString, "UTF-8")
-		    .replaceAll("\\+", "%20").replaceAll("\\%21", "!")
-		    .replaceAll("\\%27", "'").replaceAll("\\%28", "(")
-		    .replaceAll("\\%29", ")").replaceAll("\\%7E", "~")
-		    .replaceAll("-", "\\%2d");
-	} catch (UnsupportedEncodingException uee) {
-	    Logger.getGlobal().severe(
-		    "An UnsupportedEncodingException occurred: " + uee);
-	    uee.printStackTrace();
+	int length = argString.length();
+	int i = 0;
+	// Nothing to allocate if no character needs encoding
+	while (i < length) {
+	    char c = argString.charAt(i);
+	    if (c >= ASCII_ENCODINGS.length || ASCII_ENCODINGS[c] != null) {
+		break;
+	    }
+	    i++;
 	}
-	return result;
+	if (i == length) {
+	    return argString;
+	}
+
+	StringBuilder builder = STRING_BUFFER.get();
+	builder.setLength(0);
+	builder.append(argString, 0, i);
+	while (i < length) {
+	    char c = argString.charAt(i++);
+	    if (c < ASCII_ENCODINGS.length) {
+		String encoding = ASCII_ENCODINGS[c];
+		if (encoding == null) {
+		    builder.append(c);
+		} else {
+		    builder.append(encoding);
+		}
+	    } else if (Character.isHighSurrogate(c) && i < length
+		    && Character.isLowSurrogate(argString.charAt(i))) {
+		appendUTF8(builder,
+			Character.toCodePoint(c, argString.charAt(i++)));
+	    } else if (Character.isSurrogate(c)) {
+		// Unpaired surrogates cannot be encoded in UTF-8
+		appendUTF8(builder, '?');
+	    } else {
+		appendUTF8(builder, c);
+	    }
+	}
+	return release(builder);
     }
 
     /**
@@ -41,16 +110,119 @@ public class URIEncoder {
      * @param uriString
      *            URI String to decode
      * @return The string as UTF-8
+     * @throws IllegalArgumentException
+     *             If the String contains an illegal escape (%) pattern
      */
     public static String decodeURI(String uriString) {
-	String output = "";
-	try {
-	    output = java.net.URLDecoder.decode(uriString, "UTF-8");
-	} catch (UnsupportedEncodingException uee) {
-	    Logger.getGlobal().severe(
-		    "An UnsupportedEncodingException occurred: " + uee);
-	    uee.printStackTrace();
-	}
-	return output;
+	int length = uriString.length();
+	int i = 0;
+	// Nothing to allocate if there is nothing to decode
+	while (i < length) {
+	    char c = uriString.charAt(i);
+	    if (c == '%' || c == '+') {
+		break;
+	    }
+	    i++;
+	}
+	if (i == length) {
+	    return uriString;
+	}
+
+	StringBuilder builder = STRING_BUFFER.get();
+	builder.setLength(0);
+	builder.append(uriString, 0, i);
+	byte[] bytes = BYTE_BUFFER.get();
+	if (bytes.length < (length - i) / 3) {
+	    bytes = new byte[(length - i) / 3];
+	    if (bytes.length <= MAX_REUSED_BUFFER_SIZE) {
+		BYTE_BUFFER.set(bytes);
+	    }
+	}
+	while (i < length) {
+	    char c = uriString.charAt(i);
+	    if (c == '+') {
+		builder.append(' ');
+		i++;
+	    } else if (c == '%') {
+		// Decode the whole run of escapes so multi byte characters
+		// are decoded together
+		int count = 0;
+		while (i + 2 < length && uriString.charAt(i) == '%') {
+		    bytes[count++] = (byte) parseEscape(uriString.charAt(i + 1),
+			    uriString.charAt(i + 2));
+		    i += 3;
+		}
+		if (i < length && uriString.charAt(i) == '%') {
+		    throw new IllegalArgumentException(
+			    "URLDecoder: Incomplete trailing escape (%) pattern");
+		}
+		builder.append(
+			new String(bytes, 0, count, StandardCharsets.UTF_8));
+	    } else {
+		builder.append(c);
+		i++;
+	    }
+	}
+	return release(builder);
+    }
+
+    /**
+     * Appends the UTF-8 bytes of the given code point as escapes.
+     */
+    private static void appendUTF8(StringBuilder builder, int codePoint) {
+	if (codePoint < 0x80) {
+	    appendEscape(builder, codePoint);
+	} else if (codePoint < 0x800) {
+	    appendEscape(builder, 0xC0 | (codePoint >> 6));
+	    appendEscape(builder, 0x80 | (codePoint & 0x3F));
+	} else if (codePoint < 0x10000) {
+	    appendEscape(builder, 0xE0 | (codePoint >> 12));
+	    appendEscape(builder, 0x80 | ((codePoint >> 6) & 0x3F));
+	    appendEscape(builder, 0x80 | (codePoint & 0x3F));
+	} else {
+	    appendEscape(builder, 0xF0 | (codePoint >> 18));
+	    appendEscape(builder, 0x80 | ((codePoint >> 12) & 0x3F));
+	    appendEscape(builder, 0x80 | ((codePoint >> 6) & 0x3F));
+	    appendEscape(builder, 0x80 | (codePoint & 0x3F));
+	}
+    }
+
+    private static void appendEscape(StringBuilder builder, int b) {
+	builder.append('%').append(HEX_DIGITS[b >> 4])
+		.append(HEX_DIGITS[b & 0xF]);
+    }
+
+    /**
+     * Parses the two characters after a "%" the way
+     * {@link Integer#parseInt(String, int)} with radix 16 would, which is
+     * what {@link java.net.URLDecoder} uses.
+     */
+    private static int parseEscape(char first, char second) {
+	int low = Character.digit(second, 16);
+	int high = Character.digit(first, 16);
+	if (low >= 0 && high >= 0) {
+	    return (high << 4) | low;
+	}
+	if (low >= 0 && first == '+') {
+	    return low;
+	}
+	if (low == 0 && first == '-') {
+	    return 0;
+	}
+	throw new IllegalArgumentException(
+		"URLDecoder: Illegal hex characters in escape (%) pattern - "
+			+ first + second);
+    }
+
+    /**
+     * Returns the contents of the reusable buffer, dropping the buffer if it
+     * grew too large to keep around.
+     */
+    private static String release(StringBuilder builder) {
+	String result = builder.toString();
+	if (builder.capacity() > MAX_REUSED_BUFFER_SIZE) {
+	    STRING_BUFFER.remove();
+	}
+	return result;
     }
 }
@@ -5,7 +5,6 @@ import eu.hansolo.tilesfx.Tile.SkinType;
 import eu.hansolo.tilesfx.TileBuilder;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
-import javafx.scene.media.MediaPlayer;
 
 public class VolumeTile {
   Tile sliderTile;
@@ -29,14 +28,14 @@ public class VolumeTile {
   }
 
   /**
-   * Sets the volume of the MediaPlayers in {@code mediaPlayer}.
+   * Sets the master volume of the output of {@code playList}. Every drag event
+   * lands here, the output applies the latest value once per frame.
    * 
    * @param volumeToSetTo The volume to set to
    */
   private void setVolume(Number volumeToSetTo, PlayList playList) {
-    for (MediaPlayer mediaPlayer : playList.getMediaPlayers()) {
-      mediaPlayer.setVolume(volumeToSetTo.doubleValue() / 100);
-    }
+    playList.getOutputBus()
+        .setMasterVolume(volumeToSetTo.doubleValue() / 100);
   }
 
   public Tile getTile() {
@@ -0,0 +1,62 @@
+package simplemediaplayer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the synthetic PlayLists used by the benchmarks.
+ */
+final class BenchmarkPlayLists {
+
+  private static final String[] ARTISTS = {"Aphex Twin", "Sigur R\u00f3s",
+      "Boards of Canada", "Godspeed You! Black Emperor", "M83", "Bon Iver"};
+  private static final String[] WORDS = {"Intro", "(Live)", "Remix", "Part",
+      "Don't", "Stop", "Night's", "~Edit~", "\u00dcber", "Caf\u00e9", "Song",
+      "A-Side"};
+
+  private BenchmarkPlayLists() {}
+
+  /**
+   * @param size Number of tracks
+   * @return Decoded file paths the way a directory scan would see them
+   */
+  static List<String> rawPaths(int size) {
+    Random random = new Random(size);
+    List<String> paths = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      StringBuilder path = new StringBuilder("C:/Users/Public/Music/");
+      path.append(ARTISTS[random.nextInt(ARTISTS.length)]).append('/');
+      path.append(String.format("%02d", i % 100)).append(" - ");
+      int words = 1 + random.nextInt(4);
+      for (int j = 0; j < words; j++) {
+        path.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      path.append(i).append(".mp3");
+      paths.add(path.toString());
+    }
+    return paths;
+  }
+
+  /**
+   * @param size Number of tracks
+   * @return File paths the way they are stored in a PlayList
+   */
+  static List<String> fixedPaths(int size) {
+    List<String> paths = new ArrayList<String>(size);
+    for (String rawPath : rawPaths(size)) {
+      paths.add("file:///" + PlayList.modifyPathToFixedPath(rawPath));
+    }
+    return paths;
+  }
+
+  /**
+   * @param size Number of tracks
+   * @return PlayList with {@code size} tracks, in a registry of its own
+   */
+  static PlayList playList(int size) {
+    PlayList playList = new PlayList(new JavaFxBackend(), new TrackRegistry());
+    playList.addAllFilesIntoPlayList(fixedPaths(size));
+    return playList;
+  }
+}
@@ -0,0 +1,29 @@
+package simplemediaplayer;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks in src/jmh/java and writes the results as JSON so runs
+ * can be compared before a release.
+ * <p>
+ * The benchmarks have to be compiled with the JMH annotation processor
+ * (jmh-generator-annprocess) on the classpath. The first program argument is
+ * a regular expression selecting the benchmarks to run (all by default) and
+ * the second is the file to write the results to (jmh-result.json by
+ * default).
+ */
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws RunnerException {
+    String include = (args.length > 0) ? args[0] : "simplemediaplayer\\..*";
+    String resultFile = (args.length > 1) ? args[1] : "jmh-result.json";
+
+    Options options = new OptionsBuilder().include(include)
+        .resultFormat(ResultFormatType.JSON).result(resultFile).build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,85 @@
+package simplemediaplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the {@link PlayList} operations that do not need a JavaFX media
+ * stack: shuffling, opening, saving and printing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayListBenchmark {
+
+  @Param({"100", "10000", "1000000"})
+  public int size;
+
+  private PlayList playList;
+  private File playListFile;
+  private File binaryPlayListFile;
+  private File saveFile;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    playList = BenchmarkPlayLists.playList(size);
+    playListFile = File.createTempFile("benchmark", ".txt");
+    saveFile = File.createTempFile("benchmark-save", ".txt");
+    playList.saveAsPlayList(playListFile.getAbsolutePath());
+    binaryPlayListFile = File.createTempFile("benchmark",
+        BinaryPlayListFormat.FILE_EXTENSION);
+    playList.saveAsPlayList(binaryPlayListFile.getAbsolutePath());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    playListFile.delete();
+    binaryPlayListFile.delete();
+    saveFile.delete();
+  }
+
+  @Benchmark
+  public PlayList shuffle() {
+    playList.shuffle(null);
+    return playList;
+  }
+
+  @Benchmark
+  public PlayList openPlayList() {
+    return PlayList.openPlayList(playListFile);
+  }
+
+  @Benchmark
+  public PlayList openBinaryPlayList() {
+    return PlayList.openPlayList(binaryPlayListFile);
+  }
+
+  @Benchmark
+  public File saveAsPlayList() {
+    playList.saveAsPlayList(saveFile.getAbsolutePath());
+    return saveFile;
+  }
+
+  @Benchmark
+  public String playListToString() {
+    return playList.toString();
+  }
+}
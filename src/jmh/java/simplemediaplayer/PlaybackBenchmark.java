@@ -0,0 +1,60 @@
+package simplemediaplayer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the track transitions of a {@link PlayList} playing on a
+ * {@link SimulatedBackend}, per track played to its end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlaybackBenchmark {
+
+  private static final int TRACKS_PER_INVOCATION = 1000;
+  private static final long TRACK_MILLIS = 1000;
+
+  @Param({"100", "10000", "1000000"})
+  public int size;
+
+  @Param({"false", "true"})
+  public boolean shuffled;
+
+  private SimulatedBackend backend;
+  private PlayList playList;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    backend = new SimulatedBackend();
+    backend.setDefaultTrackDuration(TRACK_MILLIS);
+    playList = new PlayList(backend, new TrackRegistry());
+    playList.addAllFilesIntoPlayList(BenchmarkPlayLists.fixedPaths(size));
+    if (shuffled) {
+      playList.shuffle(null);
+    }
+    playList.startPlayback();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TRACKS_PER_INVOCATION)
+  public long playTracks() {
+    return backend.advance(TRACKS_PER_INVOCATION * TRACK_MILLIS);
+  }
+}
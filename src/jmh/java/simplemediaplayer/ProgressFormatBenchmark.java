@@ -0,0 +1,67 @@
+package simplemediaplayer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javafx.util.Duration;
+
+/**
+ * Benchmarks the "mm:ss" formatting of the {@link ProgressUpdater} that a
+ * {@link PlayList} installs for each track it plays, over one current time
+ * per track of a PlayList.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgressFormatBenchmark {
+
+  @Param({"100", "10000", "1000000"})
+  public int size;
+
+  private Duration[] times;
+  private final char[] buffer = new char[24];
+
+  @Setup
+  public void setup() {
+    Random random = new Random(size);
+    times = new Duration[size];
+    for (int i = 0; i < size; i++) {
+      // Up to an hour, with fractional milliseconds like currentTimeProperty
+      times[i] = Duration.millis(random.nextDouble() * 3600000);
+    }
+  }
+
+  @Benchmark
+  public void formatTime(Blackhole blackhole) {
+    for (Duration time : times) {
+      blackhole.consume(ProgressUpdater.formatTime(time));
+    }
+  }
+
+  /**
+   * What the ProgressUpdater does per update: formatting into its buffer.
+   */
+  @Benchmark
+  public void formatSecondsIntoBuffer(Blackhole blackhole) {
+    for (Duration time : times) {
+      blackhole.consume(ProgressUpdater
+          .formatSeconds((long) time.toMillis() / 1000, buffer));
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package simplemediaplayer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks queries of a {@link SearchIndex} over a large library, which
+ * should answer well within a millisecond, and indexing a track.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchIndexBenchmark {
+
+  // Rare, common and multi-word queries
+  private static final String[] QUERIES =
+      {"12345", "cafe", "bon", "sigur remix", "canada night 7"};
+  // Results shown in a list
+  private static final int LIMIT = 100;
+
+  @Param({"10000", "500000"})
+  public int size;
+
+  private List<String> fixedPaths;
+  private SearchIndex index;
+  private int next;
+
+  @Setup
+  public void setup() {
+    fixedPaths = BenchmarkPlayLists.fixedPaths(size);
+    index = new SearchIndex(new TrackRegistry());
+    for (String fixedPath : fixedPaths) {
+      index.add(fixedPath, null);
+    }
+  }
+
+  @Benchmark
+  public List<String> search() {
+    next = (next + 1) % QUERIES.length;
+    return index.search(QUERIES[next], LIMIT);
+  }
+
+  @Benchmark
+  public List<String> searchPrefix() {
+    next = (next + 1) % QUERIES.length;
+    return index.searchPrefix(QUERIES[next], LIMIT);
+  }
+
+  @Benchmark
+  public int updateTrack() {
+    next = (next + 1) % size;
+    String fixedPath = fixedPaths.get(next);
+    index.remove(fixedPath);
+    index.add(fixedPath, null);
+    return index.size();
+  }
+}
@@ -0,0 +1,65 @@
+package simplemediaplayer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks a {@link SmartShuffle} of a whole library, which should grow
+ * linearly with its size, and single picks from an {@link AliasTable}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmartShuffleBenchmark {
+
+  @Param({"10000", "1000000"})
+  public int size;
+
+  private double[] weights;
+  private int[] artists;
+  private int[] folders;
+  private AliasTable table;
+  private final Random random = new Random(42);
+
+  @Setup
+  public void setup() {
+    weights = new double[size];
+    artists = new int[size];
+    folders = new int[size];
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < size; i++) {
+      // Some tracks played, some skipped, some just played
+      weights[i] = SmartShuffle.weight(random.nextInt(20),
+          random.nextInt(5), now - random.nextInt(1000000000), now);
+      artists[i] = random.nextInt(size / 50 + 1);
+      folders[i] = i / 12;
+    }
+    table = new AliasTable(weights);
+  }
+
+  @Benchmark
+  public int[] order() {
+    return SmartShuffle.order(weights, artists, folders, 0, random);
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public int sample() {
+    return table.sample(random);
+  }
+}
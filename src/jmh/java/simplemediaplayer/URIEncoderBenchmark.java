@@ -0,0 +1,56 @@
+package simplemediaplayer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks {@link URIEncoder} over every path of a PlayList, which is what a
+ * directory scan and the "Currently Playing" title do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class URIEncoderBenchmark {
+
+  @Param({"100", "10000", "1000000"})
+  public int size;
+
+  private List<String> rawPaths;
+  private List<String> fixedPaths;
+
+  @Setup
+  public void setup() {
+    rawPaths = BenchmarkPlayLists.rawPaths(size);
+    fixedPaths = BenchmarkPlayLists.fixedPaths(size);
+  }
+
+  @Benchmark
+  public void encodeURI(Blackhole blackhole) {
+    for (String rawPath : rawPaths) {
+      blackhole.consume(URIEncoder.encodeURI(rawPath));
+    }
+  }
+
+  @Benchmark
+  public void decodeURI(Blackhole blackhole) {
+    for (String fixedPath : fixedPaths) {
+      blackhole.consume(URIEncoder.decodeURI(fixedPath));
+    }
+  }
+}
@@ -0,0 +1,144 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import simplemediaplayer.ContentHashCache;
+import simplemediaplayer.DuplicateFinder;
+import simplemediaplayer.LibraryScanner;
+import simplemediaplayer.PlayList;
+import simplemediaplayer.SimulatedBackend;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the {@link DuplicateFinder} finds copies of a recording
+ * whatever their tags, and that the PlayList keeps one entry of each.
+ */
+public class DuplicateFinderTest {
+
+  private final TempDirectories tempDirectories =
+      new TempDirectories("DuplicateFinderTest");
+
+  @AfterMethod
+  public void deleteTempDirectories() {
+    tempDirectories.deleteAll();
+  }
+
+  @Test
+  public void testFindsCopiesWithDifferentTags() throws IOException,
+      InterruptedException {
+    File directory = tempDirectories.create();
+    byte[] audio = audio(5000, 1);
+    String plain = write(directory, "Plain.mp3", new byte[0], audio,
+        new byte[0]);
+    String id3v2 = write(directory, "Tagged.mp3", id3v2(300), audio,
+        new byte[0]);
+    String id3v1 = write(directory, "Old Tags.mp3", new byte[0], audio,
+        id3v1());
+    String other = write(directory, "Other.mp3", id3v2(300), audio(5000, 2),
+        id3v1());
+    List<String> entries = Arrays.asList(plain, other, id3v2, id3v1);
+
+    ContentHashCache cache =
+        ContentHashCache.open(new File(directory, "hashes.cache"));
+    DuplicateFinder finder = new DuplicateFinder(cache);
+    List<List<String>> duplicates = finder.findDuplicates(entries);
+    VerificationUtils.verify(duplicates,
+        Arrays.asList(Arrays.asList(plain, id3v2, id3v1)),
+        "Copies grouped, other audio left out");
+    VerificationUtils.verify(finder.getHashedFiles(), 4,
+        "Files with the same payload length hashed");
+
+    cache.save();
+    DuplicateFinder cached = new DuplicateFinder(
+        ContentHashCache.open(new File(directory, "hashes.cache")));
+    VerificationUtils.verify(cached.findDuplicates(entries), duplicates,
+        "Same groups from the cache");
+    VerificationUtils.verify(cached.getHashedFiles(), 0,
+        "Unchanged files not read again");
+  }
+
+  @Test
+  public void testInvalidEntryIsSkipped() throws IOException,
+      InterruptedException {
+    File directory = tempDirectories.create();
+    byte[] audio = audio(5000, 1);
+    String plain = write(directory, "Plain.mp3", new byte[0], audio,
+        new byte[0]);
+    String copy = write(directory, "Copy.mp3", id3v2(300), audio,
+        new byte[0]);
+    List<String> entries =
+        Arrays.asList(plain, "file:///C:/Broken%zz.mp3", copy);
+
+    VerificationUtils.verify(new DuplicateFinder(null).findDuplicates(entries),
+        Arrays.asList(Arrays.asList(plain, copy)),
+        "Copies grouped, invalid entry left out");
+  }
+
+  @Test
+  public void testCollapseDuplicates() {
+    List<String> filePaths = new ArrayList<String>();
+    for (String name : Arrays.asList("A", "B", "A copy", "C", "B", "A 2")) {
+      filePaths.add("file:///C:/" + name.replace(" ", "%20") + ".mp3");
+    }
+    List<List<String>> duplicates = new ArrayList<List<String>>();
+    duplicates.add(Arrays.asList(filePaths.get(0), filePaths.get(2),
+        filePaths.get(5)));
+    PlayList playList = new PlayList(new SimulatedBackend());
+    playList.addAllFilesIntoPlayList(filePaths);
+
+    VerificationUtils.verify(playList.collapseDuplicates(duplicates), 3,
+        "Copies and the repeated entry removed");
+    VerificationUtils.verify(playList.getFilePaths(),
+        Arrays.asList(filePaths.get(0), filePaths.get(1), filePaths.get(3)),
+        "First of each kept in order");
+    VerificationUtils.verify(playList.collapseDuplicates(duplicates), 0,
+        "Nothing left to remove");
+  }
+
+  private static String write(File directory, String name, byte[] head,
+      byte[] audio, byte[] tail) throws IOException {
+    File file = new File(directory, name);
+    byte[] content = new byte[head.length + audio.length + tail.length];
+    System.arraycopy(head, 0, content, 0, head.length);
+    System.arraycopy(audio, 0, content, head.length, audio.length);
+    System.arraycopy(tail, 0, content, head.length + audio.length,
+        tail.length);
+    Files.write(file.toPath(), content);
+    return LibraryScanner.toPlayListEntry(file.toPath());
+  }
+
+  private static byte[] audio(int length, int seed) {
+    byte[] audio = new byte[length];
+    for (int i = 0; i < length; i++) {
+      audio[i] = (byte) (i * 31 + seed);
+    }
+    return audio;
+  }
+
+  private static byte[] id3v2(int size) {
+    byte[] tag = new byte[10 + size];
+    tag[0] = 'I';
+    tag[1] = 'D';
+    tag[2] = '3';
+    tag[3] = 3;
+    // Syncsafe size, 7 bits per byte
+    tag[8] = (byte) (size >> 7 & 0x7f);
+    tag[9] = (byte) (size & 0x7f);
+    return tag;
+  }
+
+  private static byte[] id3v1() {
+    byte[] tag = new byte[128];
+    tag[0] = 'T';
+    tag[1] = 'A';
+    tag[2] = 'G';
+    tag[3] = 'X';
+    return tag;
+  }
+}
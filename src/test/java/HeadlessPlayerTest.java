@@ -0,0 +1,157 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import simplemediaplayer.HeadlessPlayer;
+import simplemediaplayer.LibraryScanner;
+import simplemediaplayer.PlayList;
+import simplemediaplayer.PlayListSaver;
+import simplemediaplayer.SimulatedBackend;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify a {@link HeadlessPlayer} carries out the commands sent to
+ * its control socket, playing on a {@link SimulatedBackend}.
+ */
+public class HeadlessPlayerTest {
+
+  private final TempDirectories tempDirectories =
+      new TempDirectories("HeadlessPlayerTest");
+
+  @AfterMethod
+  public void deleteTempDirectories() {
+    tempDirectories.deleteAll();
+  }
+
+  @Test
+  public void testCommands() throws Exception {
+    File directory = tempDirectories.create();
+    for (String name : new String[] { "A.mp3", "B.mp3", "C.mp3" }) {
+      new File(directory, name).createNewFile();
+    }
+    final SimulatedBackend backend = new SimulatedBackend();
+    ExecutorService playbackThread = Executors.newSingleThreadExecutor();
+    HeadlessPlayer player =
+        new HeadlessPlayer(new PlayList(backend), playbackThread, 0);
+    try (Socket socket =
+        new Socket(InetAddress.getLoopbackAddress(), player.getPort())) {
+      BufferedReader in = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), StandardCharsets.UTF_8));
+      OutputStream out = socket.getOutputStream();
+
+      VerificationUtils.verify(send(in, out, "status"),
+          "OK state=EMPTY tracks=0", "Nothing loaded");
+      VerificationUtils.verify(send(in, out, "play"),
+          "ERR PlayList is empty", "Nothing to play");
+      VerificationUtils.verify(send(in, out, "load-directory " + directory),
+          "OK", "Loading started");
+      for (int i = 0; i < 500
+          && !send(in, out, "status").contains("tracks=3"); i++) {
+        Thread.sleep(10);
+      }
+      // Let the first track load
+      playbackThread.submit(new Callable<Long>() {
+        @Override
+        public Long call() {
+          return backend.advance(1000);
+        }
+      }).get();
+      String source = LibraryScanner
+          .toPlayListEntry(new File(directory, "A.mp3").toPath());
+      VerificationUtils.verify(send(in, out, "STATUS"),
+          "OK state=PLAYING track=0 tracks=3 position=980 duration=180000"
+              + " source=" + source,
+          "Playing the first track");
+      VerificationUtils.verify(send(in, out, "next"), "OK", "Next");
+      VerificationUtils.verify(send(in, out, "pause"), "OK", "Pause");
+      VerificationUtils.verify(send(in, out, "status").startsWith(
+          "OK state=PAUSED track=1 "), true, "Paused the second track");
+      VerificationUtils.verify(send(in, out, "play\r"), "OK", "Play");
+      VerificationUtils.verify(send(in, out, "status").startsWith(
+          "OK state=PLAYING track=1 "), true, "Playing the second track");
+      VerificationUtils.verify(send(in, out, "find b"),
+          "OK " + LibraryScanner
+              .toPlayListEntry(new File(directory, "B.mp3").toPath()),
+          "Found by file name");
+
+      VerificationUtils.verify(send(in, out, "rewind"),
+          "ERR Unknown command: rewind", "Unknown command");
+      VerificationUtils.verify(send(in, out, "load-playlist"),
+          "ERR Missing path", "Missing argument");
+      VerificationUtils.verify(
+          send(in, out, "load-playlist " + new File(directory, "none.txt"))
+              .startsWith("ERR Not a PlayList file: "),
+          true, "Missing PlayList file");
+    } finally {
+      player.close();
+      playbackThread.shutdown();
+    }
+  }
+
+  @Test
+  public void testLoadPlayListWithJournal() throws Exception {
+    File directory = tempDirectories.create();
+    List<String> filePaths = new ArrayList<String>();
+    for (int i = 0; i < 20; i++) {
+      filePaths.add("file:///C:/Journaled/Track%20" + i + ".mp3");
+    }
+    File playListFile = new File(directory, "playlist.txt");
+    PlayListSaver.write(filePaths, playListFile);
+    final SimulatedBackend backend = new SimulatedBackend();
+    PlayList edited = new PlayList(backend);
+    edited.addAllFilesIntoPlayList(filePaths);
+    edited.attachJournal(playListFile);
+    edited.shuffle(null);
+    edited.detachJournal();
+    long created = backend.getCreatedTracks();
+
+    ExecutorService playbackThread = Executors.newSingleThreadExecutor();
+    final PlayList playList = new PlayList(backend);
+    HeadlessPlayer player = new HeadlessPlayer(playList, playbackThread, 0);
+    try (Socket socket =
+        new Socket(InetAddress.getLoopbackAddress(), player.getPort())) {
+      BufferedReader in = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), StandardCharsets.UTF_8));
+      OutputStream out = socket.getOutputStream();
+      VerificationUtils.verify(send(in, out, "load-playlist " + playListFile),
+          "OK", "Loading started");
+      Callable<Boolean> journalAttached = new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return playList.getJournal() != null;
+        }
+      };
+      for (int i = 0; i < 500 && !playbackThread.submit(journalAttached)
+          .get(); i++) {
+        Thread.sleep(10);
+      }
+      VerificationUtils.verify(playList.isShuffled(), true, "Shuffled");
+      VerificationUtils.verify(backend.getCreatedTracks() - created,
+          (long) playList.getLookahead() + 1,
+          "Only the tracks of the shuffled order created");
+    } finally {
+      player.close();
+      playbackThread.shutdown();
+    }
+  }
+
+  private static String send(BufferedReader in, OutputStream out,
+      String command) throws IOException {
+    out.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+    out.flush();
+    return in.readLine();
+  }
+}
@@ -0,0 +1,151 @@
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import simplemediaplayer.LibraryScanner;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the {@link LibraryScanner} finds audio files in nested
+ * directories.
+ */
+public class LibraryScannerTest {
+
+  private final TempDirectories tempDirectories =
+      new TempDirectories("LibraryScannerTest");
+  private Path library;
+
+  @BeforeClass
+  public void createLibrary() throws IOException {
+    library = newLibrary();
+  }
+
+  @AfterClass
+  public void deleteTempDirectories() {
+    tempDirectories.deleteAll();
+  }
+
+  private Path newLibrary() throws IOException {
+    Path library = tempDirectories.create().toPath();
+    Files.createDirectories(library.resolve("Artist/Album"));
+    Files.createDirectories(library.resolve("Empty"));
+    for (String file : new String[] {"a.mp3", "b.WAV", "cover.jpg",
+        "Artist/c.m4a", "Artist/Album/d.aiff", "Artist/Album/notes.txt"}) {
+      Files.createFile(library.resolve(file));
+    }
+    return library;
+  }
+
+  private List<String> entries(String... files) {
+    return entries(library, files);
+  }
+
+  private static List<String> entries(Path library, String... files) {
+    List<String> entries = new ArrayList<String>();
+    for (String file : files) {
+      entries.add(LibraryScanner.toPlayListEntry(library.resolve(file)));
+    }
+    Collections.sort(entries);
+    return entries;
+  }
+
+  @Test
+  public void testScanAllDefaultExtensions() {
+    VerificationUtils.verify(new LibraryScanner().scanAll(library.toFile()),
+        entries("a.mp3", "b.WAV", "Artist/c.m4a", "Artist/Album/d.aiff"),
+        "Audio files in library");
+  }
+
+  @Test
+  public void testScanAllCustomExtensions() {
+    VerificationUtils.verify(
+        new LibraryScanner(Arrays.asList("MP3")).scanAll(library.toFile()),
+        entries("a.mp3"), "mp3 files in library");
+  }
+
+  @Test
+  public void testScanReportsCount() {
+    final int[] finishedCount = {-1};
+    LibraryScanner.Scan scan = new LibraryScanner().scan(library.toFile(),
+        new LibraryScanner.Listener() {
+          @Override
+          public void onFilesFound(List<String> filePaths) {}
+
+          @Override
+          public void onScanFinished(int fileCount, boolean cancelled) {
+            finishedCount[0] = fileCount;
+          }
+        });
+    scan.awaitCompletion();
+    VerificationUtils.verify(finishedCount[0], 4, "Files found by scan");
+    VerificationUtils.verify(scan.isDone(), true, "Scan done");
+  }
+
+  @Test
+  public void testScanMissingDirectory() {
+    File missing = library.resolve("Missing").toFile();
+    VerificationUtils.verify(new LibraryScanner().scanAll(missing),
+        new ArrayList<String>(), "Files in missing directory");
+  }
+
+  @Test
+  public void testIndexSkipsUnchangedDirectories() throws IOException {
+    Path indexedLibrary = newLibrary();
+    LibraryScanner scanner = new LibraryScanner();
+    scanner.setIndexDirectory(tempDirectories.create());
+
+    LibraryScanner.Scan scan = scanner.scan(indexedLibrary.toFile(),
+        new LibraryScanner.Listener() {
+          @Override
+          public void onFilesFound(List<String> filePaths) {}
+
+          @Override
+          public void onScanFinished(int fileCount, boolean cancelled) {}
+        });
+    scan.awaitCompletion();
+    VerificationUtils.verify(scan.getIndexMisses(), 4, "First scan misses");
+    VerificationUtils.verify(scan.getIndexHits(), 0, "First scan hits");
+
+    VerificationUtils.verify(scanner.scanAll(indexedLibrary.toFile()),
+        entries(indexedLibrary, "a.mp3", "b.WAV", "Artist/c.m4a",
+            "Artist/Album/d.aiff"),
+        "Audio files from index");
+
+    // Only the directory that changed is read again
+    Path artist = indexedLibrary.resolve("Artist");
+    Files.createFile(artist.resolve("e.mp3"));
+    Files.setLastModifiedTime(artist, FileTime.fromMillis(
+        Files.getLastModifiedTime(artist).toMillis() + 60000));
+    final List<String> found =
+        Collections.synchronizedList(new ArrayList<String>());
+    scan = scanner.scan(indexedLibrary.toFile(),
+        new LibraryScanner.Listener() {
+          @Override
+          public void onFilesFound(List<String> filePaths) {
+            found.addAll(filePaths);
+          }
+
+          @Override
+          public void onScanFinished(int fileCount, boolean cancelled) {}
+        });
+    scan.awaitCompletion();
+    VerificationUtils.verify(scan.getIndexMisses(), 1, "Changed scan misses");
+    VerificationUtils.verify(scan.getIndexHits(), 3, "Changed scan hits");
+    Collections.sort(found);
+    VerificationUtils.verify(found,
+        entries(indexedLibrary, "a.mp3", "b.WAV", "Artist/c.m4a",
+            "Artist/e.mp3", "Artist/Album/d.aiff"),
+        "Audio files after change");
+  }
+}
@@ -0,0 +1,82 @@
+import org.testng.annotations.Test;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import simplemediaplayer.OutputBus;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the {@link OutputBus} applies volume changes to the
+ * audible output once per frame, ramping to the new volume.
+ */
+public class OutputBusTest {
+
+  private static final long MILLI = 1000000;
+
+  @Test
+  public void testChangesAreAppliedPerFrame() {
+    OutputBus bus = newBus();
+    DoubleProperty volume = new SimpleDoubleProperty();
+    bus.setAudible(volume, "file:///C:/A.mp3");
+    VerificationUtils.verify(volume.get(), 1.0, "Audible at master volume");
+
+    for (int i = 0; i <= 10; i++) {
+      bus.setMasterVolume(1.0 - i * 0.05);
+    }
+    VerificationUtils.verify(volume.get(), 1.0,
+        "Nothing applied between frames");
+    VerificationUtils.verify(bus.onFrame(0), true, "Ramp started");
+    VerificationUtils.verify(volume.get(), 1.0, "Ramp starts at old volume");
+    bus.onFrame(20 * MILLI);
+    VerificationUtils.verify(volume.get(), 0.75, "Half way through the ramp");
+    VerificationUtils.verify(bus.onFrame(40 * MILLI), false, "Ramp ended");
+    VerificationUtils.verify(volume.get(), 0.5, "Latest master volume");
+  }
+
+  @Test
+  public void testMuteAndTrackGain() {
+    OutputBus bus = newBus();
+    bus.setRampMillis(0);
+    bus.setMasterVolume(0.8);
+    bus.setTrackGain("file:///C:/Quiet.mp3", 1.5);
+    VerificationUtils.verify(bus.volumeOf("file:///C:/A.mp3"), 0.8,
+        "Track without gain");
+    VerificationUtils.verify(bus.volumeOf("file:///C:/Quiet.mp3"), 1.0,
+        "Gain is capped at full volume");
+
+    DoubleProperty volume = new SimpleDoubleProperty();
+    bus.setAudible(volume, "file:///C:/A.mp3");
+    bus.setMuted(true);
+    bus.onFrame(0);
+    VerificationUtils.verify(volume.get(), 0.0, "Muted");
+    bus.setMuted(false);
+    bus.setTrackGain("file:///C:/A.mp3", 0.5);
+    bus.onFrame(MILLI);
+    VerificationUtils.verify(volume.get(), 0.4, "Unmuted with track gain");
+  }
+
+  @Test
+  public void testOnlyAudibleOutputFollows() {
+    OutputBus bus = newBus();
+    bus.setRampMillis(0);
+    DoubleProperty previous = new SimpleDoubleProperty();
+    DoubleProperty current = new SimpleDoubleProperty();
+    bus.setAudible(previous, "file:///C:/A.mp3");
+    bus.setAudible(current, "file:///C:/B.mp3");
+    bus.setMasterVolume(0.3);
+    bus.onFrame(0);
+    VerificationUtils.verify(current.get(), 0.3, "Audible output follows");
+    VerificationUtils.verify(previous.get(), 1.0, "Previous output is left");
+  }
+
+  /**
+   * Bus whose frames are driven by the test.
+   */
+  private static OutputBus newBus() {
+    return new OutputBus() {
+      @Override
+      protected void startFrames() {
+      }
+    };
+  }
+}
@@ -0,0 +1,138 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import simplemediaplayer.PlayHistory;
+import simplemediaplayer.PlayList;
+import simplemediaplayer.SimulatedBackend;
+import simplemediaplayer.TrackRegistry;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the {@link PlayHistory} keeps every event through
+ * batches, rotations, compactions and restarts, and rolls them up.
+ */
+public class PlayHistoryTest {
+
+  private static final String FIRST = "file:///C:/Music/First.mp3";
+  private static final String SECOND = "file:///C:/Music/Second.mp3";
+
+  private final TempDirectories tempDirectories =
+      new TempDirectories("PlayHistoryTest");
+
+  @AfterMethod
+  public void deleteTempDirectories() {
+    tempDirectories.deleteAll();
+  }
+
+  @Test
+  public void testRollup() throws IOException {
+    File directory = tempDirectories.create();
+    PlayHistory history = new PlayHistory(directory);
+    ZoneId zone = ZoneId.systemDefault();
+    long monday = LocalDate.of(2016, 5, 2).atTime(20, 0).atZone(zone)
+        .toInstant().toEpochMilli();
+    long tuesday = monday + 24 * 3600000L;
+    history.record(PlayHistory.STARTED, FIRST, monday, 0);
+    history.record(PlayHistory.COMPLETED, FIRST, monday + 1000, 180000);
+    history.record(PlayHistory.STARTED, SECOND, monday + 2000, 0);
+    history.record(PlayHistory.SKIPPED, SECOND, monday + 3000, 5000);
+    history.record(PlayHistory.STARTED, FIRST, tuesday, 0);
+    history.record(PlayHistory.COMPLETED, FIRST, tuesday + 1000, 180000);
+
+    PlayHistory.Rollup rollup = history.rollup();
+    VerificationUtils.verify(rollup.getEventCount(), 6L, "Events");
+    VerificationUtils.verify(rollup.getPlays(FIRST), 2, "Plays");
+    VerificationUtils.verify(rollup.getSkips(SECOND), 1, "Skips");
+    VerificationUtils.verify(rollup.getLastPlayedMillis(FIRST),
+        tuesday + 1000, "Last played");
+    VerificationUtils.verify(rollup.getSkipRate(), 1 / 3.0, "Skip rate");
+    VerificationUtils.verify(rollup.getTopTracks(10), Arrays.asList(FIRST),
+        "Top tracks");
+    VerificationUtils.verify(
+        new ArrayList<Integer>(rollup.getPlaysPerDay().values()),
+        Arrays.asList(1, 1), "Plays per day");
+    VerificationUtils.verify(rollup.getPlaysPerDay().firstKey(),
+        LocalDate.of(2016, 5, 2), "First day");
+    history.close();
+  }
+
+  @Test
+  public void testRotationCompactionAndRestart() throws IOException {
+    File directory = tempDirectories.create();
+    PlayHistory history = new PlayHistory(directory);
+    history.setSegmentSize(8 + 10 * PlayHistory.RECORD_SIZE);
+    history.setMaxSegments(2);
+    for (int i = 0; i < 200; i++) {
+      history.record(PlayHistory.COMPLETED, i % 2 == 0 ? FIRST : SECOND,
+          1000000 + i, 0);
+      if (i % 5 == 4) {
+        history.flush();
+      }
+    }
+    VerificationUtils.verify(
+        directory.list().length <= 2 + 1 + 2, true,
+        "Old segments compacted: " + Arrays.toString(directory.list()));
+    VerificationUtils.verify(history.rollup().getPlays(FIRST), 100,
+        "Compacted events kept");
+    history.close();
+
+    // Cut the last record short, as a crash would
+    File[] segments = directory.listFiles();
+    Arrays.sort(segments);
+    try (FileOutputStream out = new FileOutputStream(segments[1], true)) {
+      out.write(new byte[7]);
+    }
+    history = new PlayHistory(directory);
+    history.record(PlayHistory.SKIPPED, SECOND, 2000000, 0);
+    TrackRegistry registry = new TrackRegistry();
+    history.restore(registry);
+    VerificationUtils.verify(registry.getPlayCount(registry.find(FIRST)), 100,
+        "Plays of the earlier session restored");
+    VerificationUtils.verify(registry.getSkipCount(registry.find(SECOND)), 0,
+        "Events of this session not restored");
+    PlayHistory.Rollup rollup = history.rollup();
+    VerificationUtils.verify(rollup.getEventCount(), 201L,
+        "Every event once");
+    VerificationUtils.verify(rollup.getLastPlayedMillis(SECOND), 1000199L,
+        "Last played");
+    history.close();
+  }
+
+  @Test
+  public void testPlayListRecordsEvents() throws IOException {
+    File directory = tempDirectories.create();
+    List<String> filePaths = new ArrayList<String>();
+    for (int i = 0; i < 3; i++) {
+      filePaths.add("file:///C:/History/Track%20" + i + ".mp3");
+    }
+    SimulatedBackend backend = new SimulatedBackend();
+    PlayList playList = new PlayList(backend);
+    PlayHistory history = new PlayHistory(directory);
+    playList.setPlayHistory(history);
+    playList.setFilePaths(filePaths);
+    playList.startPlayback();
+    playList.playNextTrack();
+    backend.advance(SimulatedBackend.DEFAULT_TRACK_MILLIS + 1000);
+    playList.stopAnyRunningTracks();
+
+    PlayHistory.Rollup rollup = history.rollup();
+    VerificationUtils.verify(rollup.getStarts(filePaths.get(0)), 1,
+        "First track started");
+    VerificationUtils.verify(rollup.getSkips(filePaths.get(0)), 1,
+        "First track skipped");
+    VerificationUtils.verify(rollup.getPlays(filePaths.get(1)), 1,
+        "Second track played");
+    VerificationUtils.verify(rollup.getStarts(filePaths.get(2)), 1,
+        "Third track started");
+    history.close();
+  }
+}
@@ -0,0 +1,168 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import simplemediaplayer.PlayList;
+import simplemediaplayer.PlayListJournal;
+import simplemediaplayer.PlayListLoader;
+import simplemediaplayer.PlayListSaver;
+import simplemediaplayer.SimulatedBackend;
+import simplemediaplayer.Track;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the edits recorded in a {@link PlayListJournal} are
+ * applied when the PlayList is opened again.
+ */
+public class PlayListJournalTest {
+
+  public static List<String> filePaths = Arrays.asList("file:///C:/A.mp3",
+      "file:///C:/B.mp3", "file:///C:/C.mp3", "file:///C:/D.mp3");
+
+  private final TempDirectories tempDirectories =
+      new TempDirectories("PlayListJournalTest");
+
+  @AfterMethod
+  public void deleteTempDirectories() {
+    tempDirectories.deleteAll();
+  }
+
+  @Test
+  public void testReplayEdits() throws IOException {
+    File playListFile = writePlayList();
+    PlayList playList = PlayList.openPlayList(playListFile);
+    playList.addAllFilesIntoPlayList(Arrays.asList("file:///C:/E.mp3"));
+    playList.moveTrack(0, 3);
+    playList.applyLibraryChanges(Collections.<String> emptyList(),
+        Arrays.asList("file:///C:/C.mp3"));
+    playList.shuffle(null);
+    List<String> expected = Arrays.asList("file:///C:/B.mp3",
+        "file:///C:/D.mp3", "file:///C:/A.mp3", "file:///C:/E.mp3");
+    VerificationUtils.verify(playList.getFilePaths(), expected,
+        "Entries after the edits");
+    VerificationUtils.verify(new PlayListLoader().loadAll(playListFile),
+        filePaths, "PlayList file is not rewritten");
+
+    PlayList reopened = PlayList.openPlayList(playListFile);
+    VerificationUtils.verify(reopened.getFilePaths(), expected,
+        "Entries with the journal applied");
+    VerificationUtils.verify(reopened.isShuffled(), true,
+        "Shuffle is applied");
+  }
+
+  @Test
+  public void testShuffleWithQueuedTracks() throws IOException {
+    List<String> tracks = new ArrayList<String>();
+    for (int i = 0; i < 12; i++) {
+      tracks.add("file:///C:/Queued%20" + i + ".mp3");
+    }
+    File playListFile = writePlayList();
+    PlayListSaver.write(tracks, playListFile);
+    SimulatedBackend backend = new SimulatedBackend();
+    PlayList playList = new PlayList(backend);
+    playList.addAllFilesIntoPlayList(tracks);
+    playList.attachJournal(playListFile);
+    playList.setLookahead(tracks.size() - 1);
+    playList.startPlayback();
+    // Shuffled while a track queued to play next is playing
+    playList.playNext(5);
+    playList.playNextTrack();
+    playList.shuffle(null);
+    playList.playNextTrack();
+    List<String> order = cycle(playList.getPlaybackWindow());
+    playList.stopAnyRunningTracks();
+    playList.detachJournal();
+
+    PlayList reopened = new PlayList(backend);
+    reopened.addAllFilesIntoPlayList(tracks);
+    reopened.attachJournal(playListFile);
+    reopened.setLookahead(tracks.size() - 1);
+    VerificationUtils.verify(cycle(reopened.getPlaybackWindow()), order,
+        "Same shuffled order");
+  }
+
+  @Test
+  public void testCompaction()
+      throws IOException, InterruptedException, ExecutionException {
+    File playListFile = writePlayList();
+    PlayList playList = PlayList.openPlayList(playListFile);
+    playList.getJournal().setCompactionThreshold(64);
+    List<String> expected = new ArrayList<String>(filePaths);
+    for (int i = 0; i < 20; i++) {
+      String filePath = "file:///C:/Added%20" + i + ".mp3";
+      playList.addAllFilesIntoPlayList(Arrays.asList(filePath));
+      expected.add(filePath);
+    }
+    // Waits for the compaction started by the edits, if it did not finish
+    playList.saveAsPlayListInBackground(playListFile.getPath()).get();
+    VerificationUtils.verify(new PlayListLoader().loadAll(playListFile),
+        expected, "Edits are written to the PlayList file");
+    VerificationUtils.verify(playList.getJournal().size(), 0L,
+        "Journal starts over");
+    VerificationUtils.verify(
+        PlayList.openPlayList(playListFile).getFilePaths(), expected,
+        "Entries after compaction");
+  }
+
+  @Test
+  public void testDamagedEndIsDropped() throws IOException {
+    File playListFile = writePlayList();
+    PlayList playList = PlayList.openPlayList(playListFile);
+    playList.moveTrack(3, 0);
+    long size = playList.getJournal().size();
+    playList.detachJournal();
+    // What is left of an append that was cut short
+    Files.write(new File(playListFile.getPath() + ".journal").toPath(),
+        new byte[] { 1, 20, 0 }, StandardOpenOption.APPEND);
+
+    PlayList reopened = PlayList.openPlayList(playListFile);
+    VerificationUtils.verify(reopened.getFilePaths(),
+        Arrays.asList("file:///C:/D.mp3", "file:///C:/A.mp3",
+            "file:///C:/B.mp3", "file:///C:/C.mp3"),
+        "Complete edits are applied");
+    VerificationUtils.verify(reopened.getJournal().size(), size,
+        "Damaged end is cut off");
+  }
+
+  @Test
+  public void testJournalOfReplacedPlayListIsIgnored() throws IOException {
+    File playListFile = writePlayList();
+    PlayList playList = PlayList.openPlayList(playListFile);
+    playList.moveTrack(3, 0);
+    playList.detachJournal();
+    List<String> replaced = Arrays.asList("file:///D:/Other.mp3");
+    PlayListSaver.write(replaced, playListFile);
+
+    VerificationUtils.verify(
+        PlayList.openPlayList(playListFile).getFilePaths(), replaced,
+        "Journal of the old PlayList file is not applied");
+  }
+
+  /**
+   * @return the sources of the tracks of a whole play order, starting with
+   *         the first entry of the PlayList
+   */
+  private static List<String> cycle(List<Track> tracks) {
+    List<String> sources = new ArrayList<String>();
+    for (Track track : tracks) {
+      sources.add(track.getSource());
+    }
+    Collections.rotate(sources, -sources.indexOf("file:///C:/Queued%200.mp3"));
+    return sources;
+  }
+
+  private File writePlayList() throws IOException {
+    File playListFile = new File(tempDirectories.create(), "playlist.txt");
+    PlayListSaver.write(filePaths, playListFile);
+    return playListFile;
+  }
+}
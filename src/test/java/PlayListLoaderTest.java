@@ -0,0 +1,133 @@
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import simplemediaplayer.BinaryPlayListFormat;
+import simplemediaplayer.PlayListLoader;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the {@link PlayListLoader} reads PlayList files the same
+ * way regardless of line separators and batch size.
+ */
+public class PlayListLoaderTest {
+
+  public static String[] filePaths =
+      {"file:///C:/Madeup.mp3", "file:///D:/Test.mp3", "file:///E:/%2d.mp3"};
+
+  private File writePlayList(String contents) throws IOException {
+    File playListFile = File.createTempFile("playlist", ".txt");
+    playListFile.deleteOnExit();
+    Files.write(playListFile.toPath(),
+        contents.getBytes(StandardCharsets.UTF_8));
+    return playListFile;
+  }
+
+  @Test
+  public void testLoadUnixLineSeparators() throws IOException {
+    File playListFile = writePlayList(filePaths[0] + "\n" + filePaths[1]
+        + "\n" + filePaths[2] + "\n");
+    VerificationUtils.verify(new PlayListLoader().loadAll(playListFile),
+        Arrays.asList(filePaths), "Entries with \\n line separators");
+  }
+
+  @Test
+  public void testLoadWindowsLineSeparatorsAndBlankLines()
+      throws IOException {
+    File playListFile = writePlayList(filePaths[0] + "\r\n\r\n" + filePaths[1]
+        + "\r\n" + filePaths[2]);
+    VerificationUtils.verify(new PlayListLoader().loadAll(playListFile),
+        Arrays.asList(filePaths), "Entries with \\r\\n line separators");
+  }
+
+  @Test
+  public void testLoadInBatches() throws IOException {
+    File playListFile = writePlayList(filePaths[0] + "\n" + filePaths[1]
+        + "\n" + filePaths[2] + "\n");
+    final List<Integer> batchSizes = new ArrayList<Integer>();
+    final List<String> loaded = new ArrayList<String>();
+    PlayListLoader loader = new PlayListLoader(2);
+    long entries =
+        loader.load(playListFile, new PlayListLoader.BatchListener() {
+          @Override
+          public void onBatch(List<String> batch) {
+            batchSizes.add(batch.size());
+            loaded.addAll(batch);
+          }
+        });
+    VerificationUtils.verify(entries, 3L, "Number of entries");
+    VerificationUtils.verify(batchSizes, Arrays.asList(2, 1), "Batch sizes");
+    VerificationUtils.verify(loaded, Arrays.asList(filePaths),
+        "Entries loaded in batches");
+  }
+
+  @Test
+  public void testLoadEmptyFile() throws IOException {
+    File playListFile = writePlayList("");
+    VerificationUtils.verify(new PlayListLoader().loadAll(playListFile),
+        new ArrayList<String>(), "Entries of empty PlayList");
+  }
+
+  private File writeBinaryPlayList(List<String> entries) throws IOException {
+    File playListFile = File.createTempFile("playlist", ".smpl");
+    playListFile.deleteOnExit();
+    try (OutputStream out = new FileOutputStream(playListFile)) {
+      BinaryPlayListFormat.write(entries, out);
+    }
+    return playListFile;
+  }
+
+  @Test
+  public void testLoadBinaryPlayList() throws IOException {
+    List<String> entries = new ArrayList<String>(Arrays.asList(filePaths));
+    entries.add("file:///%2Fmusic%2FAlbum%2F01.mp3");
+    entries.add("file:///%2Fmusic%2FAlbum%2F02.mp3");
+    entries.add("file:///%2Fmusic%2F\u00c9t\u00e9%2F01.mp3");
+    entries.add("no separator.mp3");
+    File playListFile = writeBinaryPlayList(entries);
+
+    final List<Integer> batchSizes = new ArrayList<Integer>();
+    final List<String> loaded = new ArrayList<String>();
+    long count = new PlayListLoader(4).load(playListFile,
+        new PlayListLoader.BatchListener() {
+          @Override
+          public void onBatch(List<String> batch) {
+            batchSizes.add(batch.size());
+            loaded.addAll(batch);
+          }
+        });
+    VerificationUtils.verify(count, 7L, "Number of binary entries");
+    VerificationUtils.verify(batchSizes, Arrays.asList(4, 3),
+        "Binary batch sizes");
+    VerificationUtils.verify(loaded, entries, "Entries of binary PlayList");
+    VerificationUtils.verify(
+        new PlayListLoader().loadAll(writeBinaryPlayList(
+            new ArrayList<String>())),
+        new ArrayList<String>(), "Entries of empty binary PlayList");
+  }
+
+  @Test
+  public void testLoadCorruptBinaryPlayList() throws IOException {
+    File playListFile = writeBinaryPlayList(Arrays.asList(filePaths));
+    byte[] bytes = Files.readAllBytes(playListFile.toPath());
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(playListFile.toPath(), bytes);
+    String error = null;
+    try {
+      new PlayListLoader().loadAll(playListFile);
+    } catch (IOException ioe) {
+      error = ioe.getMessage();
+    }
+    VerificationUtils.verify(error,
+        "Binary PlayList is corrupt, checksum mismatch", "Checksum error");
+  }
+}
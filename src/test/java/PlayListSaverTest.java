@@ -0,0 +1,114 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import simplemediaplayer.PlayListLoader;
+import simplemediaplayer.PlayListSaver;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the {@link PlayListSaver} replaces PlayList files
+ * completely, also when written at the same time, and writes the latest of
+ * several background saves.
+ */
+public class PlayListSaverTest {
+
+  public static List<String> filePaths =
+      Arrays.asList("file:///C:/Madeup.mp3", "file:///D:/Test.mp3");
+  public static List<String> newerFilePaths =
+      Arrays.asList("file:///E:/%2d.mp3");
+
+  private final TempDirectories tempDirectories =
+      new TempDirectories("PlayListSaverTest");
+
+  @AfterMethod
+  public void deleteTempDirectories() {
+    tempDirectories.deleteAll();
+  }
+
+  @Test
+  public void testWriteReplacesFile() throws IOException {
+    File directory = tempDirectories.create();
+    File playListFile = new File(directory, "Nested/playlist.txt");
+    PlayListSaver.write(filePaths, playListFile);
+    PlayListSaver.write(newerFilePaths, playListFile);
+    VerificationUtils.verify(new PlayListLoader().loadAll(playListFile),
+        newerFilePaths, "Entries of the replaced PlayList");
+    VerificationUtils.verify(
+        Arrays.asList(playListFile.getParentFile().list()),
+        Arrays.asList("playlist.txt"), "No temporary file left");
+  }
+
+  @Test
+  public void testConcurrentWrites() throws Exception {
+    final File playListFile =
+        new File(tempDirectories.create(), "playlist.txt");
+    final List<String> manyFilePaths = new ArrayList<String>();
+    for (int i = 0; i < 20000; i++) {
+      manyFilePaths.add("file:///C:/Concurrent%20" + i + ".mp3");
+    }
+    ExecutorService writers = Executors.newFixedThreadPool(4);
+    List<Future<Void>> writes = new ArrayList<Future<Void>>();
+    for (int i = 0; i < 16; i++) {
+      final List<String> written = i % 2 == 0 ? manyFilePaths : filePaths;
+      writes.add(writers.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          PlayListSaver.write(written, playListFile);
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> write : writes) {
+      write.get();
+    }
+    writers.shutdown();
+    List<String> saved = new PlayListLoader().loadAll(playListFile);
+    VerificationUtils.verify(
+        saved.equals(manyFilePaths) || saved.equals(filePaths), true,
+        "Entries of one of the writes");
+    VerificationUtils.verify(
+        Arrays.asList(playListFile.getParentFile().list()),
+        Arrays.asList("playlist.txt"), "No temporary file left");
+  }
+
+  @Test
+  public void testSaveInBackground()
+      throws IOException, InterruptedException, ExecutionException {
+    File playListFile = new File(tempDirectories.create(), "playlist.smpl");
+    PlayListSaver saver = new PlayListSaver();
+    CompletableFuture<File> first = saver.save(filePaths, playListFile);
+    CompletableFuture<File> second = saver.save(newerFilePaths, playListFile);
+    VerificationUtils.verify(first.get(), playListFile.getAbsoluteFile(),
+        "First save completes");
+    VerificationUtils.verify(second.get(), playListFile.getAbsoluteFile(),
+        "Second save completes");
+    VerificationUtils.verify(new PlayListLoader().loadAll(playListFile),
+        newerFilePaths, "Latest entries are saved");
+  }
+
+  @Test
+  public void testCloseFinishesSaves() throws IOException {
+    File playListFile = new File(tempDirectories.create(), "playlist.txt");
+    PlayListSaver saver = new PlayListSaver();
+    CompletableFuture<File> save = saver.save(filePaths, playListFile);
+    saver.close();
+    VerificationUtils.verify(save.isDone(), true, "Save is done when closed");
+    VerificationUtils.verify(new PlayListLoader().loadAll(playListFile),
+        filePaths, "Entries are saved");
+    VerificationUtils.verify(
+        Arrays.asList(playListFile.getParentFile().list()),
+        Arrays.asList("playlist.txt"), "No temporary file left");
+  }
+}
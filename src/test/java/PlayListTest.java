@@ -92,4 +92,16 @@ public class PlayListTest {
     VerificationUtils.verify(playList.toString(), "PlayList:\nD:/Test.mp3\n",
         "Removed Element PlayList toString");
   }
+
+  @Test
+  public void testApplyLibraryChanges() {
+    PlayList playList = new PlayList();
+    playList.setFilePaths(filePaths);
+    playList.applyLibraryChanges(
+        Arrays.asList("E:/New.mp3", "C:/Madeup.mp3"),
+        Arrays.asList("X:/Missing.mp3", "D:/Test.mp3"));
+    VerificationUtils.verify(playList.getFilePaths(),
+        Arrays.asList("C:/Madeup.mp3", "E:/New.mp3"),
+        "File paths after library changes");
+  }
 }
@@ -0,0 +1,163 @@
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import simplemediaplayer.LibraryScanner;
+import simplemediaplayer.PlayListWatcher;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the {@link PlayListWatcher} reports a burst of file
+ * changes as one batch, every file under a removed directory and the changes
+ * since a scan.
+ */
+public class PlayListWatcherTest {
+
+  private final TempDirectories tempDirectories =
+      new TempDirectories("PlayListWatcherTest");
+
+  @AfterMethod
+  public void deleteTempDirectories() {
+    tempDirectories.deleteAll();
+  }
+
+  @Test
+  public void testBatchesAddedAndRemovedFiles()
+      throws IOException, InterruptedException {
+    final Path library = tempDirectories.create().toPath();
+    Files.createFile(library.resolve("old.mp3"));
+    final List<List<String>> batches = new ArrayList<List<String>>();
+    final CountDownLatch changed = new CountDownLatch(1);
+
+    PlayListWatcher watcher = new PlayListWatcher(new LibraryScanner(),
+        new PlayListWatcher.Listener() {
+          @Override
+          public void onLibraryChanged(List<String> added,
+              List<String> removed) {
+            batches.add(added);
+            batches.add(removed);
+            changed.countDown();
+          }
+        });
+    try {
+      watcher.setBatching(300, 5000);
+      watcher.watch(library.toFile());
+      // Give the watcher thread time to register the directory
+      Thread.sleep(300);
+
+      Files.createDirectory(library.resolve("Album"));
+      Files.createFile(library.resolve("a.mp3"));
+      Files.createFile(library.resolve("Album/b.mp3"));
+      Files.createFile(library.resolve("cover.jpg"));
+      Files.delete(library.resolve("old.mp3"));
+
+      VerificationUtils.verify(changed.await(5, TimeUnit.SECONDS), true,
+          "Changes reported");
+    } finally {
+      watcher.close();
+    }
+    VerificationUtils.verify(batches.size(), 2, "Number of batches");
+    VerificationUtils.verify(batches.get(0),
+        Arrays.asList(
+            LibraryScanner.toPlayListEntry(library.resolve("Album/b.mp3")),
+            LibraryScanner.toPlayListEntry(library.resolve("a.mp3"))),
+        "Added files");
+    VerificationUtils.verify(batches.get(1),
+        Arrays.asList(
+            LibraryScanner.toPlayListEntry(library.resolve("old.mp3"))),
+        "Removed files");
+  }
+
+  @Test
+  public void testRemovedDirectory() throws IOException, InterruptedException {
+    final Path library = tempDirectories.create().toPath();
+    Files.createDirectories(library.resolve("Album/Disc 1"));
+    Files.createDirectories(library.resolve("Album 2"));
+    Files.createFile(library.resolve("Album/a.mp3"));
+    Files.createFile(library.resolve("Album/Disc 1/b.mp3"));
+    Files.createFile(library.resolve("Album 2/c.mp3"));
+    final List<String> removed = new ArrayList<String>();
+    final CountDownLatch changed = new CountDownLatch(1);
+
+    PlayListWatcher watcher = new PlayListWatcher(new LibraryScanner(),
+        new PlayListWatcher.Listener() {
+          @Override
+          public void onLibraryChanged(List<String> added,
+              List<String> removedFiles) {
+            removed.addAll(removedFiles);
+            changed.countDown();
+          }
+        });
+    try {
+      watcher.setBatching(300, 5000);
+      watcher.watch(library.toFile());
+      Thread.sleep(300);
+
+      // Moved out of the library, as removing a directory removes its files
+      // first
+      Files.move(library.resolve("Album"),
+          tempDirectories.create().toPath().resolve("Album"));
+
+      VerificationUtils.verify(changed.await(5, TimeUnit.SECONDS), true,
+          "Changes reported");
+    } finally {
+      watcher.close();
+    }
+    Collections.sort(removed);
+    VerificationUtils.verify(removed,
+        Arrays.asList(
+            LibraryScanner
+                .toPlayListEntry(library.resolve("Album/Disc 1/b.mp3")),
+            LibraryScanner.toPlayListEntry(library.resolve("Album/a.mp3"))),
+        "Files under the directory removed");
+  }
+
+  @Test
+  public void testChangesSinceScan() throws IOException, InterruptedException {
+    Path library = tempDirectories.create().toPath();
+    Files.createFile(library.resolve("kept.mp3"));
+    Files.createFile(library.resolve("old.mp3"));
+    List<String> scanned = new LibraryScanner().scanAll(library.toFile());
+    // Changed after the scan read the directory, before it is watched
+    Files.delete(library.resolve("old.mp3"));
+    Files.createFile(library.resolve("new.mp3"));
+    final List<List<String>> batches = new ArrayList<List<String>>();
+    final CountDownLatch changed = new CountDownLatch(1);
+
+    PlayListWatcher watcher = new PlayListWatcher(new LibraryScanner(),
+        new PlayListWatcher.Listener() {
+          @Override
+          public void onLibraryChanged(List<String> added,
+              List<String> removed) {
+            batches.add(added);
+            batches.add(removed);
+            changed.countDown();
+          }
+        });
+    try {
+      watcher.setBatching(300, 5000);
+      watcher.watch(library.toFile(), scanned);
+      VerificationUtils.verify(changed.await(5, TimeUnit.SECONDS), true,
+          "Changes reported");
+    } finally {
+      watcher.close();
+    }
+    VerificationUtils.verify(batches,
+        Arrays.asList(
+            Arrays.asList(
+                LibraryScanner.toPlayListEntry(library.resolve("new.mp3"))),
+            Arrays.asList(
+                LibraryScanner.toPlayListEntry(library.resolve("old.mp3")))),
+        "Changes since the scan");
+  }
+}
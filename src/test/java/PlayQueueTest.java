@@ -0,0 +1,119 @@
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import simplemediaplayer.PlayQueue;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the play order kept by the {@link PlayQueue}.
+ */
+public class PlayQueueTest {
+
+  @Test
+  public void testNextAndPrevious() {
+    PlayQueue playQueue = new PlayQueue();
+    playQueue.reset(3);
+    VerificationUtils.verify(playQueue.current(), 0, "Starts at first track");
+    VerificationUtils.verify(playQueue.next(), 1, "Next track");
+    VerificationUtils.verify(playQueue.next(), 2, "Last track");
+    VerificationUtils.verify(playQueue.next(), 0, "Loops back to the start");
+    VerificationUtils.verify(playQueue.previous(), 2, "Loops back to the end");
+    VerificationUtils.verify(playQueue.peek(-1), 1, "Previous track");
+  }
+
+  @Test
+  public void testShuffleAndUnshuffle() {
+    PlayQueue playQueue = new PlayQueue();
+    playQueue.reset(100);
+    playQueue.next();
+    playQueue.shuffle(new Random(42));
+    VerificationUtils.verify(playQueue.current(), 1,
+        "Current track is kept when shuffling");
+
+    int[] shuffled = new int[playQueue.size()];
+    for (int i = 0; i < shuffled.length; i++) {
+      shuffled[i] = playQueue.peek(i);
+    }
+    int[] sorted = shuffled.clone();
+    Arrays.sort(sorted);
+    int[] identity = new int[100];
+    for (int i = 0; i < identity.length; i++) {
+      identity[i] = i;
+    }
+    VerificationUtils.verify(Arrays.equals(sorted, identity), true,
+        "Shuffled order plays every track once");
+    VerificationUtils.verify(Arrays.equals(shuffled, identity), false,
+        "Order is shuffled");
+
+    playQueue.next();
+    int current = playQueue.current();
+    playQueue.unshuffle();
+    VerificationUtils.verify(playQueue.current(), current,
+        "Current track is kept when unshuffling");
+    VerificationUtils.verify(playQueue.peek(1), (current + 1) % 100,
+        "Unshuffled order continues after the current track");
+  }
+
+  @Test
+  public void testPlayNext() {
+    PlayQueue playQueue = new PlayQueue();
+    playQueue.reset(5);
+    playQueue.playNext(3);
+    playQueue.playNext(4);
+    VerificationUtils.verify(playQueue.next(), 3, "First queued track");
+    VerificationUtils.verify(playQueue.next(), 4, "Second queued track");
+    VerificationUtils.verify(playQueue.next(), 1,
+        "Continues after the track that was current");
+    VerificationUtils.verify(playQueue.size(), 5,
+        "Queued tracks are played once");
+
+    playQueue.playNext(0);
+    playQueue.shuffle(new Random(7));
+    VerificationUtils.verify(playQueue.peek(1), 0,
+        "Queued track stays next when shuffling");
+
+    playQueue.playNext(2);
+    playQueue.setOrder(new int[] {1, 4, 3, 2, 0});
+    VerificationUtils.verify(playQueue.peek(1), 0,
+        "Queued tracks stay next when the order is set");
+    VerificationUtils.verify(playQueue.peek(2), 2, "Second queued track");
+    VerificationUtils.verify(playQueue.peek(3), 4, "Then the new order");
+  }
+
+  @Test
+  public void testPlayNextAcrossShuffles() {
+    PlayQueue playQueue = new PlayQueue();
+    playQueue.reset(6);
+    playQueue.playNext(4);
+    playQueue.playNext(5);
+    playQueue.shuffle(new Random(3));
+    VerificationUtils.verify(playQueue.peek(1), 4,
+        "First queued track next when shuffled");
+    VerificationUtils.verify(playQueue.peek(2), 5,
+        "Second queued track after it");
+    playQueue.unshuffle();
+    VerificationUtils.verify(playQueue.peek(1), 4,
+        "First queued track next when unshuffled");
+    VerificationUtils.verify(playQueue.peek(2), 5,
+        "Second queued track after it when unshuffled");
+    VerificationUtils.verify(playQueue.peek(3), 1,
+        "Then the PlayList order");
+  }
+
+  @Test
+  public void testAddAndRemap() {
+    PlayQueue playQueue = new PlayQueue();
+    playQueue.reset(3);
+    playQueue.add(3);
+    playQueue.next();
+    playQueue.next();
+    // Remove tracks 1 and 2, the current track is 2
+    playQueue.remap(new int[] {0, -1, -1, 1}, 2);
+    VerificationUtils.verify(playQueue.size(), 2, "Removed tracks are dropped");
+    VerificationUtils.verify(playQueue.current(), 1,
+        "Track after the removed current track becomes current");
+    VerificationUtils.verify(playQueue.next(), 0, "Loops back to the start");
+  }
+}
@@ -0,0 +1,123 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import simplemediaplayer.LibraryScanner;
+import simplemediaplayer.PlayList;
+import simplemediaplayer.PlayListLoader;
+import simplemediaplayer.PlayListSaver;
+import simplemediaplayer.PlayerEvents;
+import simplemediaplayer.SimulatedBackend;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the {@link PlayerEvents} are recorded by Java Flight
+ * Recorder with their paths, counts and outcomes.
+ */
+public class PlayerEventsTest {
+
+  private final TempDirectories tempDirectories =
+      new TempDirectories("PlayerEventsTest");
+
+  @AfterMethod
+  public void deleteTempDirectories() {
+    tempDirectories.deleteAll();
+  }
+
+  @Test
+  public void testEventsAreRecorded() throws IOException {
+    File directory = tempDirectories.create();
+    new File(directory, "A.mp3").createNewFile();
+    new File(directory, "B.mp3").createNewFile();
+    File playListFile = new File(directory, "playlist.txt");
+    File missingFile = new File(directory, "missing.txt");
+
+    List<RecordedEvent> events;
+    try (Recording recording = new Recording()) {
+      for (String name : Arrays.asList("DirectoryScan", "PlayListLoad",
+          "PlayListSave", "TrackCreation", "TrackHandover")) {
+        recording.enable("simplemediaplayer." + name).withoutThreshold();
+      }
+      recording.start();
+
+      List<String> filePaths = new LibraryScanner().scanAll(directory);
+      PlayListSaver.write(filePaths, playListFile);
+      new PlayListLoader().loadAll(playListFile);
+      try {
+        new PlayListLoader().loadAll(missingFile);
+      } catch (IOException ioe) {
+        // Recorded as the outcome
+      }
+      SimulatedBackend backend = new SimulatedBackend();
+      PlayList playList = new PlayList(backend);
+      playList.addAllFilesIntoPlayList(filePaths);
+      playList.startPlayback();
+      backend.advance(200000);
+
+      recording.stop();
+      Path dump = new File(directory, "recording.jfr").toPath();
+      recording.dump(dump);
+      events = RecordingFile.readAllEvents(dump);
+    }
+
+    RecordedEvent scan = only(events, "DirectoryScan", directory.getPath());
+    VerificationUtils.verify(scan.getInt("files"), 2, "Files found");
+    VerificationUtils.verify(scan.getString("outcome"), PlayerEvents.OK,
+        "Scan outcome");
+    RecordedEvent save =
+        only(events, "PlayListSave", playListFile.getPath());
+    VerificationUtils.verify(save.getInt("entries"), 2, "Entries saved");
+    RecordedEvent load =
+        only(events, "PlayListLoad", playListFile.getPath());
+    VerificationUtils.verify(load.getLong("entries"), 2L, "Entries loaded");
+    VerificationUtils.verify(load.getBoolean("binary"), false, "Text file");
+    VerificationUtils.verify(only(events, "PlayListLoad",
+        missingFile.getPath()).getString("outcome").contains(
+            "NoSuchFileException"), true, "Failure is the outcome");
+
+    VerificationUtils.verify(named(events, "TrackCreation").size(), 2,
+        "Both Tracks created");
+    List<RecordedEvent> handovers = named(events, "TrackHandover");
+    VerificationUtils.verify(handovers.size(), 2, "Start and one handover");
+    RecordedEvent endOfMedia = handovers.get(1);
+    VerificationUtils.verify(endOfMedia.getString("trigger"), "end of media",
+        "Handover trigger");
+    VerificationUtils.verify(endOfMedia.getString("previousSource"),
+        handovers.get(0).getString("source"), "Handed over from first track");
+    VerificationUtils.verify(endOfMedia.getString("status"), "READY",
+        "Next track was pre-rolled");
+  }
+
+  private static List<RecordedEvent> named(List<RecordedEvent> events,
+      String name) {
+    List<RecordedEvent> named = new ArrayList<RecordedEvent>();
+    for (RecordedEvent event : events) {
+      if (event.getEventType().getName().equals("simplemediaplayer." + name)) {
+        named.add(event);
+      }
+    }
+    return named;
+  }
+
+  private static RecordedEvent only(List<RecordedEvent> events, String name,
+      String path) {
+    RecordedEvent found = null;
+    for (RecordedEvent event : named(events, name)) {
+      if (path.equals(event.getString("path"))) {
+        VerificationUtils.verify(found, null, "One " + name + " of " + path);
+        found = event;
+      }
+    }
+    VerificationUtils.verify(found != null, true, name + " of " + path);
+    return found;
+  }
+}
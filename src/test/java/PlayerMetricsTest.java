@@ -0,0 +1,122 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import simplemediaplayer.PlayList;
+import simplemediaplayer.PlayListLoader;
+import simplemediaplayer.PlayListSaver;
+import simplemediaplayer.PlayerMetrics;
+import simplemediaplayer.SimulatedBackend;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the {@link PlayerMetrics} count what the player does and
+ * can be read through JMX. Counters are shared by the whole player, so the
+ * tests verify how much they change.
+ */
+public class PlayerMetricsTest {
+
+  private static final long TRACK_MILLIS = 180000;
+
+  private final TempDirectories tempDirectories =
+      new TempDirectories("PlayerMetricsTest");
+
+  @AfterMethod
+  public void deleteTempDirectories() {
+    tempDirectories.deleteAll();
+  }
+
+  @Test
+  public void testPlaybackIsCounted() {
+    PlayerMetrics metrics = PlayerMetrics.GLOBAL;
+    long created = metrics.getTracksCreated();
+    long live = metrics.getLiveTracks();
+    long transitions = sum(metrics.getTransitionLatencyHistogram());
+    long preRolled = metrics.getPreRolls().getHits();
+    Long failed = metrics.getMediaErrors().get("SIMULATED");
+
+    SimulatedBackend backend = new SimulatedBackend();
+    List<String> sources = new ArrayList<String>();
+    for (int i = 0; i < 10; i++) {
+      sources.add("file:///C:/Track%20" + i + ".mp3");
+    }
+    backend.fail(sources.get(3));
+    PlayList playList = new PlayList(backend);
+    playList.addAllFilesIntoPlayList(sources);
+    playList.startPlayback();
+    backend.advance(10 * TRACK_MILLIS);
+
+    VerificationUtils.verify(metrics.getTracksCreated() - created,
+        backend.getCreatedTracks(), "Tracks created");
+    VerificationUtils.verify(metrics.getLiveTracks() - live,
+        backend.getLiveTracks(), "Live tracks");
+    VerificationUtils.verify(
+        sum(metrics.getTransitionLatencyHistogram()) - transitions,
+        playList.getTransitionStats().getCount(), "Transitions counted");
+    VerificationUtils.verify(metrics.getPreRolls().getHits() - preRolled,
+        playList.getTransitionStats().getCount(),
+        "Every track that played was loaded before its handover");
+    VerificationUtils.verify(metrics.getMediaErrors().get("SIMULATED"),
+        (failed == null ? 0 : failed) + 1, "Media error counted by type");
+    VerificationUtils.verify(metrics.getTimeToFirstAudioMillis() >= 0, true,
+        "Time to first audio recorded");
+
+    playList.stopAnyRunningTracks();
+    VerificationUtils.verify(metrics.getLiveTracks(), live,
+        "Released tracks are not live");
+  }
+
+  @Test
+  public void testReadThroughJmx() throws IOException, JMException {
+    File playListFile = new File(tempDirectories.create(), "playlist.txt");
+    List<String> filePaths = new ArrayList<String>();
+    filePaths.add("file:///C:/A.mp3");
+    PlayList playList = new PlayList(new SimulatedBackend());
+    playList.addAllFilesIntoPlayList(filePaths);
+
+    PlayerMetrics metrics = PlayerMetrics.GLOBAL;
+    long saves = metrics.getPlayListSaves().getCount();
+    long loads = metrics.getPlayListLoads().getCount();
+    PlayListSaver.write(filePaths, playListFile);
+    new PlayListLoader().loadAll(playListFile);
+    VerificationUtils.verify(metrics.getPlayListSaves().getCount(), saves + 1,
+        "Save timed");
+    VerificationUtils.verify(metrics.getPlayListLoads().getCount(), loads + 1,
+        "Load timed");
+
+    PlayerMetrics.register();
+    metrics.setPlayList(playList);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(PlayerMetrics.OBJECT_NAME);
+    VerificationUtils.verify(server.getAttribute(name, "PlayListSize"), 1,
+        "PlayList size");
+    CompositeData playListSaves =
+        (CompositeData) server.getAttribute(name, "PlayListSaves");
+    VerificationUtils.verify(playListSaves.get("count"),
+        metrics.getPlayListSaves().getCount(), "Timing read as composite");
+    VerificationUtils.verify(
+        ((long[]) server.getAttribute(name, "TransitionLatencyHistogram"))
+            .length,
+        metrics.getTransitionLatencyBoundsMillis().length + 1,
+        "One more bucket than bounds");
+    metrics.setPlayList(null);
+  }
+
+  private static long sum(long[] counts) {
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    return total;
+  }
+}
@@ -0,0 +1,45 @@
+
+import org.testng.annotations.Test;
+
+import javafx.util.Duration;
+import simplemediaplayer.ProgressUpdater;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the "mm:ss" formatting of the {@link ProgressUpdater}.
+ */
+public class ProgressUpdaterTest {
+
+  @Test
+  public void testFormatTime() {
+    VerificationUtils.verify(ProgressUpdater.formatTime(Duration.ZERO),
+        "00:00", "Zero");
+    VerificationUtils.verify(ProgressUpdater.formatTime(Duration.seconds(5)),
+        "00:05", "Five seconds");
+    VerificationUtils.verify(ProgressUpdater
+        .formatTime(Duration.minutes(3).add(Duration.seconds(25))), "03:25",
+        "Three minutes and 25 seconds");
+  }
+
+  @Test
+  public void testFormatTimeNeverShowsSixtySeconds() {
+    VerificationUtils.verify(
+        ProgressUpdater.formatTime(Duration.millis(59600)), "00:59",
+        "59.6 seconds");
+    VerificationUtils.verify(
+        ProgressUpdater.formatTime(Duration.millis(119999)), "01:59",
+        "119.999 seconds");
+    VerificationUtils.verify(ProgressUpdater.formatTime(Duration.seconds(60)),
+        "01:00", "60 seconds");
+  }
+
+  @Test
+  public void testFormatTimeLongAndUnknown() {
+    VerificationUtils.verify(ProgressUpdater.formatTime(Duration.hours(2)),
+        "120:00", "Two hours");
+    VerificationUtils.verify(ProgressUpdater.formatTime(Duration.UNKNOWN),
+        "00:00", "Unknown duration");
+    VerificationUtils.verify(ProgressUpdater.formatTime(Duration.INDEFINITE),
+        "00:00", "Indefinite duration");
+  }
+}
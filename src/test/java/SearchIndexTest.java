@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import simplemediaplayer.PlayList;
+import simplemediaplayer.SearchIndex;
+import simplemediaplayer.SimulatedBackend;
+import simplemediaplayer.TrackTags;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the {@link SearchIndex} finds tracks by words of their
+ * file names, folders and tags, and follows the PlayList it indexes.
+ */
+public class SearchIndexTest {
+
+  private static final String NIGHT = "file:///C:/Music/Boards%20of%20Canada"
+      + "/Geogaddi/01%20Ready%20Lets%20Go.mp3";
+  private static final String CAFE =
+      "file:///C:/Music/Caf%C3%A9%20Tacvba/Re/02%20El%20Ciclon.mp3";
+  private static final String LIVE =
+      "file:///C:/Music/Sigur%20Ros/Takk/03%20Glosoli%20(Live).mp3";
+
+  @Test
+  public void testSubstringAndPrefixSearch() {
+    SearchIndex index = new SearchIndex();
+    index.add(NIGHT, null);
+    index.add(CAFE, null);
+    index.add(LIVE, null);
+
+    VerificationUtils.verify(index.search("ready", 10),
+        Arrays.asList(NIGHT), "Word of the file name");
+    VerificationUtils.verify(index.search("geogaddi", 10),
+        Arrays.asList(NIGHT), "Album folder");
+    VerificationUtils.verify(index.search("ANADA", 10),
+        Arrays.asList(NIGHT), "Substring of an artist folder, any case");
+    VerificationUtils.verify(index.search("cafe", 10),
+        Arrays.asList(CAFE), "Accents ignored");
+    VerificationUtils.verify(index.search("o", 10),
+        Arrays.asList(NIGHT, CAFE, LIVE), "Single letter, in order added");
+    VerificationUtils.verify(index.search("o", 2),
+        Arrays.asList(NIGHT, CAFE), "Limited");
+    VerificationUtils.verify(index.search("sigur live", 10),
+        Arrays.asList(LIVE), "Every word has to match");
+    VerificationUtils.verify(index.search("sigur ready", 10),
+        Collections.emptyList(), "Words of different tracks");
+    VerificationUtils.verify(index.search("mp3", 10),
+        Collections.emptyList(), "Extension not indexed");
+    VerificationUtils.verify(index.searchPrefix("glo", 10),
+        Arrays.asList(LIVE), "Prefix");
+    VerificationUtils.verify(index.searchPrefix("oso", 10),
+        Collections.emptyList(), "Not a prefix");
+  }
+
+  @Test
+  public void testTagsAndRemovals() {
+    SearchIndex index = new SearchIndex();
+    index.add(NIGHT, null);
+    index.add(LIVE, new TrackTags("Gl\u00f3s\u00f3li", "Sigur R\u00f3s",
+        "Takk...", 375000));
+    index.setTags(NIGHT, new TrackTags("Ready Lets Go", "Boards of Canada",
+        "Geogaddi", 60000));
+    VerificationUtils.verify(index.search("r\u00f3s", 10),
+        Arrays.asList(LIVE), "Tag found");
+    VerificationUtils.verify(index.search("boards ready", 10),
+        Arrays.asList(NIGHT), "Tags set later");
+
+    index.add(LIVE, null);
+    index.remove(LIVE);
+    VerificationUtils.verify(index.search("glosoli", 10),
+        Arrays.asList(LIVE), "Still in the PlayList once");
+    index.remove(LIVE);
+    VerificationUtils.verify(index.search("glosoli", 10),
+        Collections.emptyList(), "Removed");
+    VerificationUtils.verify(index.size(), 1, "One track left");
+  }
+
+  @Test
+  public void testManyRemovals() {
+    SearchIndex index = new SearchIndex();
+    List<String> entries = new ArrayList<String>();
+    for (int i = 0; i < 5000; i++) {
+      entries.add("file:///C:/Music/Track%20" + i + ".mp3");
+      index.add(entries.get(i), null);
+    }
+    for (int i = 0; i < 4990; i++) {
+      index.remove(entries.get(i));
+    }
+    VerificationUtils.verify(index.search("track", 100),
+        entries.subList(4990, 5000), "Tracks left after removals");
+    VerificationUtils.verify(index.search("4999", 10),
+        Arrays.asList(entries.get(4999)), "Found by number");
+  }
+
+  @Test
+  public void testFollowsPlayList() {
+    PlayList playList = new PlayList(new SimulatedBackend());
+    SearchIndex index = new SearchIndex();
+    playList.addAllFilesIntoPlayList(Arrays.asList(NIGHT, CAFE));
+    playList.setSearchIndex(index);
+    VerificationUtils.verify(index.search("ciclon", 10),
+        Arrays.asList(CAFE), "Tracks already in the PlayList");
+
+    playList.addAllFilesIntoPlayList(Arrays.asList(LIVE));
+    VerificationUtils.verify(index.search("takk", 10), Arrays.asList(LIVE),
+        "Added track");
+    playList.applyLibraryChanges(Collections.<String> emptyList(),
+        Arrays.asList(CAFE));
+    VerificationUtils.verify(index.search("ciclon", 10),
+        Collections.emptyList(), "Removed track");
+
+    playList.setFilePaths(new ArrayList<String>(Arrays.asList(CAFE)));
+    VerificationUtils.verify(index.search("o", 10), Arrays.asList(CAFE),
+        "Replaced tracks");
+  }
+}
@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import simplemediaplayer.PlayList;
+import simplemediaplayer.SimulatedBackend;
+import simplemediaplayer.Track;
+import simplemediaplayer.TrackRegistry;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the queueing and transitions of a {@link PlayList}
+ * playing on a {@link SimulatedBackend}.
+ */
+public class SimulatedPlaybackTest {
+
+  private static final long TRACK_MILLIS = 180000;
+
+  @Test
+  public void testPlaysThroughPlayList() {
+    SimulatedBackend backend = new SimulatedBackend();
+    PlayList playList = new PlayList(backend, new TrackRegistry());
+    playList.addAllFilesIntoPlayList(sources(1000));
+    playList.startPlayback();
+    backend.advance(1000 * TRACK_MILLIS);
+
+    // The first track starts once it is loaded, 20ms in
+    VerificationUtils.verify(backend.getEndedTracks(), 999L, "Tracks played");
+    VerificationUtils.verify(playList.getCurrentIndex(), 999,
+        "Last track is playing");
+    VerificationUtils.verify(playList.getCurrentlyPlaying().getStatus(),
+        Track.Status.PLAYING, "Current track status");
+    VerificationUtils.verify(playList.getTransitionStats().getCount(), 999L,
+        "Transitions recorded");
+    VerificationUtils.verify(playList.getTransitionStats().getMaxNanos(), 0L,
+        "Next tracks were ready before their handover");
+    VerificationUtils.verify(
+        backend.getLiveTracks() <= playList.getLookahead() + 2, true,
+        "Live tracks stay within the window");
+  }
+
+  @Test
+  public void testSkipsThroughRepeatedEntries() {
+    SimulatedBackend backend = new SimulatedBackend();
+    List<String> sources = sources(3);
+    // The same file twice in a row and again after another one
+    sources.set(1, sources.get(0));
+    sources.add(sources.get(0));
+    PlayList playList = new PlayList(backend);
+    playList.addAllFilesIntoPlayList(sources);
+    playList.startPlayback();
+    backend.advance(1000);
+
+    playList.playNextTrack();
+    VerificationUtils.verify(playList.getCurrentIndex(), 1,
+        "Next entry of the same file");
+    playList.playNextTrack();
+    VerificationUtils.verify(playList.getCurrentIndex(), 2,
+        "Next entry after the repeated file");
+    playList.playPreviousTrack();
+    VerificationUtils.verify(playList.getCurrentIndex(), 1,
+        "Previous entry, though the next one is the same file");
+    VerificationUtils.verify(playList.getCurrentlyPlaying().getStatus(),
+        Track.Status.PLAYING, "Current track status");
+  }
+
+  @Test
+  public void testSkipsTrackThatFails() {
+    SimulatedBackend backend = new SimulatedBackend();
+    List<String> sources = sources(10);
+    backend.fail(sources.get(3));
+    PlayList playList = new PlayList(backend);
+    playList.addAllFilesIntoPlayList(sources);
+    playList.startPlayback();
+    backend.advance(10 * TRACK_MILLIS);
+
+    VerificationUtils.verify(backend.getEndedTracks(), 9L,
+        "Every track but the failing one played");
+    VerificationUtils.verify(playList.getCurrentIndex(), 0,
+        "Looped back to the start");
+  }
+
+  @Test
+  public void testShuffledPlayListPlaysEveryTrack() {
+    int size = 200000;
+    SimulatedBackend backend = new SimulatedBackend();
+    backend.setDefaultTrackDuration(1000);
+    // Not in the registry of the player, which would keep them
+    PlayList playList = new PlayList(backend, new TrackRegistry());
+    playList.addAllFilesIntoPlayList(sources(size));
+    playList.shuffle(null);
+    playList.startPlayback();
+    // Look half way through each track
+    backend.advance(500);
+
+    boolean[] played = new boolean[size];
+    int playedCount = 0;
+    for (int i = 0; i < size; i++) {
+      int current = playList.getCurrentIndex();
+      if (!played[current]) {
+        played[current] = true;
+        playedCount++;
+      }
+      backend.advance(1000);
+    }
+    VerificationUtils.verify(playedCount, size, "Each track played once");
+    VerificationUtils.verify(backend.getEndedTracks(), (long) size,
+        "Tracks played");
+  }
+
+  private static List<String> sources(int size) {
+    List<String> sources = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      sources.add("file:///C:/Music/Track%20" + i + ".mp3");
+    }
+    return sources;
+  }
+}
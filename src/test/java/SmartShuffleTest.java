@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import simplemediaplayer.AliasTable;
+import simplemediaplayer.PlayList;
+import simplemediaplayer.SimulatedBackend;
+import simplemediaplayer.SmartShuffle;
+import simplemediaplayer.Track;
+import simplemediaplayer.TrackRegistry;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the weighted picks of the {@link AliasTable} and the play
+ * orders of the {@link SmartShuffle}.
+ */
+public class SmartShuffleTest {
+
+  @Test
+  public void testAliasTablePicksByWeight() {
+    AliasTable table = new AliasTable(new double[] { 1, 0, 2, 7 });
+    int[] picks = new int[table.size()];
+    Random random = new Random(42);
+    for (int i = 0; i < 100000; i++) {
+      picks[table.sample(random)]++;
+    }
+    VerificationUtils.verify(picks[1], 0, "Never picks a zero weight");
+    VerificationUtils.verify(Math.abs(picks[0] - 10000) < 1000, true,
+        "Light index picked a tenth of the time: " + picks[0]);
+    VerificationUtils.verify(Math.abs(picks[3] - 70000) < 1000, true,
+        "Heavy index picked most of the time: " + picks[3]);
+  }
+
+  @Test
+  public void testWeights() {
+    long now = 1000L * 3600 * 24 * 365;
+    double fresh = SmartShuffle.weight(0, 0, 0, now);
+    VerificationUtils.verify(SmartShuffle.weight(20, 0, 0, now) > fresh, true,
+        "Favourites weigh more");
+    VerificationUtils.verify(SmartShuffle.weight(0, 20, 0, now) < fresh, true,
+        "Skipped tracks weigh less");
+    VerificationUtils.verify(
+        SmartShuffle.weight(1, 0, now - 60000, now)
+            < SmartShuffle.weight(1, 0, now - 3 * 24 * 3600000L, now),
+        true, "Tracks just played weigh less");
+    VerificationUtils.verify(SmartShuffle.weight(0, 1000, now, now) > 0, true,
+        "Every track can be picked");
+  }
+
+  @Test
+  public void testOrderKeepsFoldersApart() {
+    int count = 300;
+    double[] weights = new double[count];
+    int[] artists = new int[count];
+    int[] folders = new int[count];
+    for (int i = 0; i < count; i++) {
+      weights[i] = i < 30 ? 2 : 0.1;
+      artists[i] = -1;
+      folders[i] = i % 3;
+    }
+    int[] order = SmartShuffle.order(weights, artists, folders, 5,
+        new Random(42));
+
+    VerificationUtils.verify(order[0], 5, "Starts with the given track");
+    int[] sorted = order.clone();
+    Arrays.sort(sorted);
+    boolean permutation = true;
+    for (int i = 0; i < count; i++) {
+      permutation &= sorted[i] == i;
+    }
+    VerificationUtils.verify(permutation, true, "Plays every track once");
+    int together = 0;
+    int heavyEarly = 0;
+    for (int i = 1; i < count; i++) {
+      together += folders[order[i]] == folders[order[i - 1]] ? 1 : 0;
+      heavyEarly += i < 60 && order[i] < 30 ? 1 : 0;
+    }
+    VerificationUtils.verify(together <= 3, true,
+        "Same folder rarely back-to-back: " + together);
+    VerificationUtils.verify(heavyEarly >= 20, true,
+        "Heavy tracks come early: " + heavyEarly);
+  }
+
+  @Test
+  public void testSmartShuffleAndMoreLikeThisFolder() {
+    List<String> filePaths = new ArrayList<String>();
+    for (int i = 0; i < 10; i++) {
+      filePaths.add("file:///C:/Smart/Rock/Song%20" + i + ".mp3");
+      filePaths.add("file:///C:/Other/Jazz/Song%20" + i + ".mp3");
+    }
+    SimulatedBackend backend = new SimulatedBackend();
+    // Plays and skips counted from zero
+    TrackRegistry registry = new TrackRegistry();
+    PlayList playList = new PlayList(backend, registry);
+    playList.setFilePaths(filePaths);
+    playList.startPlayback();
+
+    playList.playNextTrack();
+    VerificationUtils.verify(
+        registry.getSkipCount(registry.find(filePaths.get(0))), 1,
+        "Skipped track counted");
+    backend.advance(SimulatedBackend.DEFAULT_TRACK_MILLIS + 1000);
+    VerificationUtils.verify(
+        registry.getPlayCount(registry.find(filePaths.get(1))), 1,
+        "Played track counted");
+
+    String current = playList.getCurrentlyPlaying().getSource();
+    playList.smartShuffle();
+    VerificationUtils.verify(playList.isShuffled(), true, "Shuffled");
+    VerificationUtils.verify(playList.getCurrentlyPlaying().getSource(),
+        current, "Current track keeps playing");
+
+    playList.setLookahead(3);
+    VerificationUtils.verify(playList.moreLikeThisFolder(3), 3,
+        "Queued tracks");
+    List<Track> window = playList.getPlaybackWindow();
+    String folder = current.substring(0, current.lastIndexOf('/') + 1);
+    for (Track track : window.subList(1, window.size())) {
+      VerificationUtils.verify(track.getSource().startsWith(folder), true,
+          "Next track from the same folder: " + track.getSource());
+    }
+    playList.stopAnyRunningTracks();
+  }
+}
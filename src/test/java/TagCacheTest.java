@@ -0,0 +1,80 @@
+import java.io.File;
+import java.io.IOException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import simplemediaplayer.TagCache;
+import simplemediaplayer.TrackTags;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the tags kept by the {@link TagCache}.
+ */
+public class TagCacheTest {
+
+  private final TempDirectories tempDirectories =
+      new TempDirectories("TagCacheTest");
+
+  @AfterMethod
+  public void deleteTempDirectories() {
+    tempDirectories.deleteAll();
+  }
+
+  @Test
+  public void testSaveAndOpen() throws IOException {
+    File cacheFile = new File(tempDirectories.create(), "tags.cache");
+    TagCache cache = TagCache.open(cacheFile);
+    VerificationUtils.verify(cache.size(), 0, "New cache is empty");
+    cache.put("/music/a.mp3", 1000, 42,
+        new TrackTags("Title", null, "Album", 185000));
+    cache.put("/music/b.mp3", 2000, 43, TrackTags.EMPTY);
+    cache.save();
+
+    TagCache reopened = TagCache.open(cacheFile);
+    TrackTags tags = reopened.get("/music/a.mp3", 1000, 42);
+    VerificationUtils.verify(tags.getTitle(), "Title", "Cached title");
+    VerificationUtils.verify(tags.getArtist(), null, "Cached missing artist");
+    VerificationUtils.verify(tags.getAlbum(), "Album", "Cached album");
+    VerificationUtils.verify(tags.getDurationMillis(), 185000L,
+        "Cached duration");
+    VerificationUtils.verify(
+        reopened.get("/music/b.mp3", 2000, 43).getTitle(), null,
+        "Cached file without tags");
+    VerificationUtils.verify(reopened.getHits(), 2, "Hits");
+  }
+
+  @Test
+  public void testLoadWhileInUse() throws IOException {
+    File cacheFile = new File(tempDirectories.create(), "tags.cache");
+    TagCache cache = TagCache.open(cacheFile);
+    cache.put("/music/a.mp3", 1000, 42, TrackTags.EMPTY);
+    cache.put("/music/b.mp3", 2000, 43, TrackTags.EMPTY);
+    cache.save();
+
+    TagCache loading = new TagCache(cacheFile);
+    TrackTags newer = new TrackTags("Newer", null, null, -1);
+    loading.put("/music/a.mp3", 1000, 50, newer);
+    loading.load();
+    VerificationUtils.verify(loading.get("/music/a.mp3", 1000, 50), newer,
+        "Tags cached before loading are kept");
+    VerificationUtils.verify(loading.get("/music/b.mp3", 2000, 43) != null,
+        true, "Tags loaded from the file");
+    VerificationUtils.verify(loading.get("/music/a.mp3", 1000, 42), null,
+        "Older tags from the file are not loaded");
+  }
+
+  @Test
+  public void testChangedFileIsNotCached() throws IOException {
+    File cacheFile = new File(tempDirectories.create(), "tags.cache");
+    TagCache cache = TagCache.open(cacheFile);
+    cache.put("/music/a.mp3", 1000, 42, TrackTags.EMPTY);
+    VerificationUtils.verify(cache.get("/music/a.mp3", 1001, 42), null,
+        "Size changed");
+    VerificationUtils.verify(cache.get("/music/a.mp3", 1000, 44), null,
+        "Last modified time changed");
+    VerificationUtils.verify(cache.get("/music/c.mp3", 1000, 42), null,
+        "Never cached");
+    VerificationUtils.verify(cache.getMisses(), 3, "Misses");
+  }
+}
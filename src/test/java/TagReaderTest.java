@@ -0,0 +1,194 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.testng.annotations.Test;
+
+import simplemediaplayer.TagReader;
+import simplemediaplayer.TrackTags;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the tags read by the {@link TagReader}.
+ */
+public class TagReaderTest {
+
+  // MPEG-1 Layer III, 128 kbit/s, 44100 Hz frame header and frame length
+  private static final int MPEG_HEADER = 0xfffb9000;
+  private static final int MPEG_FRAME_LENGTH = 417;
+
+  @Test
+  public void testReadId3v2() throws IOException {
+    ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    writeId3v23Frame(frames, "TIT2", (byte) 0,
+        "Title".getBytes(StandardCharsets.ISO_8859_1));
+    writeId3v23Frame(frames, "APIC", (byte) 0, new byte[5000]);
+    byte[] artist = "Artist \u00e9".getBytes(StandardCharsets.UTF_16);
+    writeId3v23Frame(frames, "TPE1", (byte) 1, artist);
+    writeId3v23Frame(frames, "TALB", (byte) 0,
+        "Album".getBytes(StandardCharsets.ISO_8859_1));
+    writeId3v23Frame(frames, "TLEN", (byte) 0,
+        "185000".getBytes(StandardCharsets.ISO_8859_1));
+
+    File file = writeFile(".mp3", id3v23Tag(frames.toByteArray()),
+        mpegFrames(10));
+    TrackTags tags = TagReader.read(file);
+    VerificationUtils.verify(tags.getTitle(), "Title", "Title");
+    VerificationUtils.verify(tags.getArtist(), "Artist \u00e9",
+        "UTF-16 artist after skipped picture");
+    VerificationUtils.verify(tags.getAlbum(), "Album", "Album");
+    VerificationUtils.verify(tags.getDurationMillis(), 185000L,
+        "Duration from TLEN");
+  }
+
+  @Test
+  public void testReadId3v1AndBitrateDuration() throws IOException {
+    byte[] id3v1 = new byte[128];
+    System.arraycopy("TAG".getBytes(StandardCharsets.ISO_8859_1), 0, id3v1, 0,
+        3);
+    byte[] title = "Old Title".getBytes(StandardCharsets.ISO_8859_1);
+    System.arraycopy(title, 0, id3v1, 3, title.length);
+    byte[] artist = "Old Artist".getBytes(StandardCharsets.ISO_8859_1);
+    System.arraycopy(artist, 0, id3v1, 33, artist.length);
+
+    File file = writeFile(".mp3", mpegFrames(100), id3v1);
+    TrackTags tags = TagReader.read(file);
+    VerificationUtils.verify(tags.getTitle(), "Old Title", "ID3v1 title");
+    VerificationUtils.verify(tags.getArtist(), "Old Artist", "ID3v1 artist");
+    VerificationUtils.verify(tags.getAlbum(), null, "No album");
+    // 41700 bytes at 128 kbit/s
+    VerificationUtils.verify(tags.getDurationMillis(), 2606L,
+        "Duration from bitrate");
+  }
+
+  @Test
+  public void testReadMp4() throws IOException {
+    ByteArrayOutputStream movieHeader = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(movieHeader);
+    // Version 0, creation and modification time, timescale and duration
+    out.writeInt(0);
+    out.writeInt(0);
+    out.writeInt(0);
+    out.writeInt(44100);
+    out.writeInt(44100 * 200);
+
+    byte[] ilst = atom("ilst", concat(
+        atom("\u00a9nam", dataAtom("M4A Title")),
+        atom("\u00a9ART", dataAtom("M4A Artist")),
+        atom("\u00a9alb", dataAtom("M4A Album"))));
+    byte[] meta = atom("meta", concat(new byte[4], ilst));
+    byte[] moov = atom("moov", concat(atom("mvhd", movieHeader.toByteArray()),
+        atom("udta", meta)));
+
+    File file = writeFile(".m4a",
+        atom("ftyp", "M4A ".getBytes(StandardCharsets.ISO_8859_1)),
+        atom("mdat", new byte[1000]), moov);
+    TrackTags tags = TagReader.read(file);
+    VerificationUtils.verify(tags.getTitle(), "M4A Title", "MP4 title");
+    VerificationUtils.verify(tags.getArtist(), "M4A Artist", "MP4 artist");
+    VerificationUtils.verify(tags.getAlbum(), "M4A Album", "MP4 album");
+    VerificationUtils.verify(tags.getDurationMillis(), 200000L,
+        "Duration from movie header");
+  }
+
+  @Test
+  public void testReadDeeplyNestedMp4() throws IOException {
+    // moov atoms nested as deep as they fit in 1.6 MB
+    int depth = 200000;
+    ByteArrayOutputStream nested = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(nested);
+    for (int i = 0; i < depth; i++) {
+      out.writeInt((depth - i) * 8);
+      out.write("moov".getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    File file = writeFile(".m4a",
+        atom("ftyp", "M4A ".getBytes(StandardCharsets.ISO_8859_1)),
+        nested.toByteArray());
+    VerificationUtils.verify(TagReader.read(file), TrackTags.EMPTY,
+        "Deeply nested atoms are skipped");
+  }
+
+  @Test
+  public void testReadWithoutTags() throws IOException {
+    File file = writeFile(".wav", new byte[1000]);
+    VerificationUtils.verify(TagReader.read(file), TrackTags.EMPTY,
+        "File without tags");
+  }
+
+  private static void writeId3v23Frame(ByteArrayOutputStream frames, String id,
+      byte encoding, byte[] text) throws IOException {
+    DataOutputStream out = new DataOutputStream(frames);
+    out.write(id.getBytes(StandardCharsets.ISO_8859_1));
+    out.writeInt(text.length + 1);
+    out.writeShort(0);
+    out.write(encoding);
+    out.write(text);
+  }
+
+  private static byte[] id3v23Tag(byte[] frames) {
+    // Some padding after the frames
+    int size = frames.length + 100;
+    byte[] tag = new byte[10 + size];
+    tag[0] = 'I';
+    tag[1] = 'D';
+    tag[2] = '3';
+    tag[3] = 3;
+    tag[6] = (byte) (size >> 21 & 0x7f);
+    tag[7] = (byte) (size >> 14 & 0x7f);
+    tag[8] = (byte) (size >> 7 & 0x7f);
+    tag[9] = (byte) (size & 0x7f);
+    System.arraycopy(frames, 0, tag, 10, frames.length);
+    return tag;
+  }
+
+  private static byte[] mpegFrames(int count) {
+    byte[] frames = new byte[count * MPEG_FRAME_LENGTH];
+    for (int i = 0; i < count; i++) {
+      int offset = i * MPEG_FRAME_LENGTH;
+      frames[offset] = (byte) (MPEG_HEADER >>> 24);
+      frames[offset + 1] = (byte) (MPEG_HEADER >>> 16);
+      frames[offset + 2] = (byte) (MPEG_HEADER >>> 8);
+      frames[offset + 3] = (byte) MPEG_HEADER;
+    }
+    return frames;
+  }
+
+  private static byte[] dataAtom(String value) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(body);
+    // UTF-8 type and default locale
+    out.writeInt(1);
+    out.writeInt(0);
+    out.write(value.getBytes(StandardCharsets.UTF_8));
+    return atom("data", body.toByteArray());
+  }
+
+  private static byte[] atom(String type, byte[] body) throws IOException {
+    ByteArrayOutputStream atom = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(atom);
+    out.writeInt(8 + body.length);
+    out.write(type.getBytes(StandardCharsets.ISO_8859_1));
+    out.write(body);
+    return atom.toByteArray();
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    for (byte[] part : parts) {
+      bytes.write(part, 0, part.length);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static File writeFile(String extension, byte[]... parts)
+      throws IOException {
+    File file = File.createTempFile("TagReaderTest", extension);
+    file.deleteOnExit();
+    Files.write(file.toPath(), concat(parts));
+    return file;
+  }
+}
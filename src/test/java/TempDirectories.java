@@ -0,0 +1,52 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Temporary directories created by a test class, deleted with everything in
+ * them once a test is done.
+ */
+public class TempDirectories {
+
+  private final String prefix;
+  private final List<File> directories = new ArrayList<File>();
+
+  /**
+   * @param prefix Start of the names of the directories
+   */
+  public TempDirectories(String prefix) {
+    this.prefix = prefix;
+  }
+
+  /**
+   * @return a new empty directory
+   * @throws IOException If the directory cannot be created
+   */
+  public synchronized File create() throws IOException {
+    File directory = Files.createTempDirectory(prefix).toFile();
+    directories.add(directory);
+    return directory;
+  }
+
+  /**
+   * Deletes the directories created so far and everything in them.
+   */
+  public synchronized void deleteAll() {
+    for (File directory : directories) {
+      delete(directory);
+    }
+    directories.clear();
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
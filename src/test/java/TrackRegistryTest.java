@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import simplemediaplayer.PlayList;
+import simplemediaplayer.SimulatedBackend;
+import simplemediaplayer.TrackList;
+import simplemediaplayer.TrackRegistry;
+import utils.VerificationUtils;
+
+/**
+ * Tests that verify the {@link TrackRegistry} gives tracks stable ids and
+ * reads their fields, and that {@link TrackList}s and PlayLists share tracks
+ * through it.
+ */
+public class TrackRegistryTest {
+
+  @Test
+  public void testStableIdsAndColumns() {
+    TrackRegistry registry = new TrackRegistry();
+    List<Integer> ids = new ArrayList<Integer>();
+    for (int i = 0; i < 5000; i++) {
+      ids.add(registry.register("file:///C:/Track%20" + i + ".mp3"));
+    }
+    VerificationUtils.verify(registry.size(), 5000, "Every track registered");
+    VerificationUtils.verify(registry.register("file:///C:/Track%2042.mp3"),
+        ids.get(42), "Same id when registered again");
+    VerificationUtils.verify(registry.find("file:///C:/Track%204999.mp3"),
+        ids.get(4999), "Found after growing");
+    VerificationUtils.verify(registry.find("file:///C:/None.mp3"), -1,
+        "Unknown track");
+    VerificationUtils.verify(registry.getUri(ids.get(7)),
+        "file:///C:/Track%207.mp3", "URI by id");
+
+    int id = ids.get(3);
+    VerificationUtils.verify(registry.getDurationMillis(id), -1L,
+        "Duration unknown");
+    registry.setDurationMillis(id, 180000);
+    registry.setSize(id, 4321);
+    registry.setFlag(id, TrackRegistry.FLAG_MISSING, true);
+    registry.setFlag(id, TrackRegistry.FLAG_UNPLAYABLE, true);
+    registry.setFlag(id, TrackRegistry.FLAG_UNPLAYABLE, false);
+    VerificationUtils.verify(registry.getDurationMillis(id), 180000L,
+        "Duration");
+    VerificationUtils.verify(registry.getSize(id), 4321L, "Size");
+    VerificationUtils.verify(registry.hasFlag(id, TrackRegistry.FLAG_MISSING),
+        true, "Flag set");
+    VerificationUtils.verify(
+        registry.hasFlag(id, TrackRegistry.FLAG_UNPLAYABLE), false,
+        "Flag cleared");
+    VerificationUtils.verify(registry.getSize(ids.get(4)), -1L,
+        "Other tracks untouched");
+  }
+
+  @Test
+  public void testPlayStats() throws InterruptedException {
+    final TrackRegistry registry = new TrackRegistry();
+    TrackList tracks = new TrackList(registry,
+        Arrays.asList("C:/A.mp3", "C:/B.mp3", "C:/C.mp3"));
+    int[] ids = tracks.getIds();
+    registry.recordPlay(ids[0], 1000);
+    registry.recordPlay(ids[0], 2000);
+    registry.recordSkip(ids[2]);
+    int[] plays = new int[ids.length];
+    int[] skips = new int[ids.length];
+    long[] lastPlayed = new long[ids.length];
+    registry.getPlayStats(ids, plays, skips, lastPlayed);
+    VerificationUtils.verify(plays[0], 2, "Plays");
+    VerificationUtils.verify(skips[2], 1, "Skips");
+    VerificationUtils.verify(lastPlayed[0], 2000L, "Last played");
+    VerificationUtils.verify(lastPlayed[1], 0L, "Never played");
+
+    // URIs are read without a lock while tracks are registered
+    final int[] misread = new int[1];
+    Thread reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 200000; i++) {
+          int id = registry.size() - 1;
+          if (registry.getUri(id) == null) {
+            misread[0]++;
+          }
+        }
+      }
+    });
+    reader.start();
+    for (int i = 0; i < 20000; i++) {
+      registry.register("C:/Track " + i + ".mp3");
+    }
+    reader.join();
+    VerificationUtils.verify(misread[0], 0, "Every registered URI read");
+  }
+
+  @Test
+  public void testTrackList() {
+    TrackRegistry registry = new TrackRegistry();
+    TrackList tracks = new TrackList(registry,
+        Arrays.asList("C:/A.mp3", "C:/B.mp3", "C:/C.mp3"));
+    tracks.add(1, "C:/D.mp3");
+    tracks.remove("C:/C.mp3");
+    VerificationUtils.verify(tracks,
+        Arrays.asList("C:/A.mp3", "C:/D.mp3", "C:/B.mp3"), "Edited list");
+    VerificationUtils.verify(tracks.indexOf("C:/B.mp3"), 2, "Index of");
+    VerificationUtils.verify(tracks.contains("C:/C.mp3"), false,
+        "Removed entry stays registered but not listed");
+
+    TrackList copy = tracks.copy();
+    tracks.set(0, "C:/E.mp3");
+    VerificationUtils.verify(copy.get(0), "C:/A.mp3", "Copy unchanged");
+    VerificationUtils.verify(copy.getId(2), tracks.getId(2), "Same ids");
+    VerificationUtils.verify(registry.size(), 5, "Each track once");
+  }
+
+  @Test
+  public void testPlayListsShareTracks() {
+    List<String> filePaths = new ArrayList<String>();
+    for (int i = 0; i < 4; i++) {
+      filePaths.add("file:///C:/Shared%20" + i + ".mp3");
+    }
+    SimulatedBackend backend = new SimulatedBackend();
+    backend.fail(filePaths.get(0));
+    TrackRegistry registry = new TrackRegistry();
+    PlayList first = new PlayList(backend, registry);
+    first.addAllFilesIntoPlayList(filePaths);
+    PlayList second = new PlayList(backend, registry);
+    second.setFilePaths(filePaths);
+
+    TrackList firstTracks = first.getFilePaths();
+    TrackList secondTracks = second.getFilePaths();
+    VerificationUtils.verify(secondTracks.getId(3), firstTracks.getId(3),
+        "Same track, same id");
+
+    first.startPlayback();
+    backend.advance(1000);
+    VerificationUtils.verify(registry.hasFlag(firstTracks.getId(0),
+        TrackRegistry.FLAG_UNPLAYABLE), true, "Failed track flagged");
+    first.applyLibraryChanges(new ArrayList<String>(),
+        Arrays.asList(filePaths.get(2)));
+    VerificationUtils.verify(registry.hasFlag(secondTracks.getId(2),
+        TrackRegistry.FLAG_MISSING), true, "Seen by the other PlayList");
+    first.stopAnyRunningTracks();
+  }
+}
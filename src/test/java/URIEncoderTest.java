@@ -1,4 +1,9 @@
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Random;
+
 import org.testng.annotations.Test;
 
 import simplemediaplayer.URIEncoder;
@@ -38,4 +43,100 @@ public class URIEncoderTest {
     VerificationUtils.verify(URIEncoder.decodeURI(emptyString), emptyString,
         "URI Decoding empty string");
   }
+
+  @Test
+  public void testURIEncoderUnicode() {
+    String unicodeString = "\u00e9t\u00e9 \u97f3\u697d \ud83c\udfb5";
+    VerificationUtils.verify(URIEncoder.encodeURI(unicodeString),
+        legacyEncodeURI(unicodeString), "URI Encoding unicode string");
+    VerificationUtils.verify(
+        URIEncoder.decodeURI(URIEncoder.encodeURI(unicodeString)),
+        unicodeString, "URI Decoding unicode string");
+  }
+
+  /**
+   * Differential test: random strings must encode and decode exactly like the
+   * previous URLEncoder/URLDecoder based implementation.
+   */
+  @Test
+  public void testURIEncoderMatchesLegacyImplementation() {
+    Random random = new Random(20160502);
+    for (int i = 0; i < 20000; i++) {
+      String string = randomString(random);
+      String encoded = URIEncoder.encodeURI(string);
+      VerificationUtils.verify(encoded, legacyEncodeURI(string),
+          "URI Encoding '" + string + "'");
+      VerificationUtils.verify(URIEncoder.decodeURI(encoded),
+          legacyDecodeURI(encoded), "URI Decoding '" + encoded + "'");
+      VerificationUtils.verify(decodeURI(string), legacyDecodeURI(string),
+          "URI Decoding '" + string + "'");
+    }
+  }
+
+  private static String randomString(Random random) {
+    // Mostly characters that need special handling, some of everything else
+    String special = "-+%!'()~ ._*#[]/\\:?&=09afAFxz";
+    StringBuilder builder = new StringBuilder();
+    int length = random.nextInt(24);
+    for (int i = 0; i < length; i++) {
+      switch (random.nextInt(6)) {
+        case 0:
+          builder.append((char) random.nextInt(0x80));
+          break;
+        case 1:
+          builder.append((char) random.nextInt(0x800));
+          break;
+        case 2:
+          builder.append((char) random.nextInt(0x10000));
+          break;
+        case 3:
+          builder.appendCodePoint(0x10000 + random.nextInt(0x100000));
+          break;
+        default:
+          builder.append(special.charAt(random.nextInt(special.length())));
+          break;
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Decodes with {@link URIEncoder}. Returns the class of the exception if
+   * decoding fails.
+   */
+  private static String decodeURI(String uriString) {
+    try {
+      return URIEncoder.decodeURI(uriString);
+    } catch (IllegalArgumentException iae) {
+      return iae.getClass().getName();
+    }
+  }
+
+  /**
+   * The encoder as it was before it was rewritten to a single pass.
+   */
+  private static String legacyEncodeURI(String argString) {
+    try {
+      return URLEncoder.encode(argString, "UTF-8").replaceAll("\\+", "%20")
+          .replaceAll("\\%21", "!").replaceAll("\\%27", "'")
+          .replaceAll("\\%28", "(").replaceAll("\\%29", ")")
+          .replaceAll("\\%7E", "~").replaceAll("-", "\\%2d");
+    } catch (UnsupportedEncodingException uee) {
+      throw new AssertionError(uee);
+    }
+  }
+
+  /**
+   * The decoder as it was before it was rewritten to a single pass. Returns
+   * the class of the exception if decoding fails.
+   */
+  private static String legacyDecodeURI(String uriString) {
+    try {
+      return URLDecoder.decode(uriString, "UTF-8");
+    } catch (UnsupportedEncodingException uee) {
+      throw new AssertionError(uee);
+    } catch (IllegalArgumentException iae) {
+      return iae.getClass().getName();
+    }
+  }
 }